@@ -0,0 +1,101 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.worldfirst.fxorder.domain.OrderType;
+import com.worldfirst.fxorder.repository.OrderRecordsRepository;
+
+/**
+ * Class AmendBenchmark
+ *
+ * It measures moving one ASK order back and forth between two price levels of
+ * the given depth, next to 100 other levels: amend() against remove() then
+ * add() of a new order, along with reducing its amount in place.
+ *
+ * @author PM
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class AmendBenchmark {
+
+	@Param({ "1", "10000" })
+	public int levelDepth;
+
+	@Param({ "false", "true" })
+	public boolean offHeap;
+
+	private OrderRecordsRepository repository;
+
+	private long id;
+
+	private long nextId;
+
+	private long amount;
+
+	private boolean up;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		repository = new OrderRecordsRepository(offHeap);
+		Orders.fill(repository, 100, levelDepth);
+		nextId = 100L * levelDepth;
+	}
+
+	@Setup(Level.Iteration)
+	public void addOrder() {
+		if (0 != id) {
+			repository.remove(id);
+		}
+		id = ++nextId;
+		amount = Long.MAX_VALUE / 2;
+		repository.add(Orders.order(id, OrderType.ASK, Orders.BASE_PIPS, amount));
+	}
+
+	@Benchmark
+	public boolean amendPrice() {
+		up = !up;
+		return repository.amend(id, up ? Orders.BASE_PIPS + 1 : Orders.BASE_PIPS, 0);
+	}
+
+	@Benchmark
+	public long cancelAndAdd() {
+		up = !up;
+		repository.remove(id);
+		id = ++nextId;
+		return repository.add(Orders.order(id, OrderType.ASK, up ? Orders.BASE_PIPS + 1 : Orders.BASE_PIPS, amount));
+	}
+
+	@Benchmark
+	public boolean reduceAmount() {
+		return repository.amend(id, 0, --amount);
+	}
+
+}
@@ -0,0 +1,59 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.benchmarks;
+
+import java.io.File;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Class ContentionSweep
+ * 
+ * It runs the benchmarks matching a pattern once per number of threads, with
+ * the allocation profiler, and writes the results of each run as JSON into
+ * the given directory, e.g.
+ * 
+ * java -cp target/benchmarks.jar com.worldfirst.fxorder.benchmarks.ContentionSweep
+ * RepositoryAddRemove 1,2,4,8 results
+ * 
+ * @author PM
+ *
+ */
+public final class ContentionSweep {
+
+	private ContentionSweep() {
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		String pattern = args.length > 0 ? args[0] : RepositoryAddRemoveBenchmark.class.getSimpleName();
+		String threads = args.length > 1 ? args[1] : "1,2,4,8";
+		File results = new File(args.length > 2 ? args[2] : "results");
+		results.mkdirs();
+
+		for (String count : threads.split(",")) {
+			int n = Integer.parseInt(count.trim());
+			Options options = new OptionsBuilder()
+					.include(pattern)
+					.threads(n)
+					.addProfiler(GCProfiler.class)
+					.resultFormat(ResultFormatType.JSON)
+					.result(new File(results, pattern + "-t" + n + ".json").getPath())
+					.build();
+			new Runner(options).run();
+		}
+	}
+
+}
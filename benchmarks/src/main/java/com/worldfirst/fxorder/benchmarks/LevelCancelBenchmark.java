@@ -0,0 +1,95 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.worldfirst.fxorder.domain.OrderType;
+import com.worldfirst.fxorder.repository.OrderRecordsRepository;
+
+/**
+ * Class LevelCancelBenchmark
+ *
+ * It measures cancelling every ASK order of one price level, spread over the
+ * given number of amounts, next to 100 other levels of the same depth: one
+ * remove() per order against levelOrders() then a single removeAll(). The
+ * level is filled again before every invocation.
+ *
+ * @author PM
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class LevelCancelBenchmark {
+
+	@Param({ "100", "10000" })
+	public int levelDepth;
+
+	@Param({ "1", "100" })
+	public int amounts;
+
+	@Param({ "false", "true" })
+	public boolean offHeap;
+
+	private OrderRecordsRepository repository;
+
+	private long[] level;
+
+	private long nextId;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		repository = new OrderRecordsRepository(offHeap);
+		Orders.fill(repository, 100, levelDepth);
+		nextId = 100L * levelDepth;
+		level = new long[levelDepth];
+	}
+
+	@Setup(Level.Invocation)
+	public void fillLevel() {
+		for (int i = 0; i < levelDepth; i++) {
+			level[i] = ++nextId;
+			repository.add(Orders.order(nextId, OrderType.ASK, Orders.BASE_PIPS - 1, Orders.AMOUNT + i % amounts));
+		}
+	}
+
+	@Benchmark
+	public int removeEach() {
+		int removed = 0;
+		for (long id : level) {
+			removed += repository.remove(id) ? 1 : 0;
+		}
+		return removed;
+	}
+
+	@Benchmark
+	public boolean[] removeLevel() {
+		return repository.removeAll(repository.levelOrders(Orders.GBPUSD, OrderType.ASK, Orders.BASE_PIPS - 1));
+	}
+
+}
@@ -0,0 +1,89 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.worldfirst.fxorder.domain.MatchKey;
+import com.worldfirst.fxorder.domain.OrderData;
+import com.worldfirst.fxorder.domain.OrderType;
+
+/**
+ * Class MatchKeyBenchmark
+ * 
+ * It measures the computation of the key orders are matched by, the
+ * {@link MatchKey} which replaced the former OrderData.toCustomHash() string,
+ * and its lookup among the given number of distinct keys.
+ * 
+ * @author PM
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatchKeyBenchmark {
+
+	@Param({ "1000", "100000" })
+	public int keys;
+
+	private final Map<MatchKey, Object> buckets = new HashMap<MatchKey, Object>();
+
+	private long[] prices;
+
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		prices = new long[keys];
+		for (int i = 0; i < keys; i++) {
+			prices[i] = Orders.BASE_PIPS + i;
+			buckets.put(new MatchKey(Orders.GBPUSD.getId(), prices[i], Orders.AMOUNT), new Object());
+		}
+	}
+
+	@Benchmark
+	public MatchKey newOrder() {
+		OrderData order = Orders.order(1L, OrderType.BID, prices[nextIndex()], Orders.AMOUNT);
+		return order.getMatchKey();
+	}
+
+	@Benchmark
+	public Object lookup() {
+		return buckets.get(new MatchKey(Orders.GBPUSD.getId(), prices[nextIndex()], Orders.AMOUNT));
+	}
+
+	// Internal helpers
+
+	private int nextIndex() {
+		int index = next;
+		next = index + 1 == keys ? 0 : index + 1;
+		return index;
+	}
+
+}
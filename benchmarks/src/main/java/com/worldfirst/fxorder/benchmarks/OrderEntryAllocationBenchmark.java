@@ -0,0 +1,197 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.worldfirst.fxorder.Application;
+import com.worldfirst.fxorder.domain.CurrencyPair;
+import com.worldfirst.fxorder.domain.ExecutionReport;
+import com.worldfirst.fxorder.domain.OrderData;
+import com.worldfirst.fxorder.domain.OrderType;
+import com.worldfirst.fxorder.engine.ExecutionListener;
+import com.worldfirst.fxorder.engine.LimitOrderBook;
+import com.worldfirst.fxorder.pipeline.OrderIngestionPipeline;
+import com.worldfirst.fxorder.service.CurrencyPairRegistry;
+import com.worldfirst.fxorder.service.OrderIdGenerator;
+import com.worldfirst.fxorder.service.OrderValidator;
+import com.worldfirst.fxorder.wire.WireProtocol;
+
+/**
+ * Class OrderEntryAllocationBenchmark
+ *
+ * It checks the order entry path does not allocate in steady state, to be run
+ * with -prof gc and its gc.alloc.rate.norm read as bytes per order,
+ *
+ * - decodeAndValidate: a NEW_ORDER frame decoded into primitive fields,
+ * validated and timestamped, 0 B/op.
+ *
+ * - bookRestAndCancel: an order rested in the limit order book then
+ * cancelled, its book order and price level being recycled, 0 B/op.
+ *
+ * - serviceRestAndCancel: the same through the ingestion pipeline into the
+ * book engine of the service, which also indexes the order by sequence, 0
+ * B/op.
+ *
+ * - newOrder: decodeAndValidate plus the long order id and the OrderData,
+ * the allocation left being the order kept by the store.
+ *
+ * @author PM
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class OrderEntryAllocationBenchmark implements ExecutionListener {
+
+	private static final int ORDERS = 1024;
+
+	private ConfigurableApplicationContext context;
+
+	private OrderValidator validator;
+
+	private OrderIdGenerator ids;
+
+	private CurrencyPairRegistry pairs;
+
+	private OrderIngestionPipeline pipeline;
+
+	private final ByteBuffer frames = ByteBuffer.allocate(ORDERS * (4 + WireProtocol.NEW_ORDER_LENGTH));
+
+	private final LimitOrderBook book = new LimitOrderBook(Orders.GBPUSD);
+
+	private final OrderData[] orders = new OrderData[ORDERS];
+
+	/** The orders of the service, of its own currency pair. */
+	private final OrderData[] placed = new OrderData[ORDERS];
+
+	private long timestamps;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		context = new SpringApplicationBuilder(Application.class).web(WebApplicationType.NONE)
+				.properties("logging.level.root=WARN").run("--fxorder.engine=book");
+		validator = context.getBean(OrderValidator.class);
+		ids = context.getBean(OrderIdGenerator.class);
+		pairs = context.getBean(CurrencyPairRegistry.class);
+		pipeline = context.getBean(OrderIngestionPipeline.class);
+
+		for (int i = 0; i < ORDERS; i++) {
+			OrderType side = (i & 1) == 0 ? OrderType.BID : OrderType.ASK;
+			long pricePips = (OrderType.BID == side ? 11000 : 13000) + i % 64;
+			WireProtocol.putNewOrder(frames, i, 0, side, pricePips, Orders.AMOUNT);
+			orders[i] = Orders.order(i + 1L, side, pricePips, Orders.AMOUNT);
+			placed[i] = new OrderData(i + 1L, pairs.lookup("GBP/USD"), pricePips, Orders.AMOUNT, side, 1520000000000L);
+		}
+		frames.flip();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		context.close();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ORDERS)
+	public long decodeAndValidate() {
+		frames.rewind();
+		for (int i = 0; i < ORDERS; i++) {
+			frames.getInt();
+			frames.get();
+			frames.getLong();
+			CurrencyPair pair = pairs.get(frames.getShort());
+			OrderType side = WireProtocol.side(frames.get());
+			long pricePips = frames.getLong();
+			long amount = frames.getLong();
+			validator.validate(pair, pricePips, side, amount);
+			timestamps += System.currentTimeMillis();
+		}
+		return timestamps;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ORDERS)
+	public int bookRestAndCancel() {
+		for (OrderData order : orders) {
+			book.submit(order, this);
+		}
+		for (OrderData order : orders) {
+			book.cancel(order.getId());
+		}
+		return book.size();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ORDERS)
+	public boolean serviceRestAndCancel() {
+		for (OrderData order : placed) {
+			// A new order is given its sequence by the book
+			order.setSequence(0);
+			pipeline.add(order);
+		}
+		boolean cancelled = true;
+		for (OrderData order : placed) {
+			cancelled &= pipeline.cancel(order.getId());
+		}
+		return cancelled;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ORDERS)
+	public OrderData newOrder() {
+		OrderData order = null;
+		frames.rewind();
+		for (int i = 0; i < ORDERS; i++) {
+			frames.getInt();
+			frames.get();
+			frames.getLong();
+			CurrencyPair pair = pairs.get(frames.getShort());
+			OrderType side = WireProtocol.side(frames.get());
+			long pricePips = frames.getLong();
+			long amount = frames.getLong();
+			validator.validate(pair, pricePips, side, amount);
+			order = new OrderData(ids.nextId(), pair, pricePips, amount, side, System.currentTimeMillis());
+		}
+		return order;
+	}
+
+	@Override
+	public void onExecution(ExecutionReport report) {
+		// The benchmark orders never cross
+	}
+
+	@Override
+	public void onOrderFilled(OrderData order) {
+		// The benchmark orders never cross
+	}
+
+}
@@ -0,0 +1,167 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.benchmarks;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import com.worldfirst.fxorder.Application;
+import com.worldfirst.fxorder.domain.OrderData;
+import com.worldfirst.fxorder.domain.OrderType;
+import com.worldfirst.fxorder.service.IFXTradingService;
+import com.worldfirst.fxorder.wire.OrderEntryServer;
+import com.worldfirst.fxorder.wire.WireProtocol;
+
+/**
+ * Class OrderEntryBenchmark
+ *
+ * It compares the time to enter an order through the createOrder endpoint,
+ * through MockMvc so without network or security filters, with a round trip
+ * of the binary order entry protocol over a loopback TCP connection.
+ *
+ * wireNewOrderPipelined keeps WINDOW orders in flight on the connection and
+ * reports the time per order, the throughput of a single client.
+ *
+ * @author PM
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class OrderEntryBenchmark {
+
+	private static final String ORDER_JSON = "{\"currency\":\"GBP/USD\",\"bidOrAsk\":\"ASK\",\"price\":\"1.2100\",\"amount\":\"1000\"}";
+
+	private static final int WINDOW = 100;
+
+	private ConfigurableApplicationContext context;
+
+	private IFXTradingService service;
+
+	private MockMvc mvc;
+
+	private SocketChannel channel;
+
+	private final ByteBuffer out = ByteBuffer.allocate(64 * 1024);
+
+	private final ByteBuffer in = ByteBuffer.allocate(64 * 1024);
+
+	private long clientRef;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		context = new SpringApplicationBuilder(Application.class)
+				.properties("logging.level.root=WARN")
+				.run("--server.port=0", "--fxorder.wire.enabled=true", "--fxorder.wire.port=0");
+		service = context.getBean(IFXTradingService.class);
+		mvc = MockMvcBuilders.webAppContextSetup((WebApplicationContext) context).build();
+		channel = SocketChannel.open(
+				new InetSocketAddress("localhost", context.getBean(OrderEntryServer.class).getPort()));
+	}
+
+	@TearDown(Level.Iteration)
+	public void cancelAll() {
+		for (OrderData order : service.allOrders()) {
+			service.deleteOrder(order.getId());
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		channel.close();
+		context.close();
+	}
+
+	@Benchmark
+	public MvcResult restCreateOrder() throws Exception {
+		return mvc.perform(post("/v1/createOrder").content(ORDER_JSON).contentType(MediaType.APPLICATION_JSON))
+				.andReturn();
+	}
+
+	@Benchmark
+	public long wireNewOrder() throws IOException {
+		WireProtocol.putNewOrder(out, ++clientRef, 0, OrderType.ASK, 12100L, 1000L);
+		send();
+		return receive(1);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(WINDOW)
+	public long wireNewOrderPipelined() throws IOException {
+		for (int i = 0; i < WINDOW; i++) {
+			WireProtocol.putNewOrder(out, ++clientRef, 0, OrderType.ASK, 12100L, 1000L);
+		}
+		send();
+		return receive(WINDOW);
+	}
+
+	// Internal helpers
+
+	private void send() throws IOException {
+		out.flip();
+		while (out.hasRemaining()) {
+			channel.write(out);
+		}
+		out.clear();
+	}
+
+	/**
+	 * Reads the given number of responses.
+	 *
+	 * @return the client reference of the last one
+	 */
+	private long receive(int count) throws IOException {
+		long last = 0;
+		while (count > 0) {
+			channel.read(in);
+			in.flip();
+			while (count > 0 && in.remaining() >= 4 && in.remaining() >= 4 + in.getInt(in.position())) {
+				int end = in.position() + 4 + in.getInt();
+				in.get();
+				last = in.getLong();
+				in.position(end);
+				count--;
+			}
+			in.compact();
+		}
+		return last;
+	}
+
+}
@@ -0,0 +1,56 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.benchmarks;
+
+import com.worldfirst.fxorder.domain.CurrencyPair;
+import com.worldfirst.fxorder.domain.OrderData;
+import com.worldfirst.fxorder.domain.OrderType;
+import com.worldfirst.fxorder.repository.OrderRecordsRepository;
+
+/**
+ * Class Orders
+ * 
+ * It builds the orders the benchmarks are run with. Ids are plain counters
+ * rather than generated ids so that their generation does not blur the
+ * figures of the repository benchmarks.
+ * 
+ * @author PM
+ *
+ */
+final class Orders {
+
+	static final CurrencyPair GBPUSD = new CurrencyPair(0, "GBP/USD", 4);
+
+	/** The price in pips of the first price level. */
+	static final long BASE_PIPS = 12000L;
+
+	static final long AMOUNT = 1000L;
+
+	private Orders() {
+	}
+
+	static OrderData order(long id, OrderType orderType, long pricePips, long amount) {
+		return new OrderData(id, GBPUSD, pricePips, amount, orderType, 1520000000000L);
+	}
+
+	/**
+	 * Fills the repository with depth ASK orders on each of the given number of
+	 * price levels, all of the same amount.
+	 */
+	static void fill(OrderRecordsRepository repository, int levels, int depth) {
+		for (int level = 0; level < levels; level++) {
+			for (int i = 0; i < depth; i++) {
+				repository.add(order((long) level * depth + i + 1, OrderType.ASK, BASE_PIPS + level, AMOUNT));
+			}
+		}
+	}
+
+}
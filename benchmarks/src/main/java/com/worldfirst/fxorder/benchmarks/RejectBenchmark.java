@@ -0,0 +1,147 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.benchmarks;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.worldfirst.fxorder.Application;
+import com.worldfirst.fxorder.domain.BatchResult;
+import com.worldfirst.fxorder.domain.CurrencyPair;
+import com.worldfirst.fxorder.domain.OrderType;
+import com.worldfirst.fxorder.domain.RejectReason;
+import com.worldfirst.fxorder.dto.OrderDTO;
+import com.worldfirst.fxorder.exception.InvalidInputException;
+import com.worldfirst.fxorder.service.IFXTradingService;
+import com.worldfirst.fxorder.service.OrderValidator;
+
+/**
+ * Class RejectBenchmark
+ *
+ * It measures the throughput of rejecting a flood of invalid orders, of an
+ * unknown currency pair, an amount of 0 or a price off the tick size: the
+ * validator check alone, saveOrder throwing the stackless
+ * InvalidInputException, and saveOrders reporting the rejections in its
+ * results without throwing. stackTrace throws an exception filling in its
+ * stack trace, as the validator used to, for comparison.
+ *
+ * @author PM
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class RejectBenchmark {
+
+	private static final int BATCH = 100;
+
+	@Param({ "currency", "amount", "price" })
+	public String invalid;
+
+	private ConfigurableApplicationContext context;
+
+	private IFXTradingService service;
+
+	private OrderValidator validator;
+
+	private String currency;
+
+	private CurrencyPair pair;
+
+	private BigDecimal price;
+
+	private long amount;
+
+	private List<OrderDTO> batch;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		context = new SpringApplicationBuilder(Application.class).web(WebApplicationType.NONE)
+				.properties("logging.level.root=WARN").run("--fxorder.engine=legacy");
+		service = context.getBean(IFXTradingService.class);
+		validator = context.getBean(OrderValidator.class);
+
+		// EUR/USD is quoted in half pips
+		currency = "currency".equals(invalid) ? "GBP/XXX" : "price".equals(invalid) ? "EUR/USD" : "GBP/USD";
+		pair = validator.pair(currency);
+		price = "price".equals(invalid) ? new BigDecimal("1.20001") : BigDecimal.valueOf(Orders.BASE_PIPS, 4);
+		amount = "amount".equals(invalid) ? 0 : Orders.AMOUNT;
+
+		batch = new ArrayList<OrderDTO>(BATCH);
+		for (int i = 0; i < BATCH; i++) {
+			OrderDTO order = new OrderDTO();
+			order.setCurrency(currency);
+			order.setBidOrAsk((i & 1) == 0 ? OrderType.ASK : OrderType.BID);
+			order.setPrice(price);
+			order.setAmount(amount);
+			batch.add(order);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		context.close();
+	}
+
+	@Benchmark
+	public RejectReason check() {
+		return validator.check(pair, price, OrderType.BID, amount);
+	}
+
+	@Benchmark
+	public Object saveOrder() {
+		try {
+			return service.saveOrder(currency, price, OrderType.BID, amount);
+		} catch (InvalidInputException ei) {
+			return ei.getReason();
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public List<BatchResult> saveOrders() {
+		return service.saveOrders(batch);
+	}
+
+	@Benchmark
+	public Object stackTrace() {
+		try {
+			RejectReason reason = validator.check(pair, price, OrderType.BID, amount);
+			throw new IllegalArgumentException(reason.message(pair, price));
+		} catch (IllegalArgumentException e) {
+			return e;
+		}
+	}
+
+}
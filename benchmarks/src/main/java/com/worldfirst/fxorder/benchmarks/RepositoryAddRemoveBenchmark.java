@@ -0,0 +1,115 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.worldfirst.fxorder.domain.OrderData;
+import com.worldfirst.fxorder.domain.OrderType;
+import com.worldfirst.fxorder.repository.OrderRecordsRepository;
+
+/**
+ * Class RepositoryAddRemoveBenchmark
+ * 
+ * It measures OrderRecordsRepository.add() followed by remove() of the same
+ * order against a repository holding levelDepth resting ASK orders on each of
+ * priceLevels price levels. An incoming ASK joins its level, an incoming BID
+ * turns it matched and back to unmatched once removed.
+ * 
+ * Both the heap and the off-heap shards are measured, see offHeap.
+ * 
+ * The repository is shared by the benchmark threads, run with -t N to measure
+ * N contending writers, see {@link ContentionSweep}.
+ * 
+ * @author PM
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class RepositoryAddRemoveBenchmark {
+
+	@Param({ "1", "100", "10000" })
+	public int levelDepth;
+
+	@Param({ "1", "100" })
+	public int priceLevels;
+
+	@Param({ "ASK", "BID" })
+	public OrderType side;
+
+	@Param({ "false", "true" })
+	public boolean offHeap;
+
+	private OrderRecordsRepository repository;
+
+	private final AtomicInteger threads = new AtomicInteger();
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		repository = new OrderRecordsRepository(offHeap);
+		Orders.fill(repository, priceLevels, levelDepth);
+	}
+
+	/**
+	 * The orders of one benchmark thread, spread over the price levels and
+	 * reused once removed.
+	 */
+	@State(Scope.Thread)
+	public static class Writer {
+
+		private OrderData[] orders;
+
+		private int next;
+
+		@Setup(Level.Trial)
+		public void setUp(RepositoryAddRemoveBenchmark benchmark) {
+			int thread = benchmark.threads.getAndIncrement();
+			orders = new OrderData[1024];
+			for (int i = 0; i < orders.length; i++) {
+				orders[i] = Orders.order((long) thread << 32 | (i + 1), benchmark.side,
+						Orders.BASE_PIPS + i % benchmark.priceLevels, Orders.AMOUNT);
+			}
+		}
+
+		OrderData next() {
+			OrderData order = orders[next];
+			next = (next + 1) & (orders.length - 1);
+			order.setSequence(0);
+			return order;
+		}
+	}
+
+	@Benchmark
+	public boolean addThenRemove(Writer writer) {
+		OrderData order = writer.next();
+		repository.add(order);
+		return repository.remove(order.getId());
+	}
+
+}
@@ -0,0 +1,116 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.benchmarks;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.worldfirst.fxorder.domain.BookDepth;
+import com.worldfirst.fxorder.domain.OrderData;
+import com.worldfirst.fxorder.domain.OrderPage;
+import com.worldfirst.fxorder.domain.OrderQuery;
+import com.worldfirst.fxorder.domain.OrderType;
+import com.worldfirst.fxorder.domain.PairStats;
+import com.worldfirst.fxorder.repository.OrderRecordsRepository;
+
+/**
+ * Class RepositoryViewsBenchmark
+ * 
+ * It measures the matched and unmatched views of a repository holding the
+ * given number of orders, half of them matched, along with their counts and
+ * the first page of the paged listing, and the depth and statistics served
+ * from the price level aggregates. The off-heap shards materialise every order
+ * listed, run with -prof gc to see the allocation it costs.
+ * 
+ * @author PM
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class RepositoryViewsBenchmark {
+
+	@Param({ "10000", "100000", "1000000" })
+	public int orders;
+
+	@Param({ "false", "true" })
+	public boolean offHeap;
+
+	private OrderRecordsRepository repository;
+
+	private OrderQuery firstPage;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		repository = new OrderRecordsRepository(offHeap);
+
+		// An ASK and a BID per matched key, a single ASK per unmatched key
+		int matchedKeys = orders / 4;
+		for (int i = 0; i < matchedKeys; i++) {
+			repository.add(Orders.order(2L * i + 1, OrderType.ASK, Orders.BASE_PIPS + i % 1000, Orders.AMOUNT + i));
+			repository.add(Orders.order(2L * i + 2, OrderType.BID, Orders.BASE_PIPS + i % 1000, Orders.AMOUNT + i));
+		}
+		for (int i = 2 * matchedKeys; i < orders; i++) {
+			repository.add(Orders.order(i + 1L, OrderType.ASK, Orders.BASE_PIPS + 5000 + i % 1000, Orders.AMOUNT + i));
+		}
+
+		firstPage = new OrderQuery(OrderQuery.Status.ALL, null, null, null, null, Long.MIN_VALUE, Long.MAX_VALUE, 0,
+				100);
+	}
+
+	@Benchmark
+	public List<OrderData> matchingOrders() {
+		return repository.getMatchingOrders();
+	}
+
+	@Benchmark
+	public List<OrderData> unMatchingOrders() {
+		return repository.getUnMatchingOrders();
+	}
+
+	@Benchmark
+	public long counts() {
+		return repository.getMatchingOrdersCount() + repository.getUnMatchingOrdersCount();
+	}
+
+	@Benchmark
+	public OrderPage firstPage() {
+		return repository.findOrders(firstPage);
+	}
+
+	@Benchmark
+	public BookDepth depth() {
+		return repository.depth(Orders.GBPUSD, 10);
+	}
+
+	@Benchmark
+	public Map<String, PairStats> stats() {
+		return repository.stats();
+	}
+
+}
@@ -0,0 +1,136 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.benchmarks;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import com.worldfirst.fxorder.Application;
+import com.worldfirst.fxorder.domain.OrderData;
+import com.worldfirst.fxorder.domain.OrderType;
+import com.worldfirst.fxorder.service.IFXTradingService;
+
+/**
+ * Class RestBenchmark
+ * 
+ * It measures the REST endpoints through MockMvc, JSON binding and rendering
+ * included but without the network, against a store of 10000 orders.
+ * 
+ * createOrdersBatch reports the time per order of batches of BATCH_SIZE
+ * orders, to be compared with createOrder.
+ * 
+ * @author PM
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class RestBenchmark {
+
+	private static final String ORDER_JSON = "{\"currency\":\"GBP/USD\",\"bidOrAsk\":\"ASK\",\"price\":\"1.2100\",\"amount\":\"1000\"}";
+
+	private static final int BATCH_SIZE = 1000;
+
+	private static final String BATCH_JSON;
+
+	static {
+		StringBuilder batch = new StringBuilder("[");
+		for (int i = 0; i < BATCH_SIZE; i++) {
+			batch.append(0 == i ? "" : ",").append(ORDER_JSON);
+		}
+		BATCH_JSON = batch.append(']').toString();
+	}
+
+	private ConfigurableApplicationContext context;
+
+	private IFXTradingService service;
+
+	private MockMvc mvc;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		context = new SpringApplicationBuilder(Application.class)
+				.properties("logging.level.root=WARN").run("--server.port=0");
+		service = context.getBean(IFXTradingService.class);
+		mvc = MockMvcBuilders.webAppContextSetup((WebApplicationContext) context).build();
+	}
+
+	@Setup(Level.Iteration)
+	public void fill() {
+		for (int i = 0; i < 10000; i++) {
+			service.saveOrder("GBP/USD", BigDecimal.valueOf(13000 + i % 100, 4),
+					(i & 1) == 0 ? OrderType.ASK : OrderType.BID, 2000 + i);
+		}
+	}
+
+	@TearDown(Level.Iteration)
+	public void cancelAll() {
+		for (OrderData order : service.allOrders()) {
+			service.deleteOrder(order.getId());
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		context.close();
+	}
+
+	@Benchmark
+	public MvcResult createOrder() throws Exception {
+		return mvc.perform(post("/v1/createOrder").content(ORDER_JSON).contentType(MediaType.APPLICATION_JSON))
+				.andReturn();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH_SIZE)
+	public MvcResult createOrdersBatch() throws Exception {
+		return mvc.perform(post("/v1/orders:batch").content(BATCH_JSON).contentType(MediaType.APPLICATION_JSON))
+				.andReturn();
+	}
+
+	@Benchmark
+	public MvcResult ordersPage() throws Exception {
+		return mvc.perform(get("/v1/orders").param("limit", "100")).andReturn();
+	}
+
+	@Benchmark
+	public MvcResult orderCounts() throws Exception {
+		return mvc.perform(get("/v1/orderCounts")).andReturn();
+	}
+
+}
@@ -0,0 +1,143 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import com.worldfirst.fxorder.domain.OrderPage;
+import com.worldfirst.fxorder.domain.OrderQuery;
+import com.worldfirst.fxorder.domain.OrderType;
+import com.worldfirst.fxorder.repository.OrderRecordsRepository;
+import com.worldfirst.fxorder.repository.OrderStoreSnapshot;
+
+/**
+ * Class SnapshotReadBenchmark
+ *
+ * It measures the reads of a repository holding 100k orders while a writer
+ * thread keeps adding and cancelling orders: the order counts and the first
+ * page, both read from one snapshot. The writes done meanwhile are reported
+ * as the writes counter, run it with -t N for N readers to see how much they
+ * slow order entry down.
+ *
+ * @author PM
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SnapshotReadBenchmark {
+
+	private static final int ORDERS = 100000;
+
+	@Param({ "false", "true" })
+	public boolean offHeap;
+
+	private OrderRecordsRepository repository;
+
+	private OrderQuery firstPage;
+
+	private final AtomicLong writes = new AtomicLong();
+
+	private volatile boolean writing;
+
+	private Thread writer;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		repository = new OrderRecordsRepository(offHeap);
+		Orders.fill(repository, 1000, ORDERS / 1000);
+		firstPage = new OrderQuery(OrderQuery.Status.ALL, null, null, null, null, Long.MIN_VALUE, Long.MAX_VALUE, 0,
+				100);
+
+		// An order matching a resting one, cancelled right away
+		writing = true;
+		writer = new Thread(() -> {
+			long id = ORDERS;
+			while (writing) {
+				long added = repository.add(Orders.order(++id, OrderType.BID, Orders.BASE_PIPS + id % 1000,
+						Orders.AMOUNT));
+				repository.remove(added);
+				writes.incrementAndGet();
+			}
+		}, "snapshot-benchmark-writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws InterruptedException {
+		writing = false;
+		writer.join();
+	}
+
+	@Benchmark
+	public long counts(WriterCounters counters) {
+		OrderStoreSnapshot snapshot = repository.snapshot();
+		return snapshot.getMatchingOrdersCount() + snapshot.getUnMatchingOrdersCount();
+	}
+
+	@Benchmark
+	public OrderPage firstPage(WriterCounters counters) {
+		return repository.findOrders(firstPage);
+	}
+
+	/**
+	 * The writes of the writer thread during an iteration, counted by the
+	 * first reader only so that they are not summed over the readers.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class WriterCounters {
+
+		public long writes;
+
+		private boolean counting;
+
+		private long start;
+
+		/** Kept by start() as JMH can only inject it into one helper method. */
+		private SnapshotReadBenchmark benchmark;
+
+		@Setup(Level.Iteration)
+		public void start(SnapshotReadBenchmark benchmark, ThreadParams thread) {
+			this.benchmark = benchmark;
+			counting = 0 == thread.getThreadIndex();
+			start = benchmark.writes.get();
+			writes = 0;
+		}
+
+		@TearDown(Level.Iteration)
+		public void stop() {
+			writes = counting ? benchmark.writes.get() - start : 0;
+		}
+	}
+
+}
@@ -0,0 +1,110 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.benchmarks;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.worldfirst.fxorder.Application;
+import com.worldfirst.fxorder.domain.OrderData;
+import com.worldfirst.fxorder.domain.OrderType;
+import com.worldfirst.fxorder.service.IFXTradingService;
+
+/**
+ * Class TradingServiceBenchmark
+ * 
+ * It measures IFXTradingService.saveOrder() on the application context, the
+ * validation, the id generation and the ingestion pipeline included, for
+ * each trading engine and ingestion mode. The orders are cancelled after
+ * every iteration so that the store does not keep growing.
+ * 
+ * @author PM
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class TradingServiceBenchmark {
+
+	@Param({ "legacy", "book" })
+	public String engine;
+
+	@Param({ "direct", "ring" })
+	public String ingestion;
+
+	private ConfigurableApplicationContext context;
+
+	private IFXTradingService service;
+
+	private BigDecimal[] prices;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		context = new SpringApplicationBuilder(Application.class).web(WebApplicationType.NONE)
+				.properties("logging.level.root=WARN")
+				.run("--fxorder.engine=" + engine, "--fxorder.ingestion.mode=" + ingestion);
+		service = context.getBean(IFXTradingService.class);
+
+		prices = new BigDecimal[1024];
+		for (int i = 0; i < prices.length; i++) {
+			prices[i] = BigDecimal.valueOf(Orders.BASE_PIPS + i % 64, 4);
+		}
+	}
+
+	@TearDown(Level.Iteration)
+	public void cancelAll() {
+		for (OrderData order : service.allOrders()) {
+			service.deleteOrder(order.getId());
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		context.close();
+	}
+
+	/**
+	 * The price and side cycle of one benchmark thread.
+	 */
+	@State(Scope.Thread)
+	public static class Client {
+
+		int next;
+	}
+
+	@Benchmark
+	public boolean saveOrder(Client client) {
+		int i = client.next++;
+		return service.saveOrder("GBP/USD", prices[i & (prices.length - 1)], (i & 1) == 0 ? OrderType.ASK : OrderType.BID,
+				Orders.AMOUNT);
+	}
+
+}
@@ -5,6 +5,9 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
+import org.springframework.security.web.csrf.CsrfFilter;
+
+import com.worldfirst.fxorder.cluster.OrderCluster;
 
 /**
  * Class WebSecurityConfig
@@ -24,6 +27,12 @@ public class WebSecurityConfig extends WebSecurityConfigurerAdapter {
     protected void configure(HttpSecurity http) throws Exception {
     	http
     		.authorizeRequests().antMatchers("/css/**", "*/**").permitAll(); 
+    	
+    	//Requests between the nodes of a cluster carry a custom header, which no
+    	//cross-site form can send, so they are not asked for a CSRF token
+    	http
+    		.csrf().requireCsrfProtectionMatcher(request -> CsrfFilter.DEFAULT_CSRF_MATCHER.matches(request)
+    				&& null == request.getHeader(OrderCluster.HOPS_HEADER));
     }
      
 }
\ No newline at end of file
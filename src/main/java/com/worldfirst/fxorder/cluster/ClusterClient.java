@@ -0,0 +1,139 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.cluster;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * Class ClusterClient
+ *
+ * It sends the requests of a node to the other nodes over HTTP, either
+ * buffering the whole response to relay it or handing its body over as a
+ * stream. Every request carries the number of nodes it went through in the
+ * X-Cluster-Hops header.
+ *
+ * @author PM
+ *
+ */
+class ClusterClient {
+
+	/** The response headers not to relay, they describe one connection. */
+	private static final Set<String> HOP_BY_HOP = new HashSet<String>(Arrays.asList("connection", "keep-alive",
+			"transfer-encoding", "content-length", "date", "server"));
+
+	private final int connectTimeoutMs;
+
+	private final int readTimeoutMs;
+
+	ClusterClient(int connectTimeoutMs, int readTimeoutMs) {
+		this.connectTimeoutMs = connectTimeoutMs;
+		this.readTimeoutMs = readTimeoutMs;
+	}
+
+	/**
+	 * Sends a request and reads the whole response, whatever its status.
+	 *
+	 * @param body
+	 *            the request body, null if none
+	 * @throws IOException
+	 *             if the node could not be reached
+	 */
+	ResponseEntity<byte[]> exchange(String method, String url, byte[] body, String contentType, int hops)
+			throws IOException {
+		HttpURLConnection connection = connect(method, url, body, contentType, hops);
+		try {
+			int status = connection.getResponseCode();
+			InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+			byte[] content = null == in ? new byte[0] : readAll(in);
+
+			HttpHeaders headers = new HttpHeaders();
+			for (Map.Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+				if (null != header.getKey() && !HOP_BY_HOP.contains(header.getKey().toLowerCase())) {
+					headers.put(header.getKey(), header.getValue());
+				}
+			}
+			return new ResponseEntity<>(content, headers, HttpStatus.valueOf(status));
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	/**
+	 * Sends a request and returns the body of a successful response, to be
+	 * closed by the caller.
+	 *
+	 * @throws IOException
+	 *             if the node could not be reached or did not succeed, with
+	 *             the response body as message
+	 */
+	InputStream open(String method, String url, byte[] body, String contentType, int hops) throws IOException {
+		HttpURLConnection connection = connect(method, url, body, contentType, hops);
+		int status = connection.getResponseCode();
+		if (status >= 300) {
+			InputStream error = connection.getErrorStream();
+			String message = null == error ? "" : new String(readAll(error), StandardCharsets.UTF_8);
+			connection.disconnect();
+			throw new IOException(method + " " + url + " answered " + status + " " + message);
+		}
+		return connection.getInputStream();
+	}
+
+	// Internal helpers
+
+	private HttpURLConnection connect(String method, String url, byte[] body, String contentType, int hops)
+			throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+		connection.setRequestMethod(method);
+		connection.setConnectTimeout(connectTimeoutMs);
+		connection.setReadTimeout(readTimeoutMs);
+		connection.setInstanceFollowRedirects(false);
+		connection.setRequestProperty(OrderCluster.HOPS_HEADER, Integer.toString(hops));
+		if (null != body) {
+			connection.setDoOutput(true);
+			if (null != contentType) {
+				connection.setRequestProperty(HttpHeaders.CONTENT_TYPE, contentType);
+			}
+			connection.setFixedLengthStreamingMode(body.length);
+			try (OutputStream out = connection.getOutputStream()) {
+				out.write(body);
+			}
+		}
+		return connection;
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException {
+		try (InputStream input = in) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] chunk = new byte[8192];
+			int read;
+			while ((read = input.read(chunk)) >= 0) {
+				out.write(chunk, 0, read);
+			}
+			return out.toByteArray();
+		}
+	}
+
+}
@@ -0,0 +1,164 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Class ConsistentHashRing
+ *
+ * It assigns keys, the currency pair symbols, to the nodes of a cluster by
+ * consistent hashing. Every node is placed at a number of points of a 64 bit
+ * ring by hashing its name with each point index, and a key belongs to the
+ * node of the first point at or after the hash of the key. Adding or removing
+ * a node then only moves the keys of the arcs it gains or loses, about one in
+ * the number of nodes, and the many points per node even out the share of
+ * each one.
+ *
+ * The hash is FNV-1a finished by the MurmurHash3 mixer, computed on the UTF-8
+ * bytes, so every node of the cluster builds the same ring from the same
+ * node names whatever its JVM.
+ *
+ * It is immutable, a changed ring being a new instance.
+ *
+ * @author PM
+ *
+ */
+public final class ConsistentHashRing {
+
+	private final List<String> nodes;
+
+	private final int virtualNodes;
+
+	/** The points in increasing order and the node at each one. */
+	private final long[] points;
+
+	private final String[] owners;
+
+	/**
+	 * @param nodes
+	 *            the node names, duplicates being ignored
+	 * @param virtualNodes
+	 *            the number of points of every node
+	 */
+	public ConsistentHashRing(Collection<String> nodes, int virtualNodes) {
+		if (virtualNodes < 1) {
+			throw new IllegalArgumentException("A node needs at least one point on the ring");
+		}
+		this.nodes = Collections.unmodifiableList(new ArrayList<String>(new TreeSet<String>(nodes)));
+		this.virtualNodes = virtualNodes;
+
+		int count = this.nodes.size() * virtualNodes;
+		long[] hashes = new long[count];
+		String[] names = new String[count];
+		int i = 0;
+		for (String node : this.nodes) {
+			for (int point = 0; point < virtualNodes; point++) {
+				hashes[i] = hash(node + "#" + point);
+				names[i++] = node;
+			}
+		}
+
+		// Sorts the points, a collision going to the smaller name
+		Integer[] order = new Integer[count];
+		for (int j = 0; j < count; j++) {
+			order[j] = j;
+		}
+		Arrays.sort(order, (a, b) -> {
+			int compared = Long.compareUnsigned(hashes[a], hashes[b]);
+			return 0 != compared ? compared : names[a].compareTo(names[b]);
+		});
+		this.points = new long[count];
+		this.owners = new String[count];
+		for (int j = 0; j < count; j++) {
+			points[j] = hashes[order[j]];
+			owners[j] = names[order[j]];
+		}
+	}
+
+	/**
+	 * @return the node the key belongs to, null if the ring has no node
+	 */
+	public String owner(String key) {
+		if (0 == points.length) {
+			return null;
+		}
+		long hash = hash(key);
+
+		// The first point at or after the hash, wrapping around
+		int low = 0;
+		int high = points.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (Long.compareUnsigned(points[middle], hash) < 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return owners[low == points.length ? 0 : low];
+	}
+
+	/**
+	 * @return the node names in alphabetical order
+	 */
+	public List<String> getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * @return true if the node is on the ring
+	 */
+	public boolean contains(String node) {
+		return nodes.contains(node);
+	}
+
+	/**
+	 * @return a ring with the node added
+	 */
+	public ConsistentHashRing with(String node) {
+		List<String> changed = new ArrayList<String>(nodes);
+		changed.add(node);
+		return new ConsistentHashRing(changed, virtualNodes);
+	}
+
+	/**
+	 * @return a ring without the node
+	 */
+	public ConsistentHashRing without(String node) {
+		List<String> changed = new ArrayList<String>(nodes);
+		changed.remove(node);
+		return new ConsistentHashRing(changed, virtualNodes);
+	}
+
+	// Internal helpers
+
+	static long hash(String key) {
+		long hash = 0xcbf29ce484222325L;
+		for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+			hash ^= b & 0xff;
+			hash *= 0x100000001b3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+}
@@ -0,0 +1,122 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.cluster;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Class MergedOrders
+ *
+ * It merges the JSON orders listed by every node of a cluster into one list
+ * while they are read, taking the earliest next order by order date then id.
+ * The lists of orders by arrival, the matching and unmatching ones, so merge
+ * into one such list, and any other keeps the order of every node. Only the
+ * next order of each node is held, whatever the number of orders.
+ *
+ * @author PM
+ *
+ */
+public final class MergedOrders implements Iterator<JsonNode>, Closeable {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(MergedOrders.class);
+
+	private static final Comparator<Head> ORDER = Comparator
+			.<Head> comparingLong(head -> head.order.path("orderDate").asLong())
+			.thenComparingLong(head -> head.order.path("id").asLong());
+
+	private final List<? extends Iterator<JsonNode>> sources;
+
+	private final PriorityQueue<Head> heads;
+
+	/**
+	 * @param sources
+	 *            the orders of every node, closed once merged when closeable
+	 */
+	MergedOrders(List<? extends Iterator<JsonNode>> sources) {
+		this.sources = sources;
+		this.heads = new PriorityQueue<Head>(Math.max(1, sources.size()), ORDER);
+		for (Iterator<JsonNode> source : sources) {
+			if (source.hasNext()) {
+				heads.add(new Head(source, source.next()));
+			}
+		}
+	}
+
+	/**
+	 * Closes the sources once every one is read to the end.
+	 */
+	@Override
+	public boolean hasNext() {
+		if (heads.isEmpty()) {
+			close();
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public JsonNode next() {
+		Head head = heads.poll();
+		if (null == head) {
+			throw new NoSuchElementException();
+		}
+		JsonNode order = head.order;
+		if (head.source.hasNext()) {
+			head.order = head.source.next();
+			heads.add(head);
+		}
+		return order;
+	}
+
+	/**
+	 * Closes the sources, the ones not read to the end included.
+	 */
+	@Override
+	public void close() {
+		heads.clear();
+		for (Iterator<JsonNode> source : sources) {
+			if (source instanceof Closeable) {
+				try {
+					((Closeable) source).close();
+				} catch (IOException e) {
+					LOGGER.debug("++++++++++++++++++++++++++++: " + e.getMessage());
+				}
+			}
+		}
+	}
+
+	/**
+	 * The next order of one source.
+	 */
+	private static final class Head {
+
+		private final Iterator<JsonNode> source;
+
+		private JsonNode order;
+
+		Head(Iterator<JsonNode> source, JsonNode order) {
+			this.source = source;
+			this.order = order;
+		}
+	}
+
+}
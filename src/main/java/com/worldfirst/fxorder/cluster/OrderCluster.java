@@ -0,0 +1,1128 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.cluster;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.ConnectException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.worldfirst.fxorder.domain.CurrencyPair;
+import com.worldfirst.fxorder.domain.OrderData;
+import com.worldfirst.fxorder.exception.InvalidInputException;
+import com.worldfirst.fxorder.metrics.OrderMetrics;
+import com.worldfirst.fxorder.pipeline.OrderEventHandler;
+import com.worldfirst.fxorder.replication.ReplicationLog;
+import com.worldfirst.fxorder.replication.ReplicationStream;
+import com.worldfirst.fxorder.service.CurrencyPairRegistry;
+import com.worldfirst.fxorder.service.OrderValidator;
+
+/**
+ * Class OrderCluster
+ *
+ * It partitions the currency pairs across the nodes of a cluster, selected by
+ * fxorder.cluster.enabled. Every pair is owned by the node a
+ * {@link ConsistentHashRing} of the fxorder.cluster.nodes assigns its symbol
+ * to, which alone holds and changes its orders. The REST API forwards or
+ * redirects the requests for a pair to its owner and merges the listings of
+ * every node.
+ *
+ * Joining or leaving changes the ring on every node. A node gaining a pair
+ * pulls it from the node holding it: the holder records the events of the
+ * pair from a snapshot of its orders on, the new owner loads the snapshot and
+ * replays the events until it is about caught up, then the holder stops
+ * changing the pair and hands the last events over. Requests for a pair reach
+ * its holder until it is handed over and its new owner from then on, which
+ * refuses to change it until it applied the last events. The holder keeps the
+ * events until the new owner completes the migration and then drops its
+ * orders, so a failed handoff is read again rather than the pair pulled
+ * again. Snapshots and events are carried in the frames of the replication
+ * protocol, see {@link ReplicationStream}.
+ *
+ * The events of a pair are applied and recorded under the lock of the pair,
+ * so a node never changes a pair it does not serve.
+ *
+ * @author PM
+ *
+ */
+
+@Component
+public class OrderCluster {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(OrderCluster.class);
+
+	/** The request header counting the nodes a request went through. */
+	public static final String HOPS_HEADER = "X-Cluster-Hops";
+
+	/** A request which went through that many nodes is served where it lands. */
+	public static final int MAX_HOPS = 2;
+
+	/** The new owner of a pair takes it over once that few events are left. */
+	private static final int HANDOFF_BACKLOG = 256;
+
+	/** The bytes of events sent per poll. */
+	private static final int EVENTS_SIZE = 1 << 20;
+
+	@Value("${fxorder.cluster.enabled:false}")
+	private boolean enabled;
+
+	@Value("${fxorder.cluster.self:http://localhost:8080}")
+	private String self;
+
+	@Value("${fxorder.cluster.nodes:}")
+	private String nodes;
+
+	@Value("${fxorder.cluster.virtual-nodes:128}")
+	private int virtualNodes;
+
+	@Value("${fxorder.cluster.routing:forward}")
+	private String routing;
+
+	@Value("${fxorder.cluster.connect-timeout-ms:1000}")
+	private int connectTimeoutMs;
+
+	@Value("${fxorder.cluster.read-timeout-ms:30000}")
+	private int readTimeoutMs;
+
+	@Value("${fxorder.cluster.migration.log-size:262144}")
+	private int migrationLogSize;
+
+	@Value("${fxorder.cluster.migration.poll-ms:100}")
+	private long migrationPollMs;
+
+	@Value("${fxorder.cluster.migration.retry-ms:1000}")
+	private long migrationRetryMs;
+
+	@Autowired
+	private CurrencyPairRegistry pairs;
+
+	@Autowired
+	private OrderValidator validator;
+
+	@Autowired
+	private OrderMetrics metrics;
+
+	@Autowired
+	private ObjectMapper mapper;
+
+	/** One apply lock per currency pair. */
+	private final Object[] pairLocks = new Object[CurrencyPair.MAX_PAIRS];
+
+	/** The node a pair gained is being pulled from. */
+	private final AtomicReferenceArray<String> sources = new AtomicReferenceArray<String>(CurrencyPair.MAX_PAIRS);
+
+	/** The node a pair lost is still served for until it pulled it. */
+	private final AtomicReferenceArray<String> retainedFor = new AtomicReferenceArray<String>(CurrencyPair.MAX_PAIRS);
+
+	/** The events of a pair recorded since its last snapshot. */
+	private final AtomicReferenceArray<ReplicationLog> outgoing = new AtomicReferenceArray<ReplicationLog>(
+			CurrencyPair.MAX_PAIRS);
+
+	/** The node a pair was handed over to, until it completed the migration. */
+	private final AtomicReferenceArray<String> handedTo = new AtomicReferenceArray<String>(CurrencyPair.MAX_PAIRS);
+
+	/** The node a pair was handed over by, until its last events are applied. */
+	private final AtomicReferenceArray<String> handedFrom = new AtomicReferenceArray<String>(
+			CurrencyPair.MAX_PAIRS);
+
+	private final AtomicLong forwardedRequests = new AtomicLong();
+
+	private final AtomicLong migratedPairs = new AtomicLong();
+
+	private final AtomicLong migratedOrders = new AtomicLong();
+
+	private final AtomicLong failedMigrations = new AtomicLong();
+
+	private volatile ConsistentHashRing ring;
+
+	/** The ring owner of every pair by id. */
+	private volatile String[] owners;
+
+	private volatile long version;
+
+	private OrderEventHandler handler;
+
+	private Function<CurrencyPair, List<OrderData>> snapshotSource;
+
+	private ClusterClient client;
+
+	private ExecutorService requests;
+
+	private ScheduledExecutorService migrations;
+
+	public OrderCluster() {
+		for (int i = 0; i < pairLocks.length; i++) {
+			pairLocks[i] = new Object();
+		}
+	}
+
+	/**
+	 * Joins the configured ring and returns the handler to be started by the
+	 * ingestion pipeline, the given one when the cluster is off. A node not
+	 * listed in fxorder.cluster.nodes serves no pair until it joins.
+	 *
+	 * @param handler applies the events to the service order store
+	 * @param snapshotSource returns the orders of a pair in the store in
+	 *            arrival sequence
+	 */
+	public synchronized OrderEventHandler open(OrderEventHandler handler,
+			Function<CurrencyPair, List<OrderData>> snapshotSource) {
+		if (!enabled) {
+			return handler;
+		}
+
+		this.handler = handler;
+		this.snapshotSource = snapshotSource;
+		self = normalize(self);
+		List<String> members = new ArrayList<String>();
+		for (String node : nodes.split(",")) {
+			if (!node.trim().isEmpty()) {
+				members.add(normalize(node));
+			}
+		}
+		if (members.isEmpty()) {
+			members.add(self);
+		}
+		ring = new ConsistentHashRing(members, virtualNodes);
+		owners = ownersOf(ring);
+		version = 1;
+		client = new ClusterClient(connectTimeoutMs, readTimeoutMs);
+
+		AtomicInteger count = new AtomicInteger();
+		requests = Executors.newCachedThreadPool(runnable -> {
+			Thread thread = new Thread(runnable, "fxorder-cluster-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		migrations = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "fxorder-cluster-migration");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		metrics.gauge("fxorder.cluster.nodes", "Nodes of the cluster ring", () -> ring.getNodes().size());
+		metrics.gauge("fxorder.cluster.migrating.pairs", "Currency pairs being pulled in or out of this node",
+				this::migratingPairs);
+		metrics.counter("fxorder.cluster.forwarded", "Requests forwarded to other nodes", forwardedRequests::get);
+		metrics.counter("fxorder.cluster.migrated.pairs", "Currency pairs pulled in from other nodes",
+				migratedPairs::get);
+		LOGGER.info("Cluster node " + self + " of " + ring.getNodes());
+		return new ClusterHandler();
+	}
+
+	/**
+	 * @return true if the currency pairs are partitioned across nodes
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * @return true if requests are redirected to the owner of their pair
+	 *         rather than forwarded to it
+	 */
+	public boolean isRedirecting() {
+		return "redirect".equalsIgnoreCase(routing.trim());
+	}
+
+	/**
+	 * @return the URL of this node
+	 */
+	public String getSelf() {
+		return self;
+	}
+
+	/**
+	 * @return the nodes of the ring in alphabetical order
+	 */
+	public List<String> getNodes() {
+		return ring.getNodes();
+	}
+
+	/**
+	 * Returns the node to send a request for a currency pair to.
+	 *
+	 * @return the node URL, null if this node serves the pair, the cluster is
+	 *         off or the pair is not supported
+	 */
+	public String route(String currency) {
+		if (!enabled || null == currency) {
+			return null;
+		}
+		CurrencyPair pair = pairs.lookup(currency.trim());
+		return null == pair ? null : route(pair.getId());
+	}
+
+	/**
+	 * Returns the node to send a request for a currency pair given in a URL
+	 * path to, like {@link #route(String)}.
+	 */
+	public String routePath(String pathPair) {
+		if (!enabled) {
+			return null;
+		}
+		try {
+			return route(validator.validateDepthPair(pathPair).getId());
+		} catch (InvalidInputException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Leaves the orders of the pairs this node does not serve out of a
+	 * listing, the ones it is pulling or handed over, which their holder lists.
+	 *
+	 * @return the given orders when the cluster is off or it serves them all
+	 */
+	public List<OrderData> served(List<OrderData> orders) {
+		if (!enabled) {
+			return orders;
+		}
+		List<OrderData> served = null;
+		for (int i = 0; i < orders.size(); i++) {
+			OrderData order = orders.get(i);
+			if (null != served) {
+				if (null == route(order.getPair().getId())) {
+					served.add(order);
+				}
+			} else if (null != route(order.getPair().getId())) {
+				served = new ArrayList<OrderData>(orders.subList(0, i));
+			}
+		}
+		return null == served ? orders : served;
+	}
+
+	/**
+	 * Leaves the orders of the pairs this node does not serve out of a
+	 * listing read while walked, like {@link #served(List)}.
+	 */
+	public Iterator<OrderData> served(Iterator<OrderData> orders) {
+		if (!enabled) {
+			return orders;
+		}
+		return new Iterator<OrderData>() {
+
+			private OrderData next;
+
+			@Override
+			public boolean hasNext() {
+				while (null == next && orders.hasNext()) {
+					OrderData order = orders.next();
+					if (null == route(order.getPair().getId())) {
+						next = order;
+					}
+				}
+				return null != next;
+			}
+
+			@Override
+			public OrderData next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				OrderData order = next;
+				next = null;
+				return order;
+			}
+		};
+	}
+
+	/**
+	 * Sends a request to a node and returns its response.
+	 *
+	 * @return the response of the node, 503 if it could not be reached
+	 */
+	public ResponseEntity<byte[]> forward(String node, String method, String pathAndQuery, byte[] body,
+			String contentType, int hops) {
+		forwardedRequests.incrementAndGet();
+		try {
+			return client.exchange(method, node + pathAndQuery, body, contentType, hops + 1);
+		} catch (IOException e) {
+			LOGGER.debug("++++++++++++++++++++++++++++: " + e.getMessage());
+			return unavailable(node);
+		}
+	}
+
+	/**
+	 * Sends a request to every other node at once, for orders of unknown pair.
+	 *
+	 * @return the responses in node order, 503 for the nodes not reached
+	 */
+	public List<ResponseEntity<byte[]>> forwardToPeers(String method, String pathAndQuery, byte[] body,
+			String contentType, int hops) {
+		List<CompletableFuture<ResponseEntity<byte[]>>> answers = new ArrayList<CompletableFuture<ResponseEntity<byte[]>>>();
+		for (String node : peers()) {
+			answers.add(CompletableFuture
+					.supplyAsync(() -> forward(node, method, pathAndQuery, body, contentType, hops), requests));
+		}
+		List<ResponseEntity<byte[]>> responses = new ArrayList<ResponseEntity<byte[]>>();
+		for (CompletableFuture<ResponseEntity<byte[]>> answer : answers) {
+			responses.add(answer.join());
+		}
+		return responses;
+	}
+
+	/**
+	 * Merges the orders of this node with the JSON orders every other node
+	 * lists for the same request, a JSON array or JSON lines. The listings of
+	 * the other nodes are requested at once and read while merged.
+	 *
+	 * @throws UncheckedIOException
+	 *             if a node could not be reached
+	 */
+	public MergedOrders gather(Iterator<?> local, String pathAndQuery, int hops) {
+		List<CompletableFuture<Iterator<JsonNode>>> listings = new ArrayList<CompletableFuture<Iterator<JsonNode>>>();
+		for (String node : peers()) {
+			listings.add(CompletableFuture.supplyAsync(() -> {
+				try {
+					InputStream in = client.open("GET", node + pathAndQuery, null, null, hops + 1);
+					return mapper.readerFor(JsonNode.class).<JsonNode> readValues(in);
+				} catch (IOException e) {
+					throw new UncheckedIOException("Node " + node + " is unavailable!", e);
+				}
+			}, requests));
+		}
+
+		List<Iterator<JsonNode>> sources = new ArrayList<Iterator<JsonNode>>();
+		sources.add(new Iterator<JsonNode>() {
+
+			@Override
+			public boolean hasNext() {
+				return local.hasNext();
+			}
+
+			@Override
+			public JsonNode next() {
+				return mapper.valueToTree(local.next());
+			}
+		});
+		UncheckedIOException failure = null;
+		for (CompletableFuture<Iterator<JsonNode>> listing : listings) {
+			try {
+				sources.add(listing.join());
+			} catch (CompletionException e) {
+				failure = e.getCause() instanceof UncheckedIOException ? (UncheckedIOException) e.getCause()
+						: new UncheckedIOException(new IOException(e.getCause()));
+			}
+		}
+		MergedOrders merged = new MergedOrders(sources);
+		if (null != failure) {
+			merged.close();
+			throw failure;
+		}
+		return merged;
+	}
+
+	/**
+	 * Adds a node to the ring of every node, which pulls its pairs from their
+	 * holders.
+	 *
+	 * @return the new version and nodes of the ring and the nodes which did
+	 *         not install it
+	 * @throws IllegalStateException
+	 *             if the cluster is off or the node is a member already
+	 */
+	public synchronized Map<String, Object> join(String node) {
+		checkEnabled();
+		String name = normalize(node);
+		if (ring.contains(name)) {
+			throw new IllegalStateException("Node " + name + " is a member already!");
+		}
+		return change(ring.with(name));
+	}
+
+	/**
+	 * Removes a node from the ring of every node, its pairs being pulled by
+	 * their new owners. It keeps serving them until then.
+	 *
+	 * @return the new version and nodes of the ring and the nodes which did
+	 *         not install it
+	 * @throws IllegalStateException
+	 *             if the cluster is off, the node is not a member or the last
+	 *             one
+	 */
+	public synchronized Map<String, Object> leave(String node) {
+		checkEnabled();
+		String name = normalize(node);
+		if (!ring.contains(name)) {
+			throw new IllegalStateException("Node " + name + " is not a member!");
+		}
+		if (1 == ring.getNodes().size()) {
+			throw new IllegalStateException("The last node can not leave!");
+		}
+		return change(ring.without(name));
+	}
+
+	/**
+	 * Installs a new version of the ring, a later one than the current one,
+	 * pulling the pairs it gains from their holders and serving the pairs it
+	 * loses until they are pulled.
+	 *
+	 * @param previous
+	 *            the nodes of the ring the change was made to, the current
+	 *            ring when empty
+	 * @return false if the version is not a later one
+	 */
+	public synchronized boolean install(long newVersion, List<String> members, List<String> previous) {
+		checkEnabled();
+		if (newVersion <= version) {
+			return false;
+		}
+		ConsistentHashRing before = null == previous || previous.isEmpty() ? ring
+				: new ConsistentHashRing(normalize(previous), virtualNodes);
+		ConsistentHashRing after = new ConsistentHashRing(normalize(members), virtualNodes);
+
+		for (CurrencyPair pair : pairs.pairs()) {
+			int id = pair.getId();
+			String owner = after.owner(pair.getSymbol());
+			String source = sources.get(id);
+			String holder = null != source ? source
+					: null != retainedFor.get(id) ? self : before.owner(pair.getSymbol());
+			if (self.equals(holder)) {
+				retainedFor.set(id, self.equals(owner) ? null : owner);
+			} else if (self.equals(owner) && null == source) {
+				sources.set(id, holder);
+				migrations.execute(() -> pull(pair, holder));
+			}
+		}
+		ring = after;
+		owners = ownersOf(after);
+		version = newVersion;
+		LOGGER.info("Cluster ring version " + newVersion + " of " + after.getNodes());
+		return true;
+	}
+
+	/**
+	 * Starts recording the events of a pair this node holds and returns a
+	 * snapshot of its orders, to be pulled by its new owner.
+	 *
+	 * @throws IllegalStateException
+	 *             if this node does not hold the pair
+	 */
+	public StreamingResponseBody migrationSnapshot(int pairId) {
+		CurrencyPair pair = migrating(pairId);
+		List<OrderData> orders;
+		synchronized (pairLocks[pairId]) {
+			held(pairId);
+			outgoing.set(pairId, new ReplicationLog(migrationLogSize, 0));
+			orders = snapshotSource.apply(pair);
+		}
+		LOGGER.info("Migrating " + orders.size() + " orders of " + pair + " to " + retainedFor.get(pairId));
+		return out -> ReplicationStream.writeSnapshot(orders, out);
+	}
+
+	/**
+	 * Returns the events of a pair recorded after the given one, waiting up
+	 * to fxorder.cluster.migration.poll-ms for one.
+	 *
+	 * @throws IllegalStateException
+	 *             if the pair is not being migrated or the events were
+	 *             overwritten already
+	 */
+	public byte[] migrationEvents(int pairId, long after) throws InterruptedException {
+		migrating(pairId);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		events(pairId, after, migrationPollMs, out);
+		return out.toByteArray();
+	}
+
+	/**
+	 * Stops serving a pair and returns its events recorded after the given
+	 * one, the last ones. The pair stays handed over and its events kept until
+	 * the migration completes, so the handoff can be asked again.
+	 *
+	 * @throws IllegalStateException
+	 *             if the pair is not being migrated or the events were
+	 *             overwritten already
+	 */
+	public byte[] handoff(int pairId, long after) throws InterruptedException {
+		CurrencyPair pair = migrating(pairId);
+		synchronized (pairLocks[pairId]) {
+			String owner = retainedFor.get(pairId);
+			if (null != owner) {
+				handedTo.set(pairId, owner);
+				retainedFor.set(pairId, null);
+			} else if (null == handedTo.get(pairId)) {
+				throw new IllegalStateException("Currency pair " + pair + " is not held for another node!");
+			}
+		}
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		long last = after;
+		int count;
+		while ((count = events(pairId, last, 0, out)) > 0) {
+			last += count;
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Drops the events and the orders of a pair handed over to its new owner,
+	 * nothing when done already.
+	 *
+	 * @throws IllegalStateException
+	 *             if this node still serves the pair
+	 */
+	public void completeMigration(int pairId) {
+		CurrencyPair pair = migrating(pairId);
+		if (null == route(pairId)) {
+			throw new IllegalStateException("Currency pair " + pair + " was not handed over!");
+		}
+		int dropped = cancelOrdersOf(pair);
+		synchronized (pairLocks[pairId]) {
+			handedTo.set(pairId, null);
+			outgoing.set(pairId, null);
+		}
+		LOGGER.info("Migrated " + pair + ", dropped its " + dropped + " orders");
+	}
+
+	/**
+	 * @return the ring and the pairs being migrated
+	 */
+	public Map<String, Object> stats() {
+		Map<String, Object> stats = new LinkedHashMap<String, Object>();
+		stats.put("enabled", enabled);
+		if (!enabled) {
+			return stats;
+		}
+		stats.put("self", self);
+		stats.put("version", version);
+		stats.put("nodes", ring.getNodes());
+		stats.put("routing", isRedirecting() ? "redirect" : "forward");
+
+		Map<String, String> owned = new LinkedHashMap<String, String>();
+		List<String> served = new ArrayList<String>();
+		Map<String, String> pulling = new LinkedHashMap<String, String>();
+		Map<String, String> retained = new LinkedHashMap<String, String>();
+		Map<String, String> handed = new LinkedHashMap<String, String>();
+		for (CurrencyPair pair : pairs.pairs()) {
+			int id = pair.getId();
+			owned.put(pair.getSymbol(), owners[id]);
+			if (null == route(id)) {
+				served.add(pair.getSymbol());
+			}
+			if (null != sources.get(id)) {
+				pulling.put(pair.getSymbol(), sources.get(id));
+			}
+			if (null != retainedFor.get(id)) {
+				retained.put(pair.getSymbol(), retainedFor.get(id));
+			}
+			if (null != handedTo.get(id)) {
+				handed.put(pair.getSymbol(), handedTo.get(id));
+			}
+		}
+		stats.put("owners", owned);
+		stats.put("servedPairs", served);
+		stats.put("pullingFrom", pulling);
+		stats.put("retainedFor", retained);
+		stats.put("handedOverTo", handed);
+		stats.put("forwardedRequests", forwardedRequests.get());
+		stats.put("migratedPairs", migratedPairs.get());
+		stats.put("migratedOrders", migratedOrders.get());
+		stats.put("failedMigrations", failedMigrations.get());
+		return stats;
+	}
+
+	@PreDestroy
+	public void close() {
+		if (null != migrations) {
+			migrations.shutdownNow();
+			requests.shutdownNow();
+		}
+	}
+
+	// Internal helpers
+
+	/**
+	 * @return the node to send a request for the pair to, null if this node
+	 *         serves it
+	 */
+	private String route(int pairId) {
+		String source = sources.get(pairId);
+		if (null != source) {
+			return null != handedFrom.get(pairId) ? null : source;
+		}
+		if (null != retainedFor.get(pairId)) {
+			return null;
+		}
+		String owner = owners[pairId];
+		return self.equals(owner) ? null : owner;
+	}
+
+	private List<String> peers() {
+		List<String> peers = new ArrayList<String>(ring.getNodes());
+		peers.remove(self);
+		return peers;
+	}
+
+	/**
+	 * Sends the new ring to the nodes of the current and the new ring, this one
+	 * included.
+	 */
+	private Map<String, Object> change(ConsistentHashRing after) {
+		long next = version + 1;
+		StringBuilder query = new StringBuilder("/v1/cluster/members?version=").append(next);
+		for (String node : after.getNodes()) {
+			query.append("&node=").append(encode(node));
+		}
+		for (String node : ring.getNodes()) {
+			query.append("&previous=").append(encode(node));
+		}
+
+		Set<String> targets = new LinkedHashSet<String>(ring.getNodes());
+		targets.addAll(after.getNodes());
+		targets.remove(self);
+		List<String> failed = new ArrayList<String>();
+		for (String node : targets) {
+			ResponseEntity<byte[]> response = forward(node, "PUT", query.toString(), null, null, MAX_HOPS);
+			if (!response.getStatusCode().is2xxSuccessful()) {
+				failed.add(node);
+			}
+		}
+		install(next, after.getNodes(), ring.getNodes());
+
+		Map<String, Object> result = new LinkedHashMap<String, Object>();
+		result.put("version", next);
+		result.put("nodes", after.getNodes());
+		result.put("failed", failed);
+		return result;
+	}
+
+	/**
+	 * Pulls a pair gained from its holder, retrying until it succeeds or the
+	 * pair is not to be pulled from it any longer. Once the handoff was asked
+	 * for, a retry reads it again from the last event applied.
+	 */
+	private void pull(CurrencyPair pair, String source) {
+		int id = pair.getId();
+		String base = source + "/v1/cluster/pairs/" + id;
+		PairEvents events = new PairEvents();
+		int orders = 0;
+		while (source.equals(sources.get(id))) {
+			try {
+				if (null == handedFrom.get(id)) {
+					// Orders left from an earlier ownership of the pair or pull
+					cancelOrdersOf(pair);
+					try (InputStream in = client.open("POST", base + "/snapshot", null, null, MAX_HOPS)) {
+						orders = ReplicationStream.readSnapshot(in, pairs, handler);
+					}
+
+					events.applied = 0;
+					long backlog;
+					do {
+						long before = events.applied;
+						try (InputStream in = client.open("GET", base + "/events?after=" + before, null, null,
+								MAX_HOPS)) {
+							ReplicationStream.readEvents(in, before, pairs, events);
+						}
+						backlog = events.applied - before;
+					} while (backlog > HANDOFF_BACKLOG);
+					handedFrom.set(id, source);
+				}
+
+				try (InputStream in = client.open("POST", base + "/handoff?after=" + events.applied, null, null,
+						MAX_HOPS)) {
+					ReplicationStream.readEvents(in, events.applied, pairs, events);
+				}
+				synchronized (pairLocks[id]) {
+					handedFrom.set(id, null);
+					sources.compareAndSet(id, source, null);
+				}
+
+				migratedPairs.incrementAndGet();
+				migratedOrders.addAndGet(orders);
+				LOGGER.info("Pulled " + pair + " from " + source + ", " + orders + " orders and " + events.applied
+						+ " events");
+				complete(pair, source);
+				return;
+			} catch (IOException | RuntimeException e) {
+				failedMigrations.incrementAndGet();
+				LOGGER.warn("Pulling " + pair + " from " + source + " failed, retrying: " + e.getMessage());
+			}
+			if (!pause()) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Tells the former holder of a pulled pair to drop it, retrying every
+	 * fxorder.cluster.migration.retry-ms between the other migrations until it
+	 * did, this node does not serve the pair any longer or the holder left the
+	 * ring and is gone.
+	 */
+	private void complete(CurrencyPair pair, String source) {
+		if (null != route(pair.getId())) {
+			return;
+		}
+		try {
+			client.open("POST", source + "/v1/cluster/pairs/" + pair.getId() + "/complete", null, null, MAX_HOPS)
+					.close();
+		} catch (IOException | RuntimeException e) {
+			failedMigrations.incrementAndGet();
+			if (e instanceof ConnectException && !ring.contains(source)) {
+				LOGGER.warn("Completing " + pair + " on " + source + " failed, it left: " + e.getMessage());
+				return;
+			}
+			LOGGER.warn("Completing " + pair + " on " + source + " failed, retrying: " + e.getMessage());
+			try {
+				migrations.schedule(() -> complete(pair, source), migrationRetryMs, TimeUnit.MILLISECONDS);
+			} catch (RejectedExecutionException closed) {
+				LOGGER.debug("++++++++++++++++++++++++++++: " + closed.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Waits fxorder.cluster.migration.retry-ms before a retry.
+	 *
+	 * @return false if interrupted
+	 */
+	private boolean pause() {
+		try {
+			Thread.sleep(migrationRetryMs);
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * Writes the recorded events of a pair following the given one.
+	 *
+	 * @return the number of events written
+	 */
+	private int events(int pairId, long after, long waitMillis, ByteArrayOutputStream out)
+			throws InterruptedException {
+		ReplicationLog log = outgoing.get(pairId);
+		if (null == log) {
+			throw new IllegalStateException("Currency pair " + pairId + " is not being migrated!");
+		}
+		try {
+			int count = ReplicationStream.writeEvents(log, after, EVENTS_SIZE, waitMillis, out);
+			if (count < 0) {
+				throw new IllegalStateException("The events of currency pair " + pairId + " after " + after
+						+ " were overwritten, pull it again!");
+			}
+			return count;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * @return the pair, held by this node until pulled
+	 */
+	private CurrencyPair held(int pairId) {
+		CurrencyPair pair = migrating(pairId);
+		if (null == retainedFor.get(pairId)) {
+			throw new IllegalStateException("Currency pair " + pair + " is not held for another node!");
+		}
+		return pair;
+	}
+
+	/**
+	 * @return the pair of a migration request
+	 */
+	private CurrencyPair migrating(int pairId) {
+		checkEnabled();
+		CurrencyPair pair = pairs.get(pairId);
+		if (null == pair) {
+			throw new IllegalStateException("Currency pair " + pairId + " is not supported!");
+		}
+		return pair;
+	}
+
+	/**
+	 * @return true if this node changes the pair, false while it is served
+	 *         elsewhere or its last events are read
+	 */
+	private boolean changes(int pairId) {
+		return null == route(pairId) && null == handedFrom.get(pairId);
+	}
+
+	/**
+	 * Cancels the orders of a pair this node does not serve.
+	 *
+	 * @return the number of orders cancelled
+	 */
+	private int cancelOrdersOf(CurrencyPair pair) {
+		List<OrderData> orders = snapshotSource.apply(pair);
+		if (orders.isEmpty()) {
+			return 0;
+		}
+		long[] ids = new long[orders.size()];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = orders.get(i).getId();
+		}
+		handler.onCancelAll(ids);
+		return ids.length;
+	}
+
+	private int migratingPairs() {
+		int count = 0;
+		for (CurrencyPair pair : pairs.pairs()) {
+			int id = pair.getId();
+			if (null != sources.get(id) || null != retainedFor.get(id) || null != handedTo.get(id)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private String[] ownersOf(ConsistentHashRing ring) {
+		String[] changed = new String[CurrencyPair.MAX_PAIRS];
+		for (CurrencyPair pair : pairs.pairs()) {
+			changed[pair.getId()] = ring.owner(pair.getSymbol());
+		}
+		return changed;
+	}
+
+	private void checkEnabled() {
+		if (!enabled) {
+			throw new IllegalStateException("The cluster is off, see fxorder.cluster.enabled!");
+		}
+	}
+
+	private ResponseEntity<byte[]> unavailable(String node) {
+		return new ResponseEntity<>(("Node " + node + " is unavailable!").getBytes(StandardCharsets.UTF_8),
+				HttpStatus.SERVICE_UNAVAILABLE);
+	}
+
+	private static List<String> normalize(List<String> nodes) {
+		List<String> names = new ArrayList<String>();
+		for (String node : nodes) {
+			names.add(normalize(node));
+		}
+		return names;
+	}
+
+	/**
+	 * A node is named by its base URL, without a trailing slash.
+	 */
+	private static String normalize(String node) {
+		String name = node.trim();
+		while (name.endsWith("/")) {
+			name = name.substring(0, name.length() - 1);
+		}
+		return name;
+	}
+
+	private static String encode(String value) {
+		try {
+			return URLEncoder.encode(value, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Applies the events of the pairs this node serves under the lock of their
+	 * pair, recording the ones of a pair being migrated, and rejects the others.
+	 */
+	private final class ClusterHandler implements OrderEventHandler {
+
+		@Override
+		public boolean onAdd(OrderData order) {
+			int id = order.getPair().getId();
+			synchronized (pairLocks[id]) {
+				checkServed(order.getPair());
+				boolean kept = handler.onAdd(order);
+				ReplicationLog log = outgoing.get(id);
+				if (null != log) {
+					log.add(order);
+				}
+				return kept;
+			}
+		}
+
+		@Override
+		public boolean onCancel(long orderId) {
+			int id = handler.shardOf(orderId);
+			if (id < 0) {
+				return false;
+			}
+			synchronized (pairLocks[id]) {
+				if (!changes(id) || !handler.onCancel(orderId)) {
+					return false;
+				}
+				ReplicationLog log = outgoing.get(id);
+				if (null != log) {
+					log.cancel(orderId);
+				}
+				return true;
+			}
+		}
+
+		@Override
+		public boolean onAmend(long orderId, long pricePips, long amount) {
+			int id = handler.shardOf(orderId);
+			if (id < 0) {
+				return false;
+			}
+			synchronized (pairLocks[id]) {
+				if (!changes(id) || !handler.onAmend(orderId, pricePips, amount)) {
+					return false;
+				}
+				ReplicationLog log = outgoing.get(id);
+				if (null != log) {
+					log.amend(orderId, pricePips, amount);
+				}
+				return true;
+			}
+		}
+
+		@Override
+		public void onAddAll(List<OrderData> orders) {
+			Map<Integer, List<OrderData>> byPair = new LinkedHashMap<Integer, List<OrderData>>();
+			for (OrderData order : orders) {
+				byPair.computeIfAbsent(order.getPair().getId(), id -> new ArrayList<OrderData>()).add(order);
+			}
+
+			for (Map.Entry<Integer, List<OrderData>> batch : byPair.entrySet()) {
+				synchronized (pairLocks[batch.getKey()]) {
+					checkServed(batch.getValue().get(0).getPair());
+					handler.onAddAll(batch.getValue());
+					ReplicationLog log = outgoing.get(batch.getKey());
+					if (null != log) {
+						for (OrderData order : batch.getValue()) {
+							log.add(order);
+						}
+					}
+				}
+			}
+		}
+
+		@Override
+		public boolean[] onCancelAll(long[] orderIds) {
+			Map<Integer, List<Integer>> byPair = new LinkedHashMap<Integer, List<Integer>>();
+			for (int i = 0; i < orderIds.length; i++) {
+				int pair = handler.shardOf(orderIds[i]);
+				if (pair >= 0) {
+					byPair.computeIfAbsent(pair, id -> new ArrayList<Integer>()).add(i);
+				}
+			}
+
+			boolean[] cancelled = new boolean[orderIds.length];
+			for (Map.Entry<Integer, List<Integer>> batch : byPair.entrySet()) {
+				List<Integer> positions = batch.getValue();
+				long[] ids = new long[positions.size()];
+				for (int i = 0; i < ids.length; i++) {
+					ids[i] = orderIds[positions.get(i)];
+				}
+				synchronized (pairLocks[batch.getKey()]) {
+					if (!changes(batch.getKey())) {
+						continue;
+					}
+					boolean[] done = handler.onCancelAll(ids);
+					ReplicationLog log = outgoing.get(batch.getKey());
+					for (int i = 0; i < ids.length; i++) {
+						if (done[i]) {
+							if (null != log) {
+								log.cancel(ids[i]);
+							}
+							cancelled[positions.get(i)] = true;
+						}
+					}
+				}
+			}
+			return cancelled;
+		}
+
+		@Override
+		public int shardOf(long orderId) {
+			return handler.shardOf(orderId);
+		}
+
+		private void checkServed(CurrencyPair pair) {
+			String node = route(pair.getId());
+			if (null != node) {
+				throw new IllegalStateException("Currency pair " + pair + " is served by node " + node + "!");
+			}
+			if (null != handedFrom.get(pair.getId())) {
+				throw new IllegalStateException("Currency pair " + pair + " is being handed over to this node!");
+			}
+		}
+	}
+
+	/**
+	 * Applies the events of a pair being pulled, counting them so that a
+	 * failed read resumes after the last one applied.
+	 */
+	private final class PairEvents implements OrderEventHandler {
+
+		private long applied;
+
+		@Override
+		public boolean onAdd(OrderData order) {
+			boolean kept = handler.onAdd(order);
+			applied++;
+			return kept;
+		}
+
+		@Override
+		public boolean onCancel(long orderId) {
+			boolean cancelled = handler.onCancel(orderId);
+			applied++;
+			return cancelled;
+		}
+
+		@Override
+		public boolean onAmend(long orderId, long pricePips, long amount) {
+			boolean amended = handler.onAmend(orderId, pricePips, amount);
+			applied++;
+			return amended;
+		}
+
+		@Override
+		public int shardOf(long orderId) {
+			return handler.shardOf(orderId);
+		}
+	}
+
+}
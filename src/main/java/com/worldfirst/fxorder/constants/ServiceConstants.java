@@ -24,4 +24,19 @@ public class ServiceConstants {
 
     public static final String CURRENCY_PAIR_GBPUSD = "GBP/USD";
 
+    /** Prices are quoted with 4 decimals i.e. x.xxxx, one pip being 0.0001. */
+    public static final int PRICE_SCALE = 4;
+
+    public static final String ENGINE_PROPERTY = "fxorder.engine";
+
+    public static final String ENGINE_LEGACY = "legacy";
+
+    public static final String ENGINE_BOOK = "book";
+
+    public static final String ID_GENERATOR_PROPERTY = "fxorder.id.generator";
+
+    public static final String ID_GENERATOR_SNOWFLAKE = "snowflake";
+
+    public static final String ID_GENERATOR_SEQUENCE = "sequence";
+
 }
@@ -0,0 +1,110 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.worldfirst.fxorder.domain;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+/**
+ * Class BatchResult
+ * 
+ * The model class to represent the outcome of one item of a batch of orders
+ * or cancellations, given at the position of the item in the batch.
+ * 
+ * @author PM
+ *
+ */
+public class BatchResult {
+
+	/** The position of the item in the batch. */
+	private final int index;
+
+	/** The order id, null when an order was rejected. */
+	private final String id;
+
+	/** True when the item was applied. */
+	private final boolean success;
+
+	/** The outcome as the single item endpoints word it. */
+	private final String message;
+
+	/** Why the item was rejected, null when it was applied. */
+	private final RejectReason reason;
+
+	/**
+	 * @param index
+	 * @param id
+	 * @param success
+	 * @param message
+	 */
+	public BatchResult(int index, String id, boolean success, String message) {
+		this(index, id, success, message, null);
+	}
+
+	/**
+	 * @param index
+	 * @param id
+	 * @param success
+	 * @param message
+	 * @param reason
+	 */
+	public BatchResult(int index, String id, boolean success, String message, RejectReason reason) {
+		this.index = index;
+		this.id = id;
+		this.success = success;
+		this.message = message;
+		this.reason = reason;
+	}
+
+	/**
+	 * @return the index
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * @return the id
+	 */
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * @return the success
+	 */
+	public boolean isSuccess() {
+		return success;
+	}
+
+	/**
+	 * @return the message
+	 */
+	public String getMessage() {
+		return message;
+	}
+
+	/**
+	 * @return the reason
+	 */
+	@JsonInclude(Include.NON_NULL)
+	public RejectReason getReason() {
+		return reason;
+	}
+
+	/**
+	 * @return the order field at fault, null when the item was applied
+	 */
+	@JsonInclude(Include.NON_NULL)
+	public String getField() {
+		return null == reason ? null : reason.getField();
+	}
+
+}
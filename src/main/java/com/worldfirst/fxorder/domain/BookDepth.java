@@ -0,0 +1,76 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.worldfirst.fxorder.domain;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * Class BookDepth
+ * 
+ * The model class to represent the top price levels of both sides of the book
+ * of a currency pair, best price first.
+ * 
+ * @author PM
+ *
+ */
+public class BookDepth {
+
+	/** The currency pair. */
+	private final CurrencyPair pair;
+
+	/** The BID levels, highest price first. */
+	private final List<DepthLevel> bids;
+
+	/** The ASK levels, lowest price first. */
+	private final List<DepthLevel> asks;
+
+	/**
+	 * @param pair
+	 * @param bids
+	 * @param asks
+	 */
+	public BookDepth(CurrencyPair pair, List<DepthLevel> bids, List<DepthLevel> asks) {
+		this.pair = pair;
+		this.bids = bids;
+		this.asks = asks;
+	}
+
+	/**
+	 * @return the currency
+	 */
+	public String getCurrency() {
+		return pair.getSymbol();
+	}
+
+	/**
+	 * @return the pair
+	 */
+	@JsonIgnore
+	public CurrencyPair getPair() {
+		return pair;
+	}
+
+	/**
+	 * @return the bids
+	 */
+	public List<DepthLevel> getBids() {
+		return bids;
+	}
+
+	/**
+	 * @return the asks
+	 */
+	public List<DepthLevel> getAsks() {
+		return asks;
+	}
+
+}
@@ -0,0 +1,153 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.worldfirst.fxorder.domain;
+
+import java.math.BigDecimal;
+
+/**
+ * Class CurrencyPair
+ * 
+ * The model class to represent a tradable currency pair. Pairs are interned by
+ * the CurrencyPairRegistry, each one having a small integer id, so that they can
+ * be compared by reference and used as primitive keys.
+ * 
+ * Prices of a pair are held as a long number of pips, i.e. the price scaled by
+ * 10^scale, e.g. 1.2100 is 12100 pips for a scale of 4. A price must be a
+ * multiple of the tick size of the pair, one pip unless configured otherwise.
+ * 
+ * Each pair numbers its orders in arrival order on its own, an order sequence
+ * being its rank within the pair times MAX_PAIRS plus the pair id, so that
+ * sequences are unique across pairs without a shared counter.
+ * 
+ * @author PM
+ *
+ */
+public final class CurrencyPair {
+
+	/** The highest number of pairs, bounding the pair ids. */
+	public static final int MAX_PAIRS = 1024;
+
+	/** The interned id. */
+	private final int id;
+
+	/** The currency pair e.g. GBP/USD. */
+	private final String symbol;
+
+	/** The number of decimals of a price. */
+	private final int scale;
+
+	/** The smallest price increment, in pips. */
+	private final long tickPips;
+
+	/**
+	 * @param id
+	 * @param symbol
+	 * @param scale
+	 */
+	public CurrencyPair(int id, String symbol, int scale) {
+		this(id, symbol, scale, 1L);
+	}
+
+	/**
+	 * @param id
+	 * @param symbol
+	 * @param scale
+	 * @param tickPips
+	 */
+	public CurrencyPair(int id, String symbol, int scale, long tickPips) {
+		this.id = id;
+		this.symbol = symbol;
+		this.scale = scale;
+		this.tickPips = tickPips;
+	}
+
+	/**
+	 * @return the id
+	 */
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * @return the symbol
+	 */
+	public String getSymbol() {
+		return symbol;
+	}
+
+	/**
+	 * @return the scale
+	 */
+	public int getScale() {
+		return scale;
+	}
+
+	/**
+	 * @return the tickPips
+	 */
+	public long getTickPips() {
+		return tickPips;
+	}
+
+	/**
+	 * @return the tick size as a price e.g. 0.0005
+	 */
+	public BigDecimal getTickSize() {
+		return toPrice(tickPips);
+	}
+
+	/**
+	 * @return true if the given number of pips is a whole number of ticks
+	 */
+	public boolean isOnTick(long pricePips) {
+		return 0 == pricePips % tickPips;
+	}
+
+	/**
+	 * @return the order sequence of the given arrival rank within this pair
+	 */
+	public long sequence(long rank) {
+		return rank * MAX_PAIRS + id;
+	}
+
+	/**
+	 * @return the arrival rank within its pair of an order sequence
+	 */
+	public static long rankOf(long sequence) {
+		return sequence / MAX_PAIRS;
+	}
+
+	/**
+	 * Converts a price to pips, the price must not have more decimals than the
+	 * scale of the pair.
+	 * 
+	 * @throws ArithmeticException
+	 *             if the price has too many decimals or overflows a long
+	 */
+	public long toPips(BigDecimal price) {
+		return price.movePointRight(scale).longValueExact();
+	}
+
+	/**
+	 * @return the price of the given number of pips
+	 */
+	public BigDecimal toPrice(long pricePips) {
+		return BigDecimal.valueOf(pricePips, scale);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return symbol;
+	}
+
+}
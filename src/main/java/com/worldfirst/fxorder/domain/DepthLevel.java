@@ -0,0 +1,81 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.worldfirst.fxorder.domain;
+
+import java.math.BigDecimal;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * Class DepthLevel
+ * 
+ * The model class to represent one price level of a side of the book: the
+ * number of orders resting at the price and their total amount.
+ * 
+ * @author PM
+ *
+ */
+public class DepthLevel {
+
+	/** The currency pair. */
+	private final CurrencyPair pair;
+
+	/** The price of the level in pips of the currency pair. */
+	private final long pricePips;
+
+	/** The number of orders at the price. */
+	private final long orders;
+
+	/** The total amount of the orders at the price. */
+	private final long amount;
+
+	/**
+	 * @param pair
+	 * @param pricePips
+	 * @param orders
+	 * @param amount
+	 */
+	public DepthLevel(CurrencyPair pair, long pricePips, long orders, long amount) {
+		this.pair = pair;
+		this.pricePips = pricePips;
+		this.orders = orders;
+		this.amount = amount;
+	}
+
+	/**
+	 * @return the price
+	 */
+	public BigDecimal getPrice() {
+		return pair.toPrice(pricePips);
+	}
+
+	/**
+	 * @return the price in pips
+	 */
+	@JsonIgnore
+	public long getPricePips() {
+		return pricePips;
+	}
+
+	/**
+	 * @return the orders
+	 */
+	public long getOrders() {
+		return orders;
+	}
+
+	/**
+	 * @return the amount
+	 */
+	public long getAmount() {
+		return amount;
+	}
+
+}
@@ -0,0 +1,160 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.domain;
+
+import java.math.BigDecimal;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+
+/**
+ * Class ExecutionReport
+ * 
+ * The model class to represent a fill between a BID and an ASK order. The
+ * price is the one of the resting order.
+ * 
+ * @author PM
+ *
+ */
+public class ExecutionReport {
+
+	/** The execution id, increasing per currency pair. */
+	private final long executionId;
+
+	/** The currency pair. */
+	private final CurrencyPair pair;
+
+	/** The execution price in pips of the currency pair. */
+	private final long pricePips;
+
+	/** The filled amount. */
+	private final long amount;
+
+	/** The BID order id. */
+	private final long bidOrderId;
+
+	/** The ASK order id. */
+	private final long askOrderId;
+
+	/** The side of the incoming order that crossed the book. */
+	private final OrderType aggressor;
+
+	/** The date when the execution happened. */
+	private final long executionDate;
+
+	/**
+	 * @param executionId
+	 * @param pair
+	 * @param pricePips
+	 * @param amount
+	 * @param bidOrderId
+	 * @param askOrderId
+	 * @param aggressor
+	 * @param executionDate
+	 */
+	public ExecutionReport(long executionId, CurrencyPair pair, long pricePips, long amount, long bidOrderId,
+			long askOrderId, OrderType aggressor, long executionDate) {
+		this.executionId = executionId;
+		this.pair = pair;
+		this.pricePips = pricePips;
+		this.amount = amount;
+		this.bidOrderId = bidOrderId;
+		this.askOrderId = askOrderId;
+		this.aggressor = aggressor;
+		this.executionDate = executionDate;
+	}
+
+	/**
+	 * @return the executionId
+	 */
+	public long getExecutionId() {
+		return executionId;
+	}
+
+	/**
+	 * @return the currency
+	 */
+	public String getCurrency() {
+		return pair.getSymbol();
+	}
+
+	/**
+	 * @return the pair
+	 */
+	@JsonIgnore
+	public CurrencyPair getPair() {
+		return pair;
+	}
+
+	/**
+	 * @return the price
+	 */
+	public BigDecimal getPrice() {
+		return pair.toPrice(pricePips);
+	}
+
+	/**
+	 * @return the price in pips
+	 */
+	@JsonIgnore
+	public long getPricePips() {
+		return pricePips;
+	}
+
+	/**
+	 * @return the amount
+	 */
+	public long getAmount() {
+		return amount;
+	}
+
+	/**
+	 * @return the bidOrderId
+	 */
+	@JsonSerialize(using = ToStringSerializer.class)
+	public long getBidOrderId() {
+		return bidOrderId;
+	}
+
+	/**
+	 * @return the askOrderId
+	 */
+	@JsonSerialize(using = ToStringSerializer.class)
+	public long getAskOrderId() {
+		return askOrderId;
+	}
+
+	/**
+	 * @return the aggressor
+	 */
+	public OrderType getAggressor() {
+		return aggressor;
+	}
+
+	/**
+	 * @return the executionDate
+	 */
+	public long getExecutionDate() {
+		return executionDate;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "ExecutionReport [executionId=" + executionId + ", currency=" + pair + ", price=" + getPrice()
+				+ ", amount=" + amount + ", bidOrderId=" + bidOrderId + ", askOrderId=" + askOrderId
+				+ ", aggressor=" + aggressor + ", executionDate=" + executionDate + "]";
+	}
+
+}
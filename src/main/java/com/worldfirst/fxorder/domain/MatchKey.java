@@ -0,0 +1,97 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.worldfirst.fxorder.domain;
+
+/**
+ * Class MatchKey
+ * 
+ * The composite key of an order made of its currency pair id, price in pips
+ * and amount. ASK and BID orders having the same key are matching orders.
+ * 
+ * It is computed once per order and compares primitives only.
+ * 
+ * @author PM
+ *
+ */
+public final class MatchKey {
+
+	private final int pairId;
+
+	private final long pricePips;
+
+	private final long amount;
+
+	private final int hash;
+
+	/**
+	 * @param pairId
+	 * @param pricePips
+	 * @param amount
+	 */
+	public MatchKey(int pairId, long pricePips, long amount) {
+		this.pairId = pairId;
+		this.pricePips = pricePips;
+		this.amount = amount;
+		this.hash = 31 * (31 * pairId + Long.hashCode(pricePips)) + Long.hashCode(amount);
+	}
+
+	/**
+	 * @return the pairId
+	 */
+	public int getPairId() {
+		return pairId;
+	}
+
+	/**
+	 * @return the pricePips
+	 */
+	public long getPricePips() {
+		return pricePips;
+	}
+
+	/**
+	 * @return the amount
+	 */
+	public long getAmount() {
+		return amount;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof MatchKey)) {
+			return false;
+		}
+		MatchKey other = (MatchKey) obj;
+		return pairId == other.pairId && pricePips == other.pricePips && amount == other.amount;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "MatchKey [pairId=" + pairId + ", pricePips=" + pricePips + ", amount=" + amount + "]";
+	}
+
+}
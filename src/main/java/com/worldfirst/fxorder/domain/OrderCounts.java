@@ -0,0 +1,64 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.worldfirst.fxorder.domain;
+
+/**
+ * Class OrderCounts
+ *
+ * The model class to represent the number of matched and unmatched orders,
+ * both read from the snapshot of the order store of the given sequence.
+ *
+ * @author PM
+ *
+ */
+public class OrderCounts {
+
+	/** The number of matched orders. */
+	private final long matched;
+
+	/** The number of unmatched orders. */
+	private final long unmatched;
+
+	/** The sequence of the snapshot the counts were read from. */
+	private final long snapshot;
+
+	/**
+	 * @param matched
+	 * @param unmatched
+	 * @param snapshot
+	 */
+	public OrderCounts(long matched, long unmatched, long snapshot) {
+		this.matched = matched;
+		this.unmatched = unmatched;
+		this.snapshot = snapshot;
+	}
+
+	/**
+	 * @return the matched
+	 */
+	public long getMatched() {
+		return matched;
+	}
+
+	/**
+	 * @return the unmatched
+	 */
+	public long getUnmatched() {
+		return unmatched;
+	}
+
+	/**
+	 * @return the snapshot
+	 */
+	public long getSnapshot() {
+		return snapshot;
+	}
+
+}
@@ -10,24 +10,37 @@
 
 package com.worldfirst.fxorder.domain;
 
+import java.math.BigDecimal;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+
 /**
  * Class OrderData
  * 
  * The model class to represent an Order
  * 
+ * The price is held as a fixed point number of pips of the currency pair and
+ * the {@link MatchKey} of the order is computed once, whenever one of the
+ * currency pair, price or amount is set.
+ * 
+ * The id is a long given by the OrderIdGenerator, written to JSON as a decimal
+ * string since JavaScript numbers cannot hold every long.
+ * 
  * @author PM
  *
  */
 public class OrderData {
 
 	/** The order id. */
-	private String id;
+	private long id;
 	
 	/** The currency pair. */
-	private String currency;	
+	private CurrencyPair pair;	
 	
-	/** The trade price. */
-	private float price; 
+	/** The trade price in pips of the currency pair. */
+	private long pricePips; 
 	
 	/** The trade amount. */
     private long amount;
@@ -38,36 +51,50 @@ public class OrderData {
 	/** The date when order recorded. */
 	private long orderDate;
 	
+	/** The currency pair, price and amount key. */
+	private MatchKey matchKey;
+	
+	/** The arrival sequence given by the order store, 0 until stored. */
+	private long sequence;
+
+	/** How long the order stays in the store, GTC by default. */
+	private TimeInForce timeInForce = TimeInForce.GTC;
+
+	/** The time the order expires at, 0 if it never does. */
+	private long expireTime;
+	
 	
 	/**
 	 * @param id
-	 * @param currency
-	 * @param price
+	 * @param pair
+	 * @param pricePips
 	 * @param amount
 	 * @param orderType
 	 * @param orderDate
 	 */
-	public OrderData(String id, String currency, float price, long amount, OrderType orderType, long orderDate) {
+	public OrderData(long id, CurrencyPair pair, long pricePips, long amount, OrderType orderType, long orderDate) {
 		super();
 		this.id = id;
-		this.currency = currency;
-		this.price = price;
+		this.pair = pair;
+		this.pricePips = pricePips;
 		this.amount = amount;
 		this.orderType = orderType;
 		this.orderDate = orderDate;
+		this.matchKey = new MatchKey(pair.getId(), pricePips, amount);
 	}
 
 	/**
 	 * @return the id
 	 */
-	public String getId() {
+	@JsonSerialize(using = ToStringSerializer.class)
+	public long getId() {
 		return id;
 	}
 
 	/**
 	 * @param id the id to set
 	 */
-	public void setId(String id) {
+	public void setId(long id) {
 		this.id = id;
 	}
 
@@ -75,28 +102,46 @@ public class OrderData {
 	 * @return the currency
 	 */
 	public String getCurrency() {
-		return currency;
+		return pair.getSymbol();
+	}
+
+	/**
+	 * @return the pair
+	 */
+	@JsonIgnore
+	public CurrencyPair getPair() {
+		return pair;
 	}
 
 	/**
-	 * @param currency the currency to set
+	 * @param pair the pair to set
 	 */
-	public void setCurrency(String currency) {
-		this.currency = currency;
+	public void setPair(CurrencyPair pair) {
+		this.pair = pair;
+		this.matchKey = new MatchKey(pair.getId(), pricePips, amount);
 	}
 
 	/**
 	 * @return the price
 	 */
-	public float getPrice() {	
-		return price;
+	public BigDecimal getPrice() {	
+		return pair.toPrice(pricePips);
 	}
 
 	/**
-	 * @param price the price to set
+	 * @return the price in pips
 	 */
-	public void setPrice(float price) {
-		this.price = price;
+	@JsonIgnore
+	public long getPricePips() {
+		return pricePips;
+	}
+
+	/**
+	 * @param pricePips the price in pips to set
+	 */
+	public void setPricePips(long pricePips) {
+		this.pricePips = pricePips;
+		this.matchKey = new MatchKey(pair.getId(), pricePips, amount);
 	}
 
 	/**
@@ -111,6 +156,7 @@ public class OrderData {
 	 */
 	public void setAmount(long amount) {
 		this.amount = amount;
+		this.matchKey = new MatchKey(pair.getId(), pricePips, amount);
 	}
 
 	/**
@@ -141,17 +187,65 @@ public class OrderData {
 		this.orderDate = orderDate;
 	}
 
+	/**
+	 * @return the sequence
+	 */
+	@JsonIgnore
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * @param sequence the sequence to set
+	 */
+	public void setSequence(long sequence) {
+		this.sequence = sequence;
+	}
+
+	/**
+	 * @return the timeInForce
+	 */
+	public TimeInForce getTimeInForce() {
+		return timeInForce;
+	}
+
+	/**
+	 * @param timeInForce the timeInForce to set
+	 */
+	public void setTimeInForce(TimeInForce timeInForce) {
+		this.timeInForce = timeInForce;
+	}
+
+	/**
+	 * @return the expireTime, 0 if the order never expires
+	 */
+	public long getExpireTime() {
+		return expireTime;
+	}
+
+	/**
+	 * @param expireTime the expireTime to set
+	 */
+	public void setExpireTime(long expireTime) {
+		this.expireTime = expireTime;
+	}
+
+	/**
+	 * @return the currency pair, price and amount key
+	 */
+	@JsonIgnore
+	public MatchKey getMatchKey() {
+		return matchKey;
+	}
+
 	/* (non-Javadoc)
 	 * @see java.lang.Object#toString()
 	 */
 	@Override
 	public String toString() {
-		return "OrderData [id=" + id + ", currency=" + currency + ", price=" + price + ", amount=" + amount
-				+ ", orderType=" + orderType + ", orderDate=" + orderDate + "]";
-	}
-	
-	public String toCustomHash() {
-		return currency.trim().replace("/", "")+price+amount;
+		return "OrderData [id=" + id + ", currency=" + pair + ", price=" + getPrice() + ", amount=" + amount
+				+ ", orderType=" + orderType + ", orderDate=" + orderDate + ", timeInForce=" + timeInForce
+				+ ", expireTime=" + expireTime + "]";
 	}
 	
 }
@@ -0,0 +1,67 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.worldfirst.fxorder.domain;
+
+import java.util.List;
+
+/**
+ * Class OrderPage
+ * 
+ * The model class to represent a page of orders along with the cursor of the
+ * next page and the sequence of the snapshot of the order store it was read
+ * from.
+ * 
+ * @author PM
+ *
+ */
+public class OrderPage {
+
+	/** The orders of the page in arrival sequence. */
+	private final List<OrderData> orders;
+
+	/** The cursor of the next page, null when this page is the last one. */
+	private final String nextCursor;
+
+	/** The sequence of the snapshot the page was read from. */
+	private final long snapshot;
+
+	/**
+	 * @param orders
+	 * @param nextCursor
+	 * @param snapshot
+	 */
+	public OrderPage(List<OrderData> orders, String nextCursor, long snapshot) {
+		this.orders = orders;
+		this.nextCursor = nextCursor;
+		this.snapshot = snapshot;
+	}
+
+	/**
+	 * @return the orders
+	 */
+	public List<OrderData> getOrders() {
+		return orders;
+	}
+
+	/**
+	 * @return the nextCursor
+	 */
+	public String getNextCursor() {
+		return nextCursor;
+	}
+
+	/**
+	 * @return the snapshot
+	 */
+	public long getSnapshot() {
+		return snapshot;
+	}
+
+}
@@ -0,0 +1,168 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.worldfirst.fxorder.domain;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Class OrderQuery
+ * 
+ * The model class to represent a validated page request over the stored
+ * orders. Every filter is optional, orders are returned in arrival sequence
+ * starting after the cursor sequence.
+ * 
+ * @author PM
+ *
+ */
+public final class OrderQuery {
+
+	/** The matching state of the orders to return. */
+	public enum Status {
+		ALL, MATCHED, UNMATCHED
+	}
+
+	private final Status status;
+
+	private final CurrencyPair pair;
+
+	private final OrderType side;
+
+	private final BigDecimal minPrice;
+
+	private final BigDecimal maxPrice;
+
+	private final long fromDate;
+
+	private final long toDate;
+
+	private final long afterSequence;
+
+	private final int limit;
+
+	/** The price bounds in pips per currency pair scale, computed on demand. */
+	private final long[] minPipsByScale = new long[19];
+
+	private final long[] maxPipsByScale = new long[19];
+
+	private final boolean[] boundsByScale = new boolean[19];
+
+	/**
+	 * @param status
+	 * @param pair null for all pairs
+	 * @param side null for both sides
+	 * @param minPrice null for no lower bound
+	 * @param maxPrice null for no upper bound
+	 * @param fromDate the lowest order date, inclusive
+	 * @param toDate the highest order date, inclusive
+	 * @param afterSequence the cursor, 0 to start from the first order
+	 * @param limit the maximum number of orders of the page
+	 */
+	public OrderQuery(Status status, CurrencyPair pair, OrderType side, BigDecimal minPrice, BigDecimal maxPrice,
+			long fromDate, long toDate, long afterSequence, int limit) {
+		this.status = status;
+		this.pair = pair;
+		this.side = side;
+		this.minPrice = minPrice;
+		this.maxPrice = maxPrice;
+		this.fromDate = fromDate;
+		this.toDate = toDate;
+		this.afterSequence = afterSequence;
+		this.limit = limit;
+	}
+
+	/**
+	 * @return the status
+	 */
+	public Status getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return the pair or null for all pairs
+	 */
+	public CurrencyPair getPair() {
+		return pair;
+	}
+
+	/**
+	 * @return the side or null for both sides
+	 */
+	public OrderType getSide() {
+		return side;
+	}
+
+	/**
+	 * @return the afterSequence
+	 */
+	public long getAfterSequence() {
+		return afterSequence;
+	}
+
+	/**
+	 * @return the limit
+	 */
+	public int getLimit() {
+		return limit;
+	}
+
+	/**
+	 * Checks the order against the pair, side, price and date filters, the
+	 * matching state being left to the order store.
+	 * 
+	 * @return true if the order passes the filters
+	 */
+	public boolean matches(OrderData order) {
+		return matches(order.getPair(), order.getOrderType(), order.getPricePips(), order.getOrderDate());
+	}
+
+	/**
+	 * Checks the fields of an order not materialised as an OrderData against
+	 * the pair, side, price and date filters.
+	 * 
+	 * @return true if the order passes the filters
+	 */
+	public boolean matches(CurrencyPair orderPair, OrderType orderType, long pricePips, long orderDate) {
+		if (null != pair && pair != orderPair) {
+			return false;
+		}
+		if (null != side && side != orderType) {
+			return false;
+		}
+		if (orderDate < fromDate || orderDate > toDate) {
+			return false;
+		}
+		if (null == minPrice && null == maxPrice) {
+			return true;
+		}
+
+		int scale = orderPair.getScale();
+		if (!boundsByScale[scale]) {
+			minPipsByScale[scale] = null == minPrice ? Long.MIN_VALUE : toPips(minPrice, scale, RoundingMode.CEILING);
+			maxPipsByScale[scale] = null == maxPrice ? Long.MAX_VALUE : toPips(maxPrice, scale, RoundingMode.FLOOR);
+			boundsByScale[scale] = true;
+		}
+		return pricePips >= minPipsByScale[scale] && pricePips <= maxPipsByScale[scale];
+	}
+
+	// Internal helpers
+
+	private static long toPips(BigDecimal price, int scale, RoundingMode rounding) {
+		BigDecimal pips = price.setScale(scale, rounding).movePointRight(scale);
+		if (pips.compareTo(BigDecimal.valueOf(Long.MAX_VALUE)) > 0) {
+			return Long.MAX_VALUE;
+		}
+		if (pips.compareTo(BigDecimal.valueOf(Long.MIN_VALUE)) < 0) {
+			return Long.MIN_VALUE;
+		}
+		return pips.longValueExact();
+	}
+
+}
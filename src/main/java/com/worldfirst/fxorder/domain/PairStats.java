@@ -0,0 +1,87 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.worldfirst.fxorder.domain;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * Class PairStats
+ * 
+ * The model class to represent the aggregates of the orders of a currency
+ * pair: the number of matched orders and the statistics of the unmatched
+ * orders of each side.
+ * 
+ * @author PM
+ *
+ */
+public class PairStats {
+
+	/** The currency pair. */
+	private final CurrencyPair pair;
+
+	/** The number of matched orders. */
+	private final long matched;
+
+	/** The unmatched BID orders. */
+	private final SideStats bids;
+
+	/** The unmatched ASK orders. */
+	private final SideStats asks;
+
+	/**
+	 * @param pair
+	 * @param matched
+	 * @param bids
+	 * @param asks
+	 */
+	public PairStats(CurrencyPair pair, long matched, SideStats bids, SideStats asks) {
+		this.pair = pair;
+		this.matched = matched;
+		this.bids = bids;
+		this.asks = asks;
+	}
+
+	/**
+	 * @return the currency
+	 */
+	public String getCurrency() {
+		return pair.getSymbol();
+	}
+
+	/**
+	 * @return the pair
+	 */
+	@JsonIgnore
+	public CurrencyPair getPair() {
+		return pair;
+	}
+
+	/**
+	 * @return the matched
+	 */
+	public long getMatched() {
+		return matched;
+	}
+
+	/**
+	 * @return the bids
+	 */
+	public SideStats getBids() {
+		return bids;
+	}
+
+	/**
+	 * @return the asks
+	 */
+	public SideStats getAsks() {
+		return asks;
+	}
+
+}
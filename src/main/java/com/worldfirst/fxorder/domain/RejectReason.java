@@ -0,0 +1,89 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.domain;
+
+/**
+ * Why an order or a cancellation is rejected, along with the order field at
+ * fault.
+ *
+ * The validator returns a reason rather than throwing, and its message, which
+ * may quote the rejected value, is only built when the rejection is reported.
+ *
+ * @author PM
+ */
+public enum RejectReason {
+	INVALID_CURRENCY_PAIR("currency"),
+	INVALID_ORDER_TYPE("bidOrAsk"),
+	INVALID_AMOUNT("amount"),
+	INVALID_PRICE("price"),
+	INVALID_PRICE_FORMAT("price"),
+	PRICE_OFF_TICK("price"),
+	INVALID_EXPIRE_TIME("expireTime"),
+	EXPIRE_TIME_NOT_ALLOWED("expireTime"),
+	UNKNOWN_ORDER("id");
+
+	private final String field;
+
+	RejectReason(String field) {
+		this.field = field;
+	}
+
+	/**
+	 * @return the name of the OrderDTO field at fault
+	 */
+	public String getField() {
+		return field;
+	}
+
+	/**
+	 * @param pair
+	 *            the currency pair of the order, null if it has none
+	 * @param value
+	 *            the value of the field at fault
+	 * @return the message the rejection is reported with
+	 */
+	public String message(CurrencyPair pair, Object value) {
+		switch (this) {
+		case INVALID_CURRENCY_PAIR:
+			return "You have entered invalid currency pair!";
+		case INVALID_ORDER_TYPE:
+			return "You have entered invalid order type!";
+		case INVALID_AMOUNT:
+			return "You have entered invalid amount range: " + value;
+		case INVALID_PRICE:
+			return "You have entered invalid price range: " + value;
+		case INVALID_PRICE_FORMAT:
+			return "You have entered invalid price range. The format is " + priceFormat(pair) + ": " + value;
+		case PRICE_OFF_TICK:
+			return "You have entered invalid price. The tick size of " + pair.getSymbol() + " is "
+					+ pair.getTickSize().toPlainString() + ": " + value;
+		case INVALID_EXPIRE_TIME:
+			return "You have entered invalid expire time: " + value;
+		case EXPIRE_TIME_NOT_ALLOWED:
+			return "Expire time is only allowed for GTD orders!";
+		default:
+			return "OrderId does not exists!";
+		}
+	}
+
+	// Internal helpers
+
+	/**
+	 * @return the expected price format of the currency pair e.g. x.xxxx
+	 */
+	private static String priceFormat(CurrencyPair pair) {
+		StringBuilder format = new StringBuilder("x.");
+		for (int i = 0; i < pair.getScale(); i++) {
+			format.append('x');
+		}
+		return format.toString();
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.worldfirst.fxorder.domain;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+/**
+ * Class SideStats
+ * 
+ * The model class to represent the aggregates of one side of the book of a
+ * currency pair: the number of orders, their total amount, the best price and
+ * the volume weighted average price.
+ * 
+ * @author PM
+ *
+ */
+public class SideStats {
+
+	/** The decimals of the average price beyond the scale of the pair. */
+	private static final int VWAP_EXTRA_SCALE = 2;
+
+	/** The currency pair. */
+	private final CurrencyPair pair;
+
+	/** The number of orders. */
+	private final long orders;
+
+	/** The total amount of the orders. */
+	private final long amount;
+
+	/** The sum of the price in pips times the amount of the orders. */
+	private final BigDecimal notional;
+
+	/** The best price in pips, 0 when the side is empty. */
+	private final long bestPips;
+
+	/**
+	 * @param pair
+	 * @param orders
+	 * @param amount
+	 * @param notional
+	 * @param bestPips
+	 */
+	public SideStats(CurrencyPair pair, long orders, long amount, BigDecimal notional, long bestPips) {
+		this.pair = pair;
+		this.orders = orders;
+		this.amount = amount;
+		this.notional = notional;
+		this.bestPips = bestPips;
+	}
+
+	/**
+	 * @return the orders
+	 */
+	public long getOrders() {
+		return orders;
+	}
+
+	/**
+	 * @return the amount
+	 */
+	public long getAmount() {
+		return amount;
+	}
+
+	/**
+	 * @return the best price, null when the side is empty
+	 */
+	@JsonInclude(Include.NON_NULL)
+	public BigDecimal getBestPrice() {
+		return 0 == orders ? null : pair.toPrice(bestPips);
+	}
+
+	/**
+	 * @return the volume weighted average price, null when the side is empty
+	 */
+	@JsonInclude(Include.NON_NULL)
+	public BigDecimal getVwap() {
+		if (0 == amount) {
+			return null;
+		}
+		return notional.divide(BigDecimal.valueOf(amount), VWAP_EXTRA_SCALE, RoundingMode.HALF_EVEN)
+				.movePointLeft(pair.getScale());
+	}
+
+}
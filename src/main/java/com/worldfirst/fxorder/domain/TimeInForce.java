@@ -0,0 +1,33 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.domain;
+
+/**
+ * How long an order stays in the store.
+ *
+ * GTC: until cancelled or filled.
+ * DAY: until the end of the trading day it was entered on.
+ * GTD: until its expire time.
+ * IOC: matched on arrival as far as possible, the rest is dropped.
+ * FOK: matched on arrival in full, or dropped whole.
+ *
+ * @author PM
+ */
+public enum TimeInForce {
+	GTC, DAY, GTD, IOC, FOK;
+
+	/**
+	 * @return true if the order never rests in the store
+	 */
+	public boolean isImmediate() {
+		return IOC == this || FOK == this;
+	}
+}
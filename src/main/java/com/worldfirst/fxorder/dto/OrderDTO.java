@@ -1,8 +1,11 @@
 package com.worldfirst.fxorder.dto;
 
+import java.math.BigDecimal;
+
 import javax.validation.constraints.NotBlank;
 
 import com.worldfirst.fxorder.domain.OrderType;
+import com.worldfirst.fxorder.domain.TimeInForce;
 
 /**
  * Class OrderDTO
@@ -21,11 +24,17 @@ public class OrderDTO {
 	private OrderType bidOrAsk;
 	
 	@NotBlank(message = "Price is mandatory")
-	private float price; 
+	private BigDecimal price; 
 	
 	@NotBlank(message = "Amount is mandatory") 
     private long amount;
 
+	/** GTC unless given. */
+	private TimeInForce timeInForce;
+
+	/** The expire time of a GTD order in epoch milliseconds. */
+	private Long expireTime;
+
 
 	/**
 	 * @return the currency
@@ -58,14 +67,14 @@ public class OrderDTO {
 	/**
 	 * @return the price
 	 */
-	public float getPrice() {
+	public BigDecimal getPrice() {
 		return price;
 	}
 
 	/**
 	 * @param price the price to set
 	 */
-	public void setPrice(float price) {
+	public void setPrice(BigDecimal price) {
 		this.price = price;
 	}
 
@@ -82,6 +91,34 @@ public class OrderDTO {
 	public void setAmount(long amount) {
 		this.amount = amount;
 	}
+
+	/**
+	 * @return the timeInForce
+	 */
+	public TimeInForce getTimeInForce() {
+		return timeInForce;
+	}
+
+	/**
+	 * @param timeInForce the timeInForce to set
+	 */
+	public void setTimeInForce(TimeInForce timeInForce) {
+		this.timeInForce = timeInForce;
+	}
+
+	/**
+	 * @return the expireTime
+	 */
+	public Long getExpireTime() {
+		return expireTime;
+	}
+
+	/**
+	 * @param expireTime the expireTime to set
+	 */
+	public void setExpireTime(Long expireTime) {
+		this.expireTime = expireTime;
+	}
 	
 	
 }
@@ -0,0 +1,165 @@
+package com.worldfirst.fxorder.dto;
+
+import java.math.BigDecimal;
+
+/**
+ * Class OrderQueryDTO
+ * 
+ * It is the DTO class to be able to deal with the paging and filtering
+ * parameters of the order listing requests. Every field is optional.
+ * 
+ * @author PM
+ *
+ */
+public class OrderQueryDTO {
+
+	/** all, matched or unmatched */
+	private String status;
+
+	private String currency;
+
+	/** ASK or BID */
+	private String side;
+
+	private BigDecimal minPrice;
+
+	private BigDecimal maxPrice;
+
+	/** The lowest order date in epoch milliseconds, inclusive. */
+	private Long from;
+
+	/** The highest order date in epoch milliseconds, inclusive. */
+	private Long to;
+
+	/** The nextCursor of the previous page. */
+	private String cursor;
+
+	private Integer limit;
+
+	/**
+	 * @return the status
+	 */
+	public String getStatus() {
+		return status;
+	}
+
+	/**
+	 * @param status the status to set
+	 */
+	public void setStatus(String status) {
+		this.status = status;
+	}
+
+	/**
+	 * @return the currency
+	 */
+	public String getCurrency() {
+		return currency;
+	}
+
+	/**
+	 * @param currency the currency to set
+	 */
+	public void setCurrency(String currency) {
+		this.currency = currency;
+	}
+
+	/**
+	 * @return the side
+	 */
+	public String getSide() {
+		return side;
+	}
+
+	/**
+	 * @param side the side to set
+	 */
+	public void setSide(String side) {
+		this.side = side;
+	}
+
+	/**
+	 * @return the minPrice
+	 */
+	public BigDecimal getMinPrice() {
+		return minPrice;
+	}
+
+	/**
+	 * @param minPrice the minPrice to set
+	 */
+	public void setMinPrice(BigDecimal minPrice) {
+		this.minPrice = minPrice;
+	}
+
+	/**
+	 * @return the maxPrice
+	 */
+	public BigDecimal getMaxPrice() {
+		return maxPrice;
+	}
+
+	/**
+	 * @param maxPrice the maxPrice to set
+	 */
+	public void setMaxPrice(BigDecimal maxPrice) {
+		this.maxPrice = maxPrice;
+	}
+
+	/**
+	 * @return the from
+	 */
+	public Long getFrom() {
+		return from;
+	}
+
+	/**
+	 * @param from the from to set
+	 */
+	public void setFrom(Long from) {
+		this.from = from;
+	}
+
+	/**
+	 * @return the to
+	 */
+	public Long getTo() {
+		return to;
+	}
+
+	/**
+	 * @param to the to to set
+	 */
+	public void setTo(Long to) {
+		this.to = to;
+	}
+
+	/**
+	 * @return the cursor
+	 */
+	public String getCursor() {
+		return cursor;
+	}
+
+	/**
+	 * @param cursor the cursor to set
+	 */
+	public void setCursor(String cursor) {
+		this.cursor = cursor;
+	}
+
+	/**
+	 * @return the limit
+	 */
+	public Integer getLimit() {
+		return limit;
+	}
+
+	/**
+	 * @param limit the limit to set
+	 */
+	public void setLimit(Integer limit) {
+		this.limit = limit;
+	}
+
+}
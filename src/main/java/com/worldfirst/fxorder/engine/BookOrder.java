@@ -0,0 +1,65 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.engine;
+
+import com.worldfirst.fxorder.domain.OrderData;
+
+/**
+ * Class BookOrder
+ * 
+ * An order resting in a {@link LimitOrderBook}. It is an intrusive node of the
+ * FIFO queue of its {@link PriceLevel} so that it can be unlinked in O(1) on
+ * cancel or fill.
+ * 
+ * Book orders are recycled by their book once cancelled or filled, so resting
+ * an order does not allocate once the book is warm.
+ * 
+ * @author PM
+ *
+ */
+final class BookOrder {
+
+	/** The order as it was submitted. */
+	OrderData order;
+
+	/** The limit price in pips. */
+	long pricePips;
+
+	/** The amount still open. */
+	long remaining;
+
+	/** The price level queue the order is resting in. */
+	PriceLevel level;
+
+	/** The previous order in the price level queue. */
+	BookOrder prev;
+
+	/** The next order in the price level queue. */
+	BookOrder next;
+
+	BookOrder init(OrderData order) {
+		this.order = order;
+		this.pricePips = order.getPricePips();
+		this.remaining = order.getAmount();
+		return this;
+	}
+
+	/**
+	 * Drops the references of the order before it is recycled.
+	 */
+	void clear() {
+		order = null;
+		level = null;
+		prev = null;
+		next = null;
+	}
+
+}
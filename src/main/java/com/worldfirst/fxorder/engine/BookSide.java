@@ -0,0 +1,155 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.engine;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+/**
+ * Class BookSide
+ *
+ * The price levels of one side of a {@link LimitOrderBook}, sorted in an array
+ * with the best price last. Levels near the top of the book, where most orders
+ * arrive and leave, are inserted and removed with the fewest moves, and a
+ * level is looked up by a binary search on the raw prices, with no boxed key
+ * or tree entry allocated. The side keeps the totals of its orders as they
+ * rest, fill and leave, for the statistics of the book.
+ *
+ * @author PM
+ *
+ */
+final class BookSide {
+
+	/** True for the BID side, its best price being the highest. */
+	private final boolean bid;
+
+	private long[] prices = new long[16];
+
+	private PriceLevel[] levels = new PriceLevel[16];
+
+	private int size;
+
+	/** The number of orders resting on the side. */
+	long orderCount;
+
+	/** The sum of the open amounts. */
+	long totalAmount;
+
+	BookSide(boolean bid) {
+		this.bid = bid;
+	}
+
+	boolean isEmpty() {
+		return 0 == size;
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @return the level at the best price, or null if the side is empty
+	 */
+	PriceLevel best() {
+		return 0 == size ? null : levels[size - 1];
+	}
+
+	/**
+	 * @return the best price in pips, or 0 if the side is empty
+	 */
+	long bestPrice() {
+		return 0 == size ? 0 : prices[size - 1];
+	}
+
+	/**
+	 * @return the level at the given rank from the best price, 0 being the best
+	 */
+	PriceLevel level(int rank) {
+		return levels[size - 1 - rank];
+	}
+
+	/**
+	 * Accounts for orders starting to rest or an open amount changing at the
+	 * price, negative values taking them out.
+	 */
+	void account(long pricePips, int orders, long amount) {
+		orderCount += orders;
+		totalAmount += amount;
+	}
+
+	/**
+	 * @return the sum of the price in pips times the open amount of every
+	 *         level, summed when read as it can exceed a long
+	 */
+	BigDecimal notional() {
+		BigDecimal notional = BigDecimal.ZERO;
+		for (int i = 0; i < size; i++) {
+			notional = notional.add(BigDecimal.valueOf(prices[i]).multiply(BigDecimal.valueOf(levels[i].totalAmount)));
+		}
+		return notional;
+	}
+
+	/**
+	 * @return the level at the price, or null if there is none
+	 */
+	PriceLevel get(long pricePips) {
+		int index = indexOf(pricePips);
+		return index >= 0 ? levels[index] : null;
+	}
+
+	/**
+	 * Inserts a level, none being at its price yet.
+	 */
+	void insert(PriceLevel level) {
+		int index = -(indexOf(level.pricePips) + 1);
+		if (size == levels.length) {
+			prices = Arrays.copyOf(prices, size << 1);
+			levels = Arrays.copyOf(levels, size << 1);
+		}
+		System.arraycopy(prices, index, prices, index + 1, size - index);
+		System.arraycopy(levels, index, levels, index + 1, size - index);
+		prices[index] = level.pricePips;
+		levels[index] = level;
+		size++;
+	}
+
+	void remove(PriceLevel level) {
+		int index = indexOf(level.pricePips);
+		System.arraycopy(prices, index + 1, prices, index, size - index - 1);
+		System.arraycopy(levels, index + 1, levels, index, size - index - 1);
+		levels[--size] = null;
+	}
+
+	// Internal helpers
+
+	/**
+	 * @return the index of the price, or -(insertion point + 1) if absent
+	 */
+	private int indexOf(long pricePips) {
+		int low = 0;
+		int high = size - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			long price = prices[middle];
+			if (price == pricePips) {
+				return middle;
+			}
+			// BID prices ascending and ASK prices descending, the best one last
+			if (bid == price < pricePips) {
+				low = middle + 1;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return -(low + 1);
+	}
+
+}
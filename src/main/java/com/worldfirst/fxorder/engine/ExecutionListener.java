@@ -0,0 +1,39 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.engine;
+
+import com.worldfirst.fxorder.domain.ExecutionReport;
+import com.worldfirst.fxorder.domain.OrderData;
+
+/**
+ * Interface ExecutionListener
+ * 
+ * It is called back by a {@link LimitOrderBook} on the thread submitting the
+ * order, while the book is being updated.
+ * 
+ * @author PM
+ *
+ */
+public interface ExecutionListener {
+
+	/**
+	 * Called for every fill between the incoming order and a resting order.
+	 * @param report the execution report
+	 */
+	void onExecution(ExecutionReport report);
+
+	/**
+	 * Called when an order, incoming or resting, has no open amount left.
+	 * @param order the filled order
+	 */
+	void onOrderFilled(OrderData order);
+
+}
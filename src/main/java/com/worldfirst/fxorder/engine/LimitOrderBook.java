@@ -0,0 +1,394 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.worldfirst.fxorder.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.worldfirst.fxorder.domain.BookDepth;
+import com.worldfirst.fxorder.domain.CurrencyPair;
+import com.worldfirst.fxorder.domain.DepthLevel;
+import com.worldfirst.fxorder.domain.ExecutionReport;
+import com.worldfirst.fxorder.domain.OrderData;
+import com.worldfirst.fxorder.domain.OrderType;
+import com.worldfirst.fxorder.domain.PairStats;
+import com.worldfirst.fxorder.domain.SideStats;
+import com.worldfirst.fxorder.domain.TimeInForce;
+
+/**
+ * Class LimitOrderBook
+ * 
+ * The limit order book of one currency pair with price-time priority. Each side
+ * keeps its price levels sorted best price first and every level is a FIFO
+ * queue. An incoming order crosses the opposite side for as long as its limit
+ * price allows, partially filling resting orders where needed, and its
+ * remaining amount rests in the book. The remaining amount of an IOC order is
+ * dropped instead, and a FOK order only trades if the opposite side holds
+ * enough amount within its limit price to fill it whole.
+ * 
+ * Book orders and price levels are recycled once cancelled, filled or empty,
+ * and the sides and the order index are array based, so resting and
+ * cancelling orders allocates nothing once the book is warm. Only the
+ * execution reports of fills are allocated.
+ * 
+ * A resting order can have its open amount reduced in place, keeping its time
+ * priority. Any other amendment is a cancellation followed by the submission
+ * of the amended order, which may then trade.
+ * 
+ * Every price level keeps its number of orders and open amount and every side
+ * its totals, so the depth and the statistics of the book never walk the
+ * orders.
+ * 
+ * The book is not thread safe, the owner is expected to serialise the calls.
+ * 
+ * @author PM
+ *
+ */
+public final class LimitOrderBook {
+
+	/** The currency pair traded in this book. */
+	private final CurrencyPair pair;
+
+	/** The most book orders and price levels kept for reuse. */
+	private static final int POOL_LIMIT = 65536;
+
+	/** BID price levels, highest price best. */
+	private final BookSide bids = new BookSide(true);
+
+	/** ASK price levels, lowest price best. */
+	private final BookSide asks = new BookSide(false);
+
+	/** The resting orders by order id. */
+	private final OrderIndex orders = new OrderIndex();
+
+	/** The book orders ready for reuse. */
+	private BookOrder[] freeOrders = new BookOrder[64];
+
+	private int freeOrderCount;
+
+	/** The price levels ready for reuse. */
+	private PriceLevel[] freeLevels = new PriceLevel[64];
+
+	private int freeLevelCount;
+
+	/** The last execution id given. */
+	private long lastExecutionId;
+
+	/**
+	 * @param pair
+	 */
+	public LimitOrderBook(CurrencyPair pair) {
+		this.pair = pair;
+	}
+
+	/**
+	 * Matches the order against the opposite side of the book and rests the
+	 * remaining amount, if any, unless the order is immediate.
+	 * 
+	 * @param order the incoming order
+	 * @param listener called back for every execution and filled order
+	 * @return the amount not filled, resting in the book unless the order is
+	 *         immediate
+	 */
+	public long submit(OrderData order, ExecutionListener listener) {
+
+		boolean bid = OrderType.BID == order.getOrderType();
+		BookSide opposite = bid ? asks : bids;
+
+		if (TimeInForce.FOK == order.getTimeInForce()
+				&& available(opposite, bid, order.getPricePips(), order.getAmount()) < order.getAmount()) {
+			return order.getAmount();
+		}
+
+		BookOrder incoming = acquireOrder().init(order);
+		long pricePips = incoming.pricePips;
+
+		while (incoming.remaining > 0 && !opposite.isEmpty()) {
+			PriceLevel level = opposite.best();
+
+			if (bid ? level.pricePips > pricePips : level.pricePips < pricePips) {
+				break;
+			}
+
+			while (incoming.remaining > 0 && !level.isEmpty()) {
+				fill(incoming, level.head, bid, listener);
+			}
+
+			if (level.isEmpty()) {
+				opposite.remove(level);
+				releaseLevel(level);
+			}
+		}
+
+		if (0 == incoming.remaining) {
+			releaseOrder(incoming);
+			listener.onOrderFilled(order);
+			return 0;
+		}
+
+		if (order.getTimeInForce().isImmediate()) {
+			long remaining = incoming.remaining;
+			releaseOrder(incoming);
+			return remaining;
+		}
+
+		BookSide same = bid ? bids : asks;
+		PriceLevel level = same.get(pricePips);
+		if (null == level) {
+			level = acquireLevel().init(pricePips);
+			same.insert(level);
+		}
+		level.append(incoming);
+		same.account(pricePips, 1, incoming.remaining);
+		orders.put(order.getId(), incoming);
+
+		return incoming.remaining;
+	}
+
+	/**
+	 * Removes a resting order from the book.
+	 * 
+	 * @param orderId the order id
+	 * @return the cancelled order or null if it is not resting in the book
+	 */
+	public OrderData cancel(long orderId) {
+
+		BookOrder order = orders.remove(orderId);
+
+		if (null == order) {
+			return null;
+		}
+
+		OrderData cancelled = order.order;
+		PriceLevel level = order.level;
+		BookSide side = OrderType.BID == cancelled.getOrderType() ? bids : asks;
+		side.account(level.pricePips, -1, -order.remaining);
+		level.unlink(order);
+		if (level.isEmpty()) {
+			side.remove(level);
+			releaseLevel(level);
+		}
+		releaseOrder(order);
+
+		return cancelled;
+	}
+
+	/**
+	 * Reduces the open amount of a resting order in place, so it keeps its time
+	 * priority.
+	 * 
+	 * @param orderId the order id
+	 * @param amount the new open amount, from 1 up to the current one
+	 * @return false if the order is not resting in the book
+	 */
+	public boolean reduce(long orderId, long amount) {
+
+		BookOrder order = orders.get(orderId);
+
+		if (null == order) {
+			return false;
+		}
+
+		long reduced = order.remaining - amount;
+		order.remaining = amount;
+		order.level.totalAmount -= reduced;
+		(OrderType.BID == order.order.getOrderType() ? bids : asks).account(order.pricePips, 0, -reduced);
+
+		return true;
+	}
+
+	/**
+	 * @return a copy of the resting order carrying its open amount, or null if
+	 *         it is not resting in the book
+	 */
+	public OrderData resting(long orderId) {
+		BookOrder order = orders.get(orderId);
+		return null == order ? null : copyOf(order);
+	}
+
+	/**
+	 * Appends a copy of every resting order, carrying its open amount, best BID
+	 * levels first then best ASK levels, in time priority within a level.
+	 */
+	public void restingOrders(List<OrderData> into) {
+		collect(bids, into);
+		collect(asks, into);
+	}
+
+	/**
+	 * @return the ids of the orders resting at the price on the side, in time
+	 *         priority, none if the side has no level at the price
+	 */
+	public long[] levelOrders(OrderType side, long pricePips) {
+		PriceLevel level = (OrderType.BID == side ? bids : asks).get(pricePips);
+		if (null == level) {
+			return new long[0];
+		}
+		long[] ids = new long[level.orderCount];
+		int next = 0;
+		for (BookOrder order = level.head; null != order; order = order.next) {
+			ids[next++] = order.order.getId();
+		}
+		return ids;
+	}
+
+	/**
+	 * @return true if the order is resting in the book
+	 */
+	public boolean contains(long orderId) {
+		return null != orders.get(orderId);
+	}
+
+	/**
+	 * @return the number of resting orders
+	 */
+	public int size() {
+		return orders.size();
+	}
+
+	/**
+	 * @return the best BID price in pips or 0 if the side is empty
+	 */
+	public long bestBid() {
+		return bids.bestPrice();
+	}
+
+	/**
+	 * @return the best ASK price in pips or 0 if the side is empty
+	 */
+	public long bestAsk() {
+		return asks.bestPrice();
+	}
+
+	/**
+	 * @return the given number of best price levels of each side, read from the
+	 *         totals of the levels
+	 */
+	public BookDepth depth(int levels) {
+		return new BookDepth(pair, depth(bids, levels), depth(asks, levels));
+	}
+
+	/**
+	 * @return the totals of the resting orders of each side along with the
+	 *         given number of filled orders
+	 */
+	public PairStats stats(long filled) {
+		return new PairStats(pair, filled,
+				new SideStats(pair, bids.orderCount, bids.totalAmount, bids.notional(), bids.bestPrice()),
+				new SideStats(pair, asks.orderCount, asks.totalAmount, asks.notional(), asks.bestPrice()));
+	}
+
+	/**
+	 * @return the pair
+	 */
+	public CurrencyPair getPair() {
+		return pair;
+	}
+
+	// Internal helpers
+
+	/**
+	 * @return the amount of the opposite side within the limit price, counted
+	 *         up to the amount wanted
+	 */
+	private static long available(BookSide opposite, boolean bid, long pricePips, long wanted) {
+		long available = 0;
+		for (int rank = 0; rank < opposite.size() && available < wanted; rank++) {
+			PriceLevel level = opposite.level(rank);
+			if (bid ? level.pricePips > pricePips : level.pricePips < pricePips) {
+				break;
+			}
+			available += level.totalAmount;
+		}
+		return available;
+	}
+
+	private void fill(BookOrder incoming, BookOrder resting, boolean bid, ExecutionListener listener) {
+
+		long amount = Math.min(incoming.remaining, resting.remaining);
+
+		incoming.remaining -= amount;
+		resting.remaining -= amount;
+		resting.level.totalAmount -= amount;
+		BookSide side = bid ? asks : bids;
+		side.account(resting.pricePips, 0 == resting.remaining ? -1 : 0, -amount);
+
+		long bidOrderId = bid ? incoming.order.getId() : resting.order.getId();
+		long askOrderId = bid ? resting.order.getId() : incoming.order.getId();
+
+		listener.onExecution(new ExecutionReport(++lastExecutionId, pair, resting.pricePips, amount, bidOrderId,
+				askOrderId, incoming.order.getOrderType(), incoming.order.getOrderDate()));
+
+		if (0 == resting.remaining) {
+			OrderData filled = resting.order;
+			resting.level.unlink(resting);
+			orders.remove(filled.getId());
+			releaseOrder(resting);
+			listener.onOrderFilled(filled);
+		}
+	}
+
+	private BookOrder acquireOrder() {
+		return 0 == freeOrderCount ? new BookOrder() : freeOrders[--freeOrderCount];
+	}
+
+	private void releaseOrder(BookOrder order) {
+		order.clear();
+		if (freeOrderCount == freeOrders.length && freeOrderCount < POOL_LIMIT) {
+			freeOrders = Arrays.copyOf(freeOrders, freeOrderCount << 1);
+		}
+		if (freeOrderCount < freeOrders.length) {
+			freeOrders[freeOrderCount++] = order;
+		}
+	}
+
+	private PriceLevel acquireLevel() {
+		return 0 == freeLevelCount ? new PriceLevel() : freeLevels[--freeLevelCount];
+	}
+
+	private void releaseLevel(PriceLevel level) {
+		if (freeLevelCount == freeLevels.length && freeLevelCount < POOL_LIMIT) {
+			freeLevels = Arrays.copyOf(freeLevels, freeLevelCount << 1);
+		}
+		if (freeLevelCount < freeLevels.length) {
+			freeLevels[freeLevelCount++] = level;
+		}
+	}
+
+	private List<DepthLevel> depth(BookSide side, int levels) {
+		List<DepthLevel> depth = new ArrayList<DepthLevel>(Math.min(levels, side.size()));
+		for (int rank = 0; rank < side.size() && rank < levels; rank++) {
+			PriceLevel level = side.level(rank);
+			depth.add(new DepthLevel(pair, level.pricePips, level.orderCount, level.totalAmount));
+		}
+		return depth;
+	}
+
+	private static void collect(BookSide side, List<OrderData> into) {
+		for (int rank = 0; rank < side.size(); rank++) {
+			PriceLevel level = side.level(rank);
+			for (BookOrder order = level.head; null != order; order = order.next) {
+				into.add(copyOf(order));
+			}
+		}
+	}
+
+	private static OrderData copyOf(BookOrder order) {
+		OrderData data = order.order;
+		OrderData copy = new OrderData(data.getId(), data.getPair(), data.getPricePips(), order.remaining,
+				data.getOrderType(), data.getOrderDate());
+		copy.setSequence(data.getSequence());
+		copy.setTimeInForce(data.getTimeInForce());
+		copy.setExpireTime(data.getExpireTime());
+		return copy;
+	}
+
+}
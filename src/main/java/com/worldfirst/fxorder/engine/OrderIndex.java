@@ -0,0 +1,124 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.engine;
+
+/**
+ * Class OrderIndex
+ *
+ * The resting orders of a {@link LimitOrderBook} by order id, in an open
+ * addressing table with linear probing keyed by the primitive order id.
+ * Unlike a HashMap, putting an order allocates no boxed key nor entry, and
+ * removing one shifts the following entries of its probe sequence back
+ * instead of leaving a tombstone.
+ *
+ * @author PM
+ *
+ */
+final class OrderIndex {
+
+	private long[] keys = new long[64];
+
+	/** The order of every slot, null for a free slot. */
+	private BookOrder[] values = new BookOrder[64];
+
+	private int size;
+
+	int size() {
+		return size;
+	}
+
+	BookOrder get(long orderId) {
+		for (int index = slot(orderId);; index = next(index)) {
+			if (null == values[index]) {
+				return null;
+			}
+			if (keys[index] == orderId) {
+				return values[index];
+			}
+		}
+	}
+
+	void put(long orderId, BookOrder order) {
+		// Kept at most half full
+		if (size << 1 >= keys.length) {
+			resize(keys.length << 1);
+		}
+		int index = slot(orderId);
+		while (null != values[index] && keys[index] != orderId) {
+			index = next(index);
+		}
+		if (null == values[index]) {
+			size++;
+		}
+		keys[index] = orderId;
+		values[index] = order;
+	}
+
+	/**
+	 * @return the removed order, or null if the index did not hold it
+	 */
+	BookOrder remove(long orderId) {
+		int index = slot(orderId);
+		while (null != values[index] && keys[index] != orderId) {
+			index = next(index);
+		}
+		BookOrder order = values[index];
+		if (null == order) {
+			return null;
+		}
+
+		size--;
+
+		// Shift back the entries probed past the freed slot
+		int free = index;
+		for (int current = next(free); null != values[current]; current = next(current)) {
+			int home = slot(keys[current]);
+			boolean reachable = free <= current ? free < home && home <= current : free < home || home <= current;
+			if (!reachable) {
+				keys[free] = keys[current];
+				values[free] = values[current];
+				free = current;
+			}
+		}
+		values[free] = null;
+
+		return order;
+	}
+
+	// Internal helpers
+
+	private int slot(long orderId) {
+		long hash = orderId * 0x9E3779B97F4A7C15L;
+		return (int) (hash ^ hash >>> 32) & (keys.length - 1);
+	}
+
+	private int next(int index) {
+		return (index + 1) & (keys.length - 1);
+	}
+
+	private void resize(int capacity) {
+		long[] oldKeys = keys;
+		BookOrder[] oldValues = values;
+		keys = new long[capacity];
+		values = new BookOrder[capacity];
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (null != oldValues[i]) {
+				int index = slot(oldKeys[i]);
+				while (null != values[index]) {
+					index = next(index);
+				}
+				keys[index] = oldKeys[i];
+				values[index] = oldValues[i];
+			}
+		}
+	}
+
+}
@@ -0,0 +1,91 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.engine;
+
+/**
+ * Class PriceLevel
+ * 
+ * The FIFO queue of the orders resting at the same price on one side of a
+ * {@link LimitOrderBook}. The head of the queue has time priority.
+ * 
+ * Price levels are recycled by their book once empty.
+ * 
+ * @author PM
+ *
+ */
+final class PriceLevel {
+
+	/** The price of the level in pips. */
+	long pricePips;
+
+	/** The oldest order of the level. */
+	BookOrder head;
+
+	/** The newest order of the level. */
+	BookOrder tail;
+
+	/** The number of resting orders. */
+	int orderCount;
+
+	/** The sum of the open amounts. */
+	long totalAmount;
+
+	PriceLevel init(long pricePips) {
+		this.pricePips = pricePips;
+		return this;
+	}
+
+	/**
+	 * Appends the order at the back of the queue.
+	 */
+	void append(BookOrder order) {
+		order.level = this;
+		order.prev = tail;
+		order.next = null;
+		if (null == tail) {
+			head = order;
+		} else {
+			tail.next = order;
+		}
+		tail = order;
+		orderCount++;
+		totalAmount += order.remaining;
+	}
+
+	/**
+	 * Unlinks the order from the queue in O(1).
+	 */
+	void unlink(BookOrder order) {
+		if (null == order.prev) {
+			head = order.next;
+		} else {
+			order.prev.next = order.next;
+		}
+		if (null == order.next) {
+			tail = order.prev;
+		} else {
+			order.next.prev = order.prev;
+		}
+		order.prev = null;
+		order.next = null;
+		order.level = null;
+		orderCount--;
+		totalAmount -= order.remaining;
+	}
+
+	/**
+	 * @return true if no order rests at this price any more
+	 */
+	boolean isEmpty() {
+		return null == head;
+	}
+
+}
@@ -10,10 +10,14 @@
 
 package com.worldfirst.fxorder.exception;
 
+import com.worldfirst.fxorder.domain.RejectReason;
+
 /**
  * Class InvalidInputException
  * 
- * It is used for any invalid input parameter related exception
+ * It is used for any invalid input parameter related exception. It carries
+ * no stack trace, as it reports bad input rather than a fault, so rejecting
+ * a flood of bad requests costs no stack walk.
  * 
  * @author PM
  *
@@ -26,10 +30,29 @@ public class InvalidInputException extends ServiceException {
 	 */
 	private static final long serialVersionUID = 1381320130022416598L;
 
+	/** The reason of the rejection of an order. */
+	private final RejectReason reason;
+
 	/**
 	 * Constructor.
 	 */
 	public InvalidInputException(String message) {
-		super(message);
+		this(null, message);
+	}
+
+	/**
+	 * Constructor of the rejection of an order.
+	 */
+	public InvalidInputException(RejectReason reason, String message) {
+		super(message, false);
+		this.reason = reason;
+	}
+
+	/**
+	 * @return the reason an order was rejected, null if the input is not an
+	 *         order
+	 */
+	public RejectReason getReason() {
+		return reason;
 	}
 }
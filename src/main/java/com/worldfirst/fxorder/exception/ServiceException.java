@@ -37,6 +37,15 @@ public class ServiceException extends RuntimeException {
         this.message = message;
     }
 
+    /**
+	 * Constructor of an exception without a stack trace when
+	 * writableStackTrace is false.
+	 */
+    protected ServiceException(final String message, final boolean writableStackTrace) {
+        super(null, null, false, writableStackTrace);
+        this.message = message;
+    }
+
 	/**
 	 * @return the message
 	 */
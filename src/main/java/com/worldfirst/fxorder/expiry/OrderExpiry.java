@@ -0,0 +1,224 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.expiry;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Component;
+
+import com.worldfirst.fxorder.metrics.OrderMetrics;
+
+/**
+ * Class OrderExpiry
+ *
+ * It removes the DAY and GTD orders from the order store once their expire
+ * time is reached. The trading services schedule every resting order having
+ * an expire time in a {@link TimingWheel} and unschedule it once cancelled or
+ * filled, so expiry never scans the store.
+ *
+ * Every fxorder.expiry.tick-ms a background thread advances the wheel and
+ * cancels the expired orders through the canceller given to start(), in
+ * batches of up to fxorder.expiry.batch-size orders, so the expired orders
+ * go through the ingestion pipeline and the journal like any cancellation.
+ *
+ * It depends on the ingestion pipeline so that it is stopped before the
+ * pipeline on shut down.
+ *
+ * @author PM
+ *
+ */
+
+@Component
+@DependsOn("orderIngestionPipeline")
+public class OrderExpiry {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(OrderExpiry.class);
+
+	@Autowired
+	private OrderMetrics metrics;
+
+	@Value("${fxorder.expiry.tick-ms:100}")
+	private long tickMs;
+
+	@Value("${fxorder.expiry.batch-size:1024}")
+	private int batchSize;
+
+	private TimingWheel wheel;
+
+	/** The ids fired by the last advance of the wheel. */
+	private long[] due = new long[64];
+
+	private int dueCount;
+
+	private Function<long[], boolean[]> canceller;
+
+	private ScheduledExecutorService scheduler;
+
+	/** Held while a sweep runs, so sweeps never overlap. */
+	private final Object sweeping = new Object();
+
+	private final AtomicLong expiredOrders = new AtomicLong();
+
+	private final AtomicLong sweeps = new AtomicLong();
+
+	@PostConstruct
+	public void init() {
+		wheel = new TimingWheel(tickMs, System.currentTimeMillis());
+		metrics.gauge("fxorder.expiry.scheduled.orders", "Orders waiting to expire", this::scheduledOrders);
+		metrics.counter("fxorder.expired.orders", "Orders cancelled on expiry", expiredOrders::get);
+	}
+
+	/**
+	 * Starts expiring orders, it is called once by the active trading service
+	 * after its order store is recovered.
+	 *
+	 * @param canceller
+	 *            cancels a batch of orders, returning true at the index of
+	 *            every order which existed
+	 */
+	public synchronized void start(Function<long[], boolean[]> canceller) {
+		this.canceller = canceller;
+		scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "fxorder-expiry");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.scheduleWithFixedDelay(this::scheduledSweep, tickMs, tickMs, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops the background thread.
+	 */
+	@PreDestroy
+	public synchronized void stop() throws InterruptedException {
+		if (null != scheduler) {
+			scheduler.shutdown();
+			scheduler.awaitTermination(30, TimeUnit.SECONDS);
+			scheduler = null;
+		}
+	}
+
+	/**
+	 * Schedules the order to expire at the given time, replacing any expire
+	 * time it had.
+	 */
+	public void schedule(long orderId, long expireTime) {
+		synchronized (wheel) {
+			wheel.schedule(orderId, expireTime);
+		}
+	}
+
+	/**
+	 * Forgets the order, it is called once the order left the store.
+	 */
+	public void cancel(long orderId) {
+		synchronized (wheel) {
+			wheel.cancel(orderId);
+		}
+	}
+
+	/**
+	 * Cancels the orders whose expire time is reached at the given time.
+	 *
+	 * @return the number of orders cancelled
+	 */
+	public int expire(long nowMillis) {
+		synchronized (sweeping) {
+			synchronized (wheel) {
+				dueCount = 0;
+				wheel.advance(nowMillis, this::collect);
+			}
+			sweeps.incrementAndGet();
+
+			// The wheel is not locked while cancelling, as the writers unschedule
+			int cancelled = 0;
+			for (int from = 0; from < dueCount; from += batchSize) {
+				long[] batch = Arrays.copyOfRange(due, from, Math.min(dueCount, from + batchSize));
+				boolean[] done;
+				try {
+					done = canceller.apply(batch);
+				} catch (RuntimeException e) {
+					retry(from, nowMillis);
+					throw e;
+				}
+				for (boolean expired : done) {
+					cancelled += expired ? 1 : 0;
+				}
+			}
+			expiredOrders.addAndGet(cancelled);
+			return cancelled;
+		}
+	}
+
+	/**
+	 * @return the number of orders waiting to expire and of orders expired so
+	 *         far
+	 */
+	public Map<String, Object> stats() {
+		Map<String, Object> stats = new LinkedHashMap<String, Object>();
+		stats.put("scheduledOrders", scheduledOrders());
+		stats.put("expiredOrders", expiredOrders.get());
+		stats.put("sweeps", sweeps.get());
+		stats.put("tickMillis", tickMs);
+		return stats;
+	}
+
+	// Internal helpers
+
+	private long scheduledOrders() {
+		synchronized (wheel) {
+			return wheel.size();
+		}
+	}
+
+	private void collect(long orderId) {
+		if (dueCount == due.length) {
+			due = Arrays.copyOf(due, dueCount << 1);
+		}
+		due[dueCount++] = orderId;
+	}
+
+	/**
+	 * Schedules again the orders of the last sweep not cancelled yet, so the
+	 * next sweep retries them.
+	 */
+	private void retry(int from, long nowMillis) {
+		synchronized (wheel) {
+			for (int i = from; i < dueCount; i++) {
+				wheel.schedule(due[i], nowMillis);
+			}
+		}
+	}
+
+	private void scheduledSweep() {
+		try {
+			expire(System.currentTimeMillis());
+		} catch (RuntimeException e) {
+			LOGGER.error("Expired orders could not be cancelled", e);
+		}
+	}
+
+}
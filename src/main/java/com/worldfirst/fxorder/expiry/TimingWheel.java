@@ -0,0 +1,318 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.expiry;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Class TimingWheel
+ *
+ * A hierarchical timing wheel of order ids by expire time. Time is cut in
+ * ticks of tickMs and the wheel has LEVELS levels of SLOTS slots, a slot of
+ * level L spanning SLOTS^L ticks, so about 68 billion ticks are covered with
+ * 384 slots. An id is put in the slot of the highest level where its deadline
+ * and the current tick differ, and moved down a level each time the wheel
+ * reaches its slot, until it fires from level 0. Scheduling and cancelling
+ * are O(1) and advancing the wheel costs one slot per tick plus the cascades,
+ * whatever the number of ids waiting.
+ *
+ * The ids are kept in primitive arrays linked per slot and indexed by id, so
+ * an id can be cancelled or scheduled again without any allocation once the
+ * arrays have grown.
+ *
+ * It is not thread safe, the owner is expected to serialise the calls.
+ *
+ * @author PM
+ *
+ */
+final class TimingWheel {
+
+	private static final int NONE = -1;
+
+	private static final int SLOT_BITS = 6;
+
+	static final int SLOTS = 1 << SLOT_BITS;
+
+	static final int LEVELS = 6;
+
+	private static final int MASK = SLOTS - 1;
+
+	/** The furthest deadline in ticks from the current tick. */
+	private static final long MAX_TICKS = (1L << (SLOT_BITS * LEVELS)) - 1;
+
+	private final long tickMs;
+
+	/** The current tick, every deadline up to it has fired. */
+	private long now;
+
+	/** The first entry of every slot, level by level. */
+	private final int[] heads = new int[LEVELS * SLOTS];
+
+	private long[] ids = new long[64];
+
+	/** The deadline of every entry in ticks. */
+	private long[] deadlines = new long[64];
+
+	/** The slot holding every entry, NONE for a free entry. */
+	private int[] slots = new int[64];
+
+	private int[] next = new int[64];
+
+	private int[] prev = new int[64];
+
+	/** The first free entry, linked through next. */
+	private int free = NONE;
+
+	/** The number of entries ever used, free ones included. */
+	private int highWater;
+
+	/** The entry of every id plus one, 0 for a free cell, by id hash. */
+	private long[] indexKeys = new long[128];
+
+	private int[] indexEntries = new int[128];
+
+	private int size;
+
+	/**
+	 * @param tickMs
+	 *            the resolution of the wheel in milliseconds
+	 * @param startMillis
+	 *            the current time
+	 */
+	TimingWheel(long tickMs, long startMillis) {
+		if (tickMs < 1) {
+			throw new IllegalArgumentException("Tick must be at least 1 ms: " + tickMs);
+		}
+		this.tickMs = tickMs;
+		this.now = startMillis / tickMs;
+		Arrays.fill(heads, NONE);
+	}
+
+	/**
+	 * Schedules the id to fire once the time reaches expireMillis, replacing
+	 * any deadline it had. A deadline already passed fires on the next tick.
+	 */
+	void schedule(long id, long expireMillis) {
+		cancel(id);
+
+		int entry = allocate();
+		ids[entry] = id;
+		deadlines[entry] = Math.max(now + 1, (expireMillis + tickMs - 1) / tickMs);
+		insert(entry);
+		index(id, entry);
+		size++;
+	}
+
+	/**
+	 * @return true if the id was scheduled
+	 */
+	boolean cancel(long id) {
+		int entry = unindex(id);
+		if (NONE == entry) {
+			return false;
+		}
+		unlink(entry);
+		release(entry);
+		size--;
+		return true;
+	}
+
+	/**
+	 * Moves the wheel to the given time, the ids whose deadline is reached
+	 * being handed to the consumer and forgotten.
+	 *
+	 * @return the number of ids fired
+	 */
+	int advance(long nowMillis, LongConsumer expired) {
+		long target = nowMillis / tickMs;
+		int fired = 0;
+
+		while (now < target) {
+			// Nothing to move or fire until the target
+			if (0 == size) {
+				now = target;
+				break;
+			}
+
+			now++;
+			int slot = (int) (now & MASK);
+			if (0 == slot) {
+				cascade();
+			}
+
+			int entry = heads[slot];
+			heads[slot] = NONE;
+			while (NONE != entry) {
+				int following = next[entry];
+				if (deadlines[entry] <= now) {
+					unindex(ids[entry]);
+					expired.accept(ids[entry]);
+					release(entry);
+					size--;
+					fired++;
+				} else {
+					insert(entry);
+				}
+				entry = following;
+			}
+		}
+
+		return fired;
+	}
+
+	/**
+	 * @return the number of ids scheduled
+	 */
+	int size() {
+		return size;
+	}
+
+	// Internal helpers
+
+	/**
+	 * Moves down the entries of the slots the wheel has just reached on the
+	 * upper levels, a level being reached when every level below wraps round.
+	 */
+	private void cascade() {
+		for (int level = 1; level < LEVELS; level++) {
+			int slot = (int) ((now >>> (SLOT_BITS * level)) & MASK);
+			int index = level * SLOTS + slot;
+			int entry = heads[index];
+			heads[index] = NONE;
+			while (NONE != entry) {
+				int following = next[entry];
+				insert(entry);
+				entry = following;
+			}
+			if (0 != slot) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Links the entry into the slot of the highest level where its deadline
+	 * and the current tick differ, level 0 when it is due within the current
+	 * level 0 round.
+	 */
+	private void insert(int entry) {
+		long deadline = Math.max(now, Math.min(deadlines[entry], now + MAX_TICKS));
+		long differing = deadline ^ now;
+		int level = 0;
+		while (level < LEVELS - 1 && 0 != differing >>> (SLOT_BITS * (level + 1))) {
+			level++;
+		}
+		int index = level * SLOTS + (int) ((deadline >>> (SLOT_BITS * level)) & MASK);
+
+		slots[entry] = index;
+		prev[entry] = NONE;
+		next[entry] = heads[index];
+		if (NONE != heads[index]) {
+			prev[heads[index]] = entry;
+		}
+		heads[index] = entry;
+	}
+
+	private void unlink(int entry) {
+		if (NONE == prev[entry]) {
+			heads[slots[entry]] = next[entry];
+		} else {
+			next[prev[entry]] = next[entry];
+		}
+		if (NONE != next[entry]) {
+			prev[next[entry]] = prev[entry];
+		}
+	}
+
+	private int allocate() {
+		int entry = free;
+		if (NONE != entry) {
+			free = next[entry];
+			return entry;
+		}
+		if (highWater == ids.length) {
+			int capacity = highWater << 1;
+			ids = Arrays.copyOf(ids, capacity);
+			deadlines = Arrays.copyOf(deadlines, capacity);
+			slots = Arrays.copyOf(slots, capacity);
+			next = Arrays.copyOf(next, capacity);
+			prev = Arrays.copyOf(prev, capacity);
+		}
+		return highWater++;
+	}
+
+	private void release(int entry) {
+		slots[entry] = NONE;
+		next[entry] = free;
+		free = entry;
+	}
+
+	private int cell(long id) {
+		long hash = id * 0x9E3779B97F4A7C15L;
+		return (int) (hash ^ hash >>> 32) & (indexKeys.length - 1);
+	}
+
+	private void index(long id, int entry) {
+		// Kept at most half full
+		if (size << 1 >= indexKeys.length) {
+			long[] oldKeys = indexKeys;
+			int[] oldEntries = indexEntries;
+			indexKeys = new long[oldKeys.length << 1];
+			indexEntries = new int[oldKeys.length << 1];
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (0 != oldEntries[i]) {
+					put(oldKeys[i], oldEntries[i]);
+				}
+			}
+		}
+		put(id, entry + 1);
+	}
+
+	private void put(long id, int value) {
+		int cell = cell(id);
+		while (0 != indexEntries[cell]) {
+			cell = (cell + 1) & (indexKeys.length - 1);
+		}
+		indexKeys[cell] = id;
+		indexEntries[cell] = value;
+	}
+
+	/**
+	 * @return the entry the id was indexed to, NONE if it was not
+	 */
+	private int unindex(long id) {
+		int mask = indexKeys.length - 1;
+		int cell = cell(id);
+		while (0 != indexEntries[cell] && indexKeys[cell] != id) {
+			cell = (cell + 1) & mask;
+		}
+		int entry = indexEntries[cell] - 1;
+		if (NONE == entry) {
+			return NONE;
+		}
+
+		// Shift back the cells probed past the freed one
+		int hole = cell;
+		for (int current = (hole + 1) & mask; 0 != indexEntries[current]; current = (current + 1) & mask) {
+			int home = cell(indexKeys[current]);
+			boolean reachable = hole <= current ? hole < home && home <= current : hole < home || home <= current;
+			if (!reachable) {
+				indexKeys[hole] = indexKeys[current];
+				indexEntries[hole] = indexEntries[current];
+				hole = current;
+			}
+		}
+		indexEntries[hole] = 0;
+		return entry;
+	}
+
+}
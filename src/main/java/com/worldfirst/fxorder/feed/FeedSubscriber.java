@@ -0,0 +1,124 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.worldfirst.fxorder.feed;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.worldfirst.fxorder.domain.CurrencyPair;
+
+/**
+ * Class FeedSubscriber
+ * 
+ * A subscriber of the {@link OrderFeed} along with its bounded buffer of
+ * pending events.
+ * 
+ * Pending events are conflated per order, a new event of an order replacing
+ * the pending one, so a slow subscriber receives the latest state of every
+ * order rather than its whole history. When the buffer still overflows the
+ * pending events are dropped and a single RESYNC event is sent instead.
+ * 
+ * @author PM
+ *
+ */
+final class FeedSubscriber {
+
+	private final SseEmitter emitter;
+
+	/** The currency pair subscribed to, null for every pair. */
+	private final CurrencyPair pair;
+
+	private final int capacity;
+
+	/** The pending events by order id, oldest first. */
+	private final Map<Long, OrderFeedEvent> pending = new LinkedHashMap<Long, OrderFeedEvent>();
+
+	/** True when events were dropped since the last drain. */
+	private boolean resync;
+
+	/** True while a dispatcher is due to drain the buffer. */
+	private boolean scheduled;
+
+	private long conflated;
+
+	private long dropped;
+
+	FeedSubscriber(SseEmitter emitter, CurrencyPair pair, int capacity) {
+		this.emitter = emitter;
+		this.pair = pair;
+		this.capacity = capacity;
+	}
+
+	SseEmitter emitter() {
+		return emitter;
+	}
+
+	/**
+	 * Buffers an event, unless it is for another currency pair.
+	 * 
+	 * @return true if the subscriber has to be handed to a dispatcher
+	 */
+	synchronized boolean offer(OrderFeedEvent event) {
+		if (null != pair && pair != event.getOrder().getPair()) {
+			return false;
+		}
+
+		if (null != pending.remove(event.getOrder().getId())) {
+			conflated++;
+		}
+		pending.put(event.getOrder().getId(), event);
+
+		if (pending.size() > capacity) {
+			dropped += pending.size();
+			pending.clear();
+			resync = true;
+		}
+
+		if (scheduled) {
+			return false;
+		}
+		scheduled = true;
+		return true;
+	}
+
+	/**
+	 * Takes the pending events, RESYNC first when events were dropped. Once
+	 * the buffer is found empty the subscriber is no longer scheduled.
+	 */
+	synchronized List<OrderFeedEvent> drain() {
+		if (pending.isEmpty() && !resync) {
+			scheduled = false;
+			return Collections.emptyList();
+		}
+
+		List<OrderFeedEvent> events = new ArrayList<OrderFeedEvent>(pending.size() + 1);
+		if (resync) {
+			events.add(new OrderFeedEvent(OrderFeedEvent.Type.RESYNC, null));
+			resync = false;
+		}
+		events.addAll(pending.values());
+		pending.clear();
+		return events;
+	}
+
+	synchronized long conflated() {
+		return conflated;
+	}
+
+	synchronized long dropped() {
+		return dropped;
+	}
+
+}
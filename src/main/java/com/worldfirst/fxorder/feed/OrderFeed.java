@@ -0,0 +1,216 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.worldfirst.fxorder.feed;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.worldfirst.fxorder.domain.CurrencyPair;
+import com.worldfirst.fxorder.domain.OrderData;
+import com.worldfirst.fxorder.exception.InvalidInputException;
+import com.worldfirst.fxorder.repository.OrderStoreListener;
+import com.worldfirst.fxorder.service.CurrencyPairRegistry;
+
+/**
+ * Class OrderFeed
+ *
+ * It pushes the changes of the order store to its subscribers as server-sent
+ * events, ADDED, CANCELLED, AMENDED, MATCHED and UNMATCHED with the order as
+ * JSON data.
+ *
+ * A change is only buffered by the thread applying it, so publishing never
+ * waits for a subscriber. The buffers are drained and written to the
+ * subscribers by fxorder.feed.threads dispatcher threads, a subscriber being
+ * drained by one dispatcher at a time. Every subscriber has its own buffer of
+ * fxorder.feed.buffer-size orders, see {@link FeedSubscriber} for how a slow
+ * subscriber is conflated.
+ *
+ * @author PM
+ *
+ */
+
+@Component
+public class OrderFeed implements OrderStoreListener {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(OrderFeed.class);
+
+	@Autowired
+	private CurrencyPairRegistry pairs;
+
+	@Value("${fxorder.feed.buffer-size:1024}")
+	private int bufferSize;
+
+	@Value("${fxorder.feed.threads:2}")
+	private int threads;
+
+	@Value("${fxorder.feed.timeout-ms:1800000}")
+	private long timeoutMs;
+
+	private final List<FeedSubscriber> subscribers = new CopyOnWriteArrayList<FeedSubscriber>();
+
+	private final AtomicLong published = new AtomicLong();
+
+	private final AtomicLong sent = new AtomicLong();
+
+	private ExecutorService dispatchers;
+
+	@PostConstruct
+	public void start() {
+		AtomicInteger count = new AtomicInteger();
+		dispatchers = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+			Thread thread = new Thread(runnable, "fxorder-feed-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	@PreDestroy
+	public void stop() {
+		dispatchers.shutdownNow();
+		for (FeedSubscriber subscriber : subscribers) {
+			subscriber.emitter().complete();
+		}
+		subscribers.clear();
+	}
+
+	/**
+	 * Subscribes to the changes of the orders of a currency pair, or of every
+	 * pair when none is given.
+	 *
+	 * @return the emitter to be returned by the controller
+	 * @throws InvalidInputException
+	 *             if the currency pair is not supported
+	 */
+	public SseEmitter subscribe(String currency) throws InvalidInputException {
+
+		CurrencyPair pair = null;
+		if (null != currency && !currency.trim().isEmpty()) {
+			pair = pairs.lookup(currency.trim());
+			if (null == pair) {
+				throw new InvalidInputException("You have entered invalid currency pair!");
+			}
+		}
+
+		SseEmitter emitter = new SseEmitter(timeoutMs);
+		FeedSubscriber subscriber = new FeedSubscriber(emitter, pair, bufferSize);
+		emitter.onCompletion(() -> subscribers.remove(subscriber));
+		emitter.onTimeout(() -> subscribers.remove(subscriber));
+		subscribers.add(subscriber);
+		return emitter;
+	}
+
+	/**
+	 * @return the number of subscribers, events published, sent, conflated
+	 *         and dropped
+	 */
+	public Map<String, Object> stats() {
+		long conflated = 0;
+		long dropped = 0;
+		for (FeedSubscriber subscriber : subscribers) {
+			conflated += subscriber.conflated();
+			dropped += subscriber.dropped();
+		}
+
+		Map<String, Object> stats = new LinkedHashMap<String, Object>();
+		stats.put("subscribers", subscribers.size());
+		stats.put("published", published.get());
+		stats.put("sent", sent.get());
+		stats.put("conflated", conflated);
+		stats.put("dropped", dropped);
+		return stats;
+	}
+
+	@Override
+	public void onAdded(OrderData order) {
+		publish(OrderFeedEvent.Type.ADDED, order);
+	}
+
+	@Override
+	public void onCancelled(OrderData order) {
+		publish(OrderFeedEvent.Type.CANCELLED, order);
+	}
+
+	@Override
+	public void onAmended(OrderData order) {
+		publish(OrderFeedEvent.Type.AMENDED, order);
+	}
+
+	@Override
+	public void onMatched(OrderData order) {
+		publish(OrderFeedEvent.Type.MATCHED, order);
+	}
+
+	@Override
+	public void onUnmatched(OrderData order) {
+		publish(OrderFeedEvent.Type.UNMATCHED, order);
+	}
+
+	// Internal helpers
+
+	private void publish(OrderFeedEvent.Type type, OrderData order) {
+		if (subscribers.isEmpty()) {
+			return;
+		}
+
+		published.incrementAndGet();
+		OrderFeedEvent event = new OrderFeedEvent(type, order);
+		for (FeedSubscriber subscriber : subscribers) {
+			if (subscriber.offer(event)) {
+				dispatchers.execute(() -> dispatch(subscriber));
+			}
+		}
+	}
+
+	/**
+	 * Writes the pending events of the subscriber until its buffer is empty.
+	 */
+	private void dispatch(FeedSubscriber subscriber) {
+		List<OrderFeedEvent> events = subscriber.drain();
+		while (!events.isEmpty()) {
+			try {
+				for (OrderFeedEvent event : events) {
+					SseEmitter.SseEventBuilder message = SseEmitter.event().name(event.getType().name());
+					if (null == event.getOrder()) {
+						message.data("");
+					} else {
+						message.data(event.getOrder(), MediaType.APPLICATION_JSON);
+					}
+					subscriber.emitter().send(message);
+					sent.incrementAndGet();
+				}
+			} catch (IOException | IllegalStateException e) {
+				LOGGER.debug("++++++++++++++++++++++++++++: " + e.getMessage());
+				subscribers.remove(subscriber);
+				subscriber.emitter().completeWithError(e);
+				return;
+			}
+			events = subscriber.drain();
+		}
+	}
+
+}
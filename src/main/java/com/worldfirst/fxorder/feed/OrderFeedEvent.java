@@ -0,0 +1,68 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.worldfirst.fxorder.feed;
+
+import com.worldfirst.fxorder.domain.OrderData;
+
+/**
+ * Class OrderFeedEvent
+ * 
+ * The model class to represent a change of the order store pushed to the
+ * feed subscribers.
+ * 
+ * @author PM
+ *
+ */
+public final class OrderFeedEvent {
+
+	/** The kind of change. */
+	public enum Type {
+		/** A new order, matched or not. */
+		ADDED,
+		/** A cancelled order. */
+		CANCELLED,
+		/** An order whose price or amount was amended, matched or not. */
+		AMENDED,
+		/** An order now matched. */
+		MATCHED,
+		/** A matched order now unmatched. */
+		UNMATCHED,
+		/** Events were dropped, the subscriber has to reload the orders. */
+		RESYNC
+	}
+
+	private final Type type;
+
+	private final OrderData order;
+
+	/**
+	 * @param type
+	 * @param order null for RESYNC
+	 */
+	public OrderFeedEvent(Type type, OrderData order) {
+		this.type = type;
+		this.order = order;
+	}
+
+	/**
+	 * @return the type
+	 */
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * @return the order
+	 */
+	public OrderData getOrder() {
+		return order;
+	}
+
+}
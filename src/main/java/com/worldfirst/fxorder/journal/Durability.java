@@ -0,0 +1,33 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.journal;
+
+/**
+ * Enum Durability
+ * 
+ * When the journal forces its records to disk, selected by
+ * fxorder.journal.durability
+ * 
+ * NONE: records reach the operating system every few milliseconds and are
+ * never forced, a power loss can lose whatever the page cache held.
+ * 
+ * BATCH: records are forced every fxorder.journal.batch-interval-ms by a
+ * background thread, a crash loses at most that window.
+ * 
+ * PER_EVENT: an order or cancellation is acknowledged once its record is
+ * forced, concurrent events share the same force (group commit).
+ * 
+ * @author PM
+ *
+ */
+public enum Durability {
+	NONE, BATCH, PER_EVENT
+}
@@ -0,0 +1,220 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.journal;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+import com.worldfirst.fxorder.domain.OrderData;
+import com.worldfirst.fxorder.domain.OrderType;
+import com.worldfirst.fxorder.domain.TimeInForce;
+
+/**
+ * Class JournalRecord
+ * 
+ * The binary layout shared by the journal segments and the snapshots. Every
+ * record is framed as
+ * 
+ * int body length, int CRC32 of the body, body
+ * 
+ * and its body starts with a type byte and a long. The long is the log
+ * sequence number of ADD, CANCEL and AMEND records, the order arrival
+ * sequence of ORDER records and the number of orders of the END record
+ * closing a snapshot. ADD and ORDER bodies go on with the long order id, the
+ * currency pair symbol, the price in pips, the amount, the side, the order
+ * date, the time in force and the expire time, CANCEL bodies with the long
+ * order id only and AMEND bodies with the long order id, the new price in
+ * pips and the new amount, 0 for unchanged. Strings are a short length
+ * followed by UTF-8 bytes.
+ * 
+ * An instance holds the fields of the last decoded record.
+ * 
+ * @author PM
+ *
+ */
+final class JournalRecord {
+
+	static final byte ADD = 1;
+
+	static final byte CANCEL = 2;
+
+	static final byte ORDER = 3;
+
+	static final byte END = 4;
+
+	static final byte AMEND = 5;
+
+	/** The length and checksum preceding every body. */
+	static final int FRAME = 8;
+
+	/** The largest body accepted when reading, anything bigger is corruption. */
+	static final int MAX_BODY = 1 << 18;
+
+	private static final OrderType[] SIDES = OrderType.values();
+
+	private static final TimeInForce[] TERMS = TimeInForce.values();
+
+	byte type;
+
+	long number;
+
+	long id;
+
+	String symbol;
+
+	long pricePips;
+
+	long amount;
+
+	OrderType side;
+
+	long orderDate;
+
+	TimeInForce timeInForce;
+
+	long expireTime;
+
+	/**
+	 * @return the framed size of a record, symbol being null for CANCEL, AMEND
+	 *         and END
+	 */
+	static int size(byte type, byte[] symbol) {
+		int size = FRAME + 1 + 8;
+		if (END != type) {
+			size += 8;
+		}
+		if (AMEND == type) {
+			size += 8 + 8;
+		}
+		if (null != symbol) {
+			size += 2 + symbol.length + 8 + 8 + 1 + 8 + 1 + 8;
+		}
+		return size;
+	}
+
+	/**
+	 * Encodes a framed record at the position of the buffer, which must have
+	 * size() bytes remaining, id being ignored for END.
+	 */
+	static void write(ByteBuffer buffer, CRC32 crc, byte type, long number, long id, byte[] symbol,
+			OrderData order) {
+		int start = buffer.position();
+		buffer.position(start + FRAME);
+		buffer.put(type);
+		buffer.putLong(number);
+		if (END != type) {
+			buffer.putLong(id);
+		}
+		if (null != order) {
+			putString(buffer, symbol);
+			buffer.putLong(order.getPricePips());
+			buffer.putLong(order.getAmount());
+			buffer.put((byte) order.getOrderType().ordinal());
+			buffer.putLong(order.getOrderDate());
+			buffer.put((byte) order.getTimeInForce().ordinal());
+			buffer.putLong(order.getExpireTime());
+		}
+		frame(buffer, crc, start);
+	}
+
+	/**
+	 * Encodes a framed AMEND record at the position of the buffer, which must
+	 * have size(AMEND, null) bytes remaining.
+	 */
+	static void writeAmend(ByteBuffer buffer, CRC32 crc, long number, long id, long pricePips, long amount) {
+		int start = buffer.position();
+		buffer.position(start + FRAME);
+		buffer.put(AMEND);
+		buffer.putLong(number);
+		buffer.putLong(id);
+		buffer.putLong(pricePips);
+		buffer.putLong(amount);
+		frame(buffer, crc, start);
+	}
+
+	/**
+	 * @return the UTF-8 bytes of a symbol
+	 * @throws IllegalArgumentException
+	 *             if they do not fit a record
+	 */
+	static byte[] bytes(String value) {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length > Short.MAX_VALUE) {
+			throw new IllegalArgumentException("Value too long to be journaled: " + bytes.length + " bytes");
+		}
+		return bytes;
+	}
+
+	/**
+	 * Decodes the body of a record whose checksum was verified.
+	 */
+	void read(ByteBuffer body) {
+		type = body.get();
+		number = body.getLong();
+		id = 0;
+		symbol = null;
+		if (ADD == type || ORDER == type || CANCEL == type || AMEND == type) {
+			id = body.getLong();
+		}
+		if (AMEND == type) {
+			pricePips = body.getLong();
+			amount = body.getLong();
+		}
+		if (ADD == type || ORDER == type) {
+			symbol = getString(body);
+			pricePips = body.getLong();
+			amount = body.getLong();
+			side = SIDES[body.get()];
+			orderDate = body.getLong();
+			timeInForce = TERMS[body.get()];
+			expireTime = body.getLong();
+		}
+	}
+
+	// Internal helpers
+
+	/**
+	 * Writes the length and checksum of the body encoded after them.
+	 */
+	private static void frame(ByteBuffer buffer, CRC32 crc, int start) {
+		int end = buffer.position();
+
+		ByteBuffer body = buffer.duplicate();
+		body.position(start + FRAME);
+		body.limit(end);
+		crc.reset();
+		crc.update(body);
+
+		buffer.putInt(start, end - start - FRAME);
+		buffer.putInt(start + 4, (int) crc.getValue());
+	}
+
+	private static void putString(ByteBuffer buffer, byte[] bytes) {
+		buffer.putShort((short) bytes.length);
+		buffer.put(bytes);
+	}
+
+	private static String getString(ByteBuffer body) {
+		int length = body.getShort();
+		String value;
+		if (body.hasArray()) {
+			value = new String(body.array(), body.arrayOffset() + body.position(), length, StandardCharsets.UTF_8);
+			body.position(body.position() + length);
+		} else {
+			byte[] bytes = new byte[length];
+			body.get(bytes);
+			value = new String(bytes, StandardCharsets.UTF_8);
+		}
+		return value;
+	}
+
+}
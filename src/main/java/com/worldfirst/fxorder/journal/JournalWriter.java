@@ -0,0 +1,287 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import com.worldfirst.fxorder.domain.OrderData;
+import com.worldfirst.fxorder.pipeline.LatencyHistogram;
+
+/**
+ * Class JournalWriter
+ * 
+ * It appends ADD, CANCEL and AMEND records to segment files named after the log
+ * sequence number of their first record, rolling over to a new segment once
+ * the current one reaches the segment size.
+ * 
+ * Records are encoded into a direct buffer which is written to the segment
+ * when full or on flush(). sync(lsn) forces the segments up to the given log
+ * sequence number: the first caller forces everything appended so far while
+ * the others wait on it and find their record already forced, so concurrent
+ * callers share one force (group commit).
+ * 
+ * @author PM
+ *
+ */
+final class JournalWriter {
+
+	static final String SEGMENT_PREFIX = "segment-";
+
+	static final String SEGMENT_SUFFIX = ".log";
+
+	private final Path dir;
+
+	private final long segmentSize;
+
+	private final ByteBuffer buffer;
+
+	private final CRC32 crc = new CRC32();
+
+	/** Serialises the forces, taken before the writer itself. */
+	private final Object syncLock = new Object();
+
+	/** The segments rolled over but not forced yet. */
+	private final List<FileChannel> retired = new ArrayList<FileChannel>();
+
+	private final LatencyHistogram syncLatency = new LatencyHistogram();
+
+	private FileChannel channel;
+
+	private long segmentBytes;
+
+	private long lastLsn;
+
+	private volatile long durableLsn;
+
+	private volatile long appendedEvents;
+
+	private volatile long appendedBytes;
+
+	/**
+	 * Opens a new segment starting after the given log sequence number.
+	 */
+	JournalWriter(Path dir, long segmentSize, int bufferSize, long lastLsn) throws IOException {
+		this.dir = dir;
+		this.segmentSize = segmentSize;
+		this.buffer = ByteBuffer.allocateDirect(Math.max(bufferSize, JournalRecord.FRAME + JournalRecord.MAX_BODY));
+		this.lastLsn = lastLsn;
+		this.durableLsn = lastLsn;
+		this.channel = openSegment(lastLsn + 1);
+	}
+
+	/**
+	 * @return the file name of the segment starting at the given log sequence
+	 *         number
+	 */
+	static String segmentName(long firstLsn) {
+		return String.format("%s%020d%s", SEGMENT_PREFIX, firstLsn, SEGMENT_SUFFIX);
+	}
+
+	/**
+	 * @return the log sequence number of the ADD record
+	 */
+	synchronized long add(OrderData order) throws IOException {
+		byte[] symbol = JournalRecord.bytes(order.getPair().getSymbol());
+		return append(JournalRecord.ADD, order.getId(), symbol, order);
+	}
+
+	/**
+	 * @return the log sequence number of the CANCEL record
+	 */
+	synchronized long cancel(long orderId) throws IOException {
+		return append(JournalRecord.CANCEL, orderId, null, null);
+	}
+
+	/**
+	 * @return the log sequence number of the AMEND record
+	 */
+	synchronized long amend(long orderId, long pricePips, long amount) throws IOException {
+		long lsn = reserve(JournalRecord.size(JournalRecord.AMEND, null));
+		JournalRecord.writeAmend(buffer, crc, lsn, orderId, pricePips, amount);
+		return lsn;
+	}
+
+	/**
+	 * @return the log sequence number of the last ADD record of the batch
+	 */
+	synchronized long addAll(List<OrderData> orders) throws IOException {
+		long lsn = lastLsn;
+		for (OrderData order : orders) {
+			lsn = add(order);
+		}
+		return lsn;
+	}
+
+	/**
+	 * Journals the cancellation of the first count ids of the array.
+	 * 
+	 * @return the log sequence number of the last CANCEL record of the batch
+	 */
+	synchronized long cancelAll(long[] orderIds, int count) throws IOException {
+		long lsn = lastLsn;
+		for (int i = 0; i < count; i++) {
+			long orderId = orderIds[i];
+			lsn = cancel(orderId);
+		}
+		return lsn;
+	}
+
+	/**
+	 * Hands the buffered records over to the operating system.
+	 */
+	synchronized void flush() throws IOException {
+		writeBuffer();
+	}
+
+	/**
+	 * Forces every record up to the given log sequence number to disk.
+	 */
+	void sync(long lsn) throws IOException {
+		if (durableLsn >= lsn) {
+			return;
+		}
+		synchronized (syncLock) {
+			if (durableLsn >= lsn) {
+				return;
+			}
+
+			long start = System.nanoTime();
+			long upTo;
+			FileChannel current;
+			List<FileChannel> rolled;
+			synchronized (this) {
+				writeBuffer();
+				upTo = lastLsn;
+				current = channel;
+				rolled = new ArrayList<FileChannel>(retired);
+				retired.clear();
+			}
+
+			for (FileChannel segment : rolled) {
+				segment.force(false);
+				segment.close();
+			}
+			current.force(false);
+
+			durableLsn = upTo;
+			syncLatency.record(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Forces and closes every segment.
+	 */
+	void close() throws IOException {
+		synchronized (syncLock) {
+			synchronized (this) {
+				writeBuffer();
+				for (FileChannel segment : retired) {
+					segment.force(false);
+					segment.close();
+				}
+				retired.clear();
+				channel.force(false);
+				channel.close();
+				durableLsn = lastLsn;
+			}
+		}
+	}
+
+	/**
+	 * @return the log sequence number of the last record appended
+	 */
+	synchronized long lastLsn() {
+		return lastLsn;
+	}
+
+	/**
+	 * @return the log sequence number of the last record forced to disk
+	 */
+	long durableLsn() {
+		return durableLsn;
+	}
+
+	/**
+	 * @return the number of records appended since opened
+	 */
+	long appendedEvents() {
+		return appendedEvents;
+	}
+
+	/**
+	 * @return the number of bytes appended since opened
+	 */
+	long appendedBytes() {
+		return appendedBytes;
+	}
+
+	/**
+	 * @return the time taken by the forces
+	 */
+	LatencyHistogram syncLatency() {
+		return syncLatency;
+	}
+
+	// Internal helpers
+
+	private long append(byte type, long id, byte[] symbol, OrderData order) throws IOException {
+		long lsn = reserve(JournalRecord.size(type, symbol));
+		JournalRecord.write(buffer, crc, type, lsn, id, symbol, order);
+		return lsn;
+	}
+
+	/**
+	 * Makes room in the buffer for the next record, rolling the segment over
+	 * when it would not fit.
+	 * 
+	 * @return the log sequence number of the record
+	 */
+	private long reserve(int size) throws IOException {
+		long lsn = lastLsn + 1;
+
+		if (segmentBytes > 0 && segmentBytes + size > segmentSize) {
+			writeBuffer();
+			retired.add(channel);
+			channel = openSegment(lsn);
+			segmentBytes = 0;
+		}
+		if (buffer.remaining() < size) {
+			writeBuffer();
+		}
+
+		lastLsn = lsn;
+		segmentBytes += size;
+		appendedEvents++;
+		appendedBytes += size;
+		return lsn;
+	}
+
+	private void writeBuffer() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	private FileChannel openSegment(long firstLsn) throws IOException {
+		return FileChannel.open(dir.resolve(segmentName(firstLsn)), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+	}
+
+}
@@ -0,0 +1,531 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.journal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.worldfirst.fxorder.domain.CurrencyPair;
+import com.worldfirst.fxorder.domain.OrderData;
+import com.worldfirst.fxorder.pipeline.OrderEventHandler;
+import com.worldfirst.fxorder.service.CurrencyPairRegistry;
+
+/**
+ * Class OrderJournal
+ * 
+ * It makes the order store of the active trading service survive restarts,
+ * when fxorder.journal.enabled is set.
+ * 
+ * Every applied order is appended to a write-ahead journal as an ADD record
+ * before being handed to the store, every successful cancellation as a
+ * CANCEL record and every successful amendment as an AMEND record, see
+ * {@link JournalWriter}. Records are forced to disk as
+ * configured by fxorder.journal.durability, see {@link Durability}.
+ * 
+ * Every fxorder.journal.snapshot-interval-s the whole store is written as a
+ * compact binary snapshot, see {@link SnapshotStore}, and the journal segments
+ * it covers are deleted. On start up the latest snapshot is loaded and only
+ * the journal records following it are replayed. The recovery time along with
+ * the journal throughput and force latency are reported by {@link #stats()}.
+ * 
+ * @author PM
+ *
+ */
+
+@Component
+public class OrderJournal {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(OrderJournal.class);
+
+	@Value("${fxorder.journal.enabled:false}")
+	private boolean enabled;
+
+	@Value("${fxorder.journal.dir:data/journal}")
+	private String dir;
+
+	@Value("${fxorder.journal.durability:batch}")
+	private String durability;
+
+	@Value("${fxorder.journal.batch-interval-ms:2}")
+	private long batchIntervalMs;
+
+	@Value("${fxorder.journal.segment-size-mb:64}")
+	private int segmentSizeMb;
+
+	@Value("${fxorder.journal.buffer-size-kb:1024}")
+	private int bufferSizeKb;
+
+	@Value("${fxorder.journal.snapshot-interval-s:300}")
+	private long snapshotIntervalS;
+
+	@Autowired
+	private CurrencyPairRegistry pairs;
+
+	/**
+	 * Shared by the events being journaled and applied, exclusive while a
+	 * snapshot is taken so it covers exactly the records appended before it.
+	 */
+	private final ReentrantReadWriteLock applyLock = new ReentrantReadWriteLock();
+
+	private Durability mode;
+
+	private Path directory;
+
+	private volatile JournalWriter writer;
+
+	private SnapshotStore snapshots;
+
+	private Supplier<List<OrderData>> snapshotSource;
+
+	private ScheduledExecutorService scheduler;
+
+	private long openedNanos;
+
+	private final Map<String, Object> recovery = new LinkedHashMap<String, Object>();
+
+	private final Map<String, Object> lastSnapshot = new LinkedHashMap<String, Object>();
+
+	/**
+	 * Recovers the order store through the given handler and returns the
+	 * handler to be started by the ingestion pipeline, the given one when the
+	 * journal is disabled.
+	 * 
+	 * @param handler applies the events to the service order store
+	 * @param snapshotSource returns every order of the store in arrival
+	 *            sequence, it is called while no event is being applied
+	 */
+	public synchronized OrderEventHandler open(OrderEventHandler handler, Supplier<List<OrderData>> snapshotSource) {
+		if (!enabled) {
+			return handler;
+		}
+
+		try {
+			mode = Durability.valueOf(durability.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+			directory = Paths.get(dir);
+			Files.createDirectories(directory);
+			snapshots = new SnapshotStore(directory, bufferSizeKb * 1024);
+			this.snapshotSource = snapshotSource;
+
+			long lastLsn = recover(handler);
+
+			writer = new JournalWriter(directory, segmentSizeMb * 1024L * 1024L, bufferSizeKb * 1024, lastLsn);
+			openedNanos = System.nanoTime();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Order journal could not be opened in " + dir, e);
+		}
+
+		scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "fxorder-journal");
+			thread.setDaemon(true);
+			return thread;
+		});
+		if (Durability.PER_EVENT != mode) {
+			scheduler.scheduleWithFixedDelay(this::flush, batchIntervalMs, batchIntervalMs, TimeUnit.MILLISECONDS);
+		}
+		if (snapshotIntervalS > 0) {
+			scheduler.scheduleWithFixedDelay(this::scheduledSnapshot, snapshotIntervalS, snapshotIntervalS,
+					TimeUnit.SECONDS);
+		}
+
+		return new JournalingHandler(handler);
+	}
+
+	/**
+	 * Writes a snapshot of the order store and deletes the journal segments
+	 * and snapshots it makes redundant.
+	 */
+	public void snapshot() throws IOException {
+		JournalWriter current = writer;
+		if (null == current) {
+			return;
+		}
+
+		long start = System.nanoTime();
+		long lsn;
+		List<OrderData> orders;
+		applyLock.writeLock().lock();
+		try {
+			lsn = current.lastLsn();
+			orders = snapshotSource.get();
+		} finally {
+			applyLock.writeLock().unlock();
+		}
+		long captured = System.nanoTime();
+
+		snapshots.write(lsn, orders);
+		snapshots.deleteBefore(lsn);
+		deleteSegmentsCoveredBy(lsn);
+
+		synchronized (lastSnapshot) {
+			lastSnapshot.put("lsn", lsn);
+			lastSnapshot.put("orders", orders.size());
+			lastSnapshot.put("captureMillis", TimeUnit.NANOSECONDS.toMillis(captured - start));
+			lastSnapshot.put("writeMillis", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - captured));
+		}
+	}
+
+	/**
+	 * @return the durability, throughput, force latency, recovery and snapshot
+	 *         figures of the journal
+	 */
+	public Map<String, Object> stats() {
+		Map<String, Object> stats = new LinkedHashMap<String, Object>();
+		stats.put("enabled", enabled);
+		JournalWriter current = writer;
+		if (null == current) {
+			return stats;
+		}
+
+		double seconds = Math.max(1e-9, (System.nanoTime() - openedNanos) / 1e9);
+		stats.put("durability", mode);
+		stats.put("lastLsn", current.lastLsn());
+		stats.put("durableLsn", current.durableLsn());
+		stats.put("appendedEvents", current.appendedEvents());
+		stats.put("appendedBytes", current.appendedBytes());
+		stats.put("eventsPerSecond", (long) (current.appendedEvents() / seconds));
+		stats.put("syncLatencyMicros", current.syncLatency().summary(TimeUnit.MICROSECONDS));
+		synchronized (recovery) {
+			stats.put("recovery", new LinkedHashMap<String, Object>(recovery));
+		}
+		synchronized (lastSnapshot) {
+			stats.put("lastSnapshot", new LinkedHashMap<String, Object>(lastSnapshot));
+		}
+		return stats;
+	}
+
+	/**
+	 * Stops the background thread and forces the journal. The thread is not
+	 * interrupted as an interrupt closes the file channel it is writing to.
+	 */
+	@PreDestroy
+	public synchronized void close() throws IOException {
+		if (null != scheduler) {
+			scheduler.shutdown();
+			try {
+				scheduler.awaitTermination(30, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			scheduler = null;
+		}
+		if (null != writer) {
+			writer.close();
+			writer = null;
+		}
+	}
+
+	// Internal helpers
+
+	/**
+	 * Loads the latest snapshot then replays the journal records following it.
+	 * 
+	 * @return the log sequence number of the last record recovered
+	 */
+	private long recover(OrderEventHandler handler) throws IOException {
+		long start = System.nanoTime();
+
+		SnapshotStore.Snapshot snapshot = snapshots.loadLatest(pairs::lookup);
+		long lastLsn = 0;
+		int snapshotOrders = 0;
+		if (null != snapshot) {
+			for (OrderData order : snapshot.orders) {
+				handler.onAdd(order);
+			}
+			lastLsn = snapshot.lsn;
+			snapshotOrders = snapshot.orders.size();
+		}
+		long loaded = System.nanoTime();
+
+		long replayed = 0;
+		List<Path> segments = listFiles(directory, JournalWriter.SEGMENT_PREFIX, JournalWriter.SEGMENT_SUFFIX);
+		JournalRecord record = new JournalRecord();
+		for (int i = 0; i < segments.size(); i++) {
+			if (i + 1 < segments.size() && numberOf(segments.get(i + 1), JournalWriter.SEGMENT_PREFIX,
+					JournalWriter.SEGMENT_SUFFIX) <= lastLsn + 1) {
+				continue;
+			}
+
+			try (FileChannel channel = FileChannel.open(segments.get(i), StandardOpenOption.READ,
+					StandardOpenOption.WRITE)) {
+				RecordReader reader = new RecordReader(channel, bufferSizeKb * 1024);
+				for (ByteBuffer body = reader.next(); null != body; body = reader.next()) {
+					record.read(body);
+					if (record.number <= lastLsn) {
+						continue;
+					}
+					replay(record, handler);
+					lastLsn = record.number;
+					replayed++;
+				}
+
+				// A crash can leave a partly written record behind
+				if (reader.hasTrailingBytes()) {
+					LOGGER.warn("Truncating " + segments.get(i).getFileName() + " after its last valid record at "
+							+ reader.validEnd());
+					channel.truncate(reader.validEnd());
+				}
+			}
+		}
+
+		long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		synchronized (recovery) {
+			recovery.put("snapshotLsn", null == snapshot ? 0 : snapshot.lsn);
+			recovery.put("snapshotOrders", snapshotOrders);
+			recovery.put("snapshotMillis", TimeUnit.NANOSECONDS.toMillis(loaded - start));
+			recovery.put("replayedEvents", replayed);
+			recovery.put("totalMillis", millis);
+		}
+		LOGGER.info("Order journal recovered " + snapshotOrders + " snapshot orders and replayed " + replayed
+				+ " events up to lsn " + lastLsn + " in " + millis + " ms");
+		return lastLsn;
+	}
+
+	private void replay(JournalRecord record, OrderEventHandler handler) {
+		if (JournalRecord.CANCEL == record.type) {
+			handler.onCancel(record.id);
+		} else if (JournalRecord.AMEND == record.type) {
+			handler.onAmend(record.id, record.pricePips, record.amount);
+		} else if (JournalRecord.ADD == record.type) {
+			CurrencyPair pair = pairs.lookup(record.symbol);
+			if (null == pair) {
+				LOGGER.warn("Skipping journaled order " + record.id + " of unsupported currency pair " + record.symbol);
+				return;
+			}
+			OrderData order = new OrderData(record.id, pair, record.pricePips, record.amount, record.side,
+					record.orderDate);
+			order.setTimeInForce(record.timeInForce);
+			order.setExpireTime(record.expireTime);
+			handler.onAdd(order);
+		}
+	}
+
+	/**
+	 * Deletes the segments whose records all precede the given log sequence
+	 * number, never the segment being written.
+	 */
+	private void deleteSegmentsCoveredBy(long lsn) throws IOException {
+		List<Path> segments = listFiles(directory, JournalWriter.SEGMENT_PREFIX, JournalWriter.SEGMENT_SUFFIX);
+		for (int i = 0; i + 1 < segments.size(); i++) {
+			if (numberOf(segments.get(i + 1), JournalWriter.SEGMENT_PREFIX, JournalWriter.SEGMENT_SUFFIX) <= lsn + 1) {
+				Files.deleteIfExists(segments.get(i));
+			}
+		}
+	}
+
+	private void flush() {
+		try {
+			JournalWriter current = writer;
+			if (null == current) {
+				return;
+			}
+			if (Durability.BATCH == mode) {
+				current.sync(current.lastLsn());
+			} else {
+				current.flush();
+			}
+		} catch (IOException e) {
+			LOGGER.error("Order journal could not be flushed", e);
+		}
+	}
+
+	private void scheduledSnapshot() {
+		try {
+			snapshot();
+		} catch (IOException | RuntimeException e) {
+			LOGGER.error("Order snapshot could not be written", e);
+		}
+	}
+
+	/**
+	 * @return the files of the directory having the given prefix and suffix,
+	 *         in ascending order of the number they are named after
+	 */
+	static List<Path> listFiles(Path dir, String prefix, String suffix) throws IOException {
+		List<Path> files = new ArrayList<Path>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, prefix + "*" + suffix)) {
+			for (Path file : stream) {
+				files.add(file);
+			}
+		}
+		Collections.sort(files);
+		return files;
+	}
+
+	/**
+	 * @return the number a journal file is named after
+	 */
+	static long numberOf(Path file, String prefix, String suffix) {
+		String name = file.getFileName().toString();
+		return Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length()));
+	}
+
+	/**
+	 * Journals the events before or after applying them.
+	 * 
+	 * An order is journaled before being applied, so a cancellation or an
+	 * amendment which can only succeed once the order is applied is always
+	 * journaled after it.
+	 */
+	private final class JournalingHandler implements OrderEventHandler {
+
+		private final OrderEventHandler handler;
+
+		JournalingHandler(OrderEventHandler handler) {
+			this.handler = handler;
+		}
+
+		@Override
+		public boolean onAdd(OrderData order) {
+			long lsn;
+			boolean kept;
+			applyLock.readLock().lock();
+			try {
+				lsn = writer().add(order);
+				kept = handler.onAdd(order);
+			} catch (IOException e) {
+				throw new UncheckedIOException("Order could not be journaled", e);
+			} finally {
+				applyLock.readLock().unlock();
+			}
+			await(lsn);
+			return kept;
+		}
+
+		@Override
+		public boolean onCancel(long orderId) {
+			long lsn = 0;
+			applyLock.readLock().lock();
+			try {
+				if (!handler.onCancel(orderId)) {
+					return false;
+				}
+				lsn = writer().cancel(orderId);
+			} catch (IOException e) {
+				throw new UncheckedIOException("Cancellation could not be journaled", e);
+			} finally {
+				applyLock.readLock().unlock();
+			}
+			await(lsn);
+			return true;
+		}
+
+		@Override
+		public boolean onAmend(long orderId, long pricePips, long amount) {
+			long lsn = 0;
+			applyLock.readLock().lock();
+			try {
+				if (!handler.onAmend(orderId, pricePips, amount)) {
+					return false;
+				}
+				lsn = writer().amend(orderId, pricePips, amount);
+			} catch (IOException e) {
+				throw new UncheckedIOException("Amendment could not be journaled", e);
+			} finally {
+				applyLock.readLock().unlock();
+			}
+			await(lsn);
+			return true;
+		}
+
+		@Override
+		public void onAddAll(List<OrderData> orders) {
+			long lsn;
+			applyLock.readLock().lock();
+			try {
+				lsn = writer().addAll(orders);
+				handler.onAddAll(orders);
+			} catch (IOException e) {
+				throw new UncheckedIOException("Orders could not be journaled", e);
+			} finally {
+				applyLock.readLock().unlock();
+			}
+			await(lsn);
+		}
+
+		@Override
+		public boolean[] onCancelAll(long[] orderIds) {
+			boolean[] cancelled;
+			long lsn = 0;
+			applyLock.readLock().lock();
+			try {
+				cancelled = handler.onCancelAll(orderIds);
+				long[] journaled = new long[orderIds.length];
+				int count = 0;
+				for (int i = 0; i < cancelled.length; i++) {
+					if (cancelled[i]) {
+						journaled[count++] = orderIds[i];
+					}
+				}
+				if (count > 0) {
+					lsn = writer().cancelAll(journaled, count);
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException("Cancellations could not be journaled", e);
+			} finally {
+				applyLock.readLock().unlock();
+			}
+			if (0 != lsn) {
+				await(lsn);
+			}
+			return cancelled;
+		}
+
+		@Override
+		public int shardOf(long orderId) {
+			return handler.shardOf(orderId);
+		}
+
+		private JournalWriter writer() {
+			JournalWriter current = writer;
+			if (null == current) {
+				throw new IllegalStateException("Order journal is closed!");
+			}
+			return current;
+		}
+
+		private void await(long lsn) {
+			if (Durability.PER_EVENT == mode) {
+				try {
+					writer().sync(lsn);
+				} catch (IOException e) {
+					throw new UncheckedIOException("Order journal could not be forced", e);
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,109 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Class RecordReader
+ * 
+ * It reads the framed records of a journal segment or snapshot in large
+ * chunks, stopping at the end of the file or at the first record being
+ * truncated or failing its checksum, as a crash can leave behind.
+ * 
+ * @author PM
+ *
+ */
+final class RecordReader {
+
+	private final FileChannel channel;
+
+	private final ByteBuffer buffer;
+
+	private final CRC32 crc = new CRC32();
+
+	/** The file offset just after the last valid record returned. */
+	private long validEnd;
+
+	private boolean endOfFile;
+
+	RecordReader(FileChannel channel, int bufferSize) {
+		this.channel = channel;
+		this.buffer = ByteBuffer.allocateDirect(Math.max(bufferSize, JournalRecord.FRAME + JournalRecord.MAX_BODY));
+		this.buffer.flip();
+	}
+
+	/**
+	 * @return the body of the next record, valid until the next call, or null
+	 *         if there is no further valid record
+	 */
+	ByteBuffer next() throws IOException {
+		if (!fill(JournalRecord.FRAME)) {
+			return null;
+		}
+
+		int start = buffer.position();
+		int length = buffer.getInt(start);
+		int checksum = buffer.getInt(start + 4);
+		if (length <= 0 || length > JournalRecord.MAX_BODY || !fill(JournalRecord.FRAME + length)) {
+			return null;
+		}
+
+		start = buffer.position();
+		ByteBuffer body = buffer.duplicate();
+		body.position(start + JournalRecord.FRAME);
+		body.limit(start + JournalRecord.FRAME + length);
+
+		crc.reset();
+		crc.update(body.duplicate());
+		if ((int) crc.getValue() != checksum) {
+			return null;
+		}
+
+		buffer.position(start + JournalRecord.FRAME + length);
+		validEnd += JournalRecord.FRAME + length;
+		return body.slice();
+	}
+
+	/**
+	 * @return the file offset just after the last valid record
+	 */
+	long validEnd() {
+		return validEnd;
+	}
+
+	/**
+	 * @return true if the file holds bytes after the last valid record
+	 */
+	boolean hasTrailingBytes() throws IOException {
+		return channel.size() > validEnd;
+	}
+
+	// Internal helpers
+
+	private boolean fill(int needed) throws IOException {
+		if (buffer.remaining() >= needed) {
+			return true;
+		}
+		buffer.compact();
+		while (buffer.position() < needed && !endOfFile) {
+			if (channel.read(buffer) < 0) {
+				endOfFile = true;
+			}
+		}
+		buffer.flip();
+		return buffer.remaining() >= needed;
+	}
+
+}
@@ -0,0 +1,200 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.worldfirst.fxorder.domain.CurrencyPair;
+import com.worldfirst.fxorder.domain.OrderData;
+
+/**
+ * Class SnapshotStore
+ * 
+ * It writes and loads the snapshots of the order store, named after the log
+ * sequence number of the last journal record they cover. A snapshot is a run
+ * of ORDER records closed by an END record holding their number, written to a
+ * temporary file which is forced and then atomically renamed, so a snapshot
+ * file is either complete or absent.
+ * 
+ * @author PM
+ *
+ */
+final class SnapshotStore {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(SnapshotStore.class);
+
+	static final String SNAPSHOT_PREFIX = "snapshot-";
+
+	static final String SNAPSHOT_SUFFIX = ".snap";
+
+	private final Path dir;
+
+	private final int bufferSize;
+
+	private final CRC32 crc = new CRC32();
+
+	SnapshotStore(Path dir, int bufferSize) {
+		this.dir = dir;
+		this.bufferSize = Math.max(bufferSize, JournalRecord.FRAME + JournalRecord.MAX_BODY);
+	}
+
+	/**
+	 * A loaded snapshot.
+	 */
+	static final class Snapshot {
+
+		final long lsn;
+
+		final List<OrderData> orders;
+
+		Snapshot(long lsn, List<OrderData> orders) {
+			this.lsn = lsn;
+			this.orders = orders;
+		}
+	}
+
+	/**
+	 * Writes the orders as the snapshot covering the journal up to the given
+	 * log sequence number.
+	 */
+	synchronized void write(long lsn, List<OrderData> orders) throws IOException {
+		Path target = dir.resolve(snapshotName(lsn));
+		Path temp = dir.resolve(snapshotName(lsn) + ".tmp");
+		ByteBuffer buffer = ByteBuffer.allocateDirect(bufferSize);
+
+		try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			for (OrderData order : orders) {
+				byte[] symbol = JournalRecord.bytes(order.getPair().getSymbol());
+				if (buffer.remaining() < JournalRecord.size(JournalRecord.ORDER, symbol)) {
+					write(channel, buffer);
+				}
+				JournalRecord.write(buffer, crc, JournalRecord.ORDER, order.getSequence(), order.getId(), symbol,
+						order);
+			}
+			if (buffer.remaining() < JournalRecord.size(JournalRecord.END, null)) {
+				write(channel, buffer);
+			}
+			JournalRecord.write(buffer, crc, JournalRecord.END, orders.size(), 0, null, null);
+			write(channel, buffer);
+			channel.force(true);
+		}
+
+		Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Loads the most recent complete snapshot, skipping the orders of currency
+	 * pairs no longer supported.
+	 * 
+	 * @return the snapshot or null if there is none
+	 */
+	Snapshot loadLatest(Function<String, CurrencyPair> pairs) throws IOException {
+		List<Long> lsns = list();
+		for (int i = lsns.size() - 1; i >= 0; i--) {
+			List<OrderData> orders = load(dir.resolve(snapshotName(lsns.get(i))), pairs);
+			if (null != orders) {
+				return new Snapshot(lsns.get(i), orders);
+			}
+			LOGGER.warn("Skipping incomplete snapshot " + snapshotName(lsns.get(i)));
+		}
+		return null;
+	}
+
+	/**
+	 * Deletes the snapshots older than the given log sequence number.
+	 */
+	synchronized void deleteBefore(long lsn) throws IOException {
+		for (long existing : list()) {
+			if (existing < lsn) {
+				Files.deleteIfExists(dir.resolve(snapshotName(existing)));
+			}
+		}
+	}
+
+	// Internal helpers
+
+	private static String snapshotName(long lsn) {
+		return String.format("%s%020d%s", SNAPSHOT_PREFIX, lsn, SNAPSHOT_SUFFIX);
+	}
+
+	/**
+	 * @return the log sequence numbers of the snapshots, in ascending order
+	 */
+	private List<Long> list() throws IOException {
+		List<Long> lsns = new ArrayList<Long>();
+		for (Path file : OrderJournal.listFiles(dir, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX)) {
+			lsns.add(OrderJournal.numberOf(file, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX));
+		}
+		return lsns;
+	}
+
+	/**
+	 * @return the orders of the snapshot or null if it has no END record
+	 */
+	private List<OrderData> load(Path file, Function<String, CurrencyPair> pairs) throws IOException {
+		List<OrderData> orders = new ArrayList<OrderData>();
+		JournalRecord record = new JournalRecord();
+		long skipped = 0;
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			RecordReader reader = new RecordReader(channel, bufferSize);
+			for (ByteBuffer body = reader.next(); null != body; body = reader.next()) {
+				record.read(body);
+
+				if (JournalRecord.END == record.type) {
+					if (record.number != orders.size() + skipped) {
+						return null;
+					}
+					if (skipped > 0) {
+						LOGGER.warn("Skipped " + skipped + " snapshot orders of unsupported currency pairs");
+					}
+					return orders;
+				}
+
+				CurrencyPair pair = pairs.apply(record.symbol);
+				if (null == pair) {
+					skipped++;
+					continue;
+				}
+				OrderData order = new OrderData(record.id, pair, record.pricePips, record.amount, record.side,
+						record.orderDate);
+				order.setSequence(record.number);
+				order.setTimeInForce(record.timeInForce);
+				order.setExpireTime(record.expireTime);
+				orders.add(order);
+			}
+		}
+		return null;
+	}
+
+	private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+}
@@ -0,0 +1,173 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.metrics;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+
+/**
+ * Class OrderMetrics
+ *
+ * It registers the latency of every trading service operation, the counters
+ * and the gauges of the order stores with the Micrometer registry, which
+ * Actuator exports at /actuator/prometheus.
+ *
+ * Operations are timed by a {@link Timer} taken once by the service and
+ * published as a percentile histogram, so the percentiles can be aggregated
+ * across nodes, along with the 50th, 90th, 99th and 99.9th percentiles of the
+ * node. Gauges and counters kept by their owner are read when scraped only,
+ * and registering one again under the same name replaces what it reads.
+ *
+ * @author PM
+ *
+ */
+
+@Component
+public class OrderMetrics {
+
+	/** The percentiles published for every operation. */
+	private static final double[] PERCENTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+	/** The keys of the percentiles in the stats. */
+	private static final String[] PERCENTILE_KEYS = { "p50", "p90", "p99", "p999" };
+
+	private final MeterRegistry registry;
+
+	private final Map<String, Timer> operations = new LinkedHashMap<String, Timer>();
+
+	private final Map<String, AtomicLong> counters = new LinkedHashMap<String, AtomicLong>();
+
+	/** What every gauge and owned counter reads, by name. */
+	private final Map<String, AtomicReference<Object>> sources = new LinkedHashMap<String, AtomicReference<Object>>();
+
+	public OrderMetrics(MeterRegistry registry) {
+		this.registry = registry;
+	}
+
+	/**
+	 * @return the timer of the operation, created on first use
+	 */
+	public synchronized Timer operation(String name) {
+		return operations.computeIfAbsent(name,
+				key -> Timer.builder("fxorder.operation").description("Latency of the trading service operations")
+						.tag("operation", key).publishPercentiles(PERCENTILES).publishPercentileHistogram()
+						.minimumExpectedValue(Duration.ofNanos(TimeUnit.MICROSECONDS.toNanos(1)))
+						.maximumExpectedValue(Duration.ofSeconds(1)).register(registry));
+	}
+
+	/**
+	 * Registers a counter, or returns the one registered under the name.
+	 */
+	public synchronized AtomicLong counter(String name, String help) {
+		AtomicLong count = counters.get(name);
+		if (null == count) {
+			count = new AtomicLong();
+			counters.put(name, count);
+			counter(name, help, count::get);
+		}
+		return count;
+	}
+
+	/**
+	 * Registers a counter kept by its owner, read when scraped.
+	 */
+	public synchronized void counter(String name, String help, LongSupplier value) {
+		AtomicReference<Object> source = source(name, value);
+		if (null != source) {
+			FunctionCounter.builder(name, source, current -> ((LongSupplier) current.get()).getAsLong())
+					.description(help).register(registry);
+		}
+	}
+
+	/**
+	 * Registers a gauge read when scraped.
+	 */
+	public synchronized void gauge(String name, String help, LongSupplier value) {
+		AtomicReference<Object> source = source(name, value);
+		if (null != source) {
+			Gauge.builder(name, source, current -> ((LongSupplier) current.get()).getAsLong()).description(help)
+					.register(registry);
+		}
+	}
+
+	/**
+	 * Registers a gauge having one value per label value, such as per currency
+	 * pair, a label value missing from the values reading 0.
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized void gauge(String name, String help, String label, Collection<String> labelValues,
+			Supplier<Map<String, Long>> values) {
+		AtomicReference<Object> source = source(name, values);
+		if (null != source) {
+			for (String labelValue : labelValues) {
+				Gauge.builder(name, source,
+						current -> ((Supplier<Map<String, Long>>) current.get()).get().getOrDefault(labelValue, 0L))
+						.description(help).tag(label, labelValue).register(registry);
+			}
+		}
+	}
+
+	/**
+	 * @return the count, mean, percentiles and max of every operation in
+	 *         microseconds, the percentiles and max over the last few minutes
+	 */
+	public synchronized Map<String, Object> stats() {
+		Map<String, Object> stats = new LinkedHashMap<String, Object>();
+		operations.forEach((name, timer) -> stats.put(name, summary(timer.takeSnapshot(false))));
+		return stats;
+	}
+
+	// Internal helpers
+
+	/**
+	 * @return the new source of the meter to register, null if the meter is
+	 *         registered already and now reads the given value
+	 */
+	private AtomicReference<Object> source(String name, Object value) {
+		AtomicReference<Object> source = sources.get(name);
+		if (null != source) {
+			source.set(value);
+			return null;
+		}
+		source = new AtomicReference<Object>(value);
+		sources.put(name, source);
+		return source;
+	}
+
+	private static Map<String, Long> summary(HistogramSnapshot snapshot) {
+		Map<String, Long> summary = new LinkedHashMap<String, Long>();
+		summary.put("count", snapshot.count());
+		summary.put("mean", (long) snapshot.mean(TimeUnit.MICROSECONDS));
+		ValueAtPercentile[] percentiles = snapshot.percentileValues();
+		for (int i = 0; i < percentiles.length; i++) {
+			summary.put(PERCENTILE_KEYS[i], (long) percentiles[i].value(TimeUnit.MICROSECONDS));
+		}
+		summary.put("max", (long) snapshot.max(TimeUnit.MICROSECONDS));
+		return summary;
+	}
+
+}
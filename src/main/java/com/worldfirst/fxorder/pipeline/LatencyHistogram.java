@@ -0,0 +1,168 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.worldfirst.fxorder.pipeline;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Class LatencyHistogram
+ * 
+ * A fixed size, lock free histogram of latencies in nanoseconds. Values are
+ * counted in power of two buckets, each split in 8 linear sub buckets, which
+ * bounds the error of a percentile to 12.5% whatever the magnitude.
+ * 
+ * @author PM
+ *
+ */
+public final class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 3;
+
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(64 << SUB_BUCKET_BITS);
+
+	private final AtomicLong count = new AtomicLong();
+
+	private final AtomicLong total = new AtomicLong();
+
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Records a latency.
+	 * @param nanos the latency in nanoseconds, negative values count as 0
+	 */
+	public void record(long nanos) {
+		long value = Math.max(0, nanos);
+
+		counts.incrementAndGet(index(value));
+		count.incrementAndGet();
+		total.addAndGet(value);
+
+		long current = max.get();
+		while (value > current && !max.compareAndSet(current, value)) {
+			current = max.get();
+		}
+	}
+
+	/**
+	 * Adds the latencies recorded by another histogram to this one.
+	 * @param other the histogram to add
+	 */
+	public void add(LatencyHistogram other) {
+		for (int i = 0; i < counts.length(); i++) {
+			long n = other.counts.get(i);
+			if (0 != n) {
+				counts.addAndGet(i, n);
+			}
+		}
+		count.addAndGet(other.count.get());
+		total.addAndGet(other.total.get());
+
+		long value = other.max.get();
+		long current = max.get();
+		while (value > current && !max.compareAndSet(current, value)) {
+			current = max.get();
+		}
+	}
+
+	/**
+	 * @return the number of recorded latencies
+	 */
+	public long count() {
+		return count.get();
+	}
+
+	/**
+	 * @return the sum of the recorded latencies in nanoseconds
+	 */
+	public long total() {
+		return total.get();
+	}
+
+	/**
+	 * @return the highest recorded latency in nanoseconds
+	 */
+	public long max() {
+		return max.get();
+	}
+
+	/**
+	 * @return the mean latency in nanoseconds
+	 */
+	public long mean() {
+		long n = count.get();
+		return 0 == n ? 0 : total.get() / n;
+	}
+
+	/**
+	 * @param percentile between 0 and 100
+	 * @return the latency in nanoseconds under which the given percentage of
+	 *         the recorded latencies fall
+	 */
+	public long percentile(double percentile) {
+		long n = count.get();
+		if (0 == n) {
+			return 0;
+		}
+
+		long target = Math.max(1, (long) Math.ceil(percentile / 100d * n));
+		long seen = 0;
+		for (int i = 0; i < counts.length(); i++) {
+			seen += counts.get(i);
+			if (seen >= target) {
+				return Math.min(highestValue(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	/**
+	 * @return the count, mean, median, 90th, 99th, 99.9th percentiles and max
+	 *         in the given unit
+	 */
+	public Map<String, Long> summary(TimeUnit unit) {
+		Map<String, Long> summary = new LinkedHashMap<String, Long>();
+		summary.put("count", count());
+		summary.put("mean", unit.convert(mean(), TimeUnit.NANOSECONDS));
+		summary.put("p50", unit.convert(percentile(50), TimeUnit.NANOSECONDS));
+		summary.put("p90", unit.convert(percentile(90), TimeUnit.NANOSECONDS));
+		summary.put("p99", unit.convert(percentile(99), TimeUnit.NANOSECONDS));
+		summary.put("p999", unit.convert(percentile(99.9), TimeUnit.NANOSECONDS));
+		summary.put("max", unit.convert(max(), TimeUnit.NANOSECONDS));
+		return summary;
+	}
+
+	// Internal helpers
+
+	static int index(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int msb = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (msb - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return ((msb - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) + sub;
+	}
+
+	static long highestValue(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int msb = (index >>> SUB_BUCKET_BITS) + SUB_BUCKET_BITS - 1;
+		long width = 1L << (msb - SUB_BUCKET_BITS);
+		long lowest = (1L << msb) | ((index & (SUB_BUCKETS - 1)) * width);
+		return lowest + width - 1;
+	}
+
+}
@@ -0,0 +1,78 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.worldfirst.fxorder.pipeline;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import com.worldfirst.fxorder.domain.OrderData;
+
+/**
+ * Class OrderEvent
+ * 
+ * A pre-allocated slot of the {@link OrderRingBuffer}. It is filled by the
+ * request thread that claimed it and cleared by the writer thread once
+ * applied.
+ * 
+ * @author PM
+ *
+ */
+final class OrderEvent {
+
+	/** The kind of event. */
+	enum Type {
+		ADD, CANCEL, AMEND, ADD_ALL, CANCEL_ALL
+	}
+
+	Type type;
+
+	/** The sequence the slot was last claimed for. */
+	long sequence;
+
+	/** The order to add. */
+	OrderData order;
+
+	/** The id of the order to cancel or amend. */
+	long orderId;
+
+	/** The new price in pips of the order to amend, 0 to keep it. */
+	long pricePips;
+
+	/** The new amount of the order to amend, 0 to keep it. */
+	long amount;
+
+	/** The batch of orders to add. */
+	List<OrderData> orders;
+
+	/** The batch of order ids to cancel. */
+	long[] orderIds;
+
+	/** Filled by the writer thread with the outcome of every cancellation. */
+	boolean[] cancelled;
+
+	/** The System.nanoTime() when the slot was claimed. */
+	long claimNanos;
+
+	/** Completed by the writer thread with the outcome of the event. */
+	CompletableFuture<Boolean> result;
+
+	void clear() {
+		type = null;
+		order = null;
+		orderId = 0;
+		pricePips = 0;
+		amount = 0;
+		orders = null;
+		orderIds = null;
+		cancelled = null;
+		result = null;
+	}
+
+}
@@ -0,0 +1,88 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.worldfirst.fxorder.pipeline;
+
+import java.util.List;
+
+import com.worldfirst.fxorder.domain.OrderData;
+
+/**
+ * Interface OrderEventHandler
+ * 
+ * It applies validated order events to the order store of a trading service.
+ * When the ring ingestion mode is on, the events of a currency pair are only
+ * ever applied by the writer thread of that pair, in sequence order.
+ * 
+ * @author PM
+ *
+ */
+public interface OrderEventHandler {
+
+	/**
+	 * Applies a new order.
+	 * @param order the validated order
+	 * @return false if the order was dropped, as an immediate order nothing
+	 *         could fill
+	 */
+	boolean onAdd(OrderData order);
+
+	/**
+	 * Applies the cancellation of an order.
+	 * @param orderId the order id
+	 * @return true if the order existed
+	 */
+	boolean onCancel(long orderId);
+
+	/**
+	 * Applies the amendment of the price and open amount of an order, 0
+	 * keeping either. Handlers not supporting amendments find no order.
+	 * @param orderId the order id
+	 * @param pricePips the new price in pips of the currency pair of the order
+	 * @param amount the new open amount
+	 * @return true if the order existed
+	 */
+	default boolean onAmend(long orderId, long pricePips, long amount) {
+		return false;
+	}
+
+	/**
+	 * Applies a batch of new orders, in order.
+	 * @param orders the validated orders
+	 */
+	default void onAddAll(List<OrderData> orders) {
+		for (OrderData order : orders) {
+			onAdd(order);
+		}
+	}
+
+	/**
+	 * Applies the cancellation of a batch of orders, in order.
+	 * @param orderIds the order ids
+	 * @return true at the index of every order which existed
+	 */
+	default boolean[] onCancelAll(long[] orderIds) {
+		boolean[] cancelled = new boolean[orderIds.length];
+		for (int i = 0; i < cancelled.length; i++) {
+			cancelled[i] = onCancel(orderIds[i]);
+		}
+		return cancelled;
+	}
+
+	/**
+	 * Finds the shard, that is the currency pair id, an order belongs to so
+	 * that its cancellation is routed to the writer thread of the pair.
+	 * @param orderId the order id
+	 * @return the currency pair id of the order, or -1 if it does not exist
+	 */
+	default int shardOf(long orderId) {
+		return 0;
+	}
+
+}
@@ -0,0 +1,357 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.worldfirst.fxorder.pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Component;
+
+import com.worldfirst.fxorder.domain.OrderData;
+import com.worldfirst.fxorder.domain.CurrencyPair;
+import com.worldfirst.fxorder.exception.ServiceException;
+import com.worldfirst.fxorder.service.CurrencyPairRegistry;
+
+/**
+ * Class OrderIngestionPipeline
+ * 
+ * It hands validated add, cancel and amend events over to the active trading service.
+ * Two modes are selected by fxorder.ingestion.mode,
+ * 
+ * direct (default): the event is applied on the request thread.
+ * 
+ * ring: the event is published into the {@link OrderRingBuffer} of its
+ * currency pair and applied by the writer thread of that pair, so that the
+ * orders of a pair are only ever updated by one thread in a strict sequence
+ * while pairs are applied in parallel. A cancellation or an amendment is
+ * routed to the ring of the pair holding the order. The request thread waits
+ * for the outcome, the time spent queueing is recorded in
+ * {@link #queueLatency()}.
+ * 
+ * It depends on the order journal so that the ring is drained before the
+ * journal is closed on shut down.
+ * 
+ * @author PM
+ *
+ */
+
+@Component
+@DependsOn("orderJournal")
+public class OrderIngestionPipeline {
+
+	public static final String MODE_DIRECT = "direct";
+
+	public static final String MODE_RING = "ring";
+
+	@Value("${fxorder.ingestion.mode:direct}")
+	private String mode;
+
+	@Value("${fxorder.ingestion.ring-size:65536}")
+	private int ringSize;
+
+	@Value("${fxorder.ingestion.timeout-ms:5000}")
+	private long timeoutMs;
+
+	@Autowired
+	private CurrencyPairRegistry pairs;
+
+	private OrderEventHandler handler;
+
+	/** The rings by currency pair id. */
+	private volatile OrderRingBuffer[] rings;
+
+	/** The queueing latencies by currency pair id. */
+	private volatile LatencyHistogram[] queueLatencies = new LatencyHistogram[0];
+
+	/**
+	 * Starts the pipeline, it is called once by the active trading service.
+	 * 
+	 * @param handler applies the events to the service order store
+	 */
+	public synchronized void start(OrderEventHandler handler) {
+		this.handler = handler;
+		if (MODE_RING.equalsIgnoreCase(mode)) {
+			List<CurrencyPair> registered = pairs.pairs();
+			OrderRingBuffer[] started = new OrderRingBuffer[registered.size()];
+			queueLatencies = new LatencyHistogram[registered.size()];
+			for (CurrencyPair pair : registered) {
+				queueLatencies[pair.getId()] = new LatencyHistogram();
+				started[pair.getId()] = new OrderRingBuffer(ringSize, handler, queueLatencies[pair.getId()],
+						"fxorder-writer-" + pair.getSymbol());
+				started[pair.getId()].start();
+			}
+			rings = started;
+		}
+	}
+
+	/**
+	 * Stops the writer threads once their ring is drained.
+	 */
+	@PreDestroy
+	public synchronized void stop() throws InterruptedException {
+		if (null != rings) {
+			for (OrderRingBuffer ring : rings) {
+				ring.stop();
+			}
+			rings = null;
+		}
+	}
+
+	/**
+	 * Applies a new validated order.
+	 * 
+	 * @return false if the order was dropped, as an immediate order nothing
+	 *         could fill
+	 * @throws ServiceException
+	 *             if the order could not be applied in time
+	 */
+	public boolean add(OrderData order) throws ServiceException {
+		OrderRingBuffer[] current = rings;
+
+		if (null == current) {
+			return handler.onAdd(order);
+		}
+
+		OrderEvent event = claim(current[order.getPair().getId()]);
+		event.type = OrderEvent.Type.ADD;
+		event.order = order;
+		return await(publish(current[order.getPair().getId()], event));
+	}
+
+	/**
+	 * Applies a batch of new validated orders, the orders of each currency pair
+	 * being published to its ring as one event.
+	 * 
+	 * @throws ServiceException
+	 *             if the orders could not be applied in time
+	 */
+	public void addAll(List<OrderData> orders) throws ServiceException {
+		OrderRingBuffer[] current = rings;
+
+		if (null == current) {
+			handler.onAddAll(orders);
+			return;
+		}
+
+		List<List<OrderData>> byPair = new ArrayList<List<OrderData>>(current.length);
+		for (int i = 0; i < current.length; i++) {
+			byPair.add(null);
+		}
+		for (OrderData order : orders) {
+			int pair = order.getPair().getId();
+			if (null == byPair.get(pair)) {
+				byPair.set(pair, new ArrayList<OrderData>());
+			}
+			byPair.get(pair).add(order);
+		}
+
+		List<CompletableFuture<Boolean>> results = new ArrayList<CompletableFuture<Boolean>>();
+		for (int pair = 0; pair < current.length; pair++) {
+			if (null != byPair.get(pair)) {
+				OrderEvent event = claim(current[pair]);
+				event.type = OrderEvent.Type.ADD_ALL;
+				event.orders = byPair.get(pair);
+				results.add(publish(current[pair], event));
+			}
+		}
+		for (CompletableFuture<Boolean> result : results) {
+			await(result);
+		}
+	}
+
+	/**
+	 * Applies the cancellation of an order.
+	 * 
+	 * @return true if the order existed
+	 * @throws ServiceException
+	 *             if the cancellation could not be applied in time
+	 */
+	public boolean cancel(long orderId) throws ServiceException {
+		OrderRingBuffer[] current = rings;
+
+		if (null == current) {
+			return handler.onCancel(orderId);
+		}
+
+		int shard = handler.shardOf(orderId);
+		if (shard < 0 || shard >= current.length) {
+			return false;
+		}
+
+		// The order may have been cancelled meanwhile, the writer tells
+		OrderEvent event = claim(current[shard]);
+		event.type = OrderEvent.Type.CANCEL;
+		event.orderId = orderId;
+		return await(publish(current[shard], event));
+	}
+
+	/**
+	 * Applies the amendment of the price and amount of an order, 0 keeping
+	 * either.
+	 * 
+	 * @return true if the order existed
+	 * @throws ServiceException
+	 *             if the amendment could not be applied in time
+	 */
+	public boolean amend(long orderId, long pricePips, long amount) throws ServiceException {
+		OrderRingBuffer[] current = rings;
+
+		if (null == current) {
+			return handler.onAmend(orderId, pricePips, amount);
+		}
+
+		int shard = handler.shardOf(orderId);
+		if (shard < 0 || shard >= current.length) {
+			return false;
+		}
+
+		OrderEvent event = claim(current[shard]);
+		event.type = OrderEvent.Type.AMEND;
+		event.orderId = orderId;
+		event.pricePips = pricePips;
+		event.amount = amount;
+		return await(publish(current[shard], event));
+	}
+
+	/**
+	 * Applies the cancellation of a batch of orders, the orders of each
+	 * currency pair being published to its ring as one event.
+	 * 
+	 * @return true at the index of every order which existed
+	 * @throws ServiceException
+	 *             if the cancellations could not be applied in time
+	 */
+	public boolean[] cancelAll(long[] orderIds) throws ServiceException {
+		OrderRingBuffer[] current = rings;
+
+		if (null == current) {
+			return handler.onCancelAll(orderIds);
+		}
+
+		// The positions in the batch of the ids of each pair
+		List<List<Integer>> byPair = new ArrayList<List<Integer>>(current.length);
+		for (int i = 0; i < current.length; i++) {
+			byPair.add(null);
+		}
+		for (int i = 0; i < orderIds.length; i++) {
+			int shard = 0 == orderIds[i] ? -1 : handler.shardOf(orderIds[i]);
+			if (shard >= 0 && shard < current.length) {
+				if (null == byPair.get(shard)) {
+					byPair.set(shard, new ArrayList<Integer>());
+				}
+				byPair.get(shard).add(i);
+			}
+		}
+
+		List<CompletableFuture<Boolean>> results = new ArrayList<CompletableFuture<Boolean>>();
+		List<boolean[]> outcomes = new ArrayList<boolean[]>();
+		List<List<Integer>> positions = new ArrayList<List<Integer>>();
+		for (int pair = 0; pair < current.length; pair++) {
+			List<Integer> indexes = byPair.get(pair);
+			if (null != indexes) {
+				long[] ids = new long[indexes.size()];
+				for (int j = 0; j < ids.length; j++) {
+					ids[j] = orderIds[indexes.get(j)];
+				}
+				OrderEvent event = claim(current[pair]);
+				event.type = OrderEvent.Type.CANCEL_ALL;
+				event.orderIds = ids;
+				event.cancelled = new boolean[ids.length];
+				outcomes.add(event.cancelled);
+				positions.add(indexes);
+				results.add(publish(current[pair], event));
+			}
+		}
+
+		boolean[] cancelled = new boolean[orderIds.length];
+		for (int i = 0; i < results.size(); i++) {
+			await(results.get(i));
+			for (int j = 0; j < positions.get(i).size(); j++) {
+				cancelled[positions.get(i).get(j)] = outcomes.get(i)[j];
+			}
+		}
+		return cancelled;
+	}
+
+	/**
+	 * @return the ingestion mode
+	 */
+	public String getMode() {
+		return null == rings ? MODE_DIRECT : MODE_RING;
+	}
+
+	/**
+	 * @return the number of events waiting for the writer threads
+	 */
+	public long backlog() {
+		OrderRingBuffer[] current = rings;
+		long backlog = 0;
+		if (null != current) {
+			for (OrderRingBuffer ring : current) {
+				backlog += ring.backlog();
+			}
+		}
+		return backlog;
+	}
+
+	/**
+	 * @return the time events spent in the rings of every pair before being
+	 *         applied
+	 */
+	public LatencyHistogram queueLatency() {
+		LatencyHistogram merged = new LatencyHistogram();
+		for (LatencyHistogram queueLatency : queueLatencies) {
+			merged.add(queueLatency);
+		}
+		return merged;
+	}
+
+	// Internal helpers
+
+	/**
+	 * Claims the next slot of the ring, the caller fills it and publishes it.
+	 */
+	private OrderEvent claim(OrderRingBuffer ring) {
+		long sequence = ring.claim();
+		OrderEvent event = ring.get(sequence);
+		event.sequence = sequence;
+		return event;
+	}
+
+	private CompletableFuture<Boolean> publish(OrderRingBuffer ring, OrderEvent event) {
+		CompletableFuture<Boolean> result = new CompletableFuture<Boolean>();
+		event.result = result;
+		ring.publish(event.sequence);
+		return result;
+	}
+
+	private boolean await(CompletableFuture<Boolean> result) {
+		try {
+			return result.get(timeoutMs, TimeUnit.MILLISECONDS);
+		} catch (ExecutionException e) {
+			throw new ServiceException(e.getCause().getMessage());
+		} catch (TimeoutException e) {
+			throw new ServiceException("Order ingestion timed out!");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ServiceException("Order ingestion interrupted!");
+		}
+	}
+
+}
@@ -0,0 +1,215 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.worldfirst.fxorder.pipeline;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Class OrderRingBuffer
+ * 
+ * A multi producer, single consumer ring of pre-allocated {@link OrderEvent}
+ * slots in the style of the LMAX disruptor. Request threads claim a sequence,
+ * fill the slot and publish it, and one writer thread drains the slots in
+ * sequence order and hands them to the {@link OrderEventHandler}.
+ * 
+ * A producer waits while the ring is full, and the writer parks when it is
+ * empty until a producer publishes again.
+ * 
+ * @author PM
+ *
+ */
+final class OrderRingBuffer implements Runnable {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(OrderRingBuffer.class);
+
+	/** Empty polls spent spinning before the writer parks. */
+	private static final int SPIN_TRIES = 1000;
+
+	/** Upper bound of a park, in case a wake up is missed. */
+	private static final long PARK_NANOS = 1000000L;
+
+	private final OrderEvent[] events;
+
+	private final int mask;
+
+	private final int indexShift;
+
+	/** The lap of the sequence last published in every slot. */
+	private final AtomicIntegerArray published;
+
+	/** The last sequence claimed by a producer. */
+	private final AtomicLong claimed = new AtomicLong(-1);
+
+	/** The last sequence applied by the writer. */
+	private volatile long consumed = -1;
+
+	private volatile boolean writerParked;
+
+	private volatile boolean running = true;
+
+	private final OrderEventHandler handler;
+
+	private final LatencyHistogram queueLatency;
+
+	private final Thread writer;
+
+	/**
+	 * @param size the number of slots, rounded up to a power of two
+	 * @param handler applies the events
+	 * @param queueLatency records the time between claim and apply
+	 * @param name the name of the writer thread
+	 */
+	OrderRingBuffer(int size, OrderEventHandler handler, LatencyHistogram queueLatency, String name) {
+		int capacity = Integer.highestOneBit(Math.max(2, size - 1)) << 1;
+
+		this.events = new OrderEvent[capacity];
+		this.mask = capacity - 1;
+		this.indexShift = Integer.numberOfTrailingZeros(capacity);
+		this.published = new AtomicIntegerArray(capacity);
+		for (int i = 0; i < capacity; i++) {
+			events[i] = new OrderEvent();
+			published.set(i, -1);
+		}
+
+		this.handler = handler;
+		this.queueLatency = queueLatency;
+		this.writer = new Thread(this, name);
+		this.writer.setDaemon(true);
+	}
+
+	void start() {
+		writer.start();
+	}
+
+	/**
+	 * Stops the writer once every published event has been applied.
+	 */
+	void stop() throws InterruptedException {
+		running = false;
+		LockSupport.unpark(writer);
+		writer.join();
+	}
+
+	/**
+	 * Claims the next sequence, waiting while the ring is full.
+	 * 
+	 * @return the claimed sequence
+	 */
+	long claim() {
+		long sequence = claimed.incrementAndGet();
+		while (sequence - events.length > consumed) {
+			LockSupport.parkNanos(1000L);
+		}
+		events[(int) sequence & mask].claimNanos = System.nanoTime();
+		return sequence;
+	}
+
+	/**
+	 * @return the slot of a claimed sequence
+	 */
+	OrderEvent get(long sequence) {
+		return events[(int) sequence & mask];
+	}
+
+	/**
+	 * Makes a claimed and filled slot visible to the writer.
+	 */
+	void publish(long sequence) {
+		published.set((int) sequence & mask, (int) (sequence >>> indexShift));
+		if (writerParked) {
+			LockSupport.unpark(writer);
+		}
+	}
+
+	/**
+	 * @return the number of claimed events not applied yet
+	 */
+	long backlog() {
+		return claimed.get() - consumed;
+	}
+
+	/**
+	 * The writer loop, it applies the events in sequence order.
+	 */
+	@Override
+	public void run() {
+		long next = 0;
+		int idle = 0;
+
+		while (running || next <= claimed.get()) {
+			long last = next - 1;
+			while (isPublished(last + 1)) {
+				last++;
+			}
+
+			if (last < next) {
+				if (++idle > SPIN_TRIES) {
+					writerParked = true;
+					if (!isPublished(next) && running) {
+						LockSupport.parkNanos(PARK_NANOS);
+					}
+					writerParked = false;
+				} else {
+					Thread.yield();
+				}
+				continue;
+			}
+
+			idle = 0;
+			for (long sequence = next; sequence <= last; sequence++) {
+				apply(events[(int) sequence & mask]);
+			}
+			consumed = last;
+			next = last + 1;
+		}
+	}
+
+	// Internal helpers
+
+	private boolean isPublished(long sequence) {
+		return published.get((int) sequence & mask) == (int) (sequence >>> indexShift);
+	}
+
+	private void apply(OrderEvent event) {
+		queueLatency.record(System.nanoTime() - event.claimNanos);
+		try {
+			switch (event.type) {
+			case ADD:
+				event.result.complete(handler.onAdd(event.order));
+				break;
+			case ADD_ALL:
+				handler.onAddAll(event.orders);
+				event.result.complete(Boolean.TRUE);
+				break;
+			case AMEND:
+				event.result.complete(handler.onAmend(event.orderId, event.pricePips, event.amount));
+				break;
+			case CANCEL_ALL:
+				boolean[] cancelled = handler.onCancelAll(event.orderIds);
+				System.arraycopy(cancelled, 0, event.cancelled, 0, cancelled.length);
+				event.result.complete(Boolean.TRUE);
+				break;
+			default:
+				event.result.complete(handler.onCancel(event.orderId));
+			}
+		} catch (RuntimeException e) {
+			LOGGER.debug("++++++++++++++++++++++++++++: " + e.getMessage());
+			event.result.completeExceptionally(e);
+		} finally {
+			event.clear();
+		}
+	}
+
+}
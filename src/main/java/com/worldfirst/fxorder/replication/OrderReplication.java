@@ -0,0 +1,455 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.replication;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.worldfirst.fxorder.domain.CurrencyPair;
+import com.worldfirst.fxorder.domain.OrderData;
+import com.worldfirst.fxorder.metrics.OrderMetrics;
+import com.worldfirst.fxorder.pipeline.OrderEventHandler;
+import com.worldfirst.fxorder.service.CurrencyPairRegistry;
+
+/**
+ * Class OrderReplication
+ *
+ * It replicates the order store of the active trading service from a leader
+ * to followers, as selected by fxorder.replication.role, see
+ * {@link ReplicationRole}.
+ *
+ * The leader appends every applied order, successful cancellation and
+ * successful amendment to a {@link ReplicationLog} and streams it to the
+ * followers over TCP, see {@link ReplicationLeader}. The events of a currency
+ * pair are applied and appended under the lock of the pair, so they are
+ * numbered in the order they changed the store. A follower applies them in
+ * the same order to its own store, see {@link ReplicationFollower}, so it
+ * ends up with the same orders, arrival sequences and, with the book engine,
+ * the same fills. It rejects order entry, stops expiring orders as it
+ * replicates their expiry, and serves the reads as long as it lags by no
+ * more than fxorder.replication.max-lag-ms.
+ *
+ * A follower is promoted to leader by {@link #promote()}: it stops following,
+ * keeps its store and starts streaming it to followers of its own.
+ *
+ * @author PM
+ *
+ */
+
+@Component
+public class OrderReplication {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(OrderReplication.class);
+
+	@Value("${fxorder.replication.role:none}")
+	private String role;
+
+	@Value("${fxorder.replication.port:9191}")
+	private int port;
+
+	@Value("${fxorder.replication.leader:localhost:9191}")
+	private String leader;
+
+	@Value("${fxorder.replication.log-size:262144}")
+	private int logSize;
+
+	@Value("${fxorder.replication.buffer-size:65536}")
+	private int bufferSize;
+
+	@Value("${fxorder.replication.heartbeat-ms:100}")
+	private long heartbeatMs;
+
+	@Value("${fxorder.replication.reconnect-ms:1000}")
+	private long reconnectMs;
+
+	@Value("${fxorder.replication.max-lag-ms:5000}")
+	private long maxLagMs;
+
+	@Autowired
+	private CurrencyPairRegistry pairs;
+
+	@Autowired
+	private OrderMetrics metrics;
+
+	/**
+	 * Shared by the events being applied and appended, exclusive while a
+	 * snapshot is taken so it matches exactly the events appended before it.
+	 */
+	private final ReentrantReadWriteLock applyLock = new ReentrantReadWriteLock();
+
+	/** One apply lock per currency pair. */
+	private final Object[] pairLocks = new Object[CurrencyPair.MAX_PAIRS];
+
+	private final List<Runnable> leadingActions = new ArrayList<Runnable>();
+
+	private final AtomicLong events = new AtomicLong();
+
+	private volatile ReplicationRole mode = ReplicationRole.NONE;
+
+	private OrderEventHandler handler;
+
+	private Supplier<List<OrderData>> snapshotSource;
+
+	private volatile ReplicationLog log;
+
+	private volatile ReplicationLeader server;
+
+	private volatile ReplicationFollower follower;
+
+	public OrderReplication() {
+		for (int i = 0; i < pairLocks.length; i++) {
+			pairLocks[i] = new Object();
+		}
+	}
+
+	/**
+	 * Starts leading or following and returns the handler to be started by
+	 * the ingestion pipeline, the given one when replication is off.
+	 *
+	 * @param handler applies the events to the service order store
+	 * @param snapshotSource returns every order of the store in arrival
+	 *            sequence, it is called while no event is being applied
+	 */
+	public synchronized OrderEventHandler open(OrderEventHandler handler, Supplier<List<OrderData>> snapshotSource) {
+		mode = ReplicationRole.valueOf(role.trim().toUpperCase(Locale.ROOT));
+		if (ReplicationRole.NONE == mode) {
+			return handler;
+		}
+
+		this.handler = handler;
+		this.snapshotSource = snapshotSource;
+		if (ReplicationRole.LEADER == mode) {
+			lead(0);
+		} else {
+			follower = new ReplicationFollower(leader, handler, snapshotSource, pairs, bufferSize, reconnectMs);
+		}
+
+		metrics.gauge("fxorder.replication.lag.millis", "Time since this follower last was caught up with its leader",
+				this::lagMillis);
+		metrics.gauge("fxorder.replication.followers", "Followers connected to this leader",
+				() -> null == server ? 0 : server.followers());
+		metrics.counter("fxorder.replication.events", "Events appended by this leader or applied by this follower",
+				this::replicatedEvents);
+		return new ReplicatingHandler();
+	}
+
+	/**
+	 * Runs the action once this node leads or does not replicate, right away
+	 * unless it is a follower, otherwise when it is promoted.
+	 */
+	public synchronized void whenLeading(Runnable action) {
+		if (ReplicationRole.FOLLOWER == mode) {
+			leadingActions.add(action);
+		} else {
+			action.run();
+		}
+	}
+
+	/**
+	 * Turns this follower into a leader keeping the orders replicated so far.
+	 *
+	 * @throws IllegalStateException
+	 *             if this node is not a follower
+	 */
+	public synchronized void promote() {
+		if (ReplicationRole.FOLLOWER != mode) {
+			throw new IllegalStateException("Only a replication follower can be promoted!");
+		}
+
+		long applied;
+		try {
+			applied = follower.close();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Promotion interrupted!");
+		}
+		events.addAndGet(follower.appliedEvents());
+		follower = null;
+		lead(applied);
+		mode = ReplicationRole.LEADER;
+		LOGGER.info("Promoted to replication leader at sequence " + applied);
+
+		for (Runnable action : leadingActions) {
+			action.run();
+		}
+		leadingActions.clear();
+	}
+
+	/**
+	 * @return true if this node follows a leader
+	 */
+	public boolean isFollower() {
+		return ReplicationRole.FOLLOWER == mode;
+	}
+
+	/**
+	 * @return the time since this follower last was caught up with its leader,
+	 *         0 if it is not a follower
+	 */
+	public long lagMillis() {
+		ReplicationFollower current = follower;
+		return null == current ? 0 : current.lagMillis();
+	}
+
+	/**
+	 * @return true if this follower lags by more than
+	 *         fxorder.replication.max-lag-ms, so its reads should not be served
+	 */
+	public boolean isStale() {
+		return lagMillis() > maxLagMs;
+	}
+
+	/**
+	 * @return the role and the leader or follower figures
+	 */
+	public Map<String, Object> stats() {
+		Map<String, Object> stats = new LinkedHashMap<String, Object>();
+		stats.put("role", mode);
+		ReplicationLeader currentServer = server;
+		if (null != currentServer) {
+			stats.put("lastSequence", log.last());
+			stats.put("appendedEvents", log.appendedEvents());
+			stats.putAll(currentServer.stats());
+		}
+		ReplicationFollower currentFollower = follower;
+		if (null != currentFollower) {
+			stats.put("maxLagMillis", maxLagMs);
+			stats.putAll(currentFollower.stats());
+		}
+		return stats;
+	}
+
+	/**
+	 * Stops leading or following.
+	 */
+	@PreDestroy
+	public synchronized void close() throws InterruptedException {
+		if (null != server) {
+			server.close();
+			server = null;
+		}
+		if (null != follower) {
+			follower.close();
+			follower = null;
+		}
+	}
+
+	/**
+	 * @return the port the leader listens to, -1 if it is not a leader
+	 */
+	int leaderPort() {
+		ReplicationLeader current = server;
+		return null == current ? -1 : current.getPort();
+	}
+
+	/**
+	 * @return the sequence of the last event appended or applied
+	 */
+	long lastSequence() {
+		ReplicationFollower current = follower;
+		return null != current ? current.applied() : null != log ? log.last() : 0;
+	}
+
+	// Internal helpers
+
+	/**
+	 * Starts streaming the events following the given sequence under a new
+	 * epoch, so every follower connecting loads a snapshot first.
+	 */
+	private void lead(long after) {
+		log = new ReplicationLog(logSize, after);
+		try {
+			server = new ReplicationLeader(log, ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE),
+					this::snapshot, port, bufferSize, heartbeatMs);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Replication leader could not listen on port " + port, e);
+		}
+	}
+
+	/**
+	 * Fills the list with the orders of the store.
+	 *
+	 * @return the sequence of the last event they include
+	 */
+	private long snapshot(List<OrderData> into) {
+		applyLock.writeLock().lock();
+		try {
+			into.addAll(snapshotSource.get());
+			return log.last();
+		} finally {
+			applyLock.writeLock().unlock();
+		}
+	}
+
+	private long replicatedEvents() {
+		ReplicationFollower current = follower;
+		ReplicationLog currentLog = log;
+		long count = events.get();
+		if (null != current) {
+			count += current.appliedEvents();
+		} else if (null != currentLog) {
+			count += currentLog.appendedEvents();
+		}
+		return count;
+	}
+
+	/**
+	 * Applies the events then appends the ones which changed the store under
+	 * the lock of their currency pair, or rejects them on a follower.
+	 */
+	private final class ReplicatingHandler implements OrderEventHandler {
+
+		@Override
+		public boolean onAdd(OrderData order) {
+			checkLeading();
+			applyLock.readLock().lock();
+			try {
+				synchronized (pairLocks[order.getPair().getId()]) {
+					boolean kept = handler.onAdd(order);
+					log.add(order);
+					return kept;
+				}
+			} finally {
+				applyLock.readLock().unlock();
+			}
+		}
+
+		@Override
+		public boolean onCancel(long orderId) {
+			checkLeading();
+			int pair = handler.shardOf(orderId);
+			if (pair < 0) {
+				return false;
+			}
+			applyLock.readLock().lock();
+			try {
+				synchronized (pairLocks[pair]) {
+					if (!handler.onCancel(orderId)) {
+						return false;
+					}
+					log.cancel(orderId);
+					return true;
+				}
+			} finally {
+				applyLock.readLock().unlock();
+			}
+		}
+
+		@Override
+		public boolean onAmend(long orderId, long pricePips, long amount) {
+			checkLeading();
+			int pair = handler.shardOf(orderId);
+			if (pair < 0) {
+				return false;
+			}
+			applyLock.readLock().lock();
+			try {
+				synchronized (pairLocks[pair]) {
+					if (!handler.onAmend(orderId, pricePips, amount)) {
+						return false;
+					}
+					log.amend(orderId, pricePips, amount);
+					return true;
+				}
+			} finally {
+				applyLock.readLock().unlock();
+			}
+		}
+
+		@Override
+		public void onAddAll(List<OrderData> orders) {
+			checkLeading();
+			Map<Integer, List<OrderData>> byPair = new LinkedHashMap<Integer, List<OrderData>>();
+			for (OrderData order : orders) {
+				byPair.computeIfAbsent(order.getPair().getId(), id -> new ArrayList<OrderData>()).add(order);
+			}
+
+			applyLock.readLock().lock();
+			try {
+				for (Map.Entry<Integer, List<OrderData>> batch : byPair.entrySet()) {
+					synchronized (pairLocks[batch.getKey()]) {
+						handler.onAddAll(batch.getValue());
+						for (OrderData order : batch.getValue()) {
+							log.add(order);
+						}
+					}
+				}
+			} finally {
+				applyLock.readLock().unlock();
+			}
+		}
+
+		@Override
+		public boolean[] onCancelAll(long[] orderIds) {
+			checkLeading();
+			Map<Integer, List<Integer>> byPair = new LinkedHashMap<Integer, List<Integer>>();
+			for (int i = 0; i < orderIds.length; i++) {
+				int pair = handler.shardOf(orderIds[i]);
+				if (pair >= 0) {
+					byPair.computeIfAbsent(pair, id -> new ArrayList<Integer>()).add(i);
+				}
+			}
+
+			boolean[] cancelled = new boolean[orderIds.length];
+			applyLock.readLock().lock();
+			try {
+				for (Map.Entry<Integer, List<Integer>> batch : byPair.entrySet()) {
+					List<Integer> positions = batch.getValue();
+					long[] ids = new long[positions.size()];
+					for (int i = 0; i < ids.length; i++) {
+						ids[i] = orderIds[positions.get(i)];
+					}
+					synchronized (pairLocks[batch.getKey()]) {
+						boolean[] done = handler.onCancelAll(ids);
+						for (int i = 0; i < ids.length; i++) {
+							if (done[i]) {
+								log.cancel(ids[i]);
+								cancelled[positions.get(i)] = true;
+							}
+						}
+					}
+				}
+			} finally {
+				applyLock.readLock().unlock();
+			}
+			return cancelled;
+		}
+
+		@Override
+		public int shardOf(long orderId) {
+			return handler.shardOf(orderId);
+		}
+
+		private void checkLeading() {
+			if (ReplicationRole.FOLLOWER == mode) {
+				throw new IllegalStateException("Orders are entered on the replication leader " + leader + "!");
+			}
+		}
+	}
+
+}
@@ -0,0 +1,264 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.replication;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.worldfirst.fxorder.domain.OrderData;
+import com.worldfirst.fxorder.pipeline.OrderEventHandler;
+import com.worldfirst.fxorder.service.CurrencyPairRegistry;
+
+/**
+ * Class ReplicationFollower
+ *
+ * It connects to the leader, reconnecting whenever the connection drops, and
+ * applies the events it streams to the order store in their sequence on a
+ * single thread. A snapshot sent by the leader replaces every order of the
+ * store.
+ *
+ * The follower is caught up whenever it applied every event up to the last
+ * sequence of the leader it heard of, the lag being the time since it last
+ * was. As the leader sends a heartbeat at least every heartbeat interval, a
+ * connected follower keeping up lags by at most that much.
+ *
+ * @author PM
+ *
+ */
+final class ReplicationFollower {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ReplicationFollower.class);
+
+	private final String host;
+
+	private final int port;
+
+	private final OrderEventHandler handler;
+
+	/** Returns every order of the store, to be cancelled before a snapshot. */
+	private final Supplier<List<OrderData>> localOrders;
+
+	private final CurrencyPairRegistry pairs;
+
+	private final int bufferSize;
+
+	private final long reconnectMs;
+
+	private final Thread thread;
+
+	private volatile boolean running = true;
+
+	private volatile SocketChannel channel;
+
+	private volatile boolean connected;
+
+	private volatile long epoch;
+
+	/** The sequence of the last event applied. */
+	private volatile long applied;
+
+	/** The last sequence of the leader heard of. */
+	private volatile long leaderLast;
+
+	private volatile long caughtUpNanos = System.nanoTime();
+
+	private volatile long appliedEvents;
+
+	private volatile long snapshotsLoaded;
+
+	private volatile long connections;
+
+	private final long startedNanos = System.nanoTime();
+
+	ReplicationFollower(String leader, OrderEventHandler handler, Supplier<List<OrderData>> localOrders,
+			CurrencyPairRegistry pairs, int bufferSize, long reconnectMs) {
+		int colon = leader.lastIndexOf(':');
+		if (colon < 0) {
+			throw new IllegalArgumentException("Replication leader must be host:port, not " + leader);
+		}
+		this.host = leader.substring(0, colon).trim();
+		this.port = Integer.parseInt(leader.substring(colon + 1).trim());
+		this.handler = handler;
+		this.localOrders = localOrders;
+		this.pairs = pairs;
+		this.bufferSize = Math.max(bufferSize, ReplicationProtocol.MAX_FRAME);
+		this.reconnectMs = reconnectMs;
+
+		thread = new Thread(this::follow, "fxorder-replication-follower");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Disconnects from the leader and waits for the event being applied.
+	 *
+	 * @return the sequence of the last event applied
+	 */
+	long close() throws InterruptedException {
+		running = false;
+		SocketChannel current = channel;
+		if (null != current) {
+			try {
+				current.close();
+			} catch (IOException e) {
+				LOGGER.debug("++++++++++++++++++++++++++++: " + e.getMessage());
+			}
+		}
+		thread.join(TimeUnit.SECONDS.toMillis(30));
+		return applied;
+	}
+
+	/**
+	 * @return the sequence of the last event applied
+	 */
+	long applied() {
+		return applied;
+	}
+
+	/**
+	 * @return the number of events applied, snapshots aside
+	 */
+	long appliedEvents() {
+		return appliedEvents;
+	}
+
+	/**
+	 * @return the time since the follower last was caught up with the leader
+	 */
+	long lagMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - caughtUpNanos);
+	}
+
+	/**
+	 * @return the connection, lag and throughput figures
+	 */
+	Map<String, Object> stats() {
+		Map<String, Object> stats = new LinkedHashMap<String, Object>();
+		double seconds = Math.max(1e-9, (System.nanoTime() - startedNanos) / 1e9);
+		stats.put("leader", host + ":" + port);
+		stats.put("connected", connected);
+		stats.put("connections", connections);
+		stats.put("epoch", epoch);
+		stats.put("appliedSequence", applied);
+		stats.put("leaderSequence", leaderLast);
+		stats.put("lagEvents", Math.max(0, leaderLast - applied));
+		stats.put("lagMillis", lagMillis());
+		stats.put("appliedEvents", appliedEvents);
+		stats.put("eventsPerSecond", (long) (appliedEvents / seconds));
+		stats.put("snapshotsLoaded", snapshotsLoaded);
+		return stats;
+	}
+
+	// Internal helpers
+
+	private void follow() {
+		ByteBuffer in = ByteBuffer.allocate(bufferSize);
+		ByteBuffer out = ByteBuffer.allocate(ReplicationProtocol.MAX_FRAME);
+		while (running) {
+			try (SocketChannel current = SocketChannel.open()) {
+				channel = current;
+				current.setOption(StandardSocketOptions.TCP_NODELAY, true);
+				current.connect(new InetSocketAddress(host, port));
+				connected = true;
+				connections++;
+				LOGGER.info("Following replication leader " + host + ":" + port + " from sequence " + applied);
+
+				ReplicationProtocol.putSubscribe(out, epoch, applied);
+				ReplicationProtocol.write(current, out);
+				in.clear();
+				in.flip();
+				while (running) {
+					apply(ReplicationProtocol.read(current, in), current, in);
+				}
+			} catch (IOException | RuntimeException e) {
+				if (running) {
+					LOGGER.warn("Replication from " + host + ":" + port + " interrupted: " + e.getMessage());
+				}
+			} finally {
+				connected = false;
+				channel = null;
+			}
+
+			if (running) {
+				try {
+					Thread.sleep(reconnectMs);
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+		}
+	}
+
+	private void apply(ByteBuffer body, SocketChannel current, ByteBuffer in) throws IOException {
+		byte type = body.get();
+		if (ReplicationProtocol.HEARTBEAT == type) {
+			leaderLast = body.getLong();
+			if (applied >= leaderLast) {
+				caughtUpNanos = System.nanoTime();
+			}
+			return;
+		}
+		if (ReplicationProtocol.RESUME == type) {
+			epoch = body.getLong();
+			if (body.getLong() != applied) {
+				throw new IOException("Leader resumed from another sequence");
+			}
+			return;
+		}
+		if (ReplicationProtocol.SNAPSHOT == type) {
+			long snapshotEpoch = body.getLong();
+			long sequence = body.getLong();
+			loadSnapshot(body.getInt(), current, in);
+			epoch = snapshotEpoch;
+			applied = sequence;
+			snapshotsLoaded++;
+			return;
+		}
+
+		applied = ReplicationStream.applyEvent(type, body, applied, pairs, handler);
+		appliedEvents++;
+	}
+
+	/**
+	 * Replaces every order of the store by the orders of the snapshot.
+	 */
+	private void loadSnapshot(int count, SocketChannel current, ByteBuffer in) throws IOException {
+		List<OrderData> stale = localOrders.get();
+		if (!stale.isEmpty()) {
+			long[] ids = new long[stale.size()];
+			for (int i = 0; i < ids.length; i++) {
+				ids[i] = stale.get(i).getId();
+			}
+			handler.onCancelAll(ids);
+		}
+
+		for (int i = 0; i < count; i++) {
+			ByteBuffer body = ReplicationProtocol.read(current, in);
+			if (ReplicationProtocol.ORDER != body.get()) {
+				throw new IOException("Snapshot ended after " + i + " of " + count + " orders");
+			}
+			handler.onAdd(ReplicationProtocol.getOrder(body, pairs));
+		}
+		LOGGER.info("Loaded a replication snapshot of " + count + " orders");
+	}
+
+}
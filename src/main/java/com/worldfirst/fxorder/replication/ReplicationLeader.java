@@ -0,0 +1,263 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.replication;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.worldfirst.fxorder.domain.OrderData;
+
+/**
+ * Class ReplicationLeader
+ *
+ * It streams the events of the {@link ReplicationLog} to the followers
+ * connecting to its port, one thread per follower.
+ *
+ * A follower subscribing with the epoch of the leader and a sequence the log
+ * still holds the events after is resumed from it. Any other follower, a new
+ * one or one of a former leader, first receives a snapshot of the order store
+ * then the events following it. A follower the log overtakes is disconnected
+ * and loads a snapshot once reconnected.
+ *
+ * Every batch of events sent ends with a heartbeat carrying the last sequence
+ * of the log, sent on its own when no event is appended for the heartbeat
+ * interval, so a follower always knows how far behind it is.
+ *
+ * @author PM
+ *
+ */
+final class ReplicationLeader {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ReplicationLeader.class);
+
+	private final ReplicationLog log;
+
+	private final long epoch;
+
+	/** Fills the list with the orders of the store, returning the sequence they are as of. */
+	private final ToLongFunction<List<OrderData>> snapshots;
+
+	private final int bufferSize;
+
+	private final long heartbeatMs;
+
+	private final ServerSocketChannel server;
+
+	private final List<Session> sessions = new CopyOnWriteArrayList<Session>();
+
+	private final AtomicLong connections = new AtomicLong();
+
+	private final AtomicLong snapshotsSent = new AtomicLong();
+
+	private volatile boolean running = true;
+
+	ReplicationLeader(ReplicationLog log, long epoch, ToLongFunction<List<OrderData>> snapshots, int port,
+			int bufferSize, long heartbeatMs) throws IOException {
+		this.log = log;
+		this.epoch = epoch;
+		this.snapshots = snapshots;
+		this.bufferSize = Math.max(bufferSize, ReplicationProtocol.MAX_FRAME * 2);
+		this.heartbeatMs = heartbeatMs;
+		this.server = ServerSocketChannel.open();
+		this.server.bind(new InetSocketAddress(port));
+
+		Thread acceptor = new Thread(this::accept, "fxorder-replication-acceptor");
+		acceptor.setDaemon(true);
+		acceptor.start();
+		LOGGER.info("Replication leader listening on port " + getPort());
+	}
+
+	/**
+	 * @return the port listened to, the one picked by the system when
+	 *         fxorder.replication.port is 0
+	 */
+	int getPort() {
+		return server.socket().getLocalPort();
+	}
+
+	/**
+	 * Stops accepting followers and disconnects them.
+	 */
+	void close() {
+		running = false;
+		try {
+			server.close();
+		} catch (IOException e) {
+			LOGGER.debug("++++++++++++++++++++++++++++: " + e.getMessage());
+		}
+		for (Session session : sessions) {
+			session.close();
+		}
+	}
+
+	/**
+	 * @return the followers connected and the figures of each one
+	 */
+	Map<String, Object> stats() {
+		Map<String, Object> stats = new LinkedHashMap<String, Object>();
+		long last = log.last();
+		stats.put("epoch", epoch);
+		stats.put("port", getPort());
+		stats.put("connections", connections.get());
+		stats.put("snapshotsSent", snapshotsSent.get());
+		List<Map<String, Object>> followers = new ArrayList<Map<String, Object>>();
+		for (Session session : sessions) {
+			Map<String, Object> follower = new LinkedHashMap<String, Object>();
+			follower.put("address", session.address);
+			follower.put("sentSequence", session.sent);
+			follower.put("lagEvents", last - session.sent);
+			follower.put("sentEvents", session.sentEvents);
+			follower.put("sentBytes", session.sentBytes);
+			followers.add(follower);
+		}
+		stats.put("followers", followers);
+		return stats;
+	}
+
+	/**
+	 * @return the number of followers connected
+	 */
+	int followers() {
+		return sessions.size();
+	}
+
+	// Internal helpers
+
+	private void accept() {
+		while (running) {
+			try {
+				SocketChannel channel = server.accept();
+				channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+				connections.incrementAndGet();
+				Session session = new Session(channel);
+				sessions.add(session);
+				Thread thread = new Thread(session, "fxorder-replication-" + session.address);
+				thread.setDaemon(true);
+				thread.start();
+			} catch (IOException e) {
+				if (running) {
+					LOGGER.debug("++++++++++++++++++++++++++++: " + e.getMessage());
+				}
+			}
+		}
+	}
+
+	/**
+	 * The connection of one follower, served by its own thread.
+	 */
+	private final class Session implements Runnable {
+
+		private final SocketChannel channel;
+
+		private final String address;
+
+		private final ByteBuffer out = ByteBuffer.allocate(bufferSize);
+
+		/** The sequence of the last event sent. */
+		private volatile long sent;
+
+		private volatile long sentEvents;
+
+		private volatile long sentBytes;
+
+		Session(SocketChannel channel) throws IOException {
+			this.channel = channel;
+			this.address = String.valueOf(channel.getRemoteAddress());
+		}
+
+		@Override
+		public void run() {
+			try {
+				ByteBuffer in = ByteBuffer.allocate(ReplicationProtocol.MAX_FRAME);
+				in.flip();
+				ByteBuffer subscribe = ReplicationProtocol.read(channel, in);
+				if (ReplicationProtocol.SUBSCRIBE != subscribe.get()) {
+					throw new IOException("Expected a subscription");
+				}
+				long followerEpoch = subscribe.getLong();
+				long applied = subscribe.getLong();
+
+				if (epoch == followerEpoch && log.holdsAfter(applied)) {
+					ReplicationProtocol.putResume(out, epoch, applied);
+					sent = applied;
+				} else {
+					sendSnapshot();
+				}
+
+				while (running) {
+					int count = log.read(sent, out, heartbeatMs);
+					if (count < 0) {
+						LOGGER.warn("Replication follower " + address + " fell behind the log, disconnecting it");
+						break;
+					}
+					sent += count;
+					sentEvents += count;
+					if (out.remaining() < ReplicationProtocol.MAX_FRAME) {
+						flush();
+					}
+					ReplicationProtocol.putHeartbeat(out, log.last());
+					flush();
+				}
+			} catch (IOException e) {
+				if (running) {
+					LOGGER.info("Replication follower " + address + " disconnected: " + e.getMessage());
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				sessions.remove(this);
+				close();
+			}
+		}
+
+		void close() {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				LOGGER.debug("++++++++++++++++++++++++++++: " + e.getMessage());
+			}
+		}
+
+		private void sendSnapshot() throws IOException {
+			List<OrderData> orders = new ArrayList<OrderData>();
+			long sequence = snapshots.applyAsLong(orders);
+			ReplicationProtocol.putSnapshot(out, epoch, sequence, orders.size());
+			for (OrderData order : orders) {
+				if (out.remaining() < ReplicationProtocol.MAX_FRAME) {
+					flush();
+				}
+				ReplicationProtocol.putOrder(out, order);
+			}
+			sent = sequence;
+			snapshotsSent.incrementAndGet();
+		}
+
+		private void flush() throws IOException {
+			sentBytes += out.position();
+			ReplicationProtocol.write(channel, out);
+		}
+	}
+
+}
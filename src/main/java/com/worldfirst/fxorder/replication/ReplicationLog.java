@@ -0,0 +1,161 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.replication;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import com.worldfirst.fxorder.domain.OrderData;
+
+/**
+ * Class ReplicationLog
+ *
+ * It keeps the last events of the leader, numbered from 1 in the order they
+ * are applied, for its followers to read. Every event is encoded once into a
+ * fixed size slot of a ring holding the given number of events, the oldest
+ * being overwritten, so a follower falling further behind than the ring has
+ * to load a snapshot again.
+ *
+ * Every call is serialised on the instance. Readers wait on it for events to
+ * be appended, and appending only notifies them when one is waiting.
+ *
+ * A cluster also records the events of a currency pair being moved to another
+ * node in one, see {@link ReplicationStream}.
+ *
+ * @author PM
+ *
+ */
+public final class ReplicationLog {
+
+	private final int capacity;
+
+	private final ByteBuffer slots;
+
+	/** Views of the slots reused to encode and to copy the frames. */
+	private final ByteBuffer writer;
+
+	private final ByteBuffer reader;
+
+	/** The sequence of the last event appended. */
+	private long last;
+
+	private int waiting;
+
+	private long appendedEvents;
+
+	/**
+	 * @param capacity
+	 *            the number of events kept
+	 * @param last
+	 *            the sequence the events follow
+	 */
+	public ReplicationLog(int capacity, long last) {
+		this.capacity = capacity;
+		this.slots = ByteBuffer.allocate(capacity * ReplicationProtocol.MAX_FRAME);
+		this.writer = slots.duplicate();
+		this.reader = slots.duplicate();
+		this.last = last;
+	}
+
+	public synchronized long add(OrderData order) {
+		ReplicationProtocol.putAdd(slot(writer, last + 1), last + 1, order);
+		return published();
+	}
+
+	public synchronized long cancel(long orderId) {
+		ReplicationProtocol.putCancel(slot(writer, last + 1), last + 1, orderId);
+		return published();
+	}
+
+	public synchronized long amend(long orderId, long pricePips, long amount) {
+		ReplicationProtocol.putAmend(slot(writer, last + 1), last + 1, orderId, pricePips, amount);
+		return published();
+	}
+
+	/**
+	 * @return the sequence of the last event appended
+	 */
+	public synchronized long last() {
+		return last;
+	}
+
+	/**
+	 * @return true if the events following the given sequence are all kept
+	 */
+	synchronized boolean holdsAfter(long sequence) {
+		return sequence <= last && sequence >= last - capacity;
+	}
+
+	/**
+	 * Copies the frames of the events following the given sequence into the
+	 * buffer, as many as fit, waiting up to the given time for one to be
+	 * appended.
+	 *
+	 * @return the number of events copied, -1 if the first one was
+	 *         overwritten already
+	 */
+	synchronized int read(long after, ByteBuffer into, long waitMillis) throws InterruptedException {
+		if (after == last && waitMillis > 0) {
+			long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMillis);
+			waiting++;
+			try {
+				long left = waitMillis;
+				while (after == last && left > 0) {
+					wait(left);
+					left = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+				}
+			} finally {
+				waiting--;
+			}
+		}
+		if (after < last - capacity) {
+			return -1;
+		}
+
+		int count = 0;
+		for (long sequence = after + 1; sequence <= last; sequence++) {
+			ByteBuffer frame = slot(reader, sequence);
+			int length = 4 + frame.getInt(frame.position());
+			if (into.remaining() < length) {
+				break;
+			}
+			frame.limit(frame.position() + length);
+			into.put(frame);
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * @return the number of events appended
+	 */
+	synchronized long appendedEvents() {
+		return appendedEvents;
+	}
+
+	// Internal helpers
+
+	private ByteBuffer slot(ByteBuffer view, long sequence) {
+		view.clear();
+		view.position((int) (sequence % capacity) * ReplicationProtocol.MAX_FRAME);
+		return view;
+	}
+
+	private long published() {
+		last++;
+		appendedEvents++;
+		if (waiting > 0) {
+			notifyAll();
+		}
+		return last;
+	}
+
+}
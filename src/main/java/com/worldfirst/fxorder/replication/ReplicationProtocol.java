@@ -0,0 +1,253 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.replication;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+import com.worldfirst.fxorder.domain.CurrencyPair;
+import com.worldfirst.fxorder.domain.OrderData;
+import com.worldfirst.fxorder.domain.OrderType;
+import com.worldfirst.fxorder.domain.TimeInForce;
+import com.worldfirst.fxorder.service.CurrencyPairRegistry;
+
+/**
+ * Class ReplicationProtocol
+ *
+ * It defines the frames a leader and its followers exchange. Every frame is
+ * an int length, the number of bytes following it, then a type byte and a
+ * fixed layout body, all numbers being big-endian.
+ *
+ * Follower to leader, once connected,
+ *
+ * SUBSCRIBE: long epoch, long sequence of the last event applied
+ *
+ * Leader to follower,
+ *
+ * RESUME: long epoch, long sequence, the events following it come next
+ *
+ * SNAPSHOT: long epoch, long sequence, int count, the count ORDER frames of
+ * the store as of the sequence then the events following it come next
+ *
+ * ORDER: the order fields
+ *
+ * ADD: long sequence, the order fields
+ *
+ * CANCEL: long sequence, long orderId
+ *
+ * AMEND: long sequence, long orderId, long pricePips, long amount
+ *
+ * HEARTBEAT: long sequence of the last event of the leader
+ *
+ * The order fields are the long id, the short pair id, the price in pips, the
+ * amount, the side, the order date, the time in force, the expire time and
+ * the arrival sequence. The pair id is the index of the pair in the
+ * fxorder.pairs configuration, which every node must share.
+ *
+ * @author PM
+ *
+ */
+final class ReplicationProtocol {
+
+	static final byte SUBSCRIBE = 1;
+
+	static final byte RESUME = 2;
+
+	static final byte SNAPSHOT = 3;
+
+	static final byte ORDER = 4;
+
+	static final byte ADD = 5;
+
+	static final byte CANCEL = 6;
+
+	static final byte AMEND = 7;
+
+	static final byte HEARTBEAT = 8;
+
+	/** The length of the order fields. */
+	static final int ORDER_LENGTH = 8 + 2 + 8 + 8 + 1 + 8 + 1 + 8 + 8;
+
+	/** The longest frame, an ADD. */
+	static final int MAX_FRAME = 4 + 1 + 8 + ORDER_LENGTH;
+
+	private static final OrderType[] SIDES = OrderType.values();
+
+	private static final TimeInForce[] TERMS = TimeInForce.values();
+
+	private ReplicationProtocol() {
+	}
+
+	static void putSubscribe(ByteBuffer buffer, long epoch, long sequence) {
+		buffer.putInt(1 + 8 + 8);
+		buffer.put(SUBSCRIBE);
+		buffer.putLong(epoch);
+		buffer.putLong(sequence);
+	}
+
+	static void putResume(ByteBuffer buffer, long epoch, long sequence) {
+		buffer.putInt(1 + 8 + 8);
+		buffer.put(RESUME);
+		buffer.putLong(epoch);
+		buffer.putLong(sequence);
+	}
+
+	static void putSnapshot(ByteBuffer buffer, long epoch, long sequence, int count) {
+		buffer.putInt(1 + 8 + 8 + 4);
+		buffer.put(SNAPSHOT);
+		buffer.putLong(epoch);
+		buffer.putLong(sequence);
+		buffer.putInt(count);
+	}
+
+	static void putOrder(ByteBuffer buffer, OrderData order) {
+		buffer.putInt(1 + ORDER_LENGTH);
+		buffer.put(ORDER);
+		putFields(buffer, order);
+	}
+
+	static void putAdd(ByteBuffer buffer, long sequence, OrderData order) {
+		buffer.putInt(1 + 8 + ORDER_LENGTH);
+		buffer.put(ADD);
+		buffer.putLong(sequence);
+		putFields(buffer, order);
+	}
+
+	static void putCancel(ByteBuffer buffer, long sequence, long orderId) {
+		buffer.putInt(1 + 8 + 8);
+		buffer.put(CANCEL);
+		buffer.putLong(sequence);
+		buffer.putLong(orderId);
+	}
+
+	static void putAmend(ByteBuffer buffer, long sequence, long orderId, long pricePips, long amount) {
+		buffer.putInt(1 + 8 + 8 + 8 + 8);
+		buffer.put(AMEND);
+		buffer.putLong(sequence);
+		buffer.putLong(orderId);
+		buffer.putLong(pricePips);
+		buffer.putLong(amount);
+	}
+
+	static void putHeartbeat(ByteBuffer buffer, long sequence) {
+		buffer.putInt(1 + 8);
+		buffer.put(HEARTBEAT);
+		buffer.putLong(sequence);
+	}
+
+	/**
+	 * Decodes the order fields at the position of the body.
+	 *
+	 * @throws IOException
+	 *             if the pair is not configured on this node
+	 */
+	static OrderData getOrder(ByteBuffer body, CurrencyPairRegistry pairs) throws IOException {
+		long id = body.getLong();
+		int pairId = body.getShort();
+		CurrencyPair pair = pairs.get(pairId);
+		if (null == pair) {
+			throw new IOException("Unknown currency pair id " + pairId + ", nodes must share fxorder.pairs");
+		}
+		OrderData order = new OrderData(id, pair, body.getLong(), body.getLong(), SIDES[body.get()],
+				body.getLong());
+		order.setTimeInForce(TERMS[body.get()]);
+		order.setExpireTime(body.getLong());
+		order.setSequence(body.getLong());
+		return order;
+	}
+
+	/**
+	 * Reads the next frame from a blocking channel, a connection or the body
+	 * of an HTTP exchange.
+	 *
+	 * @param buffer
+	 *            at least MAX_FRAME bytes, holding the bytes read ahead from
+	 *            its position to its limit
+	 * @return the body of the frame, valid until the next call
+	 * @throws IOException
+	 *             if the channel is closed or the frame is malformed
+	 */
+	static ByteBuffer read(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+		fill(channel, buffer, 4);
+		int length = buffer.getInt(buffer.position());
+		if (length <= 0 || 4 + length > MAX_FRAME) {
+			throw new IOException("Malformed replication frame of " + length + " bytes");
+		}
+		fill(channel, buffer, 4 + length);
+
+		int start = buffer.position() + 4;
+		ByteBuffer body = buffer.duplicate();
+		body.position(start);
+		body.limit(start + length);
+		buffer.position(start + length);
+		return body;
+	}
+
+	/**
+	 * Reads ahead from a blocking channel unless bytes are left in the buffer.
+	 *
+	 * @return false if the channel ended between two frames
+	 */
+	static boolean hasFrame(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+		if (buffer.hasRemaining()) {
+			return true;
+		}
+		buffer.clear();
+		int read = 0;
+		while (0 == read) {
+			read = channel.read(buffer);
+		}
+		buffer.flip();
+		return read > 0;
+	}
+
+	/**
+	 * Writes the buffer from its start to its position then clears it.
+	 */
+	static void write(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	// Internal helpers
+
+	private static void putFields(ByteBuffer buffer, OrderData order) {
+		buffer.putLong(order.getId());
+		buffer.putShort((short) order.getPair().getId());
+		buffer.putLong(order.getPricePips());
+		buffer.putLong(order.getAmount());
+		buffer.put((byte) order.getOrderType().ordinal());
+		buffer.putLong(order.getOrderDate());
+		buffer.put((byte) order.getTimeInForce().ordinal());
+		buffer.putLong(order.getExpireTime());
+		buffer.putLong(order.getSequence());
+	}
+
+	private static void fill(ReadableByteChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+		if (buffer.remaining() >= bytes) {
+			return;
+		}
+		buffer.compact();
+		while (buffer.position() < bytes) {
+			if (channel.read(buffer) < 0) {
+				throw new EOFException("Replication connection closed");
+			}
+		}
+		buffer.flip();
+	}
+
+}
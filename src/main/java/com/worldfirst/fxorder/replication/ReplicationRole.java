@@ -0,0 +1,33 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.replication;
+
+/**
+ * Enum ReplicationRole
+ * 
+ * The part a node plays in replicating the order store, selected by
+ * fxorder.replication.role
+ * 
+ * NONE: the node does not replicate, the default.
+ * 
+ * LEADER: the node enters orders and streams the events applied to its store
+ * to the followers connecting to fxorder.replication.port.
+ * 
+ * FOLLOWER: the node applies the events streamed by the leader at
+ * fxorder.replication.leader to its own store and only serves reads, until it
+ * is promoted to leader.
+ * 
+ * @author PM
+ *
+ */
+public enum ReplicationRole {
+	NONE, LEADER, FOLLOWER
+}
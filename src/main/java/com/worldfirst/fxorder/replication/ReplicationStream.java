@@ -0,0 +1,164 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.replication;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+
+import com.worldfirst.fxorder.domain.OrderData;
+import com.worldfirst.fxorder.pipeline.OrderEventHandler;
+import com.worldfirst.fxorder.service.CurrencyPairRegistry;
+
+/**
+ * Class ReplicationStream
+ *
+ * It moves orders between the nodes of a cluster in the frames of the
+ * replication protocol, over a byte stream such as the body of an HTTP
+ * exchange rather than a replication connection: a SNAPSHOT frame followed by
+ * its ORDER frames, then the ADD, CANCEL and AMEND frames of the events
+ * recorded since in a {@link ReplicationLog}, numbered from 1.
+ *
+ * @author PM
+ *
+ */
+public final class ReplicationStream {
+
+	/** The bytes buffered on either side of a stream. */
+	private static final int BUFFER_SIZE = 65536;
+
+	private ReplicationStream() {
+	}
+
+	/**
+	 * Writes the orders as a snapshot.
+	 */
+	public static void writeSnapshot(List<OrderData> orders, OutputStream out) throws IOException {
+		WritableByteChannel channel = Channels.newChannel(out);
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		ReplicationProtocol.putSnapshot(buffer, 0, 0, orders.size());
+		for (OrderData order : orders) {
+			if (buffer.remaining() < ReplicationProtocol.MAX_FRAME) {
+				ReplicationProtocol.write(channel, buffer);
+			}
+			ReplicationProtocol.putOrder(buffer, order);
+		}
+		ReplicationProtocol.write(channel, buffer);
+	}
+
+	/**
+	 * Writes the events of the log following the given sequence, as many as fit
+	 * in the given number of bytes, waiting up to the given time for one to be
+	 * appended.
+	 *
+	 * @return the number of events written, -1 if the first one was
+	 *         overwritten already
+	 */
+	public static int writeEvents(ReplicationLog log, long after, int maxBytes, long waitMillis, OutputStream out)
+			throws IOException, InterruptedException {
+		ByteBuffer buffer = ByteBuffer.allocate(Math.max(maxBytes, ReplicationProtocol.MAX_FRAME));
+		int count = log.read(after, buffer, waitMillis);
+		if (count > 0) {
+			out.write(buffer.array(), 0, buffer.position());
+		}
+		return count;
+	}
+
+	/**
+	 * Reads a snapshot, adding its orders through the handler.
+	 *
+	 * @return the number of orders added
+	 * @throws IOException
+	 *             if the stream ends before the last order or holds anything
+	 *             else
+	 */
+	public static int readSnapshot(InputStream in, CurrencyPairRegistry pairs, OrderEventHandler handler)
+			throws IOException {
+		ReadableByteChannel channel = Channels.newChannel(in);
+		ByteBuffer buffer = reader();
+		ByteBuffer header = ReplicationProtocol.read(channel, buffer);
+		if (ReplicationProtocol.SNAPSHOT != header.get()) {
+			throw new IOException("Expected a snapshot");
+		}
+		header.getLong();
+		header.getLong();
+		int count = header.getInt();
+
+		for (int i = 0; i < count; i++) {
+			ByteBuffer body = ReplicationProtocol.read(channel, buffer);
+			if (ReplicationProtocol.ORDER != body.get()) {
+				throw new IOException("Snapshot ended after " + i + " of " + count + " orders");
+			}
+			handler.onAdd(ReplicationProtocol.getOrder(body, pairs));
+		}
+		return count;
+	}
+
+	/**
+	 * Reads events up to the end of the stream, applying them through the
+	 * handler.
+	 *
+	 * @param applied
+	 *            the sequence of the last event applied, the first one read
+	 *            must follow it
+	 * @return the sequence of the last event applied
+	 * @throws IOException
+	 *             if an event is missing or the stream ends within one
+	 */
+	public static long readEvents(InputStream in, long applied, CurrencyPairRegistry pairs, OrderEventHandler handler)
+			throws IOException {
+		ReadableByteChannel channel = Channels.newChannel(in);
+		ByteBuffer buffer = reader();
+		long last = applied;
+		while (ReplicationProtocol.hasFrame(channel, buffer)) {
+			ByteBuffer body = ReplicationProtocol.read(channel, buffer);
+			last = applyEvent(body.get(), body, last, pairs, handler);
+		}
+		return last;
+	}
+
+	/**
+	 * Applies an ADD, CANCEL or AMEND frame following the given sequence.
+	 *
+	 * @return the sequence of the event
+	 */
+	static long applyEvent(byte type, ByteBuffer body, long applied, CurrencyPairRegistry pairs,
+			OrderEventHandler handler) throws IOException {
+		long sequence = body.getLong();
+		if (sequence != applied + 1) {
+			throw new IOException("Replication gap, event " + sequence + " after " + applied);
+		}
+		if (ReplicationProtocol.ADD == type) {
+			handler.onAdd(ReplicationProtocol.getOrder(body, pairs));
+		} else if (ReplicationProtocol.CANCEL == type) {
+			handler.onCancel(body.getLong());
+		} else if (ReplicationProtocol.AMEND == type) {
+			handler.onAmend(body.getLong(), body.getLong(), body.getLong());
+		} else {
+			throw new IOException("Unexpected replication frame " + type);
+		}
+		return sequence;
+	}
+
+	// Internal helpers
+
+	private static ByteBuffer reader() {
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		buffer.flip();
+		return buffer;
+	}
+
+}
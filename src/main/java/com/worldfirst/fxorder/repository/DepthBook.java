@@ -0,0 +1,144 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.repository;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.worldfirst.fxorder.domain.BookDepth;
+import com.worldfirst.fxorder.domain.CurrencyPair;
+import com.worldfirst.fxorder.domain.DepthLevel;
+import com.worldfirst.fxorder.domain.OrderType;
+import com.worldfirst.fxorder.domain.PairStats;
+import com.worldfirst.fxorder.domain.SideStats;
+
+/**
+ * Class DepthBook
+ *
+ * The number of orders and the total amount of the unmatched orders of one
+ * shard per side and price level, along with the totals of each side, so the
+ * depth and the statistics of a pair are served without touching any order.
+ *
+ * A level is found by price in a hash map, so accounting for an order at an
+ * existing level is O(1); only a level appearing or emptying is inserted into
+ * or removed from the levels sorted best price first, in O(log levels).
+ *
+ * Every call is serialised on the instance.
+ *
+ * @author PM
+ *
+ */
+final class DepthBook {
+
+	private final CurrencyPair pair;
+
+	private final Side bids = new Side(true);
+
+	private final Side asks = new Side(false);
+
+	DepthBook(CurrencyPair pair) {
+		this.pair = pair;
+	}
+
+	/**
+	 * Accounts for orders of the same side, price and amount starting to rest,
+	 * or leaving the levels when the count is negative.
+	 */
+	synchronized void add(OrderType side, long pricePips, long amount, int count) {
+		if (0 != count) {
+			(OrderType.ASK == side ? asks : bids).add(pricePips, count, count * amount);
+		}
+	}
+
+	/**
+	 * @return the given number of best levels of each side
+	 */
+	synchronized BookDepth depth(int levels) {
+		return new BookDepth(pair, bids.levels(pair, levels), asks.levels(pair, levels));
+	}
+
+	/**
+	 * @return the totals of each side along with the given matched count
+	 */
+	synchronized PairStats stats(long matched) {
+		return new PairStats(pair, matched, bids.stats(pair), asks.stats(pair));
+	}
+
+	/**
+	 * The levels of one side and its totals.
+	 */
+	private static final class Side {
+
+		private final Map<Long, Level> byPrice = new HashMap<Long, Level>();
+
+		private final TreeMap<Long, Level> sorted;
+
+		private long orders;
+
+		private long amount;
+
+		Side(boolean bid) {
+			sorted = new TreeMap<Long, Level>(bid ? Collections.<Long>reverseOrder() : null);
+		}
+
+		void add(long pricePips, int count, long total) {
+			Level level = byPrice.get(pricePips);
+			if (null == level) {
+				level = new Level();
+				byPrice.put(pricePips, level);
+				sorted.put(pricePips, level);
+			}
+			level.orders += count;
+			level.amount += total;
+			if (level.orders <= 0) {
+				byPrice.remove(pricePips);
+				sorted.remove(pricePips);
+			}
+
+			orders += count;
+			amount += total;
+		}
+
+		List<DepthLevel> levels(CurrencyPair pair, int max) {
+			List<DepthLevel> levels = new ArrayList<DepthLevel>(Math.min(max, sorted.size()));
+			for (Map.Entry<Long, Level> entry : sorted.entrySet()) {
+				if (levels.size() == max) {
+					break;
+				}
+				levels.add(new DepthLevel(pair, entry.getKey(), entry.getValue().orders, entry.getValue().amount));
+			}
+			return levels;
+		}
+
+		SideStats stats(CurrencyPair pair) {
+			BigDecimal notional = BigDecimal.ZERO;
+			for (Map.Entry<Long, Level> entry : sorted.entrySet()) {
+				notional = notional.add(
+						BigDecimal.valueOf(entry.getKey()).multiply(BigDecimal.valueOf(entry.getValue().amount)));
+			}
+			return new SideStats(pair, orders, amount, notional, sorted.isEmpty() ? 0 : sorted.firstKey());
+		}
+	}
+
+	/** The orders resting at one price. */
+	private static final class Level {
+
+		private long orders;
+
+		private long amount;
+	}
+
+}
@@ -0,0 +1,509 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.repository;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.worldfirst.fxorder.domain.BookDepth;
+import com.worldfirst.fxorder.domain.CurrencyPair;
+import com.worldfirst.fxorder.domain.MatchKey;
+import com.worldfirst.fxorder.domain.OrderData;
+import com.worldfirst.fxorder.domain.OrderType;
+import com.worldfirst.fxorder.domain.PairStats;
+
+/**
+ * Class HeapOrderShard
+ *
+ * The default {@link OrderShard}, holding the OrderData of one currency pair
+ * on the heap along with their match buckets.
+ *
+ * Every change is reported to the {@link OrderStoreListener} of the shard
+ * while the bucket of the order is locked, along with the orders of the
+ * bucket changing from unmatched to matched or back.
+ *
+ * A batch reserves its ranks at once and updates every match bucket once,
+ * whatever the number of its orders sharing the bucket.
+ *
+ * An amendment replaces the order with a new OrderData of the same id, taken
+ * out of its bucket and the id index like a cancellation, then indexed in its
+ * new bucket like an add, both published as one change. A cancellation of the
+ * same order racing it may not find the order, the ingestion pipeline
+ * serialises both anyway.
+ *
+ * Adds and removes of the same match key are serialised by the compute() of
+ * its bucket, an order being indexed by id within it. The match keys of the
+ * buckets are also indexed by price, so the orders of a price level are found
+ * from their buckets without looking at any other order.
+ *
+ * Once applied, every change publishes a new {@link ShardSnapshot}, copying
+ * the trie paths of the orders added, removed or changing matching state, a
+ * batch being published at once. The publishing writer reads the state of
+ * these orders from the id index and their bucket rather than trusting its own
+ * view, so however the writers interleave, the snapshot published last agrees
+ * with the buckets once they are done. Only the publication is serialised, the
+ * readers never lock. The {@link DepthBook} of the shard is updated while
+ * publishing, from the orders entering or leaving the unmatched trie.
+ *
+ * The orders are indexed by their long id in STRIPES primitive
+ * {@link LongOrderMap}s, each one locked on its own, so the id index boxes
+ * no key and allocates no entry per order.
+ *
+ * @author PM
+ *
+ */
+final class HeapOrderShard implements OrderShard {
+
+	/** The number of locks striping the id index. */
+	static final int STRIPES = 16;
+
+	/** Turns a mixed id into its stripe, log2(STRIPES) high bits being kept. */
+	private static final int STRIPE_SHIFT = 64 - Integer.numberOfTrailingZeros(STRIPES);
+
+	/** The orders of the pair by id, striped by id. */
+	private final LongOrderMap[] orders = new LongOrderMap[STRIPES];
+
+	/** The ASK and BID orders per match key. */
+	private final ConcurrentHashMap<MatchKey, OrderBucket> orderBuckets = new ConcurrentHashMap<MatchKey, OrderBucket>();
+
+	/**
+	 * The match keys of the buckets per price, a key being added when its
+	 * bucket is created and removed when it is dropped, while the key is
+	 * locked.
+	 */
+	private final ConcurrentHashMap<Long, Set<MatchKey>> levels = new ConcurrentHashMap<Long, Set<MatchKey>>();
+
+	/** The last arrival rank given. */
+	private final AtomicLong rank = new AtomicLong();
+
+	/** The snapshot last published. */
+	private volatile ShardSnapshot snapshot;
+
+	/** Held while publishing a snapshot. */
+	private final Object publishing = new Object();
+
+	/** The unmatched orders per price level, updated when publishing. */
+	private final DepthBook depth;
+
+	/** Told about every change. */
+	private volatile OrderStoreListener listener;
+
+	private final CurrencyPair pair;
+
+	HeapOrderShard(CurrencyPair pair, OrderStoreListener listener) {
+		this.pair = pair;
+		this.listener = listener;
+		this.snapshot = ShardSnapshot.empty(pair);
+		this.depth = new DepthBook(pair);
+		for (int i = 0; i < STRIPES; i++) {
+			orders[i] = new LongOrderMap(64);
+		}
+	}
+
+	@Override
+	public void setListener(OrderStoreListener listener) {
+		this.listener = listener;
+	}
+
+	@Override
+	public boolean add(OrderData order) {
+
+		// Orders restored from a snapshot keep their sequence
+		if (0 == order.getSequence()) {
+			order.setSequence(order.getPair().sequence(rank.incrementAndGet()));
+		} else {
+			rank.accumulateAndGet(CurrencyPair.rankOf(order.getSequence()), Math::max);
+		}
+
+		List<OrderData> changed = new ArrayList<OrderData>(1);
+		orderBuckets.compute(order.getMatchKey(), (key, bucket) -> {
+			// An immediate order not matching on arrival is dropped
+			if (order.getTimeInForce().isImmediate()
+					&& (null == bucket || !bucket.holdsOpposite(order.getOrderType()))) {
+				return bucket;
+			}
+			if (null == bucket) {
+				bucket = new OrderBucket();
+				indexLevel(key);
+			}
+			boolean wasMatched = bucket.isMatched();
+			index(order);
+			bucket.add(order);
+			listener.onAdded(order);
+			List<OrderData> toggled = toggled(bucket, wasMatched);
+			notifyMatching(bucket.isMatched(), wasMatched, Collections.singletonList(order), toggled);
+			changed.add(order);
+			changed.addAll(toggled);
+			return bucket;
+		});
+
+		if (changed.isEmpty()) {
+			return false;
+		}
+		publish(changed);
+		return true;
+	}
+
+	@Override
+	public void addAll(List<OrderData> batch) {
+
+		int fresh = 0;
+		for (OrderData order : batch) {
+			fresh += 0 == order.getSequence() ? 1 : 0;
+		}
+		long next = rank.getAndAdd(fresh) + 1;
+		Map<MatchKey, List<OrderData>> byKey = new HashMap<MatchKey, List<OrderData>>();
+
+		for (OrderData order : batch) {
+			if (0 == order.getSequence()) {
+				order.setSequence(order.getPair().sequence(next++));
+			} else {
+				rank.accumulateAndGet(CurrencyPair.rankOf(order.getSequence()), Math::max);
+			}
+			byKey.computeIfAbsent(order.getMatchKey(), key -> new ArrayList<OrderData>(2)).add(order);
+		}
+
+		List<OrderData> changed = new ArrayList<OrderData>(batch.size());
+		for (Map.Entry<MatchKey, List<OrderData>> entry : byKey.entrySet()) {
+			orderBuckets.compute(entry.getKey(), (key, bucket) -> {
+				if (null == bucket) {
+					bucket = new OrderBucket();
+					indexLevel(key);
+				}
+				boolean wasMatched = bucket.isMatched();
+				for (OrderData order : entry.getValue()) {
+					index(order);
+				}
+				bucket.addAll(entry.getValue());
+				for (OrderData order : entry.getValue()) {
+					listener.onAdded(order);
+				}
+				List<OrderData> toggled = toggled(bucket, wasMatched);
+				notifyMatching(bucket.isMatched(), wasMatched, entry.getValue(), toggled);
+				changed.addAll(entry.getValue());
+				changed.addAll(toggled);
+				return bucket;
+			});
+		}
+
+		publish(changed);
+	}
+
+	@Override
+	public boolean remove(long orderID) {
+
+		OrderData order = removeOrder(orderID);
+
+		if (null == order) {
+			return false;
+		}
+
+		// Drop the bucket once its last order is gone
+		List<OrderData> changed = new ArrayList<OrderData>(1);
+		changed.add(order);
+		orderBuckets.computeIfPresent(order.getMatchKey(), (key, bucket) -> {
+			boolean wasMatched = bucket.isMatched();
+			if (bucket.remove(order)) {
+				listener.onCancelled(order);
+				List<OrderData> toggled = toggled(bucket, wasMatched);
+				notifyMatching(bucket.isMatched(), wasMatched, Collections.<OrderData>emptyList(), toggled);
+				changed.addAll(toggled);
+			}
+			return dropIfEmpty(key, bucket);
+		});
+
+		publish(changed);
+		return true;
+	}
+
+	@Override
+	public boolean amend(long orderID, long pricePips, long amount) {
+
+		// Taken out of the id index like a cancellation, unless unchanged
+		OrderData order;
+		OrderData amended;
+		LongOrderMap stripe = stripe(orderID);
+		synchronized (stripe) {
+			order = stripe.get(orderID);
+			if (null == order) {
+				return false;
+			}
+			amended = amended(order, pricePips, amount);
+			if (amended == order) {
+				return true;
+			}
+			stripe.remove(orderID);
+		}
+
+		List<OrderData> changed = new ArrayList<OrderData>(2);
+		changed.add(order);
+		orderBuckets.computeIfPresent(order.getMatchKey(), (key, bucket) -> {
+			boolean wasMatched = bucket.isMatched();
+			if (bucket.remove(order)) {
+				List<OrderData> toggled = toggled(bucket, wasMatched);
+				notifyMatching(bucket.isMatched(), wasMatched, Collections.<OrderData>emptyList(), toggled);
+				changed.addAll(toggled);
+			}
+			return dropIfEmpty(key, bucket);
+		});
+
+		orderBuckets.compute(amended.getMatchKey(), (key, bucket) -> {
+			if (null == bucket) {
+				bucket = new OrderBucket();
+				indexLevel(key);
+			}
+			boolean wasMatched = bucket.isMatched();
+			index(amended);
+			bucket.add(amended);
+			listener.onAmended(amended);
+			List<OrderData> toggled = toggled(bucket, wasMatched);
+			notifyMatching(bucket.isMatched(), wasMatched, Collections.singletonList(amended), toggled);
+			changed.add(amended);
+			changed.addAll(toggled);
+			return bucket;
+		});
+
+		publish(changed);
+		return true;
+	}
+
+	@Override
+	public void removeAll(long[] orderIDs, boolean[] removed) {
+
+		Map<MatchKey, List<OrderData>> byKey = new HashMap<MatchKey, List<OrderData>>();
+		List<OrderData> changed = new ArrayList<OrderData>();
+
+		for (int i = 0; i < orderIDs.length; i++) {
+			OrderData order = removed[i] ? null : removeOrder(orderIDs[i]);
+			if (null != order) {
+				removed[i] = true;
+				changed.add(order);
+				byKey.computeIfAbsent(order.getMatchKey(), key -> new ArrayList<OrderData>(2)).add(order);
+			}
+		}
+
+		for (Map.Entry<MatchKey, List<OrderData>> entry : byKey.entrySet()) {
+			orderBuckets.computeIfPresent(entry.getKey(), (key, bucket) -> {
+				boolean wasMatched = bucket.isMatched();
+				int count = bucket.removeAll(entry.getValue());
+				if (count > 0) {
+					for (OrderData order : entry.getValue()) {
+						listener.onCancelled(order);
+					}
+					List<OrderData> toggled = toggled(bucket, wasMatched);
+					notifyMatching(bucket.isMatched(), wasMatched, Collections.<OrderData>emptyList(), toggled);
+					changed.addAll(toggled);
+				}
+				return dropIfEmpty(key, bucket);
+			});
+		}
+
+		if (!changed.isEmpty()) {
+			publish(changed);
+		}
+	}
+
+	@Override
+	public long[] levelOrders(OrderType side, long pricePips) {
+
+		Set<MatchKey> keys = levels.get(pricePips);
+		if (null == keys) {
+			return new long[0];
+		}
+
+		List<OrderData> level = new ArrayList<OrderData>();
+		for (MatchKey key : keys) {
+			OrderBucket bucket = orderBuckets.get(key);
+			if (null != bucket) {
+				bucket.collect(side, level);
+			}
+		}
+
+		long[] ids = new long[level.size()];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = level.get(i).getId();
+		}
+		return ids;
+	}
+
+	@Override
+	public boolean contains(long orderID) {
+		LongOrderMap stripe = stripe(orderID);
+		synchronized (stripe) {
+			return null != stripe.get(orderID);
+		}
+	}
+
+	@Override
+	public CurrencyPair getPair() {
+		return pair;
+	}
+
+	@Override
+	public ShardSnapshot snapshot() {
+		return snapshot;
+	}
+
+	@Override
+	public BookDepth depth(int levels) {
+		return depth.depth(levels);
+	}
+
+	@Override
+	public PairStats stats() {
+		return depth.stats(snapshot.matchingCount());
+	}
+
+	// Internal helpers
+
+	private LongOrderMap stripe(long orderID) {
+		// Mixed, as the low bits of the ids of a quiet node are mostly zero
+		return orders[(int) (orderID * 0x9E3779B97F4A7C15L >>> STRIPE_SHIFT)];
+	}
+
+	/**
+	 * Indexes the order by id. It is called while the bucket key is locked, so
+	 * a remove finding the order by id always finds it in its bucket too, even
+	 * when racing the add.
+	 */
+	private void index(OrderData order) {
+		LongOrderMap stripe = stripe(order.getId());
+		synchronized (stripe) {
+			stripe.put(order);
+		}
+	}
+
+	/**
+	 * @return a copy of the order with the given price and amount, 0 keeping
+	 *         either, keeping its sequence when only its amount is reduced, or
+	 *         the order itself when nothing changes
+	 */
+	private OrderData amended(OrderData order, long pricePips, long amount) {
+		long price = 0 == pricePips ? order.getPricePips() : pricePips;
+		long size = 0 == amount ? order.getAmount() : amount;
+		if (price == order.getPricePips() && size == order.getAmount()) {
+			return order;
+		}
+
+		OrderData amended = new OrderData(order.getId(), pair, price, size, order.getOrderType(),
+				order.getOrderDate());
+		amended.setTimeInForce(order.getTimeInForce());
+		amended.setExpireTime(order.getExpireTime());
+		boolean keepsPriority = price == order.getPricePips() && size < order.getAmount();
+		amended.setSequence(keepsPriority ? order.getSequence() : pair.sequence(rank.incrementAndGet()));
+		return amended;
+	}
+
+	/**
+	 * Indexes the key of a new bucket by price. It is called while the key is
+	 * locked, the set of the price being only changed while it is locked too.
+	 */
+	private void indexLevel(MatchKey key) {
+		levels.compute(key.getPricePips(), (price, keys) -> {
+			if (null == keys) {
+				keys = ConcurrentHashMap.newKeySet();
+			}
+			keys.add(key);
+			return keys;
+		});
+	}
+
+	/**
+	 * @return null to drop the bucket once its last order is gone, taking its
+	 *         key out of the price index, the bucket otherwise
+	 */
+	private OrderBucket dropIfEmpty(MatchKey key, OrderBucket bucket) {
+		if (!bucket.isEmpty()) {
+			return bucket;
+		}
+		levels.computeIfPresent(key.getPricePips(), (price, keys) -> {
+			keys.remove(key);
+			return keys.isEmpty() ? null : keys;
+		});
+		return null;
+	}
+
+	private OrderData removeOrder(long orderID) {
+		LongOrderMap stripe = stripe(orderID);
+		synchronized (stripe) {
+			return stripe.remove(orderID);
+		}
+	}
+
+	/**
+	 * Publishes the next snapshot, holding the given orders as they are now:
+	 * left out once removed, matched or not as their bucket is.
+	 */
+	private void publish(List<OrderData> changed) {
+		synchronized (publishing) {
+			ShardSnapshot.Editor editor = snapshot.edit(depth);
+			for (OrderData order : changed) {
+				if (isHeld(order)) {
+					OrderBucket bucket = orderBuckets.get(order.getMatchKey());
+					editor.put(order, null != bucket && bucket.isMatched());
+				} else {
+					editor.remove(order);
+				}
+			}
+			snapshot = editor.build();
+		}
+	}
+
+	private boolean isHeld(OrderData order) {
+		LongOrderMap stripe = stripe(order.getId());
+		synchronized (stripe) {
+			return order == stripe.get(order.getId());
+		}
+	}
+
+	/**
+	 * @return the orders of the bucket if it has just changed from unmatched to
+	 *         matched or back, none otherwise. It is called while the bucket
+	 *         key is locked.
+	 */
+	private static List<OrderData> toggled(OrderBucket bucket, boolean wasMatched) {
+		boolean matched = bucket.isMatched();
+		if (wasMatched == matched) {
+			return Collections.emptyList();
+		}
+		List<OrderData> orders = new ArrayList<OrderData>(bucket.size());
+		bucket.collect(matched, orders);
+		return orders;
+	}
+
+	/**
+	 * Tells the listener about the orders of the bucket having changed from
+	 * unmatched to matched or back, or about the orders just added to a
+	 * matched bucket. It is called while the bucket key is locked.
+	 */
+	private void notifyMatching(boolean matched, boolean wasMatched, List<OrderData> added,
+			List<OrderData> toggled) {
+		OrderStoreListener current = listener;
+		if (OrderStoreListener.NONE == current || (!matched && !wasMatched)) {
+			return;
+		}
+
+		for (OrderData order : wasMatched != matched ? toggled : added) {
+			if (matched) {
+				current.onMatched(order);
+			} else {
+				current.onUnmatched(order);
+			}
+		}
+	}
+
+}
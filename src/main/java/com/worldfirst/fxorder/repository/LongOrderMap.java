@@ -0,0 +1,223 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.repository;
+
+import java.util.Collection;
+
+import com.worldfirst.fxorder.domain.OrderData;
+
+/**
+ * Class LongOrderMap
+ *
+ * Orders by their long id in an open addressing table with linear probing,
+ * iterated in insertion order through links between the slots. Ids are kept
+ * as primitive longs, so putting an order allocates no boxed key nor entry,
+ * and removing one shifts the following entries of its probe sequence back
+ * instead of leaving a tombstone.
+ *
+ * It is not thread safe, the owner is expected to serialise the calls.
+ *
+ * @author PM
+ *
+ */
+final class LongOrderMap {
+
+	private static final int NONE = -1;
+
+	private long[] keys;
+
+	/** The order of every slot, null for a free slot. */
+	private OrderData[] values;
+
+	/** The slot put before, NONE for the oldest. */
+	private int[] before;
+
+	/** The slot put after, NONE for the newest. */
+	private int[] after;
+
+	private int head = NONE;
+
+	private int tail = NONE;
+
+	private int size;
+
+	/**
+	 * @param capacity
+	 *            the initial number of slots, a power of two
+	 */
+	LongOrderMap(int capacity) {
+		allocate(capacity);
+	}
+
+	int size() {
+		return size;
+	}
+
+	boolean isEmpty() {
+		return 0 == size;
+	}
+
+	OrderData get(long id) {
+		for (int index = slot(id);; index = next(index)) {
+			if (null == values[index]) {
+				return null;
+			}
+			if (keys[index] == id) {
+				return values[index];
+			}
+		}
+	}
+
+	/**
+	 * Puts the order by its id, a new id being iterated last.
+	 */
+	void put(OrderData order) {
+		// Kept at most half full
+		if (size << 1 >= keys.length) {
+			resize(keys.length << 1);
+		}
+		long id = order.getId();
+		int index = slot(id);
+		while (null != values[index]) {
+			if (keys[index] == id) {
+				values[index] = order;
+				return;
+			}
+			index = next(index);
+		}
+		keys[index] = id;
+		values[index] = order;
+		link(index);
+		size++;
+	}
+
+	/**
+	 * @return the removed order, or null if the map did not hold it
+	 */
+	OrderData remove(long id) {
+		int index = slot(id);
+		while (null != values[index] && keys[index] != id) {
+			index = next(index);
+		}
+		OrderData order = values[index];
+		if (null == order) {
+			return null;
+		}
+
+		unlink(index);
+		size--;
+
+		// Shift back the entries probed past the freed slot
+		int free = index;
+		for (int current = next(free); null != values[current]; current = next(current)) {
+			int home = slot(keys[current]);
+			boolean reachable = free <= current ? free < home && home <= current : free < home || home <= current;
+			if (!reachable) {
+				move(current, free);
+				free = current;
+			}
+		}
+		values[free] = null;
+
+		return order;
+	}
+
+	/**
+	 * Appends the orders in insertion order.
+	 */
+	void values(Collection<? super OrderData> into) {
+		for (int index = head; NONE != index; index = after[index]) {
+			into.add(values[index]);
+		}
+	}
+
+	// Internal helpers
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		values = new OrderData[capacity];
+		before = new int[capacity];
+		after = new int[capacity];
+		head = NONE;
+		tail = NONE;
+	}
+
+	private int slot(long id) {
+		long hash = id * 0x9E3779B97F4A7C15L;
+		return (int) (hash ^ hash >>> 32) & (keys.length - 1);
+	}
+
+	private int next(int index) {
+		return (index + 1) & (keys.length - 1);
+	}
+
+	private void link(int index) {
+		before[index] = tail;
+		after[index] = NONE;
+		if (NONE == tail) {
+			head = index;
+		} else {
+			after[tail] = index;
+		}
+		tail = index;
+	}
+
+	private void unlink(int index) {
+		if (NONE == before[index]) {
+			head = after[index];
+		} else {
+			after[before[index]] = after[index];
+		}
+		if (NONE == after[index]) {
+			tail = before[index];
+		} else {
+			before[after[index]] = before[index];
+		}
+	}
+
+	/**
+	 * Moves an entry to a free slot, along with its links.
+	 */
+	private void move(int from, int to) {
+		keys[to] = keys[from];
+		values[to] = values[from];
+		before[to] = before[from];
+		after[to] = after[from];
+		if (NONE == before[to]) {
+			head = to;
+		} else {
+			after[before[to]] = to;
+		}
+		if (NONE == after[to]) {
+			tail = to;
+		} else {
+			before[after[to]] = to;
+		}
+	}
+
+	private void resize(int capacity) {
+		OrderData[] oldValues = values;
+		int[] oldAfter = after;
+		int oldHead = head;
+		allocate(capacity);
+		for (int old = oldHead; NONE != old; old = oldAfter[old]) {
+			OrderData order = oldValues[old];
+			int index = slot(order.getId());
+			while (null != values[index]) {
+				index = next(index);
+			}
+			keys[index] = order.getId();
+			values[index] = order;
+			link(index);
+		}
+	}
+
+}
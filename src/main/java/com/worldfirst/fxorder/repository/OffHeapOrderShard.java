@@ -0,0 +1,870 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.repository;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.worldfirst.fxorder.domain.BookDepth;
+import com.worldfirst.fxorder.domain.CurrencyPair;
+import com.worldfirst.fxorder.domain.MatchKey;
+import com.worldfirst.fxorder.domain.OrderData;
+import com.worldfirst.fxorder.domain.OrderType;
+import com.worldfirst.fxorder.domain.PairStats;
+import com.worldfirst.fxorder.domain.TimeInForce;
+
+/**
+ * Class OffHeapOrderShard
+ *
+ * An {@link OrderShard} keeping the fields of every order in a 64 bytes slot
+ * of off-heap {@link SlotMemory}, along with the links of the list of its
+ * match bucket side. The match buckets are slots too, linked into the matched
+ * and unmatched views and into the list of the buckets of their price, so an
+ * order is unlinked in O(1) and the orders of a price level are found without
+ * looking at any other order. The heap only holds primitive arrays, the id and match
+ * key indexes of slot numbers and the arrival sequence index, about 20 bytes
+ * per order the garbage collector never has to trace, so collections take the
+ * same time whatever the number of orders.
+ *
+ * OrderData are materialised from their slot when they leave the shard, for
+ * the snapshots and the listener.
+ *
+ * Every call locks the whole shard, the listener being called while it is
+ * locked. The {@link DepthBook} of the shard is updated per match bucket
+ * changed, the orders of a bucket sharing their price and amount.
+ *
+ * @author PM
+ *
+ */
+final class OffHeapOrderShard implements OrderShard {
+
+	private static final int NONE = SlotMemory.NONE;
+
+	private static final int SLOT_SIZE = 64;
+
+	// Order slot layout
+
+	private static final int ID = 0;
+
+	private static final int SEQUENCE = 8;
+
+	private static final int PRICE = 16;
+
+	private static final int AMOUNT = 24;
+
+	private static final int DATE = 32;
+
+	private static final int BUCKET = 40;
+
+	private static final int PREV = 44;
+
+	private static final int NEXT = 48;
+
+	private static final int SIDE = 52;
+
+	private static final int TIME_IN_FORCE = 53;
+
+	private static final int EXPIRY = 56;
+
+	// Bucket slot layout, price and amount at the order offsets too
+
+	private static final int ASK_HEAD = 0;
+
+	private static final int ASK_TAIL = 4;
+
+	private static final int BID_HEAD = 8;
+
+	private static final int BID_TAIL = 12;
+
+	private static final int ASK_COUNT = 32;
+
+	private static final int BID_COUNT = 36;
+
+	private static final int VIEW_PREV = 40;
+
+	private static final int VIEW_NEXT = 44;
+
+	private static final int VIEW = 48;
+
+	private static final int LEVEL_PREV = 52;
+
+	private static final int LEVEL_NEXT = 56;
+
+	/** The views a bucket can be linked into. */
+	private static final byte NO_VIEW = 0, MATCHED = 1, UNMATCHED = 2;
+
+	private static final OrderType[] SIDES = OrderType.values();
+
+	private static final TimeInForce[] TERMS = TimeInForce.values();
+
+	private final CurrencyPair pair;
+
+	private final SlotMemory orders = new SlotMemory(SLOT_SIZE);
+
+	private final SlotMemory buckets = new SlotMemory(SLOT_SIZE);
+
+	private final IdIndex ids = new IdIndex();
+
+	private final KeyIndex keys = new KeyIndex();
+
+	private final LevelIndex levels = new LevelIndex();
+
+	private final SequenceIndex sequences = new SequenceIndex();
+
+	/** The first bucket of each view, by view. */
+	private final int[] viewHeads = { NONE, NONE, NONE };
+
+	/** The number of orders held by the matched buckets. */
+	private long matchedCount;
+
+	/** The number of orders held by the unmatched buckets. */
+	private long unmatchedCount;
+
+	/** The last arrival rank given. */
+	private long rank;
+
+	/** Bumped by every change. */
+	private long version;
+
+	/** The snapshot last built. */
+	private WeakReference<ShardSnapshot> published = new WeakReference<ShardSnapshot>(null);
+
+	/** The unmatched orders per price level. */
+	private final DepthBook depth;
+
+	/** Told about every change. */
+	private volatile OrderStoreListener listener;
+
+	OffHeapOrderShard(CurrencyPair pair, OrderStoreListener listener) {
+		this.pair = pair;
+		this.listener = listener;
+		this.depth = new DepthBook(pair);
+	}
+
+	@Override
+	public void setListener(OrderStoreListener listener) {
+		this.listener = listener;
+	}
+
+	@Override
+	public synchronized boolean add(OrderData order) {
+		// An immediate order not matching on arrival is dropped
+		if (order.getTimeInForce().isImmediate()) {
+			int bucket = keys.find(order.getPricePips(), order.getAmount());
+			int opposite = OrderType.ASK == order.getOrderType() ? BID_COUNT : ASK_COUNT;
+			if (NONE == bucket || 0 == buckets.getInt(bucket, opposite)) {
+				return false;
+			}
+		}
+
+		int slot = store(order);
+		int bucket = bucketOf(order.getPricePips(), order.getAmount());
+		boolean wasMatched = isMatched(bucket);
+		account(bucket, -1);
+		link(bucket, slot);
+		account(bucket, 1);
+		updateViews(bucket, wasMatched, 1);
+		listener.onAdded(order);
+		notifyMatching(bucket, wasMatched, Collections.singletonList(order));
+		version++;
+		return true;
+	}
+
+	@Override
+	public synchronized void addAll(List<OrderData> batch) {
+
+		version++;
+
+		// Stored in batch order, then linked once per match bucket
+		Map<MatchKey, List<Integer>> byKey = new HashMap<MatchKey, List<Integer>>();
+		int[] slots = new int[batch.size()];
+		for (int i = 0; i < slots.length; i++) {
+			slots[i] = store(batch.get(i));
+			byKey.computeIfAbsent(batch.get(i).getMatchKey(), key -> new ArrayList<Integer>(2)).add(i);
+		}
+
+		for (List<Integer> indexes : byKey.values()) {
+			OrderData first = batch.get(indexes.get(0));
+			int bucket = bucketOf(first.getPricePips(), first.getAmount());
+			boolean wasMatched = isMatched(bucket);
+			List<OrderData> added = new ArrayList<OrderData>(indexes.size());
+			account(bucket, -1);
+			for (int index : indexes) {
+				link(bucket, slots[index]);
+				added.add(batch.get(index));
+			}
+			account(bucket, 1);
+			updateViews(bucket, wasMatched, added.size());
+			for (OrderData order : added) {
+				listener.onAdded(order);
+			}
+			notifyMatching(bucket, wasMatched, added);
+		}
+	}
+
+	@Override
+	public synchronized boolean remove(long orderID) {
+		int slot = ids.find(orderID);
+		if (NONE == slot) {
+			return false;
+		}
+		OrderStoreListener current = listener;
+		OrderData order = OrderStoreListener.NONE == current ? null : materialise(slot);
+
+		int bucket = orders.getInt(slot, BUCKET);
+		boolean wasMatched = isMatched(bucket);
+		account(bucket, -1);
+		unstore(slot);
+		account(bucket, 1);
+		updateViews(bucket, wasMatched, -1);
+		if (null != order) {
+			current.onCancelled(order);
+		}
+		notifyMatching(bucket, wasMatched, Collections.<OrderData>emptyList());
+		orders.free(slot);
+		releaseIfEmpty(bucket);
+		version++;
+		return true;
+	}
+
+	/**
+	 * The slot of the order is unlinked from its bucket and the indexes, then
+	 * linked into the bucket of its new price and amount, so an amendment
+	 * allocates no slot.
+	 */
+	@Override
+	public synchronized boolean amend(long orderID, long pricePips, long amount) {
+		int slot = ids.find(orderID);
+		if (NONE == slot) {
+			return false;
+		}
+		long oldPrice = orders.getLong(slot, PRICE);
+		long oldAmount = orders.getLong(slot, AMOUNT);
+		long price = 0 == pricePips ? oldPrice : pricePips;
+		long size = 0 == amount ? oldAmount : amount;
+		if (price == oldPrice && size == oldAmount) {
+			return true;
+		}
+
+		int bucket = orders.getInt(slot, BUCKET);
+		boolean wasMatched = isMatched(bucket);
+		account(bucket, -1);
+		unstore(slot);
+		account(bucket, 1);
+		updateViews(bucket, wasMatched, -1);
+		notifyMatching(bucket, wasMatched, Collections.<OrderData>emptyList());
+		releaseIfEmpty(bucket);
+
+		// The sequence is kept when only the amount is reduced
+		boolean keepsPriority = price == oldPrice && size < oldAmount;
+		long sequence = keepsPriority ? orders.getLong(slot, SEQUENCE) : pair.sequence(++rank);
+		orders.putLong(slot, PRICE, price);
+		orders.putLong(slot, AMOUNT, size);
+		orders.putLong(slot, SEQUENCE, sequence);
+		ids.insert(slot);
+		sequences.add(sequence, slot);
+
+		bucket = bucketOf(price, size);
+		wasMatched = isMatched(bucket);
+		account(bucket, -1);
+		link(bucket, slot);
+		account(bucket, 1);
+		updateViews(bucket, wasMatched, 1);
+		OrderStoreListener current = listener;
+		if (OrderStoreListener.NONE != current) {
+			OrderData amended = materialise(slot);
+			current.onAmended(amended);
+			notifyMatching(bucket, wasMatched, Collections.singletonList(amended));
+		}
+		version++;
+		return true;
+	}
+
+	@Override
+	public synchronized void removeAll(long[] orderIDs, boolean[] removed) {
+
+		Map<Integer, List<Integer>> byBucket = new LinkedHashMap<Integer, List<Integer>>();
+		for (int i = 0; i < orderIDs.length; i++) {
+			int slot = removed[i] ? NONE : ids.find(orderIDs[i]);
+			if (NONE != slot) {
+				removed[i] = true;
+				byBucket.computeIfAbsent(orders.getInt(slot, BUCKET), key -> new ArrayList<Integer>(2)).add(slot);
+			}
+		}
+
+		if (!byBucket.isEmpty()) {
+			version++;
+		}
+
+		OrderStoreListener current = listener;
+		for (Map.Entry<Integer, List<Integer>> entry : byBucket.entrySet()) {
+			int bucket = entry.getKey();
+			boolean wasMatched = isMatched(bucket);
+			List<OrderData> cancelled = new ArrayList<OrderData>(entry.getValue().size());
+			account(bucket, -1);
+			for (int slot : entry.getValue()) {
+				if (OrderStoreListener.NONE != current) {
+					cancelled.add(materialise(slot));
+				}
+				unstore(slot);
+			}
+			account(bucket, 1);
+			updateViews(bucket, wasMatched, -entry.getValue().size());
+			for (OrderData order : cancelled) {
+				current.onCancelled(order);
+			}
+			notifyMatching(bucket, wasMatched, Collections.<OrderData>emptyList());
+			for (int slot : entry.getValue()) {
+				orders.free(slot);
+			}
+			releaseIfEmpty(bucket);
+		}
+	}
+
+	@Override
+	public synchronized long[] levelOrders(OrderType side, long pricePips) {
+		boolean ask = OrderType.ASK == side;
+		int head = levels.find(pricePips);
+
+		int count = 0;
+		for (int bucket = head; NONE != bucket; bucket = buckets.getInt(bucket, LEVEL_NEXT)) {
+			count += buckets.getInt(bucket, ask ? ASK_COUNT : BID_COUNT);
+		}
+
+		long[] ids = new long[count];
+		int next = 0;
+		for (int bucket = head; NONE != bucket; bucket = buckets.getInt(bucket, LEVEL_NEXT)) {
+			for (int slot = buckets.getInt(bucket, ask ? ASK_HEAD : BID_HEAD); NONE != slot; slot = orders.getInt(slot,
+					NEXT)) {
+				ids[next++] = orders.getLong(slot, ID);
+			}
+		}
+		return ids;
+	}
+
+	@Override
+	public synchronized boolean contains(long orderID) {
+		return NONE != ids.find(orderID);
+	}
+
+	@Override
+	public CurrencyPair getPair() {
+		return pair;
+	}
+
+	/**
+	 * Builds the snapshot of the shard under its lock on the first call after a
+	 * change, the orders being materialised. It is only weakly referenced, so
+	 * it is kept while readers use it and the orders stay off the heap
+	 * otherwise.
+	 */
+	@Override
+	public synchronized ShardSnapshot snapshot() {
+		ShardSnapshot built = published.get();
+		if (null != built && built.getVersion() == version) {
+			return built;
+		}
+
+		ShardSnapshot.Editor editor = ShardSnapshot.builder(pair, version);
+		for (int i = 0; i < sequences.count; i++) {
+			int slot = sequences.slots[i];
+			if (NONE != slot) {
+				editor.put(materialise(slot), isMatched(orders.getInt(slot, BUCKET)));
+			}
+		}
+		built = editor.build();
+		published = new WeakReference<ShardSnapshot>(built);
+		return built;
+	}
+
+	@Override
+	public BookDepth depth(int levels) {
+		return depth.depth(levels);
+	}
+
+	@Override
+	public synchronized PairStats stats() {
+		return depth.stats(matchedCount);
+	}
+
+	/**
+	 * @return the off-heap bytes reserved for the order and bucket slots
+	 */
+	synchronized long reservedBytes() {
+		return orders.reservedBytes() + buckets.reservedBytes();
+	}
+
+	// Internal helpers
+
+	/**
+	 * Gives the order its sequence unless it has one, then copies it into a new
+	 * slot indexed by id and sequence.
+	 *
+	 * @return the slot, not yet linked into its bucket
+	 */
+	private int store(OrderData order) {
+		if (0 == order.getSequence()) {
+			order.setSequence(pair.sequence(++rank));
+		} else {
+			rank = Math.max(rank, CurrencyPair.rankOf(order.getSequence()));
+		}
+
+		int slot = orders.allocate();
+		orders.putLong(slot, ID, order.getId());
+		orders.putLong(slot, SEQUENCE, order.getSequence());
+		orders.putLong(slot, PRICE, order.getPricePips());
+		orders.putLong(slot, AMOUNT, order.getAmount());
+		orders.putLong(slot, DATE, order.getOrderDate());
+		orders.put(slot, SIDE, (byte) order.getOrderType().ordinal());
+		orders.put(slot, TIME_IN_FORCE, (byte) order.getTimeInForce().ordinal());
+		orders.putLong(slot, EXPIRY, order.getExpireTime());
+		ids.insert(slot);
+		sequences.add(order.getSequence(), slot);
+		return slot;
+	}
+
+	/**
+	 * Drops the slot from the indexes and from the list of its bucket side, the
+	 * slot itself being left to free.
+	 */
+	private void unstore(int slot) {
+		ids.remove(slot);
+		sequences.remove(orders.getLong(slot, SEQUENCE));
+
+		int bucket = orders.getInt(slot, BUCKET);
+		boolean ask = OrderType.ASK == SIDES[orders.get(slot, SIDE)];
+		int prev = orders.getInt(slot, PREV);
+		int next = orders.getInt(slot, NEXT);
+		if (NONE == prev) {
+			buckets.putInt(bucket, ask ? ASK_HEAD : BID_HEAD, next);
+		} else {
+			orders.putInt(prev, NEXT, next);
+		}
+		if (NONE == next) {
+			buckets.putInt(bucket, ask ? ASK_TAIL : BID_TAIL, prev);
+		} else {
+			orders.putInt(next, PREV, prev);
+		}
+		int count = ask ? ASK_COUNT : BID_COUNT;
+		buckets.putInt(bucket, count, buckets.getInt(bucket, count) - 1);
+	}
+
+	private OrderData materialise(int slot) {
+		OrderData order = new OrderData(orders.getLong(slot, ID), pair, orders.getLong(slot, PRICE),
+				orders.getLong(slot, AMOUNT), SIDES[orders.get(slot, SIDE)], orders.getLong(slot, DATE));
+		order.setSequence(orders.getLong(slot, SEQUENCE));
+		order.setTimeInForce(TERMS[orders.get(slot, TIME_IN_FORCE)]);
+		order.setExpireTime(orders.getLong(slot, EXPIRY));
+		return order;
+	}
+
+	/**
+	 * @return the bucket of the price and amount, created empty on first use
+	 */
+	private int bucketOf(long pricePips, long amount) {
+		int bucket = keys.find(pricePips, amount);
+		if (NONE == bucket) {
+			bucket = buckets.allocate();
+			buckets.putLong(bucket, PRICE, pricePips);
+			buckets.putLong(bucket, AMOUNT, amount);
+			buckets.putInt(bucket, ASK_HEAD, NONE);
+			buckets.putInt(bucket, ASK_TAIL, NONE);
+			buckets.putInt(bucket, BID_HEAD, NONE);
+			buckets.putInt(bucket, BID_TAIL, NONE);
+			buckets.putInt(bucket, ASK_COUNT, 0);
+			buckets.putInt(bucket, BID_COUNT, 0);
+			buckets.put(bucket, VIEW, NO_VIEW);
+			keys.insert(bucket);
+			linkLevel(bucket);
+		}
+		return bucket;
+	}
+
+	private void releaseIfEmpty(int bucket) {
+		if (0 == sizeOf(bucket)) {
+			keys.remove(bucket);
+			unlinkLevel(bucket);
+			buckets.free(bucket);
+		}
+	}
+
+	/**
+	 * Links a new bucket into the list of the buckets of its price, right after
+	 * the head indexed by price, or as the head of a new list.
+	 */
+	private void linkLevel(int bucket) {
+		int head = levels.find(buckets.getLong(bucket, PRICE));
+		if (NONE == head) {
+			buckets.putInt(bucket, LEVEL_PREV, NONE);
+			buckets.putInt(bucket, LEVEL_NEXT, NONE);
+			levels.insert(bucket);
+			return;
+		}
+		int next = buckets.getInt(head, LEVEL_NEXT);
+		buckets.putInt(bucket, LEVEL_PREV, head);
+		buckets.putInt(bucket, LEVEL_NEXT, next);
+		buckets.putInt(head, LEVEL_NEXT, bucket);
+		if (NONE != next) {
+			buckets.putInt(next, LEVEL_PREV, bucket);
+		}
+	}
+
+	/**
+	 * Unlinks an empty bucket from the list of its price, the next bucket being
+	 * indexed in its place when it was the head.
+	 */
+	private void unlinkLevel(int bucket) {
+		int prev = buckets.getInt(bucket, LEVEL_PREV);
+		int next = buckets.getInt(bucket, LEVEL_NEXT);
+		if (NONE == prev) {
+			levels.remove(bucket);
+			if (NONE != next) {
+				buckets.putInt(next, LEVEL_PREV, NONE);
+				levels.insert(next);
+			}
+		} else {
+			buckets.putInt(prev, LEVEL_NEXT, next);
+			if (NONE != next) {
+				buckets.putInt(next, LEVEL_PREV, prev);
+			}
+		}
+	}
+
+	/**
+	 * Appends the order slot to the list of its side in the bucket.
+	 */
+	private void link(int bucket, int slot) {
+		boolean ask = OrderType.ASK == SIDES[orders.get(slot, SIDE)];
+		int tail = buckets.getInt(bucket, ask ? ASK_TAIL : BID_TAIL);
+		orders.putInt(slot, BUCKET, bucket);
+		orders.putInt(slot, PREV, tail);
+		orders.putInt(slot, NEXT, NONE);
+		if (NONE == tail) {
+			buckets.putInt(bucket, ask ? ASK_HEAD : BID_HEAD, slot);
+		} else {
+			orders.putInt(tail, NEXT, slot);
+		}
+		buckets.putInt(bucket, ask ? ASK_TAIL : BID_TAIL, slot);
+		int count = ask ? ASK_COUNT : BID_COUNT;
+		buckets.putInt(bucket, count, buckets.getInt(bucket, count) + 1);
+	}
+
+	/**
+	 * Adds the orders of the bucket to the depth, or takes them out with a
+	 * negative sign, when the bucket is unmatched. The orders of a bucket share
+	 * their price and amount, so it costs a level update per side.
+	 */
+	private void account(int bucket, int sign) {
+		if (!isMatched(bucket)) {
+			long pricePips = buckets.getLong(bucket, PRICE);
+			long amount = buckets.getLong(bucket, AMOUNT);
+			depth.add(OrderType.ASK, pricePips, amount, sign * buckets.getInt(bucket, ASK_COUNT));
+			depth.add(OrderType.BID, pricePips, amount, sign * buckets.getInt(bucket, BID_COUNT));
+		}
+	}
+
+	private boolean isMatched(int bucket) {
+		return buckets.getInt(bucket, ASK_COUNT) > 0 && buckets.getInt(bucket, BID_COUNT) > 0;
+	}
+
+	private int sizeOf(int bucket) {
+		return buckets.getInt(bucket, ASK_COUNT) + buckets.getInt(bucket, BID_COUNT);
+	}
+
+	/**
+	 * Appends the orders of the bucket, ASK orders first then BID orders.
+	 */
+	private void collect(int bucket, List<OrderData> into) {
+		for (int slot = buckets.getInt(bucket, ASK_HEAD); NONE != slot; slot = orders.getInt(slot, NEXT)) {
+			into.add(materialise(slot));
+		}
+		for (int slot = buckets.getInt(bucket, BID_HEAD); NONE != slot; slot = orders.getInt(slot, NEXT)) {
+			into.add(materialise(slot));
+		}
+	}
+
+	/**
+	 * Tells the listener about the orders of the bucket having changed from
+	 * unmatched to matched or back, or about the orders just added to a
+	 * matched bucket.
+	 */
+	private void notifyMatching(int bucket, boolean wasMatched, List<OrderData> added) {
+		OrderStoreListener current = listener;
+		boolean matched = isMatched(bucket);
+		if (OrderStoreListener.NONE == current || (!matched && !wasMatched)) {
+			return;
+		}
+
+		List<OrderData> changed = added;
+		if (wasMatched != matched) {
+			changed = new ArrayList<OrderData>(sizeOf(bucket));
+			collect(bucket, changed);
+		}
+		for (OrderData order : changed) {
+			if (matched) {
+				current.onMatched(order);
+			} else {
+				current.onUnmatched(order);
+			}
+		}
+	}
+
+	/**
+	 * Moves the bucket between the matched and unmatched views after some of its
+	 * orders were added (positive delta) or removed (negative delta).
+	 */
+	private void updateViews(int bucket, boolean wasMatched, int delta) {
+		boolean matched = isMatched(bucket);
+		int size = sizeOf(bucket);
+
+		if (wasMatched == matched) {
+			if (matched) {
+				matchedCount += delta;
+			} else {
+				unmatchedCount += delta;
+			}
+		} else if (matched) {
+			unmatchedCount += delta - size;
+			matchedCount += size;
+		} else {
+			matchedCount += delta - size;
+			unmatchedCount += size;
+		}
+
+		byte view = 0 == size ? NO_VIEW : matched ? MATCHED : UNMATCHED;
+		byte was = buckets.get(bucket, VIEW);
+		if (view != was) {
+			if (NO_VIEW != was) {
+				int prev = buckets.getInt(bucket, VIEW_PREV);
+				int next = buckets.getInt(bucket, VIEW_NEXT);
+				if (NONE == prev) {
+					viewHeads[was] = next;
+				} else {
+					buckets.putInt(prev, VIEW_NEXT, next);
+				}
+				if (NONE != next) {
+					buckets.putInt(next, VIEW_PREV, prev);
+				}
+			}
+			if (NO_VIEW != view) {
+				int head = viewHeads[view];
+				buckets.putInt(bucket, VIEW_PREV, NONE);
+				buckets.putInt(bucket, VIEW_NEXT, head);
+				if (NONE != head) {
+					buckets.putInt(head, VIEW_PREV, bucket);
+				}
+				viewHeads[view] = bucket;
+			}
+			buckets.put(bucket, VIEW, view);
+		}
+	}
+
+	private static int mix(long value) {
+		return (int) (value * 0x9E3779B97F4A7C15L >>> 32);
+	}
+
+	/**
+	 * Open addressing table of slot numbers with linear probing, the keys being
+	 * read from the slots themselves. Removing a slot shifts the following
+	 * entries of its probe sequence back instead of leaving a tombstone.
+	 */
+	private abstract static class SlotIndex {
+
+		/** The slot of every entry plus one, 0 for a free entry. */
+		int[] table = new int[64];
+
+		int size;
+
+		abstract int hashOf(int slot);
+
+		void insert(int slot) {
+			// Kept at most half full
+			if (size << 1 >= table.length) {
+				resize(table.length << 1);
+			}
+			put(table, slot);
+			size++;
+		}
+
+		/**
+		 * Removes a slot held by the index.
+		 */
+		void remove(int slot) {
+			int mask = table.length - 1;
+			int index = hashOf(slot) & mask;
+			while (table[index] != slot + 1) {
+				index = (index + 1) & mask;
+			}
+			size--;
+
+			int free = index;
+			for (int current = (free + 1) & mask; 0 != table[current]; current = (current + 1) & mask) {
+				int home = hashOf(table[current] - 1) & mask;
+				boolean reachable = free <= current ? free < home && home <= current : free < home || home <= current;
+				if (!reachable) {
+					table[free] = table[current];
+					free = current;
+				}
+			}
+			table[free] = 0;
+		}
+
+		private void put(int[] into, int slot) {
+			int mask = into.length - 1;
+			int index = hashOf(slot) & mask;
+			while (0 != into[index]) {
+				index = (index + 1) & mask;
+			}
+			into[index] = slot + 1;
+		}
+
+		private void resize(int capacity) {
+			int[] resized = new int[capacity];
+			for (int entry : table) {
+				if (0 != entry) {
+					put(resized, entry - 1);
+				}
+			}
+			table = resized;
+		}
+	}
+
+	/**
+	 * The order slots by order id.
+	 */
+	private final class IdIndex extends SlotIndex {
+
+		@Override
+		int hashOf(int slot) {
+			return mix(orders.getLong(slot, ID));
+		}
+
+		int find(long id) {
+			int mask = table.length - 1;
+			for (int index = mix(id) & mask; 0 != table[index]; index = (index + 1) & mask) {
+				int slot = table[index] - 1;
+				if (orders.getLong(slot, ID) == id) {
+					return slot;
+				}
+			}
+			return NONE;
+		}
+	}
+
+	/**
+	 * The bucket slots by price and amount.
+	 */
+	private final class KeyIndex extends SlotIndex {
+
+		@Override
+		int hashOf(int slot) {
+			return mix(buckets.getLong(slot, PRICE) * 31 + buckets.getLong(slot, AMOUNT));
+		}
+
+		int find(long pricePips, long amount) {
+			int mask = table.length - 1;
+			for (int index = mix(pricePips * 31 + amount) & mask; 0 != table[index]; index = (index + 1) & mask) {
+				int slot = table[index] - 1;
+				if (buckets.getLong(slot, PRICE) == pricePips && buckets.getLong(slot, AMOUNT) == amount) {
+					return slot;
+				}
+			}
+			return NONE;
+		}
+	}
+
+	/**
+	 * The first bucket slot of every price, the others being linked from it.
+	 */
+	private final class LevelIndex extends SlotIndex {
+
+		@Override
+		int hashOf(int slot) {
+			return mix(buckets.getLong(slot, PRICE));
+		}
+
+		int find(long pricePips) {
+			int mask = table.length - 1;
+			for (int index = mix(pricePips) & mask; 0 != table[index]; index = (index + 1) & mask) {
+				int slot = table[index] - 1;
+				if (buckets.getLong(slot, PRICE) == pricePips) {
+					return slot;
+				}
+			}
+			return NONE;
+		}
+	}
+
+	/**
+	 * The order slots in ascending sequence, a removed order leaving a hole
+	 * until the holes are half of the entries and squeezed out.
+	 */
+	private static final class SequenceIndex {
+
+		long[] sequences = new long[64];
+
+		int[] slots = new int[64];
+
+		int count;
+
+		int holes;
+
+		void add(long sequence, int slot) {
+			if (count == sequences.length) {
+				sequences = Arrays.copyOf(sequences, count << 1);
+				slots = Arrays.copyOf(slots, count << 1);
+			}
+			if (0 == count || sequence > sequences[count - 1]) {
+				sequences[count] = sequence;
+				slots[count++] = slot;
+				return;
+			}
+
+			// Restored orders may come out of sequence, or fill their own hole
+			int index = Arrays.binarySearch(sequences, 0, count, sequence);
+			if (index >= 0) {
+				slots[index] = slot;
+				holes--;
+				return;
+			}
+			index = -index - 1;
+			System.arraycopy(sequences, index, sequences, index + 1, count - index);
+			System.arraycopy(slots, index, slots, index + 1, count - index);
+			sequences[index] = sequence;
+			slots[index] = slot;
+			count++;
+		}
+
+		void remove(long sequence) {
+			slots[Arrays.binarySearch(sequences, 0, count, sequence)] = NONE;
+			holes++;
+			if (holes > 64 && holes << 1 > count) {
+				int kept = 0;
+				for (int i = 0; i < count; i++) {
+					if (NONE != slots[i]) {
+						sequences[kept] = sequences[i];
+						slots[kept++] = slots[i];
+					}
+				}
+				count = kept;
+				holes = 0;
+			}
+		}
+
+	}
+
+}
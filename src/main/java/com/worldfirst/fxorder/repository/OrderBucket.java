@@ -0,0 +1,131 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.repository;
+
+import java.util.List;
+
+import com.worldfirst.fxorder.domain.OrderData;
+import com.worldfirst.fxorder.domain.OrderType;
+
+/**
+ * Class OrderBucket
+ *
+ * It holds all the orders sharing the same match key (currency pair, price
+ * and amount), split by ASK and BID in arrival order. A bucket having both an
+ * ASK and a BID order represents a set of matching orders.
+ *
+ * Add and remove are O(1) and there is no limit on the number of orders a
+ * bucket can hold. The sides are primitive {@link LongOrderMap}s starting
+ * with a few slots, as most buckets hold one or two orders.
+ *
+ * @author PM
+ *
+ */
+final class OrderBucket {
+
+	/** The ASK orders by id in arrival order. */
+	private final LongOrderMap asks = new LongOrderMap(4);
+
+	/** The BID orders by id in arrival order. */
+	private final LongOrderMap bids = new LongOrderMap(4);
+
+	/**
+	 * Adds the order to the side given by the order type.
+	 */
+	synchronized void add(OrderData order) {
+		side(order.getOrderType()).put(order);
+	}
+
+	/**
+	 * Adds the orders to the side given by their order type.
+	 */
+	synchronized void addAll(List<OrderData> orders) {
+		for (OrderData order : orders) {
+			side(order.getOrderType()).put(order);
+		}
+	}
+
+	/**
+	 * Removes the order from the side given by the order type.
+	 *
+	 * @return true if the order was held by this bucket
+	 */
+	synchronized boolean remove(OrderData order) {
+		return null != side(order.getOrderType()).remove(order.getId());
+	}
+
+	/**
+	 * Removes the orders from the side given by their order type.
+	 *
+	 * @return the number of orders held by this bucket
+	 */
+	synchronized int removeAll(List<OrderData> orders) {
+		int removed = 0;
+		for (OrderData order : orders) {
+			if (null != side(order.getOrderType()).remove(order.getId())) {
+				removed++;
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * @return true if the bucket holds at least one ASK and one BID order
+	 */
+	synchronized boolean isMatched() {
+		return !asks.isEmpty() && !bids.isEmpty();
+	}
+
+	/**
+	 * @return true if the bucket holds at least one order of the side other
+	 *         than the order type
+	 */
+	synchronized boolean holdsOpposite(OrderType orderType) {
+		return !(OrderType.ASK == orderType ? bids : asks).isEmpty();
+	}
+
+	/**
+	 * @return true if the bucket holds no order at all
+	 */
+	synchronized boolean isEmpty() {
+		return asks.isEmpty() && bids.isEmpty();
+	}
+
+	/**
+	 * @return the number of orders held
+	 */
+	synchronized int size() {
+		return asks.size() + bids.size();
+	}
+
+	/**
+	 * Appends the orders of this bucket, ASK orders first then BID orders, when
+	 * the matching state of the bucket is the one requested.
+	 */
+	synchronized void collect(boolean matched, List<OrderData> into) {
+		if (matched == (!asks.isEmpty() && !bids.isEmpty())) {
+			asks.values(into);
+			bids.values(into);
+		}
+	}
+
+	/**
+	 * Appends the orders of the given side in arrival order.
+	 */
+	synchronized void collect(OrderType orderType, List<OrderData> into) {
+		side(orderType).values(into);
+	}
+
+	private LongOrderMap side(OrderType orderType) {
+		return OrderType.ASK == orderType ? asks : bids;
+	}
+
+}
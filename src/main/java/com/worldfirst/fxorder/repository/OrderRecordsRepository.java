@@ -13,22 +13,72 @@ package com.worldfirst.fxorder.repository;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.TreeMap;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 
+import com.worldfirst.fxorder.domain.BookDepth;
+import com.worldfirst.fxorder.domain.CurrencyPair;
+import com.worldfirst.fxorder.domain.DepthLevel;
+import com.worldfirst.fxorder.domain.MatchKey;
 import com.worldfirst.fxorder.domain.OrderData;
+import com.worldfirst.fxorder.domain.OrderPage;
+import com.worldfirst.fxorder.domain.OrderQuery;
+import com.worldfirst.fxorder.domain.OrderType;
+import com.worldfirst.fxorder.domain.PairStats;
 
 /**
  * Class OrderRecordsRepository
  * 
  * It provide below five repository functionalities
  * 
- * add() remove() getMatchingOrders() getUnMatchingOrders()
+ * add() remove() amend() getMatchingOrders() getUnMatchingOrders()
  * 
+ * The orders are held in one {@link OrderShard} per currency pair, the shards
+ * sharing no map, counter or lock, so adding and removing orders of different
+ * pairs never contend. Only remove() looks the order up in every shard.
+ * 
+ * With fxorder.store.off-heap set, every shard is an {@link OffHeapOrderShard}
+ * holding the order fields in direct memory rather than OrderData on the heap,
+ * the orders being materialised when read.
+ * 
+ * Orders sharing the same {@link MatchKey} are indexed in an {@link OrderBucket}
+ * holding them per ASK and BID side, so add and remove are O(1) whatever the
+ * number of orders at a given price and amount.
+ * 
+ * Every read is served from an immutable {@link OrderStoreSnapshot}, made of
+ * the {@link ShardSnapshot} last published by every shard, so readers take no
+ * lock, never slow the writers down and never see a batch partially applied.
+ * The matched and unmatched orders of a shard snapshot are held by arrival
+ * rank in two persistent {@link RankTrie}s, so the views are served in time
+ * proportional to their size and their counts in O(1) per shard. The off-heap
+ * shards rather build their snapshot under their lock on the first read after
+ * a change, so that the orders stay off the heap between reads.
+ * 
+ * Every shard also keeps the number of orders and the total amount of its
+ * unmatched orders per side and price level in a {@link DepthBook}, updated on
+ * every add, cancel and change of matching state, so depth() and stats() never
+ * touch an order.
+ * 
+ * Every add, cancel and change of matching state is reported to the
+ * {@link OrderStoreListener} set, none by default.
+ * 
+ * addAll() and removeAll() apply a batch with one pass per shard, updating
+ * every match bucket once per batch. An order is unlinked from its bucket in
+ * O(1) whatever the number of orders at its price, and levelOrders() finds
+ * the orders of a price level through the buckets of the price, so that
+ * removeAll() drops a whole level with one bucket update per match key.
+ * 
+ * Every order is given an arrival sequence, its rank in the snapshot tries,
+ * so findOrders() and scanOrders() walk the orders of a snapshot in sequence
+ * from a cursor without copying the store, merging the shards when no
+ * currency pair is requested. Side, price, time and matching state filters are
+ * applied while walking the tries.
  * 
  * @author PM
  *
@@ -37,264 +87,229 @@ import com.worldfirst.fxorder.domain.OrderData;
 @Repository
 public class OrderRecordsRepository {
 
-	/** Data structure that holds the OrderData in memory. */
-	ConcurrentHashMap<String, OrderData> repository;
+	/** The shards by currency pair id, grown on demand. */
+	private volatile OrderShard[] shards;
 
-	/**
-	 * Data structure that holds the custom hash of all type order to be able to
-	 * find out matched orders easily.
-	 */
-	ConcurrentHashMap<String, String> allOrderHash;
+	/** Creates off-heap shards rather than heap ones. */
+	@Value("${fxorder.store.off-heap:false}")
+	private boolean offHeap;
+
+	/** Told about every change. */
+	private volatile OrderStoreListener listener = OrderStoreListener.NONE;
+
+	/** Constructor that initializes OrderData data structure in memory. */
+	public OrderRecordsRepository() {
+		shards = new OrderShard[0];
+	}
 
 	/**
-	 * Data structure that holds the custom hash of ASK type order to be able to
-	 * find out matched orders easily.
+	 * @param offHeap
+	 *            true to keep the orders in off-heap shards
 	 */
-	ConcurrentHashMap<String, String> matchingAskOrderHash;
+	public OrderRecordsRepository(boolean offHeap) {
+		this();
+		this.offHeap = offHeap;
+	}
 
 	/**
-	 * Data structure that holds the custom hash of BID type order to be able to
-	 * find out matched orders easily.
+	 * OrderRecordsRepository.setListener(OrderStoreListener)
+	 * 
+	 * @throws none
 	 */
-	ConcurrentHashMap<String, String> matchingBidOrderHash;
+	public synchronized void setListener(OrderStoreListener listener) {
 
-	/** Constructor that initializes OrderData data structure in memory. */
-	public OrderRecordsRepository() {
-		repository = new ConcurrentHashMap<String, OrderData>();
-		allOrderHash = new ConcurrentHashMap<String, String>();
-		matchingAskOrderHash = new ConcurrentHashMap<String, String>();
-		matchingBidOrderHash = new ConcurrentHashMap<String, String>();
+		this.listener = null == listener ? OrderStoreListener.NONE : listener;
+		for (OrderShard shard : shards) {
+			if (null != shard) {
+				shard.setListener(this.listener);
+			}
+		}
 	}
 
 	/**
 	 * OrderRecordsRepository.add(OrderData)
 	 * 
+	 * @return the order id, 0 if the order was not kept
 	 * @throws none
 	 */
-	public String add(OrderData order) {
-
-		repository.put(order.getId(), order);
-
-		if (null == allOrderHash.get(order.toCustomHash())) {
-			allOrderHash.put(order.toCustomHash(), order.getId());
-		} else {
-			String allIds = allOrderHash.get(order.toCustomHash());
-
-			// We are able to hold upto 3000 odd trades for a currency pair
-			// having same price and amount which is very much with is range given that FX
-			// rates are very volatile in practice
-			// but can be altered with high spec machines in production. If it goes beyond
-			// this range there is not any severe
-			// impact at all - we will just not be able to see the matching trades. They
-			// will appear in unmatching trades list instead!
+	public long add(OrderData order) {
 
-			if (allIds.length() < 150000) {
-				allOrderHash.put(order.toCustomHash(), allIds + ":" + order.getId());
-			}
+		// An immediate order not matching on arrival is not kept
+		if (!shard(order.getPair()).add(order)) {
+			return 0;
 		}
 
-		if (order.getOrderType().toString().equalsIgnoreCase("ASK")) {
-			if (null != matchingBidOrderHash.get(order.toCustomHash())) {
-				if (null == matchingAskOrderHash.get(order.toCustomHash())) {
-					matchingAskOrderHash.put(order.toCustomHash(), order.getId());
-				} else {
-					String allIds = matchingAskOrderHash.get(order.toCustomHash());
-					// We are able to hold upto 2000 matching trades for an specific currency pair
-					// e.g. GBP/USD
-					// which is very reasonable given FX price is very volatile but can be altered
-					// with high spec machines in production.
-					if (allIds.length() < 90000) {
-						matchingAskOrderHash.put(order.toCustomHash(), allIds + ":" + order.getId());
-					}
+		return order.getId();
+	}
 
+	/**
+	 * OrderRecordsRepository.addAll(List)
+	 * 
+	 * @throws none
+	 */
+	public void addAll(List<OrderData> orders) {
+
+		// Immediate orders only match the orders before them, so the batch is
+		// added one order at a time
+		for (OrderData order : orders) {
+			if (order.getTimeInForce().isImmediate()) {
+				for (OrderData each : orders) {
+					add(each);
 				}
-			} else {
-				String allIds = allOrderHash.get(order.toCustomHash());
-				List<String> list = new ArrayList<String>(Arrays.asList(allIds.split(":")));
-
-				if (list.size() > 1) {
-					for (String id : list) {
-						if (!id.equals(order.getId())) {
-							if (repository.get(id).getOrderType().toString().equalsIgnoreCase("BID")) {
-
-								matchingAskOrderHash.remove(order.toCustomHash());
-								matchingBidOrderHash.remove(order.toCustomHash());
-
-								List<String> allAskIds = new ArrayList<String>();
-								List<String> allBidIds = new ArrayList<String>();
-
-								for (String nid : list) {
-									if (repository.get(nid).getOrderType().toString().equalsIgnoreCase("ASK")) {
-										if (allAskIds.size() < 20000) {
-											allAskIds.add(nid);
-										}
-									} else if (repository.get(nid).getOrderType().toString().equalsIgnoreCase("BID")) {
-										if (allBidIds.size() < 20000) {
-											allBidIds.add(nid);
-										}
-									}
-								}
-
-								matchingAskOrderHash.put(order.toCustomHash(), allAskIds.stream().map(Object::toString)
-										.collect(Collectors.joining(":")).toString());
-								matchingBidOrderHash.put(order.toCustomHash(), allBidIds.stream().map(Object::toString)
-										.collect(Collectors.joining(":")).toString());
-								break;
-							}
-						}
-					}
-				}
+				return;
 			}
-
 		}
 
-		if (order.getOrderType().toString().equalsIgnoreCase("BID")) {
-			if (null != matchingAskOrderHash.get(order.toCustomHash())) {
-				if (null == matchingBidOrderHash.get(order.toCustomHash())) {
-					matchingBidOrderHash.put(order.toCustomHash(), order.getId());
-				} else {
-					String allIds = matchingBidOrderHash.get(order.toCustomHash());
-					// We are able to hold upto 2000 matching trades for an specific currency pair
-					// e.g. GBP/USD
-					// which is very reasonable given FX price is very volatile but can be altered
-					// with high spec machines in production.
-					if (allIds.length() < 90000) {
-						matchingBidOrderHash.put(order.toCustomHash(), allIds + ":" + order.getId());
-					}
-
-				}
-			} else {
-				String allIds = allOrderHash.get(order.toCustomHash());
-				List<String> list = new ArrayList<String>(Arrays.asList(allIds.split(":")));
-
-				if (list.size() > 1) {
-					for (String id : list) {
-						if (!id.equals(order.getId())) {
-							if (repository.get(id).getOrderType().toString().equalsIgnoreCase("ASK")) {
-
-								matchingAskOrderHash.remove(order.toCustomHash());
-								matchingBidOrderHash.remove(order.toCustomHash());
-
-								List<String> allAskIds = new ArrayList<String>();
-								List<String> allBidIds = new ArrayList<String>();
-
-								for (String nid : list) {
-									if (repository.get(nid).getOrderType().toString().equalsIgnoreCase("ASK")) {
-										if (allAskIds.size() < 20000) {
-											allAskIds.add(nid);
-										}
-									} else if (repository.get(nid).getOrderType().toString().equalsIgnoreCase("BID")) {
-										if (allBidIds.size() < 20000) {
-											allBidIds.add(nid);
-										}
-									}
-								}
-
-								matchingAskOrderHash.put(order.toCustomHash(), allAskIds.stream().map(Object::toString)
-										.collect(Collectors.joining(":")).toString());
-								matchingBidOrderHash.put(order.toCustomHash(), allBidIds.stream().map(Object::toString)
-										.collect(Collectors.joining(":")).toString());
-								break;
-							}
-						}
-					}
-				}
-			}
+		Map<Integer, List<OrderData>> byPair = new HashMap<Integer, List<OrderData>>();
+		for (OrderData order : orders) {
+			byPair.computeIfAbsent(order.getPair().getId(), id -> new ArrayList<OrderData>()).add(order);
 		}
 
-		return order.getId();
+		for (List<OrderData> batch : byPair.values()) {
+			shard(batch.get(0).getPair()).addAll(batch);
+		}
 	}
 
 	/**
 	 * OrderRecordsRepository.getAllOrders()
 	 * 
+	 * @return the orders of every shard in currency pair id then arrival order
 	 * @throws none
 	 */
 	public List<OrderData> getAllOrders() {
 
-		return new ArrayList<OrderData>(repository.values());
+		return snapshot().getAllOrders();
 	}
 
 	/**
-	 * OrderRecordsRepository.remove(OrderData)
+	 * OrderRecordsRepository.getOrders(CurrencyPair)
 	 * 
+	 * @return the orders of the pair in arrival order, from the snapshot last
+	 *         published by its shard
 	 * @throws none
 	 */
-	public String remove(String orderID) {
+	public List<OrderData> getOrders(CurrencyPair pair) {
 
-		OrderData order = repository.get(orderID);
-
-		if (null == order) {
-			return null;
+		List<OrderData> orders = new ArrayList<OrderData>();
+		OrderShard[] current = shards;
+		int pairId = pair.getId();
+		if (pairId < current.length && null != current[pairId]) {
+			current[pairId].snapshot().allOrders(orders);
 		}
+		return orders;
+	}
 
-		// Remove from main repository
-		repository.remove(orderID);
+	/**
+	 * OrderRecordsRepository.remove(long)
+	 * 
+	 * @return true if the order was removed, false if it does not exist
+	 * @throws none
+	 */
+	public boolean remove(long orderID) {
 
-		// Remove from all order hash
-		if (null != allOrderHash.get(order.toCustomHash())) {
-			String allIds = allOrderHash.get(order.toCustomHash());
+		for (OrderShard shard : shards) {
+			if (null != shard && shard.remove(orderID)) {
+				return true;
+			}
+		}
 
-			List<String> list = new ArrayList<String>(Arrays.asList(allIds.split(":")));
+		return false;
+	}
 
-			if (list.size() > 1) {
-				list.remove(list.indexOf(order.getId()));
-				String Ids = list.stream().map(Object::toString).collect(Collectors.joining(":")).toString();
+	/**
+	 * OrderRecordsRepository.amend(long, long, long)
+	 * 
+	 * Moves the order to the match bucket of its new price in pips and amount,
+	 * 0 keeping either. It keeps its arrival sequence when only its amount is
+	 * reduced and is given the next one otherwise.
+	 * 
+	 * @return true if the order exists
+	 * @throws none
+	 */
+	public boolean amend(long orderID, long pricePips, long amount) {
 
-				allOrderHash.remove(order.toCustomHash());
-				allOrderHash.put(order.toCustomHash(), Ids);
-			} else {
-				allOrderHash.remove(order.toCustomHash());
+		for (OrderShard shard : shards) {
+			if (null != shard && shard.amend(orderID, pricePips, amount)) {
+				return true;
 			}
 		}
 
-		if (order.getOrderType().toString().equalsIgnoreCase("ASK")) {
-			if (null != matchingAskOrderHash.get(order.toCustomHash())) {
-				String allIds = matchingAskOrderHash.get(order.toCustomHash());
+		return false;
+	}
+
+	/**
+	 * OrderRecordsRepository.removeAll(long[])
+	 * 
+	 * @return true at the index of every order removed, false for the unknown
+	 *         ones
+	 * @throws none
+	 */
+	public boolean[] removeAll(long[] orderIDs) {
 
-				List<String> list = new ArrayList<String>(Arrays.asList(allIds.split(":")));
+		boolean[] removed = new boolean[orderIDs.length];
+		for (OrderShard shard : shards) {
+			if (null != shard) {
+				shard.removeAll(orderIDs, removed);
+			}
+		}
 
-				if (list.size() > 1) {
-					list.remove(list.indexOf(order.getId()));
-					String Ids = list.stream().map(Object::toString).collect(Collectors.joining(":")).toString();
+		return removed;
+	}
 
-					matchingAskOrderHash.remove(order.toCustomHash());
-					matchingAskOrderHash.put(order.toCustomHash(), Ids);
-				} else {
-					matchingAskOrderHash.remove(order.toCustomHash());
+	/**
+	 * OrderRecordsRepository.levelOrders(CurrencyPair, OrderType, long)
+	 * 
+	 * @return the ids of the orders of the side resting at the price, matched
+	 *         or not, none when the pair holds no order
+	 * @throws none
+	 */
+	public long[] levelOrders(CurrencyPair pair, OrderType side, long pricePips) {
 
-					// Clean up corresponding matching BID orders for this trade
-					if (null != matchingBidOrderHash.get(order.toCustomHash())) {
-						matchingBidOrderHash.remove(order.toCustomHash());
-					}
-				}
+		OrderShard[] current = shards;
+		int pairId = pair.getId();
+		if (pairId >= current.length || null == current[pairId]) {
+			return new long[0];
+		}
+		return current[pairId].levelOrders(side, pricePips);
+	}
 
-			}
-		} else if (order.getOrderType().toString().equalsIgnoreCase("BID")) {
-			if (null != matchingBidOrderHash.get(order.toCustomHash())) {
-				String allIds = matchingBidOrderHash.get(order.toCustomHash());
+	/**
+	 * OrderRecordsRepository.size()
+	 * 
+	 * @return the number of orders of every shard
+	 * @throws none
+	 */
+	public long size() {
 
-				List<String> list = new ArrayList<String>(Arrays.asList(allIds.split(":")));
+		return snapshot().size();
+	}
 
-				if (list.size() > 1) {
-					list.remove(list.indexOf(order.getId()));
-					String Ids = list.stream().map(Object::toString).collect(Collectors.joining(":")).toString();
+	/**
+	 * OrderRecordsRepository.sizesByPair()
+	 * 
+	 * @return the number of orders of every shard by currency pair symbol
+	 * @throws none
+	 */
+	public Map<String, Long> sizesByPair() {
 
-					matchingBidOrderHash.remove(order.toCustomHash());
-					matchingBidOrderHash.put(order.toCustomHash(), Ids);
-				} else {
-					matchingBidOrderHash.remove(order.toCustomHash());
+		return snapshot().sizesByPair();
+	}
 
-					// Clean up corresponding matching ASK orders for this trade
-					if (null != matchingAskOrderHash.get(order.toCustomHash())) {
-						matchingAskOrderHash.remove(order.toCustomHash());
-					}
-				}
+	/**
+	 * OrderRecordsRepository.getPair(long)
+	 * 
+	 * @return the currency pair of the order, or null if it does not exist
+	 * @throws none
+	 */
+	public CurrencyPair getPair(long orderID) {
 
+		for (OrderShard shard : shards) {
+			if (null != shard && shard.contains(orderID)) {
+				return shard.getPair();
 			}
 		}
 
-		return orderID;
+		return null;
 	}
 
 	/**
@@ -304,57 +319,142 @@ public class OrderRecordsRepository {
 	 */
 	public List<OrderData> getMatchingOrders() {
 
-		List<OrderData> matchedList = new ArrayList<OrderData>();
-		List<String> orderKeys = new ArrayList<String>();
-
-		if (matchingAskOrderHash.size() > 0) {
-			for (Map.Entry<String, String> entry : matchingAskOrderHash.entrySet()) {
-				if ((null != matchingAskOrderHash.get(entry.getKey()))
-						&& (null != matchingBidOrderHash.get(entry.getKey()))) {
-					List<String> AskIds = Arrays.asList(entry.getValue().split(":"));
-					List<String> BidIds = Arrays.asList(matchingBidOrderHash.get(entry.getKey()).split(":"));
-					orderKeys.addAll(AskIds);
-					orderKeys.addAll(BidIds);
-				}
-			}
-		}
+		return snapshot().getMatchingOrders();
+	}
+
+	/**
+	 * OrderRecordsRepository.getUnMatchingOrders()
+	 * 
+	 * @throws none
+	 */
+	public List<OrderData> getUnMatchingOrders() {
+
+		return snapshot().getUnMatchingOrders();
+	}
+
+	/**
+	 * OrderRecordsRepository.getMatchingOrdersCount()
+	 * 
+	 * @throws none
+	 */
+	public long getMatchingOrdersCount() {
+
+		return snapshot().getMatchingOrdersCount();
+	}
+
+	/**
+	 * OrderRecordsRepository.getUnMatchingOrdersCount()
+	 * 
+	 * @throws none
+	 */
+	public long getUnMatchingOrdersCount() {
+
+		return snapshot().getUnMatchingOrdersCount();
+	}
+
+	/**
+	 * OrderRecordsRepository.findOrders(OrderQuery)
+	 * 
+	 * @return up to limit orders in arrival sequence after the cursor, along
+	 *         with the next cursor when more orders pass the filters
+	 * @throws none
+	 */
+	public OrderPage findOrders(OrderQuery query) {
+
+		return snapshot().findOrders(query);
+	}
+
+	/**
+	 * OrderRecordsRepository.scanOrders(OrderQuery)
+	 * 
+	 * The returned iterator walks one snapshot, so it sees none of the changes
+	 * made after it was created.
+	 * 
+	 * @return a lazy iterator over up to limit orders in arrival sequence after
+	 *         the cursor
+	 * @throws none
+	 */
+	public Iterator<OrderData> scanOrders(OrderQuery query) {
+
+		return snapshot().scanOrders(query);
+	}
+
+	/**
+	 * OrderRecordsRepository.snapshot()
+	 * 
+	 * @return the snapshot last published by every shard, taken without any
+	 *         lock
+	 * @throws none
+	 */
+	public OrderStoreSnapshot snapshot() {
 
-		for (String key : orderKeys) {
-			matchedList.add(repository.get(key));
+		OrderShard[] current = shards;
+		ShardSnapshot[] snapshots = new ShardSnapshot[current.length];
+		for (int i = 0; i < current.length; i++) {
+			snapshots[i] = null == current[i] ? null : current[i].snapshot();
 		}
+		return new OrderStoreSnapshot(snapshots);
+	}
+
+	/**
+	 * OrderRecordsRepository.depth(CurrencyPair, int)
+	 * 
+	 * @return the given number of best price levels of the unmatched orders of
+	 *         each side of the pair, empty when it holds no order
+	 * @throws none
+	 */
+	public BookDepth depth(CurrencyPair pair, int levels) {
 
-		return Collections.unmodifiableList(matchedList);
+		OrderShard[] current = shards;
+		int pairId = pair.getId();
+		if (pairId >= current.length || null == current[pairId]) {
+			return new BookDepth(pair, Collections.<DepthLevel>emptyList(), Collections.<DepthLevel>emptyList());
+		}
+		return current[pairId].depth(levels);
 	}
 
 	/**
-	 * OrderRecordsRepository.getUnMatchingOrders()
+	 * OrderRecordsRepository.stats()
 	 * 
+	 * @return the statistics of every pair holding orders by currency pair
+	 *         symbol
 	 * @throws none
 	 */
-	public List<OrderData> getUnMatchingOrders() {
-		List<OrderData> unMatchedList = new ArrayList<OrderData>();
-		List<String> orderKeys = new ArrayList<String>();
-
-		if (matchingAskOrderHash.size() > 0) {
-			for (Map.Entry<String, String> entry : matchingAskOrderHash.entrySet()) {
-				if ((null != matchingAskOrderHash.get(entry.getKey()))
-						&& (null != matchingBidOrderHash.get(entry.getKey()))) {
-					List<String> AskIds = Arrays.asList(entry.getValue().split(":"));
-					List<String> BidIds = Arrays.asList(matchingBidOrderHash.get(entry.getKey()).split(":"));
-					orderKeys.addAll(AskIds);
-					orderKeys.addAll(BidIds);
-				}
+	public Map<String, PairStats> stats() {
+
+		Map<String, PairStats> stats = new TreeMap<String, PairStats>();
+		for (OrderShard shard : shards) {
+			if (null != shard) {
+				stats.put(shard.getPair().getSymbol(), shard.stats());
 			}
 		}
+		return stats;
+	}
 
-		for (Map.Entry<String, OrderData> entry : repository.entrySet()) {
+	// Internal helpers
 
-			if (!orderKeys.contains(entry.getKey())) {
-				unMatchedList.add(repository.get(entry.getKey()));
+	/**
+	 * @return the shard of the currency pair, created on first use
+	 */
+	private OrderShard shard(CurrencyPair pair) {
+		int pairId = pair.getId();
+		OrderShard[] current = shards;
+		if (pairId < current.length && null != current[pairId]) {
+			return current[pairId];
+		}
+		synchronized (this) {
+			current = shards;
+			if (pairId >= current.length) {
+				current = Arrays.copyOf(current, pairId + 1);
+			} else if (null != current[pairId]) {
+				return current[pairId];
+			} else {
+				current = current.clone();
 			}
+			current[pairId] = offHeap ? new OffHeapOrderShard(pair, listener) : new HeapOrderShard(pair, listener);
+			shards = current;
+			return current[pairId];
 		}
-
-		return Collections.unmodifiableList(unMatchedList);
 	}
 
 }
@@ -0,0 +1,116 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.repository;
+
+import java.util.List;
+
+import com.worldfirst.fxorder.domain.BookDepth;
+import com.worldfirst.fxorder.domain.CurrencyPair;
+import com.worldfirst.fxorder.domain.OrderData;
+import com.worldfirst.fxorder.domain.OrderType;
+import com.worldfirst.fxorder.domain.PairStats;
+
+/**
+ * Interface OrderShard
+ *
+ * The orders of one currency pair along with their match buckets, publishing
+ * a {@link ShardSnapshot} of their matched and unmatched orders by arrival
+ * sequence for the readers. Shards share no state, so orders of different
+ * pairs never contend with each other.
+ *
+ * The arrival rank is counted per shard and packed with the pair id into the
+ * order sequence, see {@link CurrencyPair#sequence(long)}. Orders restored
+ * from a snapshot keep their sequence.
+ *
+ * {@link HeapOrderShard} holds the OrderData themselves,
+ * {@link OffHeapOrderShard} their fields in off-heap slots.
+ *
+ * @author PM
+ *
+ */
+interface OrderShard {
+
+	void setListener(OrderStoreListener listener);
+
+	/**
+	 * Adds the order, setting its sequence unless it has one. An immediate
+	 * order (IOC or FOK) is only kept if it matches on arrival, that is if its
+	 * match key already holds an order of the other side.
+	 *
+	 * @return true if the order was kept
+	 */
+	boolean add(OrderData order);
+
+	/**
+	 * Adds the orders in batch order, setting their sequence unless they have
+	 * one. The batch holds no immediate order.
+	 */
+	void addAll(List<OrderData> batch);
+
+	/**
+	 * @return true if the order was removed, false if the shard did not hold it
+	 */
+	boolean remove(long orderID);
+
+	/**
+	 * Amends the price and amount of an order, 0 keeping either, moving it to
+	 * the match bucket of its new price and amount. The order keeps its
+	 * arrival sequence when only its amount is reduced, it is given the next
+	 * one otherwise.
+	 *
+	 * @return true if the shard holds the order
+	 */
+	boolean amend(long orderID, long pricePips, long amount);
+
+	/**
+	 * Removes the orders of the batch held by this shard, the others being left
+	 * for the other shards.
+	 *
+	 * @param removed set at the index of every order removed
+	 */
+	void removeAll(long[] orderIDs, boolean[] removed);
+
+	/**
+	 * @return the ids of the orders of the side resting at the price, matched
+	 *         or not, found from the price level without looking at the other
+	 *         orders
+	 */
+	long[] levelOrders(OrderType side, long pricePips);
+
+	/**
+	 * @return true if the shard holds the order
+	 */
+	boolean contains(long orderID);
+
+	/**
+	 * @return the currency pair of the orders
+	 */
+	CurrencyPair getPair();
+
+	/**
+	 * @return the snapshot of the orders last published, every change being
+	 *         published once applied
+	 */
+	ShardSnapshot snapshot();
+
+	/**
+	 * @return the given number of best price levels of the unmatched orders of
+	 *         each side, read from the aggregates of the levels
+	 */
+	BookDepth depth(int levels);
+
+	/**
+	 * @return the number of matched orders and the totals of the unmatched
+	 *         orders of each side
+	 */
+	PairStats stats();
+
+}
@@ -0,0 +1,66 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.repository;
+
+import com.worldfirst.fxorder.domain.OrderData;
+
+/**
+ * Interface OrderStoreListener
+ * 
+ * It is called back by an order store on the thread applying the change,
+ * while the match bucket of the order is locked, so it must not block.
+ * 
+ * @author PM
+ *
+ */
+public interface OrderStoreListener {
+
+	/** The listener ignoring every change. */
+	OrderStoreListener NONE = new OrderStoreListener() {
+	};
+
+	/**
+	 * Called when an order is added, before onMatched() when it is matched.
+	 * @param order the new order
+	 */
+	default void onAdded(OrderData order) {
+	}
+
+	/**
+	 * Called when an order is cancelled.
+	 * @param order the cancelled order
+	 */
+	default void onCancelled(OrderData order) {
+	}
+
+	/**
+	 * Called when the price or amount of an order is amended, before
+	 * onMatched() when it is matched at its new price and amount.
+	 * @param order the order as amended
+	 */
+	default void onAmended(OrderData order) {
+	}
+
+	/**
+	 * Called when an order becomes matched, new orders included.
+	 * @param order the matched order
+	 */
+	default void onMatched(OrderData order) {
+	}
+
+	/**
+	 * Called when a matched order becomes unmatched.
+	 * @param order the unmatched order
+	 */
+	default void onUnmatched(OrderData order) {
+	}
+
+}
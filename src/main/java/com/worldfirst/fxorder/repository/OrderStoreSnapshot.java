@@ -0,0 +1,294 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.repository;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+import com.worldfirst.fxorder.domain.OrderData;
+import com.worldfirst.fxorder.domain.OrderPage;
+import com.worldfirst.fxorder.domain.OrderQuery;
+
+/**
+ * Class OrderStoreSnapshot
+ *
+ * An immutable view of the order store, made of the snapshot last published
+ * by every shard. It is taken without any lock and never changes, so every
+ * answer read from it is consistent whatever the writers do meanwhile, a
+ * batch being either wholly in it or not at all.
+ *
+ * The sequence of a snapshot is the sum of the versions of its shards, every
+ * change published increasing it, so a later snapshot never has a lower
+ * sequence.
+ *
+ * @author PM
+ *
+ */
+public final class OrderStoreSnapshot {
+
+	private final ShardSnapshot[] shards;
+
+	private final long sequence;
+
+	/**
+	 * @param shards
+	 *            the snapshot of every shard by currency pair id, null for the
+	 *            pairs having no shard
+	 */
+	OrderStoreSnapshot(ShardSnapshot[] shards) {
+		this.shards = shards;
+		long sum = 0;
+		for (ShardSnapshot shard : shards) {
+			sum += null == shard ? 0 : shard.getVersion();
+		}
+		this.sequence = sum;
+	}
+
+	/**
+	 * @return the snapshot sequence
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * @return the number of orders of every shard
+	 */
+	public long size() {
+		long size = 0;
+		for (ShardSnapshot shard : shards) {
+			size += null == shard ? 0 : shard.size();
+		}
+		return size;
+	}
+
+	/**
+	 * @return the number of orders of every shard by currency pair symbol
+	 */
+	public Map<String, Long> sizesByPair() {
+		Map<String, Long> sizes = new TreeMap<String, Long>();
+		for (ShardSnapshot shard : shards) {
+			if (null != shard) {
+				sizes.put(shard.getPair().getSymbol(), (long) shard.size());
+			}
+		}
+		return sizes;
+	}
+
+	/**
+	 * @return the orders of every shard in currency pair id then arrival order
+	 */
+	public List<OrderData> getAllOrders() {
+		List<OrderData> orders = new ArrayList<OrderData>(capacity(size()));
+		for (ShardSnapshot shard : shards) {
+			if (null != shard) {
+				shard.allOrders(orders);
+			}
+		}
+		return orders;
+	}
+
+	/**
+	 * @return the matched orders of every shard in currency pair id then
+	 *         arrival order
+	 */
+	public List<OrderData> getMatchingOrders() {
+		List<OrderData> orders = new ArrayList<OrderData>(capacity(getMatchingOrdersCount()));
+		for (ShardSnapshot shard : shards) {
+			if (null != shard) {
+				shard.matchingOrders(orders);
+			}
+		}
+		return Collections.unmodifiableList(orders);
+	}
+
+	/**
+	 * @return the unmatched orders of every shard in currency pair id then
+	 *         arrival order
+	 */
+	public List<OrderData> getUnMatchingOrders() {
+		List<OrderData> orders = new ArrayList<OrderData>(capacity(getUnMatchingOrdersCount()));
+		for (ShardSnapshot shard : shards) {
+			if (null != shard) {
+				shard.unMatchingOrders(orders);
+			}
+		}
+		return Collections.unmodifiableList(orders);
+	}
+
+	/**
+	 * @return the number of matched orders of every shard
+	 */
+	public long getMatchingOrdersCount() {
+		long count = 0;
+		for (ShardSnapshot shard : shards) {
+			count += null == shard ? 0 : shard.matchingCount();
+		}
+		return count;
+	}
+
+	/**
+	 * @return the number of unmatched orders of every shard
+	 */
+	public long getUnMatchingOrdersCount() {
+		long count = 0;
+		for (ShardSnapshot shard : shards) {
+			count += null == shard ? 0 : shard.unMatchingCount();
+		}
+		return count;
+	}
+
+	/**
+	 * @return up to limit orders in arrival sequence after the cursor, along
+	 *         with the next cursor when more orders pass the filters and the
+	 *         snapshot sequence
+	 */
+	public OrderPage findOrders(OrderQuery query) {
+
+		// Look one order past the limit to know if there is a next page
+		Iterator<OrderData> orders = cursor(query, Integer.MAX_VALUE);
+		List<OrderData> page = new ArrayList<OrderData>(Math.min(query.getLimit(), 1024));
+
+		while (page.size() < query.getLimit() && orders.hasNext()) {
+			page.add(orders.next());
+		}
+
+		String nextCursor = null;
+		if (!page.isEmpty() && orders.hasNext()) {
+			nextCursor = Long.toString(page.get(page.size() - 1).getSequence());
+		}
+
+		return new OrderPage(Collections.unmodifiableList(page), nextCursor, sequence);
+	}
+
+	/**
+	 * @return a lazy iterator over up to limit orders in arrival sequence after
+	 *         the cursor
+	 */
+	public Iterator<OrderData> scanOrders(OrderQuery query) {
+		return cursor(query, query.getLimit());
+	}
+
+	// Internal helpers
+
+	private Iterator<OrderData> cursor(OrderQuery query, int limit) {
+
+		Iterator<OrderData> orders;
+
+		if (null != query.getPair()) {
+			int pairId = query.getPair().getId();
+			if (pairId >= shards.length || null == shards[pairId]) {
+				return Collections.emptyIterator();
+			}
+			orders = shards[pairId].cursor(query);
+		} else {
+			List<Iterator<OrderData>> cursors = new ArrayList<Iterator<OrderData>>();
+			for (ShardSnapshot shard : shards) {
+				if (null != shard) {
+					cursors.add(shard.cursor(query));
+				}
+			}
+			orders = 1 == cursors.size() ? cursors.get(0) : new MergedCursor(cursors);
+		}
+
+		return new LimitedCursor(orders, limit);
+	}
+
+	private static int capacity(long expectedSize) {
+		return (int) Math.max(0, Math.min(Integer.MAX_VALUE - 8, expectedSize));
+	}
+
+	/**
+	 * Iterator merging the shard cursors by order sequence.
+	 */
+	private static final class MergedCursor implements Iterator<OrderData> {
+
+		private final PriorityQueue<Head> heads = new PriorityQueue<Head>(
+				Comparator.comparingLong((Head head) -> head.order.getSequence()));
+
+		MergedCursor(List<Iterator<OrderData>> cursors) {
+			for (Iterator<OrderData> cursor : cursors) {
+				if (cursor.hasNext()) {
+					heads.add(new Head(cursor));
+				}
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return !heads.isEmpty();
+		}
+
+		@Override
+		public OrderData next() {
+			Head head = heads.poll();
+			if (null == head) {
+				throw new NoSuchElementException();
+			}
+			OrderData order = head.order;
+			if (head.cursor.hasNext()) {
+				head.order = head.cursor.next();
+				heads.add(head);
+			}
+			return order;
+		}
+
+		/** The next order of a shard cursor. */
+		private static final class Head {
+
+			private final Iterator<OrderData> cursor;
+
+			private OrderData order;
+
+			Head(Iterator<OrderData> cursor) {
+				this.cursor = cursor;
+				this.order = cursor.next();
+			}
+		}
+	}
+
+	/**
+	 * Iterator stopping after a number of orders.
+	 */
+	private static final class LimitedCursor implements Iterator<OrderData> {
+
+		private final Iterator<OrderData> orders;
+
+		private int remaining;
+
+		LimitedCursor(Iterator<OrderData> orders, int limit) {
+			this.orders = orders;
+			this.remaining = limit;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return remaining > 0 && orders.hasNext();
+		}
+
+		@Override
+		public OrderData next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			remaining--;
+			return orders.next();
+		}
+	}
+
+}
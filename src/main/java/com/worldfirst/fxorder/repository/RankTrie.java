@@ -0,0 +1,295 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.repository;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.worldfirst.fxorder.domain.OrderData;
+
+/**
+ * Class RankTrie
+ *
+ * An immutable map of orders by their arrival rank within a currency pair, a
+ * trie of WIDTH way nodes growing a level each time the ranks outgrow it. It
+ * is persistent: an {@link Editor} copies the nodes on the path of each rank
+ * it changes, the other nodes being shared with the trie edited, so a new
+ * version costs O(log n) whatever the number of orders and the versions
+ * already handed out never change.
+ *
+ * A node copied by an editor is owned by it until build(), so a batch copies
+ * every node once whatever the number of its ranks sharing the node. The
+ * nodes left empty by a removal are dropped, so walking the trie skips the
+ * ranges of removed orders.
+ *
+ * It is thread safe once built, an editor being used by one thread only.
+ *
+ * @author PM
+ *
+ */
+final class RankTrie {
+
+	private static final int BITS = 5;
+
+	private static final int WIDTH = 1 << BITS;
+
+	private static final int MASK = WIDTH - 1;
+
+	/** The slot of a node holding the editor owning it. */
+	private static final int OWNER = WIDTH;
+
+	static final RankTrie EMPTY = new RankTrie(null, 0, 0);
+
+	/** The root node, null when the trie is empty. */
+	private final Object[] root;
+
+	/** The bit shift of the root level, 0 when the root holds the orders. */
+	private final int shift;
+
+	private final int size;
+
+	private RankTrie(Object[] root, int shift, int size) {
+		this.root = root;
+		this.shift = shift;
+		this.size = size;
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @return the order of the rank, null if there is none
+	 */
+	OrderData get(long rank) {
+		return find(root, shift, rank);
+	}
+
+	/**
+	 * @return an iterator over the orders ranked after the given rank, in rank
+	 *         order
+	 */
+	Iterator<OrderData> iterator(long afterRank) {
+		return new Walker(root, shift, Math.max(0, afterRank + 1));
+	}
+
+	/**
+	 * @return an editor of a new version of the trie
+	 */
+	Editor edit() {
+		return new Editor(this);
+	}
+
+	/**
+	 * Builds a new version of a trie, copying the nodes it changes.
+	 */
+	static final class Editor {
+
+		private Object[] root;
+
+		private int shift;
+
+		private int size;
+
+		private boolean built;
+
+		private Editor(RankTrie trie) {
+			this.root = trie.root;
+			this.shift = trie.shift;
+			this.size = trie.size;
+		}
+
+		/**
+		 * Puts the order at the rank, a null order removing the rank.
+		 */
+		void put(long rank, OrderData order) {
+			if (built) {
+				throw new IllegalStateException("The trie is already built");
+			}
+			if (null == order) {
+				if (null == root || 0 != rank >>> (shift + BITS)) {
+					return;
+				}
+			} else if (null == root) {
+				shift = 0;
+				while (0 != rank >>> (shift + BITS)) {
+					shift += BITS;
+				}
+				root = node();
+			} else {
+				while (0 != rank >>> (shift + BITS)) {
+					Object[] grown = node();
+					grown[0] = root;
+					root = grown;
+					shift += BITS;
+				}
+			}
+
+			root = put(root, shift, rank, order);
+			if (null == root) {
+				shift = 0;
+			}
+		}
+
+		/**
+		 * @return the order of the rank as edited so far, null if there is none
+		 */
+		OrderData get(long rank) {
+			return find(root, shift, rank);
+		}
+
+		/**
+		 * @return the trie edited, the editor can not be used any longer
+		 */
+		RankTrie build() {
+			built = true;
+			return new RankTrie(root, shift, size);
+		}
+
+		private Object[] put(Object[] node, int level, long rank, OrderData order) {
+			int index = (int) (rank >>> level) & MASK;
+
+			if (0 == level) {
+				if (node[index] == order) {
+					return node;
+				}
+				Object[] owned = owned(node);
+				size += (null == owned[index] ? 0 : -1) + (null == order ? 0 : 1);
+				owned[index] = order;
+				return null == order && isEmpty(owned) ? null : owned;
+			}
+
+			Object[] child = (Object[]) node[index];
+			if (null == child) {
+				if (null == order) {
+					return node;
+				}
+				child = node();
+			}
+			Object[] edited = put(child, level - BITS, rank, order);
+			if (edited == node[index]) {
+				return node;
+			}
+			Object[] owned = owned(node);
+			owned[index] = edited;
+			return null == edited && isEmpty(owned) ? null : owned;
+		}
+
+		private Object[] owned(Object[] node) {
+			if (this == node[OWNER]) {
+				return node;
+			}
+			Object[] copy = node.clone();
+			copy[OWNER] = this;
+			return copy;
+		}
+
+		private Object[] node() {
+			Object[] node = new Object[WIDTH + 1];
+			node[OWNER] = this;
+			return node;
+		}
+
+		private static boolean isEmpty(Object[] node) {
+			for (int i = 0; i < WIDTH; i++) {
+				if (null != node[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	private static OrderData find(Object[] root, int shift, long rank) {
+		if (null == root || rank < 0 || 0 != rank >>> (shift + BITS)) {
+			return null;
+		}
+		Object[] node = root;
+		for (int level = shift; level > 0 && null != node; level -= BITS) {
+			node = (Object[]) node[(int) (rank >>> level) & MASK];
+		}
+		return null == node ? null : (OrderData) node[(int) rank & MASK];
+	}
+
+	/**
+	 * Iterator walking the trie depth first from a rank, one node per level
+	 * being kept along with the next slot to look at.
+	 */
+	private static final class Walker implements Iterator<OrderData> {
+
+		private final Object[][] nodes;
+
+		private final int[] slots;
+
+		/** The level walked, 0 for the root. */
+		private int level;
+
+		private OrderData next;
+
+		Walker(Object[] root, int shift, long fromRank) {
+			int levels = shift / BITS + 1;
+			nodes = new Object[levels][];
+			slots = new int[levels];
+			if (null == root || 0 != fromRank >>> (shift + BITS)) {
+				level = -1;
+				return;
+			}
+
+			// Down the path of the first rank as far as it goes
+			nodes[0] = root;
+			for (level = 0;; level++) {
+				slots[level] = (int) (fromRank >>> (shift - level * BITS)) & MASK;
+				if (levels - 1 == level) {
+					break;
+				}
+				Object[] child = (Object[]) nodes[level][slots[level]];
+				if (null == child) {
+					break;
+				}
+				nodes[level + 1] = child;
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (null == next && level >= 0) {
+				if (slots[level] == WIDTH) {
+					if (--level >= 0) {
+						slots[level]++;
+					}
+					continue;
+				}
+				Object slot = nodes[level][slots[level]];
+				if (null == slot) {
+					slots[level]++;
+				} else if (nodes.length - 1 == level) {
+					slots[level]++;
+					next = (OrderData) slot;
+				} else {
+					nodes[++level] = (Object[]) slot;
+					slots[level] = 0;
+				}
+			}
+			return null != next;
+		}
+
+		@Override
+		public OrderData next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			OrderData order = next;
+			next = null;
+			return order;
+		}
+	}
+
+}
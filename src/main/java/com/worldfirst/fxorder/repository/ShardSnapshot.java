@@ -0,0 +1,297 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.repository;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import com.worldfirst.fxorder.domain.CurrencyPair;
+import com.worldfirst.fxorder.domain.OrderData;
+import com.worldfirst.fxorder.domain.OrderQuery;
+
+/**
+ * Class ShardSnapshot
+ *
+ * An immutable version of the orders of one {@link OrderShard}, the matched
+ * and unmatched orders being held in two {@link RankTrie}s by arrival rank.
+ * The version is bumped by every change the shard publishes, a batch being
+ * published as one change. An editor can keep a {@link DepthBook} in step
+ * with the unmatched orders it puts and removes. An amended order is a new
+ * OrderData of the same id, so the editor tells the versions of an order
+ * apart by identity.
+ *
+ * @author PM
+ *
+ */
+final class ShardSnapshot {
+
+	private final CurrencyPair pair;
+
+	private final long version;
+
+	private final RankTrie matched;
+
+	private final RankTrie unmatched;
+
+	private ShardSnapshot(CurrencyPair pair, long version, RankTrie matched, RankTrie unmatched) {
+		this.pair = pair;
+		this.version = version;
+		this.matched = matched;
+		this.unmatched = unmatched;
+	}
+
+	/**
+	 * @return the snapshot of a shard holding no order yet
+	 */
+	static ShardSnapshot empty(CurrencyPair pair) {
+		return new ShardSnapshot(pair, 0, RankTrie.EMPTY, RankTrie.EMPTY);
+	}
+
+	CurrencyPair getPair() {
+		return pair;
+	}
+
+	long getVersion() {
+		return version;
+	}
+
+	int size() {
+		return matched.size() + unmatched.size();
+	}
+
+	long matchingCount() {
+		return matched.size();
+	}
+
+	long unMatchingCount() {
+		return unmatched.size();
+	}
+
+	/**
+	 * Appends the orders in arrival sequence.
+	 */
+	void allOrders(List<OrderData> into) {
+		Iterator<OrderData> orders = new Merged(matched.iterator(0), unmatched.iterator(0));
+		while (orders.hasNext()) {
+			into.add(orders.next());
+		}
+	}
+
+	/**
+	 * Appends the matched orders in arrival sequence.
+	 */
+	void matchingOrders(List<OrderData> into) {
+		for (Iterator<OrderData> orders = matched.iterator(0); orders.hasNext();) {
+			into.add(orders.next());
+		}
+	}
+
+	/**
+	 * Appends the unmatched orders in arrival sequence.
+	 */
+	void unMatchingOrders(List<OrderData> into) {
+		for (Iterator<OrderData> orders = unmatched.iterator(0); orders.hasNext();) {
+			into.add(orders.next());
+		}
+	}
+
+	/**
+	 * @return a lazy iterator over the orders passing the query filters after
+	 *         its cursor, in arrival sequence
+	 */
+	Iterator<OrderData> cursor(OrderQuery query) {
+		// The first rank whose sequence follows the cursor
+		long afterRank = Math.floorDiv(query.getAfterSequence() - pair.getId(), CurrencyPair.MAX_PAIRS);
+
+		Iterator<OrderData> orders;
+		switch (query.getStatus()) {
+		case MATCHED:
+			orders = matched.iterator(afterRank);
+			break;
+		case UNMATCHED:
+			orders = unmatched.iterator(afterRank);
+			break;
+		default:
+			orders = new Merged(matched.iterator(afterRank), unmatched.iterator(afterRank));
+		}
+		return new Filtered(orders, query);
+	}
+
+	/**
+	 * @param depth
+	 *            the depth told about the orders starting or ceasing to be
+	 *            unmatched, null for none
+	 * @return an editor of the next version of this snapshot
+	 */
+	Editor edit(DepthBook depth) {
+		return new Editor(this, version + 1, depth);
+	}
+
+	/**
+	 * @return an editor of a snapshot of the given version, starting with no
+	 *         order
+	 */
+	static Editor builder(CurrencyPair pair, long version) {
+		return new Editor(empty(pair), version, null);
+	}
+
+	/**
+	 * Builds the next version of a snapshot.
+	 */
+	static final class Editor {
+
+		private final CurrencyPair pair;
+
+		private final long version;
+
+		private final RankTrie.Editor matched;
+
+		private final RankTrie.Editor unmatched;
+
+		private final DepthBook depth;
+
+		private Editor(ShardSnapshot snapshot, long version, DepthBook depth) {
+			this.pair = snapshot.pair;
+			this.version = version;
+			this.matched = snapshot.matched.edit();
+			this.unmatched = snapshot.unmatched.edit();
+			this.depth = depth;
+		}
+
+		/**
+		 * Puts the order in the matched or unmatched orders, replacing it or the
+		 * version of it held at its rank in the other ones.
+		 */
+		void put(OrderData order, boolean isMatched) {
+			long rank = CurrencyPair.rankOf(order.getSequence());
+			if (null != depth) {
+				OrderData held = unmatched.get(rank);
+				if (null != held && (isMatched || held != order)) {
+					depth.add(held.getOrderType(), held.getPricePips(), held.getAmount(), -1);
+				}
+				if (!isMatched && held != order) {
+					depth.add(order.getOrderType(), order.getPricePips(), order.getAmount(), 1);
+				}
+			}
+			(isMatched ? matched : unmatched).put(rank, order);
+			(isMatched ? unmatched : matched).put(rank, null);
+		}
+
+		/**
+		 * Removes the order, unless its rank holds another version of it by
+		 * now.
+		 */
+		void remove(OrderData order) {
+			long rank = CurrencyPair.rankOf(order.getSequence());
+			OrderData held = unmatched.get(rank);
+			if (null == held) {
+				if (order != matched.get(rank)) {
+					return;
+				}
+				matched.put(rank, null);
+			} else if (held == order) {
+				if (null != depth) {
+					depth.add(order.getOrderType(), order.getPricePips(), order.getAmount(), -1);
+				}
+				unmatched.put(rank, null);
+			}
+		}
+
+		/**
+		 * @return the snapshot edited, the editor can not be used any longer
+		 */
+		ShardSnapshot build() {
+			return new ShardSnapshot(pair, version, matched.build(), unmatched.build());
+		}
+	}
+
+	/**
+	 * Iterator merging two iterators by order sequence.
+	 */
+	private static final class Merged implements Iterator<OrderData> {
+
+		private final Iterator<OrderData> left;
+
+		private final Iterator<OrderData> right;
+
+		private OrderData nextLeft;
+
+		private OrderData nextRight;
+
+		Merged(Iterator<OrderData> left, Iterator<OrderData> right) {
+			this.left = left;
+			this.right = right;
+			this.nextLeft = left.hasNext() ? left.next() : null;
+			this.nextRight = right.hasNext() ? right.next() : null;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return null != nextLeft || null != nextRight;
+		}
+
+		@Override
+		public OrderData next() {
+			OrderData order;
+			if (null == nextRight || (null != nextLeft && nextLeft.getSequence() < nextRight.getSequence())) {
+				order = nextLeft;
+				nextLeft = left.hasNext() ? left.next() : null;
+			} else {
+				order = nextRight;
+				nextRight = right.hasNext() ? right.next() : null;
+			}
+			if (null == order) {
+				throw new NoSuchElementException();
+			}
+			return order;
+		}
+	}
+
+	/**
+	 * Iterator skipping the orders not passing the query filters.
+	 */
+	private static final class Filtered implements Iterator<OrderData> {
+
+		private final Iterator<OrderData> orders;
+
+		private final OrderQuery query;
+
+		private OrderData next;
+
+		Filtered(Iterator<OrderData> orders, OrderQuery query) {
+			this.orders = orders;
+			this.query = query;
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (null == next && orders.hasNext()) {
+				OrderData order = orders.next();
+				if (query.matches(order)) {
+					next = order;
+				}
+			}
+			return null != next;
+		}
+
+		@Override
+		public OrderData next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			OrderData order = next;
+			next = null;
+			return order;
+		}
+	}
+
+}
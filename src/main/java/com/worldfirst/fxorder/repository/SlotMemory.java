@@ -0,0 +1,137 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.repository;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Class SlotMemory
+ *
+ * Fixed size slots in off-heap memory, numbered from 0 and allocated by chunks
+ * of CHUNK_SLOTS slots in direct byte buffers as they fill up. A freed slot is
+ * linked to the next free one through its first int and handed out again
+ * before any new slot, so the memory is never fragmented. It is only given
+ * back to the operating system when the whole SlotMemory is collected.
+ *
+ * It is not thread safe, the owner is expected to serialise the calls.
+ *
+ * @author PM
+ *
+ */
+final class SlotMemory {
+
+	static final int NONE = -1;
+
+	/** The number of slots per chunk, a power of two. */
+	static final int CHUNK_SLOTS = 1 << 16;
+
+	private static final int CHUNK_SHIFT = Integer.numberOfTrailingZeros(CHUNK_SLOTS);
+
+	private final int slotShift;
+
+	private ByteBuffer[] chunks = new ByteBuffer[0];
+
+	/** The number of slots ever handed out, free ones included. */
+	private int highWater;
+
+	/** The first free slot, NONE if none. */
+	private int free = NONE;
+
+	private int used;
+
+	/**
+	 * @param slotSize
+	 *            the number of bytes of a slot, a power of two
+	 */
+	SlotMemory(int slotSize) {
+		if (Integer.bitCount(slotSize) != 1) {
+			throw new IllegalArgumentException("Slot size must be a power of two: " + slotSize);
+		}
+		slotShift = Integer.numberOfTrailingZeros(slotSize);
+	}
+
+	/**
+	 * @return a slot whose content is undefined
+	 */
+	int allocate() {
+		int slot = free;
+		if (NONE != slot) {
+			free = getInt(slot, 0);
+		} else {
+			slot = highWater;
+			if (slot >>> CHUNK_SHIFT == chunks.length) {
+				chunks = Arrays.copyOf(chunks, chunks.length + 1);
+				chunks[chunks.length - 1] = ByteBuffer.allocateDirect(CHUNK_SLOTS << slotShift)
+						.order(ByteOrder.nativeOrder());
+			}
+			highWater++;
+		}
+		used++;
+		return slot;
+	}
+
+	void free(int slot) {
+		putInt(slot, 0, free);
+		free = slot;
+		used--;
+	}
+
+	/**
+	 * @return the number of slots in use
+	 */
+	int used() {
+		return used;
+	}
+
+	/**
+	 * @return the number of off-heap bytes reserved by the chunks
+	 */
+	long reservedBytes() {
+		return (long) chunks.length * CHUNK_SLOTS << slotShift;
+	}
+
+	long getLong(int slot, int offset) {
+		return chunk(slot).getLong(offset(slot, offset));
+	}
+
+	void putLong(int slot, int offset, long value) {
+		chunk(slot).putLong(offset(slot, offset), value);
+	}
+
+	int getInt(int slot, int offset) {
+		return chunk(slot).getInt(offset(slot, offset));
+	}
+
+	void putInt(int slot, int offset, int value) {
+		chunk(slot).putInt(offset(slot, offset), value);
+	}
+
+	byte get(int slot, int offset) {
+		return chunk(slot).get(offset(slot, offset));
+	}
+
+	void put(int slot, int offset, byte value) {
+		chunk(slot).put(offset(slot, offset), value);
+	}
+
+	// Internal helpers
+
+	private ByteBuffer chunk(int slot) {
+		return chunks[slot >>> CHUNK_SHIFT];
+	}
+
+	private int offset(int slot, int offset) {
+		return ((slot & (CHUNK_SLOTS - 1)) << slotShift) + offset;
+	}
+
+}
@@ -0,0 +1,109 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Class CurrencyPairProperties
+ * 
+ * It binds the tradable currency pairs configured as
+ * 
+ * fxorder.pairs[n].symbol=EUR/USD
+ * fxorder.pairs[n].scale=4
+ * fxorder.pairs[n].tick-size=0.0001
+ * 
+ * the tick size defaulting to one unit of the last decimal.
+ * 
+ * @author PM
+ *
+ */
+
+@Component
+@ConfigurationProperties(prefix = "fxorder")
+public class CurrencyPairProperties {
+
+	private List<Pair> pairs = new ArrayList<Pair>();
+
+	/**
+	 * @return the pairs
+	 */
+	public List<Pair> getPairs() {
+		return pairs;
+	}
+
+	/**
+	 * @param pairs the pairs to set
+	 */
+	public void setPairs(List<Pair> pairs) {
+		this.pairs = pairs;
+	}
+
+	/**
+	 * One configured currency pair.
+	 */
+	public static class Pair {
+
+		private String symbol;
+
+		private int scale;
+
+		private BigDecimal tickSize;
+
+		/**
+		 * @return the symbol
+		 */
+		public String getSymbol() {
+			return symbol;
+		}
+
+		/**
+		 * @param symbol the symbol to set
+		 */
+		public void setSymbol(String symbol) {
+			this.symbol = symbol;
+		}
+
+		/**
+		 * @return the scale
+		 */
+		public int getScale() {
+			return scale;
+		}
+
+		/**
+		 * @param scale the scale to set
+		 */
+		public void setScale(int scale) {
+			this.scale = scale;
+		}
+
+		/**
+		 * @return the tickSize
+		 */
+		public BigDecimal getTickSize() {
+			return tickSize;
+		}
+
+		/**
+		 * @param tickSize the tickSize to set
+		 */
+		public void setTickSize(BigDecimal tickSize) {
+			this.tickSize = tickSize;
+		}
+	}
+
+}
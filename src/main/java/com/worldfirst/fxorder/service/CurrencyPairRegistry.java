@@ -0,0 +1,136 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.worldfirst.fxorder.constants.ServiceConstants;
+import com.worldfirst.fxorder.domain.CurrencyPair;
+
+/**
+ * Class CurrencyPairRegistry
+ * 
+ * It interns the tradable currency pairs, each one being given a small integer
+ * id in registration order. The pairs are loaded from the fxorder.pairs
+ * configuration, GBP/USD alone being supported when none is configured.
+ * 
+ * @author PM
+ *
+ */
+
+@Component
+public class CurrencyPairRegistry {
+
+	/** The pairs by upper case symbol. */
+	private final Map<String, CurrencyPair> pairsBySymbol = new HashMap<String, CurrencyPair>();
+
+	/** The pairs by id. */
+	private final List<CurrencyPair> pairs = new ArrayList<CurrencyPair>();
+
+	/** Constructor that registers the default currency pair. */
+	public CurrencyPairRegistry() {
+		register(ServiceConstants.CURRENCY_PAIR_GBPUSD, ServiceConstants.PRICE_SCALE, null);
+	}
+
+	/**
+	 * Constructor that registers the configured currency pairs.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if a pair is configured twice, has no symbol, a negative
+	 *             scale or a tick size not being a whole number of pips
+	 */
+	@Autowired
+	public CurrencyPairRegistry(CurrencyPairProperties properties) {
+		for (CurrencyPairProperties.Pair pair : properties.getPairs()) {
+			register(pair.getSymbol(), pair.getScale(), pair.getTickSize());
+		}
+		if (pairs.isEmpty()) {
+			register(ServiceConstants.CURRENCY_PAIR_GBPUSD, ServiceConstants.PRICE_SCALE, null);
+		}
+	}
+
+	/**
+	 * Returns the interned pair of a symbol, ignoring case.
+	 * 
+	 * @return the currency pair or null if the symbol is not supported
+	 */
+	public CurrencyPair lookup(String symbol) {
+		if (null == symbol) {
+			return null;
+		}
+		CurrencyPair pair = pairsBySymbol.get(symbol);
+		return null != pair ? pair : pairsBySymbol.get(symbol.toUpperCase());
+	}
+
+	/**
+	 * @return the currency pair having the given id, or null if none has it
+	 */
+	public CurrencyPair get(int id) {
+		return id >= 0 && id < pairs.size() ? pairs.get(id) : null;
+	}
+
+	/**
+	 * @return all the currency pairs, in id order
+	 */
+	public List<CurrencyPair> pairs() {
+		return Collections.unmodifiableList(pairs);
+	}
+
+	/**
+	 * @return the symbols of all the currency pairs, in id order
+	 */
+	public List<String> symbols() {
+		List<String> symbols = new ArrayList<String>(pairs.size());
+		for (CurrencyPair pair : pairs) {
+			symbols.add(pair.getSymbol());
+		}
+		return symbols;
+	}
+
+	// Internal helpers
+
+	private void register(String symbol, int scale, BigDecimal tickSize) {
+		if (null == symbol || symbol.trim().isEmpty() || scale < 0 || scale > 18) {
+			throw new IllegalArgumentException("Invalid currency pair configuration: " + symbol + " scale " + scale);
+		}
+		if (pairs.size() == CurrencyPair.MAX_PAIRS) {
+			throw new IllegalArgumentException("More than " + CurrencyPair.MAX_PAIRS + " currency pairs configured");
+		}
+		if (pairsBySymbol.containsKey(symbol.trim().toUpperCase())) {
+			throw new IllegalArgumentException("Currency pair configured twice: " + symbol);
+		}
+
+		long tickPips = 1L;
+		if (null != tickSize) {
+			try {
+				tickPips = tickSize.movePointRight(scale).longValueExact();
+			} catch (ArithmeticException e) {
+				tickPips = 0L;
+			}
+			if (tickPips < 1) {
+				throw new IllegalArgumentException("Invalid tick size of " + symbol + ": " + tickSize);
+			}
+		}
+
+		CurrencyPair pair = new CurrencyPair(pairs.size(), symbol.trim().toUpperCase(), scale, tickPips);
+		pairs.add(pair);
+		pairsBySymbol.put(pair.getSymbol(), pair);
+	}
+
+}
@@ -10,22 +10,47 @@
 
 package com.worldfirst.fxorder.service;
 
+import java.math.BigDecimal;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
+import com.worldfirst.fxorder.domain.BatchResult;
+import com.worldfirst.fxorder.domain.BookDepth;
+import com.worldfirst.fxorder.domain.CurrencyPair;
+import com.worldfirst.fxorder.domain.ExecutionReport;
+import com.worldfirst.fxorder.domain.OrderCounts;
 import com.worldfirst.fxorder.domain.OrderData;
+import com.worldfirst.fxorder.domain.OrderPage;
 import com.worldfirst.fxorder.domain.OrderType;
+import com.worldfirst.fxorder.domain.PairStats;
+import com.worldfirst.fxorder.domain.TimeInForce;
+import com.worldfirst.fxorder.dto.OrderDTO;
+import com.worldfirst.fxorder.dto.OrderQueryDTO;
 import com.worldfirst.fxorder.exception.InvalidInputException;
 import com.worldfirst.fxorder.exception.ServiceException;
 
 /**
  * Interface IFXTradingService
  * 
- * It provides below four service functionalities
+ * It provides below sixteen service functionalities
  * 
  * saveOrder()
+ * saveOrder() with time in force
+ * saveOrder() in pips
+ * saveOrders()
  * deleteOrder()
+ * deleteOrder() by long id
+ * deleteOrders()
+ * amendOrder()
+ * cancelLevel()
  * matchingOrders()
  * unMatchingOrders()
+ * matchingOrdersCount()
+ * unMatchingOrdersCount()
+ * executionReports()
+ * findOrders()
+ * streamOrders()
  * 
  * @author PM
  *
@@ -39,7 +64,37 @@ public interface IFXTradingService {
 	 * @return the boolean status
 	 * @throws InvalidInputException, ServiceException
 	 */
-	boolean saveOrder(String currency, float price, OrderType orderType, long amount) 
+	boolean saveOrder(String currency, BigDecimal price, OrderType orderType, long amount) 
+			throws InvalidInputException, ServiceException;
+
+	/**
+	 * Saves an order staying in the store as long as its time in force allows.
+	 * @param currency price orderType amount, timeInForce (GTC if null) and
+	 *        the expireTime of a GTD order
+	 * @return false if the order was dropped, as an IOC or FOK order nothing
+	 *         could fill
+	 * @throws InvalidInputException, ServiceException
+	 */
+	boolean saveOrder(String currency, BigDecimal price, OrderType orderType, long amount,
+			TimeInForce timeInForce, Long expireTime) throws InvalidInputException, ServiceException;
+
+	/**
+	 * Saves an order whose price is a number of pips of its currency pair, as
+	 * decoded from the binary order entry protocol.
+	 * @param pair pricePips orderType and amount
+	 * @return the id assigned to the order
+	 * @throws InvalidInputException, ServiceException
+	 */
+	long saveOrder(CurrencyPair pair, long pricePips, OrderType orderType, long amount)
+			throws InvalidInputException, ServiceException;
+
+	/**
+	 * Saves a batch of orders, the valid ones being applied in one go.
+	 * @param orders the orders
+	 * @return the BatchResult of every order in batch order
+	 * @throws InvalidInputException, ServiceException
+	 */
+	List<BatchResult> saveOrders(List<OrderDTO> orders)
 			throws InvalidInputException, ServiceException;
 
 	/**
@@ -59,6 +114,46 @@ public interface IFXTradingService {
 	 */
 	boolean deleteOrder(String id) 
 			throws InvalidInputException, ServiceException;
+
+	/**
+	 * Deletes an order by the long id given by saveOrder() in pips.
+	 * @param order id
+	 * @return the status
+	 * @throws InvalidInputException, ServiceException
+	 */
+	boolean deleteOrder(long id)
+			throws InvalidInputException, ServiceException;
+	
+	/**
+	 * Deletes a batch of orders in one go.
+	 * @param order ids
+	 * @return the BatchResult of every order id in batch order
+	 * @throws InvalidInputException, ServiceException
+	 */
+	List<BatchResult> deleteOrders(List<String> ids)
+			throws InvalidInputException, ServiceException;
+
+	/**
+	 * Amends the price and or the open amount of a resting order. Reducing the
+	 * amount at the same price keeps its time priority, any other change
+	 * queues it again as a new order with the same id.
+	 * @param order id, price or null to keep it, amount or null to keep it
+	 * @return the status
+	 * @throws InvalidInputException, ServiceException
+	 */
+	boolean amendOrder(String id, BigDecimal price, Long amount)
+			throws InvalidInputException, ServiceException;
+
+	/**
+	 * Deletes every order of one side resting at one price of a pair.
+	 * @param currency the pair, as GBP/USD, GBPUSD or GBP-USD
+	 * @param side ASK or BID
+	 * @param price the price of the level
+	 * @return the ids of the orders cancelled
+	 * @throws InvalidInputException, ServiceException
+	 */
+	List<String> cancelLevel(String currency, String side, BigDecimal price)
+			throws InvalidInputException, ServiceException;
 	
 	/**
 	 * Returns the matching orders.
@@ -75,5 +170,88 @@ public interface IFXTradingService {
 	 * @throws InvalidInputException, ServiceException
 	 */
 	List<OrderData> unMatchingOrders() throws InvalidInputException, ServiceException;
-	
+
+	/**
+	 * Returns the number of matching orders.
+	 * @param none
+	 * @return the number of orders matchingOrders() would return
+	 * @throws InvalidInputException, ServiceException
+	 */
+	long matchingOrdersCount() throws InvalidInputException, ServiceException;
+
+	/**
+	 * Returns the number of unmatching orders.
+	 * @param none
+	 * @return the number of orders unMatchingOrders() would return
+	 * @throws InvalidInputException, ServiceException
+	 */
+	long unMatchingOrdersCount() throws InvalidInputException, ServiceException;
+
+	/**
+	 * Returns the matching orders read from one snapshot of the order store.
+	 * @param none
+	 * @return the OrderPage of every matching order, with no next cursor
+	 * @throws InvalidInputException, ServiceException
+	 */
+	OrderPage matchingOrdersSnapshot() throws InvalidInputException, ServiceException;
+
+	/**
+	 * Returns the unmatching orders read from one snapshot of the order store.
+	 * @param none
+	 * @return the OrderPage of every unmatching order, with no next cursor
+	 * @throws InvalidInputException, ServiceException
+	 */
+	OrderPage unMatchingOrdersSnapshot() throws InvalidInputException, ServiceException;
+
+	/**
+	 * Returns the number of matching and unmatching orders read from one
+	 * snapshot of the order store.
+	 * @param none
+	 * @return the OrderCounts
+	 * @throws InvalidInputException, ServiceException
+	 */
+	OrderCounts orderCounts() throws InvalidInputException, ServiceException;
+
+	/**
+	 * Returns the most recent execution reports.
+	 * @param none
+	 * @return the ExecutionReport list, oldest first
+	 * @throws InvalidInputException, ServiceException
+	 */
+	List<ExecutionReport> executionReports() throws InvalidInputException, ServiceException;
+
+	/**
+	 * Returns a page of the orders passing the query filters.
+	 * @param query the filters, cursor and limit
+	 * @return the OrderPage in arrival order
+	 * @throws InvalidInputException, ServiceException
+	 */
+	OrderPage findOrders(OrderQueryDTO query) throws InvalidInputException, ServiceException;
+
+	/**
+	 * Returns the orders passing the query filters one by one, the query being
+	 * validated before the iterator is returned.
+	 * @param query the filters, cursor and optional limit
+	 * @return the lazy OrderData iterator in arrival order
+	 * @throws InvalidInputException, ServiceException
+	 */
+	Iterator<OrderData> streamOrders(OrderQueryDTO query) throws InvalidInputException, ServiceException;
+
+	/**
+	 * Returns the best price levels of both sides of the book of a pair.
+	 * @param currency the pair, as GBP/USD, GBPUSD or GBP-USD
+	 * @param levels the number of levels per side, null for the default
+	 * @return the BookDepth of the unmatching orders
+	 * @throws InvalidInputException, ServiceException
+	 */
+	BookDepth depth(String currency, Integer levels) throws InvalidInputException, ServiceException;
+
+	/**
+	 * Returns the statistics of every currency pair holding orders.
+	 * @param none
+	 * @return the PairStats by currency pair symbol
+	 * @throws InvalidInputException, ServiceException
+	 */
+	Map<String, PairStats> stats() throws InvalidInputException, ServiceException;
+
 }
\ No newline at end of file
@@ -0,0 +1,221 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.worldfirst.fxorder.domain.BatchResult;
+import com.worldfirst.fxorder.domain.CurrencyPair;
+import com.worldfirst.fxorder.domain.OrderData;
+import com.worldfirst.fxorder.domain.OrderType;
+import com.worldfirst.fxorder.domain.RejectReason;
+import com.worldfirst.fxorder.domain.TimeInForce;
+import com.worldfirst.fxorder.dto.OrderDTO;
+import com.worldfirst.fxorder.exception.InvalidInputException;
+import com.worldfirst.fxorder.exception.ServiceException;
+import com.worldfirst.fxorder.pipeline.OrderIngestionPipeline;
+
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Class OrderBatches
+ *
+ * It saves and cancels batches of orders for both trading services: every
+ * item is validated on its own and reported in a {@link BatchResult}, then the
+ * valid ones go through the ingestion pipeline as one batch, whatever engine
+ * applies them. A price level is cancelled the same way, the engine only
+ * telling which orders rest at it.
+ *
+ * @author PM
+ *
+ */
+final class OrderBatches {
+
+	private final OrderValidator validator;
+
+	private final OrderIdGenerator ids;
+
+	private final OrderIngestionPipeline pipeline;
+
+	/** The orders failing validation, shared with the single order calls. */
+	private final AtomicLong rejectedOrders;
+
+	private final Timer saveBatchLatency;
+
+	private final Timer deleteBatchLatency;
+
+	private final Timer cancelLevelLatency;
+
+	OrderBatches(OrderValidator validator, OrderIdGenerator ids, OrderIngestionPipeline pipeline,
+			AtomicLong rejectedOrders, Timer saveBatchLatency, Timer deleteBatchLatency, Timer cancelLevelLatency) {
+		this.validator = validator;
+		this.ids = ids;
+		this.pipeline = pipeline;
+		this.rejectedOrders = rejectedOrders;
+		this.saveBatchLatency = saveBatchLatency;
+		this.deleteBatchLatency = deleteBatchLatency;
+		this.cancelLevelLatency = cancelLevelLatency;
+	}
+
+	/**
+	 * @see IFXTradingService#saveOrders(List)
+	 */
+	List<BatchResult> save(List<OrderDTO> orders) throws InvalidInputException, ServiceException {
+
+		long start = System.nanoTime();
+		try {
+			validator.validateBatch(orders);
+
+			List<BatchResult> results = new ArrayList<BatchResult>(orders.size());
+			List<OrderData> valid = new ArrayList<OrderData>(orders.size());
+			long orderDate = System.currentTimeMillis();
+
+			for (int i = 0; i < orders.size(); i++) {
+				OrderDTO dto = orders.get(i);
+				if (null == dto) {
+					rejectedOrders.incrementAndGet();
+					results.add(new BatchResult(i, null, false, "Order could not be saved!"));
+					continue;
+				}
+
+				// Rejections are reported in the result, nothing is thrown per order
+				CurrencyPair pair = validator.pair(dto.getCurrency());
+				TimeInForce terms = null == dto.getTimeInForce() ? TimeInForce.GTC : dto.getTimeInForce();
+				RejectReason reason = validator.check(pair, dto.getPrice(), dto.getBidOrAsk(), dto.getAmount());
+				if (null == reason) {
+					reason = validator.checkExpiry(terms, dto.getExpireTime(), orderDate);
+				}
+				if (null != reason) {
+					rejectedOrders.incrementAndGet();
+					results.add(new BatchResult(i, null, false, validator.message(reason, pair, dto), reason));
+					continue;
+				}
+
+				OrderData order = new OrderData(ids.nextId(), pair, pair.toPips(dto.getPrice()), dto.getAmount(),
+						dto.getBidOrAsk(), orderDate);
+				order.setTimeInForce(terms);
+				order.setExpireTime(validator.expiryOf(terms, dto.getExpireTime(), orderDate));
+				valid.add(order);
+				results.add(new BatchResult(i, Long.toString(order.getId()), true, "Order saved!"));
+			}
+
+			try {
+				if (!valid.isEmpty()) {
+					pipeline.addAll(valid);
+				}
+			} catch (Exception e) {
+				String errMsg = "Service Exception! "+e.getMessage();
+				throw new ServiceException(errMsg);
+			}
+
+			return results;
+		} finally {
+			saveBatchLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	/**
+	 * @see IFXTradingService#deleteOrders(List)
+	 */
+	List<BatchResult> cancel(List<String> orderIds) throws InvalidInputException, ServiceException {
+
+		long start = System.nanoTime();
+		try {
+			validator.validateBatch(orderIds);
+
+			// Ids which are not numbers can not exist, they are left out of the batch
+			long[] parsed = new long[orderIds.size()];
+			int count = 0;
+			for (int i = 0; i < parsed.length; i++) {
+				parsed[i] = null == orderIds.get(i) ? 0 : OrderIdGenerator.parse(orderIds.get(i).trim());
+				count += 0 == parsed[i] ? 0 : 1;
+			}
+			long[] known = new long[count];
+			count = 0;
+			for (long id : parsed) {
+				if (0 != id) {
+					known[count++] = id;
+				}
+			}
+
+			boolean[] cancelled;
+			try {
+				cancelled = 0 == known.length ? new boolean[0] : pipeline.cancelAll(known);
+			} catch (Exception e) {
+				String errMsg = "Service Exception! "+e.getMessage();
+				throw new ServiceException(errMsg);
+			}
+
+			List<BatchResult> results = new ArrayList<BatchResult>(orderIds.size());
+			int next = 0;
+			for (int i = 0; i < orderIds.size(); i++) {
+				String id = orderIds.get(i);
+				boolean done = 0 != parsed[i] && cancelled[next++];
+				results.add(new BatchResult(i, id, done, done ? "Order cancelled!" : "OrderId does not exists!"));
+			}
+			return results;
+		} finally {
+			deleteBatchLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	/**
+	 * The orders of the level are looked up then cancelled as one batch, so
+	 * the cancellations are journaled and their expiry dropped like those of
+	 * deleteOrders(). An order joining the level meanwhile is left resting.
+	 * 
+	 * @see IFXTradingService#cancelLevel(String, String, BigDecimal)
+	 */
+	List<String> cancelLevel(String currency, String side, BigDecimal price, LevelOrders levelOrders)
+			throws InvalidInputException, ServiceException {
+
+		long start = System.nanoTime();
+		try {
+			CurrencyPair pair = validator.validateDepthPair(currency);
+			OrderType orderType = validator.validateSide(side);
+			long pricePips = validator.validateLevelPrice(pair, price);
+
+			long[] orderIds;
+			boolean[] cancelled;
+			try {
+				orderIds = levelOrders.of(pair, orderType, pricePips);
+				cancelled = 0 == orderIds.length ? new boolean[0] : pipeline.cancelAll(orderIds);
+			} catch (Exception e) {
+				String errMsg = "Service Exception! "+e.getMessage();
+				throw new ServiceException(errMsg);
+			}
+
+			List<String> results = new ArrayList<String>(orderIds.length);
+			for (int i = 0; i < orderIds.length; i++) {
+				if (cancelled[i]) {
+					results.add(Long.toString(orderIds[i]));
+				}
+			}
+			return results;
+		} finally {
+			cancelLevelLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	/**
+	 * The engine lookup of the orders resting at one price of one side of a
+	 * pair.
+	 */
+	interface LevelOrders {
+
+		long[] of(CurrencyPair pair, OrderType side, long pricePips);
+	}
+
+}
@@ -0,0 +1,1060 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.service;
+
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import com.worldfirst.fxorder.cluster.OrderCluster;
+import com.worldfirst.fxorder.constants.ServiceConstants;
+import com.worldfirst.fxorder.domain.BatchResult;
+import com.worldfirst.fxorder.domain.BookDepth;
+import com.worldfirst.fxorder.domain.CurrencyPair;
+import com.worldfirst.fxorder.domain.DepthLevel;
+import com.worldfirst.fxorder.domain.ExecutionReport;
+import com.worldfirst.fxorder.domain.OrderCounts;
+import com.worldfirst.fxorder.domain.OrderData;
+import com.worldfirst.fxorder.domain.OrderPage;
+import com.worldfirst.fxorder.domain.OrderQuery;
+import com.worldfirst.fxorder.domain.OrderType;
+import com.worldfirst.fxorder.domain.PairStats;
+import com.worldfirst.fxorder.domain.RejectReason;
+import com.worldfirst.fxorder.domain.TimeInForce;
+import com.worldfirst.fxorder.dto.OrderDTO;
+import com.worldfirst.fxorder.dto.OrderQueryDTO;
+import com.worldfirst.fxorder.engine.ExecutionListener;
+import com.worldfirst.fxorder.engine.LimitOrderBook;
+import com.worldfirst.fxorder.exception.InvalidInputException;
+import com.worldfirst.fxorder.expiry.OrderExpiry;
+import com.worldfirst.fxorder.feed.OrderFeed;
+import com.worldfirst.fxorder.exception.ServiceException;
+import com.worldfirst.fxorder.journal.OrderJournal;
+import com.worldfirst.fxorder.metrics.OrderMetrics;
+import com.worldfirst.fxorder.pipeline.OrderEventHandler;
+import com.worldfirst.fxorder.pipeline.OrderIngestionPipeline;
+import com.worldfirst.fxorder.replication.OrderReplication;
+
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Class OrderBookFXTradingService
+ * 
+ * It provides the trading service on top of a price-time priority
+ * {@link LimitOrderBook} per currency pair, selected by fxorder.engine=book
+ * 
+ * An incoming BID crosses every resting ASK priced at or below its limit, and
+ * an incoming ASK every resting BID priced at or above it, oldest order first
+ * within a price level. Orders can be partially filled and every fill produces
+ * an {@link ExecutionReport}.
+ * 
+ * matchingOrders() returns the fully filled orders and unMatchingOrders() the
+ * orders resting in the books with their open amount. Only the most recent
+ * fxorder.book.history-size filled orders and execution reports are kept per
+ * currency pair.
+ * 
+ * findOrders() and streamOrders() walk the resting and filled orders of the
+ * requested currency pair, or of every pair, in arrival sequence from the
+ * cursor: every book indexes its orders by sequence and is read a chunk at a
+ * time under its lock, the chunks of the books being merged on the sequence,
+ * so only a chunk per book is held and reading stops at the limit.
+ * 
+ * New, amended, fully filled and cancelled orders are pushed to the order feed
+ * as ADDED, AMENDED, MATCHED and CANCELLED events.
+ * 
+ * Each book numbers its orders on its own, so books of different currency
+ * pairs share no lock or counter and can be driven by their own writer thread.
+ * 
+ * @author PM
+ *
+ */
+
+@Service
+@ConditionalOnProperty(name = ServiceConstants.ENGINE_PROPERTY, havingValue = ServiceConstants.ENGINE_BOOK)
+public class OrderBookFXTradingService implements IFXTradingService {
+
+	@Autowired
+	private OrderValidator validator;
+
+	@Autowired
+	private OrderIdGenerator ids;
+
+	@Autowired
+	private OrderIngestionPipeline pipeline;
+
+	@Autowired
+	private OrderJournal journal;
+
+	@Autowired
+	private OrderReplication replication;
+
+	@Autowired
+	private OrderCluster cluster;
+
+	@Autowired
+	private OrderFeed feed;
+
+	@Autowired
+	private OrderExpiry expiry;
+
+	@Autowired
+	private CurrencyPairRegistry pairs;
+
+	@Autowired
+	private OrderMetrics metrics;
+
+	private Timer saveLatency;
+
+	private Timer deleteLatency;
+
+	private Timer amendLatency;
+
+	private Timer matchingLatency;
+
+	private Timer unMatchingLatency;
+
+	/** The orders failing validation. */
+	private AtomicLong rejectedOrders;
+
+	/** Saves and cancels the batches of orders. */
+	private OrderBatches batches;
+
+	@Value("${fxorder.book.history-size:100000}")
+	private int historySize;
+
+	/** The books per currency pair. */
+	private final ConcurrentHashMap<CurrencyPair, PairBook> books = new ConcurrentHashMap<CurrencyPair, PairBook>();
+
+	/** The books by currency pair id, grown on demand, read on the order path. */
+	private volatile PairBook[] booksByPairId = new PairBook[0];
+
+	/** The most orders read from a book under its lock at a time. */
+	private static final int CHUNK_SIZE = 256;
+
+	/** The most orders of a book scanned under its lock at a time. */
+	private static final int SCAN_LIMIT = 4096;
+
+	/**
+	 * Recovers the books from the journal and hands them over to the ingestion
+	 * pipeline. The snapshots hold the resting orders with their open amount,
+	 * the filled orders and execution reports are not restored. The books are
+	 * replicated too, restricted in a cluster to the currency pairs this node
+	 * serves, and orders only expire on the replication leader.
+	 */
+	@PostConstruct
+	public void init() {
+		saveLatency = metrics.operation("saveOrder");
+		deleteLatency = metrics.operation("deleteOrder");
+		amendLatency = metrics.operation("amendOrder");
+		matchingLatency = metrics.operation("matchingOrders");
+		unMatchingLatency = metrics.operation("unMatchingOrders");
+		rejectedOrders = metrics.counter("fxorder.orders.rejected", "Orders failing validation");
+		batches = new OrderBatches(validator, ids, pipeline, rejectedOrders, metrics.operation("saveOrders"),
+				metrics.operation("deleteOrders"), metrics.operation("cancelLevel"));
+		metrics.gauge("fxorder.book.depth", "Resting orders per currency pair", "pair", pairs.symbols(),
+				this::restingCountsByPair);
+		metrics.gauge("fxorder.matched.orders", "Filled orders kept in the history", this::matchingOrdersCount);
+		metrics.gauge("fxorder.unmatched.orders", "Orders resting in the books", this::unMatchingOrdersCount);
+		metrics.gauge("fxorder.indexed.orders", "Orders in the order id index of the books",
+				this::unMatchingOrdersCount);
+
+		OrderEventHandler handler = new OrderEventHandler() {
+
+			@Override
+			public boolean onAdd(OrderData order) {
+				return book(order.getPair()).submit(order);
+			}
+
+			@Override
+			public boolean onCancel(long orderId) {
+				PairBook book = bookOf(orderId);
+				return null != book && book.cancel(orderId);
+			}
+
+			@Override
+			public boolean onAmend(long orderId, long pricePips, long amount) {
+				PairBook book = bookOf(orderId);
+				return null != book && book.amend(orderId, pricePips, amount);
+			}
+
+			@Override
+			public int shardOf(long orderId) {
+				PairBook book = bookOf(orderId);
+				return null == book ? -1 : book.pair.getId();
+			}
+		};
+
+		OrderEventHandler replicated = replication.open(journal.open(handler, this::restingOrdersBySequence),
+				this::restingOrdersBySequence);
+		pipeline.start(cluster.open(replicated, this::restingOrdersOf));
+		replication.whenLeading(() -> expiry.start(pipeline::cancelAll));
+	}
+
+	/**
+	 * OrderBookFXTradingService.saveOrder(String, BigDecimal, OrderType, long)
+	 * 
+	 * @throws InvalidInputException,
+	 *             ServiceException
+	 */
+	@Override
+	public boolean saveOrder(String currency, BigDecimal price, OrderType orderType, long amount)
+			throws InvalidInputException, ServiceException {
+		return saveOrder(currency, price, orderType, amount, null, null);
+	}
+
+	/**
+	 * OrderBookFXTradingService.saveOrder(String, BigDecimal, OrderType, long, TimeInForce, Long)
+	 * 
+	 * @throws InvalidInputException,
+	 *             ServiceException
+	 */
+	@Override
+	public boolean saveOrder(String currency, BigDecimal price, OrderType orderType, long amount,
+			TimeInForce timeInForce, Long expireTime) throws InvalidInputException, ServiceException {
+
+		long start = System.nanoTime();
+		try {
+			CurrencyPair pair = validator.validate(currency, price, orderType, amount);
+			TimeInForce terms = null == timeInForce ? TimeInForce.GTC : timeInForce;
+			long orderDate = System.currentTimeMillis();
+			long expiresAt = validator.validateExpiry(terms, expireTime, orderDate);
+
+			try {
+
+				OrderData order = new OrderData(ids.nextId(), pair, pair.toPips(price), amount, orderType, orderDate);
+				order.setTimeInForce(terms);
+				order.setExpireTime(expiresAt);
+
+				return pipeline.add(order);
+
+			} catch (Exception e) {
+				String errMsg = "Service Exception! "+e.getMessage();
+				throw new ServiceException(errMsg);
+			}
+		} catch (InvalidInputException ei) {
+			rejectedOrders.incrementAndGet();
+			throw ei;
+		} finally {
+			saveLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	/**
+	 * OrderBookFXTradingService.saveOrder(CurrencyPair, long, OrderType, long)
+	 * 
+	 * @throws InvalidInputException,
+	 *             ServiceException
+	 */
+	@Override
+	public long saveOrder(CurrencyPair pair, long pricePips, OrderType orderType, long amount)
+			throws InvalidInputException, ServiceException {
+
+		long start = System.nanoTime();
+		try {
+			validator.validate(pair, pricePips, orderType, amount);
+
+			try {
+
+				OrderData order = new OrderData(ids.nextId(), pair, pricePips, amount, orderType, System.currentTimeMillis());
+
+				pipeline.add(order);
+
+				return order.getId();
+
+			} catch (Exception e) {
+				String errMsg = "Service Exception! "+e.getMessage();
+				throw new ServiceException(errMsg);
+			}
+		} catch (InvalidInputException ei) {
+			rejectedOrders.incrementAndGet();
+			throw ei;
+		} finally {
+			saveLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	/**
+	 * OrderBookFXTradingService.saveOrders(List)
+	 * 
+	 * @throws InvalidInputException,
+	 *             ServiceException
+	 */
+	@Override
+	public List<BatchResult> saveOrders(List<OrderDTO> orders) throws InvalidInputException, ServiceException {
+		return batches.save(orders);
+	}
+
+	/**
+	 * OrderBookFXTradingService.deleteOrders(List)
+	 * 
+	 * @throws InvalidInputException,
+	 *             ServiceException
+	 */
+	@Override
+	public List<BatchResult> deleteOrders(List<String> ids) throws InvalidInputException, ServiceException {
+		return batches.cancel(ids);
+	}
+
+	/**
+	 * OrderBookFXTradingService.amendOrder(String, BigDecimal, Long)
+	 * 
+	 * The amendment goes through the ingestion pipeline like a cancellation,
+	 * so it is journaled once applied and an order expiring meanwhile is
+	 * reported unknown.
+	 * 
+	 * @throws InvalidInputException,
+	 *             ServiceException
+	 */
+	@Override
+	public boolean amendOrder(String id, BigDecimal price, Long amount)
+			throws InvalidInputException, ServiceException {
+
+		long start = System.nanoTime();
+		try {
+			long orderId = OrderIdGenerator.parse(null == id ? null : id.trim());
+			PairBook book = bookOf(orderId);
+			CurrencyPair pair = null == book ? null : book.pair;
+			if (null == pair) {
+				throw new InvalidInputException(RejectReason.UNKNOWN_ORDER,
+						RejectReason.UNKNOWN_ORDER.message(null, orderId));
+			}
+			long pricePips = validator.validateAmendment(pair, price, amount);
+
+			boolean amended;
+			try {
+				amended = pipeline.amend(orderId, pricePips, null == amount ? 0 : amount);
+			} catch (Exception e) {
+				String errMsg = "Service Exception! "+e.getMessage();
+				throw new ServiceException(errMsg);
+			}
+
+			if (!amended) {
+				throw new InvalidInputException(RejectReason.UNKNOWN_ORDER,
+						RejectReason.UNKNOWN_ORDER.message(null, orderId));
+			}
+			return true;
+		} finally {
+			amendLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	/**
+	 * OrderBookFXTradingService.cancelLevel(String, String, BigDecimal)
+	 * 
+	 * @throws InvalidInputException,
+	 *             ServiceException
+	 */
+	@Override
+	public List<String> cancelLevel(String currency, String side, BigDecimal price)
+			throws InvalidInputException, ServiceException {
+		return batches.cancelLevel(currency, side, price, this::levelOrders);
+	}
+
+	/**
+	 * OrderBookFXTradingService.allOrders()
+	 * 
+	 * @throws InvalidInputException,
+	 *             ServiceException
+	 */
+	@Override
+	public List<OrderData> allOrders() throws InvalidInputException, ServiceException {
+		return unMatchingOrders();
+	}
+
+	/**
+	 * OrderBookFXTradingService.deleteOrder(String)
+	 * 
+	 * @throws InvalidInputException,
+	 *             ServiceException
+	 */
+	@Override
+	public boolean deleteOrder(String id) throws InvalidInputException, ServiceException {
+		return deleteOrder(OrderIdGenerator.parse(null == id ? null : id.trim()));
+	}
+
+	/**
+	 * OrderBookFXTradingService.deleteOrder(long)
+	 * 
+	 * @throws InvalidInputException,
+	 *             ServiceException
+	 */
+	@Override
+	public boolean deleteOrder(long id) throws InvalidInputException, ServiceException {
+
+		long start = System.nanoTime();
+		try {
+			boolean cancelled;
+			try {
+				cancelled = pipeline.cancel(id);
+			} catch (Exception e) {
+				String errMsg = "Service Exception! "+e.getMessage();
+				throw new ServiceException(errMsg);
+			}
+
+			if (!cancelled) {
+				throw new InvalidInputException(RejectReason.UNKNOWN_ORDER, RejectReason.UNKNOWN_ORDER.message(null, id));
+			}
+			return true;
+		} finally {
+			deleteLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	/**
+	 * OrderBookFXTradingService.matchingOrders()
+	 * 
+	 * @throws InvalidInputException,
+	 *             ServiceException
+	 */
+	@Override
+	public List<OrderData> matchingOrders() throws InvalidInputException, ServiceException {
+
+		long start = System.nanoTime();
+		try {
+			List<OrderData> orders = new ArrayList<OrderData>();
+			for (PairBook book : books.values()) {
+				book.filledOrders(orders);
+			}
+			return orders;
+		} finally {
+			matchingLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	/**
+	 * OrderBookFXTradingService.unMatchingOrders()
+	 * 
+	 * @throws InvalidInputException,
+	 *             ServiceException
+	 */
+	@Override
+	public List<OrderData> unMatchingOrders() throws InvalidInputException, ServiceException {
+
+		long start = System.nanoTime();
+		try {
+			List<OrderData> orders = new ArrayList<OrderData>();
+			for (PairBook book : books.values()) {
+				book.restingOrders(orders);
+			}
+			return orders;
+		} finally {
+			unMatchingLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	/**
+	 * OrderBookFXTradingService.matchingOrdersCount()
+	 * 
+	 * @throws InvalidInputException,
+	 *             ServiceException
+	 */
+	@Override
+	public long matchingOrdersCount() throws InvalidInputException, ServiceException {
+		long count = 0;
+		for (PairBook book : books.values()) {
+			count += book.filledCount();
+		}
+		return count;
+	}
+
+	/**
+	 * OrderBookFXTradingService.unMatchingOrdersCount()
+	 * 
+	 * @throws InvalidInputException,
+	 *             ServiceException
+	 */
+	@Override
+	public long unMatchingOrdersCount() throws InvalidInputException, ServiceException {
+		long count = 0;
+		for (PairBook book : books.values()) {
+			count += book.restingCount();
+		}
+		return count;
+	}
+
+	/**
+	 * OrderBookFXTradingService.matchingOrdersSnapshot()
+	 * 
+	 * @throws InvalidInputException,
+	 *             ServiceException
+	 */
+	@Override
+	public OrderPage matchingOrdersSnapshot() throws InvalidInputException, ServiceException {
+
+		long start = System.nanoTime();
+		try {
+			List<OrderData> orders = new ArrayList<OrderData>();
+			long snapshot = 0;
+			for (PairBook book : books.values()) {
+				snapshot += book.filledOrders(orders);
+			}
+			return new OrderPage(orders, null, snapshot);
+		} finally {
+			matchingLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	/**
+	 * OrderBookFXTradingService.unMatchingOrdersSnapshot()
+	 * 
+	 * @throws InvalidInputException,
+	 *             ServiceException
+	 */
+	@Override
+	public OrderPage unMatchingOrdersSnapshot() throws InvalidInputException, ServiceException {
+
+		long start = System.nanoTime();
+		try {
+			List<OrderData> orders = new ArrayList<OrderData>();
+			long snapshot = 0;
+			for (PairBook book : books.values()) {
+				snapshot += book.restingOrders(orders);
+			}
+			return new OrderPage(orders, null, snapshot);
+		} finally {
+			unMatchingLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	/**
+	 * OrderBookFXTradingService.orderCounts()
+	 * 
+	 * @throws InvalidInputException,
+	 *             ServiceException
+	 */
+	@Override
+	public OrderCounts orderCounts() throws InvalidInputException, ServiceException {
+		long[] counts = new long[2];
+		long snapshot = 0;
+		for (PairBook book : books.values()) {
+			snapshot += book.counts(counts);
+		}
+		return new OrderCounts(counts[0], counts[1], snapshot);
+	}
+
+	/**
+	 * OrderBookFXTradingService.executionReports()
+	 * 
+	 * @throws InvalidInputException,
+	 *             ServiceException
+	 */
+	@Override
+	public List<ExecutionReport> executionReports() throws InvalidInputException, ServiceException {
+		List<ExecutionReport> reports = new ArrayList<ExecutionReport>();
+		for (PairBook book : books.values()) {
+			book.executionReports(reports);
+		}
+		return reports;
+	}
+
+	/**
+	 * OrderBookFXTradingService.findOrders(OrderQueryDTO)
+	 * 
+	 * @throws InvalidInputException,
+	 *             ServiceException
+	 */
+	@Override
+	public OrderPage findOrders(OrderQueryDTO query) throws InvalidInputException, ServiceException {
+
+		OrderQuery orderQuery = validator.validateQuery(query, false);
+
+		try {
+			// One order past the page tells whether there is a next one
+			BookOrders orders = new BookOrders(orderQuery, orderQuery.getLimit() + 1);
+			List<OrderData> page = new ArrayList<OrderData>(Math.min(orderQuery.getLimit(), CHUNK_SIZE));
+			while (page.size() < orderQuery.getLimit() && orders.hasNext()) {
+				page.add(orders.next());
+			}
+
+			String nextCursor = null;
+			if (!page.isEmpty() && orders.hasNext()) {
+				nextCursor = Long.toString(page.get(page.size() - 1).getSequence());
+			}
+			return new OrderPage(page, nextCursor, orders.snapshot());
+		} catch (Exception e) {
+			String errMsg = "Service Exception! "+e.getMessage();
+			throw new ServiceException(errMsg);
+		}
+	}
+
+	/**
+	 * OrderBookFXTradingService.streamOrders(OrderQueryDTO)
+	 * 
+	 * @throws InvalidInputException,
+	 *             ServiceException
+	 */
+	@Override
+	public Iterator<OrderData> streamOrders(OrderQueryDTO query) throws InvalidInputException, ServiceException {
+
+		OrderQuery orderQuery = validator.validateQuery(query, true);
+
+		try {
+			return new BookOrders(orderQuery, orderQuery.getLimit());
+		} catch (Exception e) {
+			String errMsg = "Service Exception! "+e.getMessage();
+			throw new ServiceException(errMsg);
+		}
+	}
+
+	/**
+	 * OrderBookFXTradingService.depth(String, Integer)
+	 * 
+	 * @throws InvalidInputException,
+	 *             ServiceException
+	 */
+	@Override
+	public BookDepth depth(String currency, Integer levels) throws InvalidInputException, ServiceException {
+
+		CurrencyPair pair = validator.validateDepthPair(currency);
+		int depth = validator.validateLevels(levels);
+
+		PairBook book = books.get(pair);
+		if (null == book) {
+			return new BookDepth(pair, Collections.<DepthLevel>emptyList(), Collections.<DepthLevel>emptyList());
+		}
+		return book.depth(depth);
+	}
+
+	/**
+	 * OrderBookFXTradingService.stats()
+	 * 
+	 * @throws InvalidInputException,
+	 *             ServiceException
+	 */
+	@Override
+	public Map<String, PairStats> stats() throws InvalidInputException, ServiceException {
+		Map<String, PairStats> stats = new TreeMap<String, PairStats>();
+		books.forEach((pair, book) -> stats.put(pair.getSymbol(), book.stats()));
+		return stats;
+	}
+
+	// Internal helpers
+
+	/**
+	 * @return the book of the pair, created with its first order
+	 */
+	private PairBook book(CurrencyPair pair) {
+		int pairId = pair.getId();
+		PairBook[] current = booksByPairId;
+		if (pairId < current.length && null != current[pairId]) {
+			return current[pairId];
+		}
+		synchronized (books) {
+			PairBook book = books.computeIfAbsent(pair, PairBook::new);
+			current = booksByPairId;
+			current = pairId < current.length ? current.clone() : Arrays.copyOf(current, pairId + 1);
+			current[pairId] = book;
+			booksByPairId = current;
+			return book;
+		}
+	}
+
+	/**
+	 * Finds the book an order rests in through the order index of every book,
+	 * as there are few currency pairs.
+	 * 
+	 * @return the book, or null if the order is not resting
+	 */
+	private PairBook bookOf(long orderId) {
+		for (PairBook book : booksByPairId) {
+			if (null != book && book.contains(orderId)) {
+				return book;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return the ids of the orders resting at the price on the side of the
+	 *         book of the pair, none if the pair has no book
+	 */
+	private long[] levelOrders(CurrencyPair pair, OrderType side, long pricePips) {
+		PairBook book = books.get(pair);
+		return null == book ? new long[0] : book.levelOrders(side, pricePips);
+	}
+
+	/**
+	 * @return the number of resting orders of the book of every pair
+	 */
+	private Map<String, Long> restingCountsByPair() {
+		Map<String, Long> counts = new TreeMap<String, Long>();
+		books.forEach((pair, book) -> counts.put(pair.getSymbol(), (long) book.restingCount()));
+		return counts;
+	}
+
+	/**
+	 * @return the resting orders of every book in arrival sequence, so that
+	 *         they keep their time priority once resubmitted
+	 */
+	private List<OrderData> restingOrdersBySequence() {
+		List<OrderData> orders = unMatchingOrders();
+		Collections.sort(orders, Comparator.comparingLong(OrderData::getSequence));
+		return orders;
+	}
+
+	/**
+	 * @return the resting orders of the book of the pair in arrival sequence
+	 */
+	private List<OrderData> restingOrdersOf(CurrencyPair pair) {
+		List<OrderData> orders = new ArrayList<OrderData>();
+		PairBook book = books.get(pair);
+		if (null != book) {
+			book.restingOrders(orders);
+			Collections.sort(orders, Comparator.comparingLong(OrderData::getSequence));
+		}
+		return orders;
+	}
+
+	/**
+	 * The book of one currency pair along with its recent history. Every access
+	 * is serialised on the instance, and every change bumps the version the
+	 * reads return, so that a response tells which state of the book it shows.
+	 */
+	private final class PairBook implements ExecutionListener {
+
+		private final CurrencyPair pair;
+
+		private final LimitOrderBook book;
+
+		/** The last arrival rank given. */
+		private long rank;
+
+		/** Bumped by every change. */
+		private long version;
+
+		private final ArrayDeque<ExecutionReport> executions = new ArrayDeque<ExecutionReport>();
+
+		private final ArrayDeque<OrderData> filled = new ArrayDeque<OrderData>();
+
+		/** The resting and filled orders by arrival sequence. */
+		private final SequenceIndex bySequence = new SequenceIndex(1024);
+
+		PairBook(CurrencyPair pair) {
+			this.pair = pair;
+			book = new LimitOrderBook(pair);
+		}
+
+		/**
+		 * @return false if the order was dropped, as an immediate order nothing
+		 *         could fill
+		 */
+		synchronized boolean submit(OrderData order) {
+			// Orders restored from a snapshot keep their sequence
+			if (0 == order.getSequence()) {
+				order.setSequence(pair.sequence(++rank));
+			} else {
+				rank = Math.max(rank, CurrencyPair.rankOf(order.getSequence()));
+			}
+			version++;
+			bySequence.add(order);
+			feed.onAdded(order);
+			long amount = order.getAmount();
+			long remaining = book.submit(order, this);
+			if (0 == remaining) {
+				return true;
+			}
+
+			// The rest of an immediate order is dropped rather than resting
+			if (order.getTimeInForce().isImmediate()) {
+				bySequence.remove(order.getSequence());
+				feed.onCancelled(order);
+				return remaining != amount;
+			}
+			if (0 != order.getExpireTime()) {
+				expiry.schedule(order.getId(), order.getExpireTime());
+			}
+			return true;
+		}
+
+		synchronized boolean cancel(long id) {
+			OrderData order = book.cancel(id);
+			if (null == order) {
+				return false;
+			}
+			version++;
+			bySequence.remove(order.getSequence());
+			if (0 != order.getExpireTime()) {
+				expiry.cancel(id);
+			}
+			feed.onCancelled(order);
+			return true;
+		}
+
+		/**
+		 * Reduces the open amount of a resting order at the same price in
+		 * place, otherwise cancels and submits it again with a new sequence, so
+		 * it may trade at its new price. Its expiry is left scheduled.
+		 * 
+		 * @return false if the order is not resting in the book
+		 */
+		synchronized boolean amend(long id, long pricePips, long amount) {
+			OrderData order = book.resting(id);
+			if (null == order) {
+				return false;
+			}
+			long price = 0 == pricePips ? order.getPricePips() : pricePips;
+			long size = 0 == amount ? order.getAmount() : amount;
+			if (price == order.getPricePips() && size == order.getAmount()) {
+				return true;
+			}
+			version++;
+
+			if (price == order.getPricePips() && size < order.getAmount()) {
+				book.reduce(id, size);
+				order.setAmount(size);
+				feed.onAmended(order);
+				return true;
+			}
+
+			book.cancel(id);
+			bySequence.remove(order.getSequence());
+			OrderData amended = new OrderData(id, pair, price, size, order.getOrderType(), order.getOrderDate());
+			amended.setTimeInForce(order.getTimeInForce());
+			amended.setExpireTime(order.getExpireTime());
+			amended.setSequence(pair.sequence(++rank));
+			bySequence.add(amended);
+			feed.onAmended(amended);
+			book.submit(amended, this);
+			return true;
+		}
+
+		/**
+		 * @return the version of the resting orders appended
+		 */
+		synchronized long restingOrders(List<OrderData> into) {
+			book.restingOrders(into);
+			return version;
+		}
+
+		/**
+		 * @return the version of the filled orders appended
+		 */
+		synchronized long filledOrders(List<OrderData> into) {
+			into.addAll(filled);
+			return version;
+		}
+
+		/**
+		 * Adds the number of filled then resting orders to the counts.
+		 * 
+		 * @return the version counted
+		 */
+		synchronized long counts(long[] counts) {
+			counts[0] += filled.size();
+			counts[1] += book.size();
+			return version;
+		}
+
+		synchronized int filledCount() {
+			return filled.size();
+		}
+
+		synchronized int restingCount() {
+			return book.size();
+		}
+
+		synchronized boolean contains(long id) {
+			return book.contains(id);
+		}
+
+		synchronized BookDepth depth(int levels) {
+			return book.depth(levels);
+		}
+
+		synchronized long[] levelOrders(OrderType side, long pricePips) {
+			return book.levelOrders(side, pricePips);
+		}
+
+		synchronized PairStats stats() {
+			return book.stats(filled.size());
+		}
+
+		synchronized void executionReports(List<ExecutionReport> into) {
+			into.addAll(executions);
+		}
+
+		@Override
+		public void onExecution(ExecutionReport report) {
+			if (executions.size() == historySize) {
+				executions.pollFirst();
+			}
+			executions.addLast(report);
+		}
+
+		@Override
+		public void onOrderFilled(OrderData order) {
+			if (0 != order.getExpireTime()) {
+				expiry.cancel(order.getId());
+			}
+			feed.onMatched(order);
+			if (filled.size() == historySize) {
+				bySequence.remove(filled.pollFirst().getSequence());
+			}
+			filled.addLast(order);
+		}
+	}
+
+	/**
+	 * The orders of the books passing the query filters after its cursor, in
+	 * arrival sequence, up to a limit. Every book is read a chunk at a time
+	 * and the next order of each is picked by sequence.
+	 */
+	private final class BookOrders implements Iterator<OrderData> {
+
+		private final PriorityQueue<BookCursor> heads;
+
+		/** The sum of the versions of the books when first read. */
+		private long snapshot;
+
+		private int remaining;
+
+		BookOrders(OrderQuery query, int limit) {
+			List<PairBook> selected = new ArrayList<PairBook>();
+			if (null == query.getPair()) {
+				selected.addAll(books.values());
+			} else if (books.containsKey(query.getPair())) {
+				selected.add(books.get(query.getPair()));
+			}
+
+			remaining = limit;
+			heads = new PriorityQueue<BookCursor>(Math.max(1, selected.size()),
+					Comparator.comparingLong(BookCursor::sequence));
+			int chunk = Math.max(1, Math.min(CHUNK_SIZE, limit));
+			for (PairBook book : selected) {
+				BookCursor cursor = new BookCursor(book, query, chunk);
+				snapshot += cursor.read();
+				if (cursor.hasNext()) {
+					heads.add(cursor);
+				}
+			}
+		}
+
+		long snapshot() {
+			return snapshot;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return remaining > 0 && !heads.isEmpty();
+		}
+
+		@Override
+		public OrderData next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			BookCursor head = heads.poll();
+			OrderData order = head.next();
+			if (head.hasNext()) {
+				heads.add(head);
+			}
+			remaining--;
+			return order;
+		}
+	}
+
+	/**
+	 * The orders of one book passing the query filters, read a chunk at a time
+	 * from its sequence index under its lock, resting orders carrying their
+	 * open amount.
+	 */
+	private final class BookCursor {
+
+		private final PairBook book;
+
+		private final OrderQuery query;
+
+		private final int chunk;
+
+		private final ArrayDeque<OrderData> orders = new ArrayDeque<OrderData>();
+
+		/** The last sequence scanned. */
+		private long after;
+
+		private boolean exhausted;
+
+		BookCursor(PairBook book, OrderQuery query, int chunk) {
+			this.book = book;
+			this.query = query;
+			this.chunk = chunk;
+			this.after = query.getAfterSequence();
+		}
+
+		boolean hasNext() {
+			while (orders.isEmpty() && !exhausted) {
+				read();
+			}
+			return !orders.isEmpty();
+		}
+
+		OrderData next() {
+			return orders.pollFirst();
+		}
+
+		/**
+		 * @return the sequence of the next order, which must be read already
+		 */
+		long sequence() {
+			return orders.peekFirst().getSequence();
+		}
+
+		/**
+		 * Reads the orders following the last one scanned, up to a chunk of
+		 * them and at most SCAN_LIMIT scanned.
+		 * 
+		 * @return the version of the book read
+		 */
+		long read() {
+			boolean withResting = OrderQuery.Status.MATCHED != query.getStatus();
+			boolean withFilled = OrderQuery.Status.UNMATCHED != query.getStatus();
+			synchronized (book) {
+				SequenceIndex index = book.bySequence;
+				int slot = index.higher(after);
+				int scanned = 0;
+				for (; orders.size() < chunk && scanned < SCAN_LIMIT && slot < index.end(); slot++) {
+					OrderData order = index.get(slot);
+					scanned++;
+					after = index.sequence(slot);
+					if (null == order) {
+						continue;
+					}
+					OrderData resting = book.book.resting(order.getId());
+					OrderData read = null != resting ? (withResting ? resting : null) : (withFilled ? order : null);
+					if (null != read && query.matches(read)) {
+						orders.addLast(read);
+					}
+				}
+				exhausted = slot == index.end();
+				return book.version;
+			}
+		}
+	}
+
+}
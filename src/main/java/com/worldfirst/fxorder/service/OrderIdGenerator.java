@@ -0,0 +1,62 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.service;
+
+/**
+ * Interface OrderIdGenerator
+ * 
+ * It gives every new order its id, a positive long increasing with time on a
+ * node, so ids are cheap to make, compare and hash and can be used as
+ * primitive map keys. The REST API writes them as decimal strings.
+ * 
+ * The implementation is selected with the fxorder.id.generator property,
+ * snowflake (default) or sequence.
+ * 
+ * @author PM
+ *
+ */
+
+public interface OrderIdGenerator {
+
+	/** 2018-01-01T00:00:00Z, the start of the id clock. */
+	long EPOCH_MILLIS = 1514764800000L;
+
+	/** The highest fxorder.node-id. */
+	int MAX_NODE_ID = 1023;
+
+	/**
+	 * @return a new order id, greater than every id given before by this node
+	 */
+	long nextId();
+
+	/**
+	 * @return the order id written as a decimal string, or 0 if it is not a
+	 *         valid order id
+	 */
+	static long parse(String id) {
+		if (null == id || id.isEmpty() || id.length() > 19) {
+			return 0;
+		}
+		long value = 0;
+		for (int i = 0; i < id.length(); i++) {
+			char digit = id.charAt(i);
+			if (digit < '0' || digit > '9') {
+				return 0;
+			}
+			value = value * 10 + (digit - '0');
+			if (value < 0) {
+				return 0;
+			}
+		}
+		return value;
+	}
+
+}
@@ -0,0 +1,490 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.service;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Locale;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.worldfirst.fxorder.domain.CurrencyPair;
+import com.worldfirst.fxorder.domain.OrderQuery;
+import com.worldfirst.fxorder.domain.OrderType;
+import com.worldfirst.fxorder.domain.RejectReason;
+import com.worldfirst.fxorder.domain.TimeInForce;
+import com.worldfirst.fxorder.dto.OrderDTO;
+import com.worldfirst.fxorder.dto.OrderQueryDTO;
+import com.worldfirst.fxorder.exception.InvalidInputException;
+
+/**
+ * Class OrderValidator
+ * 
+ * It validates the fields of a new order and the parameters of the order
+ * listing requests, it is shared by all the trading service implementations.
+ * 
+ * @author PM
+ *
+ */
+
+@Component
+public class OrderValidator {
+
+	/** The highest number of pips a price can be made of. */
+	private static final BigDecimal MAX_PRICE_PIPS = BigDecimal.valueOf(Long.MAX_VALUE);
+
+	@Autowired
+	private CurrencyPairRegistry pairs;
+
+	@Value("${fxorder.query.default-limit:100}")
+	private int defaultLimit;
+
+	@Value("${fxorder.query.max-limit:1000}")
+	private int maxLimit;
+
+	@Value("${fxorder.depth.default-levels:10}")
+	private int defaultLevels;
+
+	@Value("${fxorder.depth.max-levels:100}")
+	private int maxLevels;
+
+	@Value("${fxorder.batch.max-size:10000}")
+	private int maxBatchSize;
+
+	@Value("${fxorder.expiry.day-end:17:00}")
+	private String dayEnd;
+
+	@Value("${fxorder.expiry.zone:America/New_York}")
+	private String zone;
+
+	/** The end of the trading day, when DAY orders expire. */
+	private LocalTime dayEndTime;
+
+	private ZoneId dayEndZone;
+
+	@PostConstruct
+	public void init() {
+		dayEndTime = LocalTime.parse(dayEnd.trim());
+		dayEndZone = ZoneId.of(zone.trim());
+	}
+
+	/**
+	 * OrderValidator.validate(String, BigDecimal, OrderType, long)
+	 * 
+	 * @return the interned currency pair of the order
+	 * @throws InvalidInputException
+	 */
+	public CurrencyPair validate(String currency, BigDecimal price, OrderType orderType, long amount)
+			throws InvalidInputException {
+
+		CurrencyPair pair = pairs.lookup(currency);
+		RejectReason reason = check(pair, price, orderType, amount);
+
+		if (null != reason) {
+			throw new InvalidInputException(reason,
+					reason.message(pair, RejectReason.INVALID_AMOUNT == reason ? Long.valueOf(amount) : price));
+		}
+
+		return pair;
+	}
+
+	/**
+	 * OrderValidator.validate(CurrencyPair, long, OrderType, long)
+	 *
+	 * Validates an order decoded from the binary order entry protocol, its price
+	 * being already a number of pips of the pair.
+	 *
+	 * @throws InvalidInputException
+	 */
+	public void validate(CurrencyPair pair, long pricePips, OrderType orderType, long amount)
+			throws InvalidInputException {
+
+		RejectReason reason = check(pair, pricePips, orderType, amount);
+
+		if (null != reason) {
+			Object price = null == pair ? null : pair.toPrice(pricePips);
+			throw new InvalidInputException(reason,
+					reason.message(pair, RejectReason.INVALID_AMOUNT == reason ? Long.valueOf(amount) : price));
+		}
+	}
+
+	/**
+	 * OrderValidator.check(CurrencyPair, BigDecimal, OrderType, long)
+	 * 
+	 * Validates an order without throwing, the first invalid field found
+	 * giving the reason.
+	 * 
+	 * @param pair
+	 *            the currency pair looked up, null if unknown
+	 * @return the reason the order is rejected, null if it is valid
+	 */
+	public RejectReason check(CurrencyPair pair, BigDecimal price, OrderType orderType, long amount) {
+
+		if (null == pair) {
+			return RejectReason.INVALID_CURRENCY_PAIR;
+		}
+
+		if (null == orderType) {
+			return RejectReason.INVALID_ORDER_TYPE;
+		}
+
+		if (amount < 1) {
+			return RejectReason.INVALID_AMOUNT;
+		}
+
+		return checkPrice(pair, price);
+	}
+
+	/**
+	 * OrderValidator.check(CurrencyPair, long, OrderType, long)
+	 * 
+	 * Validates an order priced in pips without throwing.
+	 * 
+	 * @return the reason the order is rejected, null if it is valid
+	 */
+	public RejectReason check(CurrencyPair pair, long pricePips, OrderType orderType, long amount) {
+
+		if (null == pair) {
+			return RejectReason.INVALID_CURRENCY_PAIR;
+		}
+
+		if (null == orderType) {
+			return RejectReason.INVALID_ORDER_TYPE;
+		}
+
+		if (amount < 1) {
+			return RejectReason.INVALID_AMOUNT;
+		}
+
+		if (pricePips <= 0) {
+			return RejectReason.INVALID_PRICE;
+		}
+
+		return pair.isOnTick(pricePips) ? null : RejectReason.PRICE_OFF_TICK;
+	}
+
+	/**
+	 * OrderValidator.pair(String)
+	 * 
+	 * @return the interned currency pair, null if it is not traded
+	 */
+	public CurrencyPair pair(String currency) {
+		return pairs.lookup(currency);
+	}
+
+	/**
+	 * OrderValidator.message(RejectReason, CurrencyPair, OrderDTO)
+	 * 
+	 * @return the message the rejection of the order is reported with, quoting
+	 *         the field at fault
+	 */
+	public String message(RejectReason reason, CurrencyPair pair, OrderDTO order) {
+		switch (reason.getField()) {
+		case "amount":
+			return reason.message(pair, order.getAmount());
+		case "expireTime":
+			return reason.message(pair, order.getExpireTime());
+		default:
+			return reason.message(pair, order.getPrice());
+		}
+	}
+
+	/**
+	 * OrderValidator.validateExpiry(TimeInForce, Long, long)
+	 * 
+	 * A GTD order needs an expire time after its order date, the other orders
+	 * must not have one. A DAY order expires at the next fxorder.expiry.day-end
+	 * in fxorder.expiry.zone following its order date.
+	 * 
+	 * @return the expire time of the order, 0 if it never expires
+	 * @throws InvalidInputException
+	 */
+	public long validateExpiry(TimeInForce timeInForce, Long expireTime, long orderDate)
+			throws InvalidInputException {
+
+		RejectReason reason = checkExpiry(timeInForce, expireTime, orderDate);
+
+		if (null != reason) {
+			throw new InvalidInputException(reason, reason.message(null, expireTime));
+		}
+
+		return expiryOf(timeInForce, expireTime, orderDate);
+	}
+
+	/**
+	 * OrderValidator.checkExpiry(TimeInForce, Long, long)
+	 * 
+	 * @return the reason the expire time of the order is rejected, null if it
+	 *         is valid
+	 */
+	public RejectReason checkExpiry(TimeInForce timeInForce, Long expireTime, long orderDate) {
+
+		if (TimeInForce.GTD == timeInForce) {
+			return null == expireTime || expireTime <= orderDate ? RejectReason.INVALID_EXPIRE_TIME : null;
+		}
+
+		return null == expireTime ? null : RejectReason.EXPIRE_TIME_NOT_ALLOWED;
+	}
+
+	/**
+	 * OrderValidator.expiryOf(TimeInForce, Long, long)
+	 * 
+	 * @return the expire time of an order whose expiry is valid, 0 if it never
+	 *         expires
+	 */
+	public long expiryOf(TimeInForce timeInForce, Long expireTime, long orderDate) {
+
+		if (TimeInForce.GTD == timeInForce) {
+			return expireTime;
+		}
+
+		if (TimeInForce.DAY == timeInForce) {
+			ZonedDateTime entered = Instant.ofEpochMilli(orderDate).atZone(dayEndZone);
+			ZonedDateTime end = entered.toLocalDate().atTime(dayEndTime).atZone(dayEndZone);
+			if (!end.isAfter(entered)) {
+				end = end.plusDays(1);
+			}
+			return end.toInstant().toEpochMilli();
+		}
+
+		return 0;
+	}
+
+	/**
+	 * OrderValidator.validateBatch(List)
+	 * 
+	 * A batch holds from 1 up to fxorder.batch.max-size orders or order ids,
+	 * each one being validated on its own.
+	 * 
+	 * @throws InvalidInputException
+	 */
+	public void validateBatch(List<?> batch) throws InvalidInputException {
+
+		if (null == batch || batch.isEmpty() || batch.size() > maxBatchSize) {
+			throw new InvalidInputException(
+					"You have entered invalid batch size: " + (null == batch ? 0 : batch.size()));
+		}
+	}
+
+	/**
+	 * OrderValidator.validateQuery(OrderQueryDTO, boolean)
+	 * 
+	 * A page holds fxorder.query.default-limit orders unless a limit up to
+	 * fxorder.query.max-limit is given, a stream has no limit by default.
+	 * 
+	 * @return the query to run against the order store
+	 * @throws InvalidInputException
+	 */
+	public OrderQuery validateQuery(OrderQueryDTO query, boolean streaming) throws InvalidInputException {
+
+		OrderQuery.Status status = OrderQuery.Status.ALL;
+		if (!isBlank(query.getStatus())) {
+			try {
+				status = OrderQuery.Status.valueOf(query.getStatus().trim().toUpperCase(Locale.ROOT));
+			} catch (IllegalArgumentException e) {
+				throw new InvalidInputException("You have entered invalid order status: " + query.getStatus());
+			}
+		}
+
+		CurrencyPair pair = null;
+		if (!isBlank(query.getCurrency())) {
+			pair = pairs.lookup(query.getCurrency());
+			if (null == pair) {
+				throw new InvalidInputException("You have entered invalid currency pair!");
+			}
+		}
+
+		OrderType side = null;
+		if (!isBlank(query.getSide())) {
+			try {
+				side = OrderType.valueOf(query.getSide().trim().toUpperCase(Locale.ROOT));
+			} catch (IllegalArgumentException e) {
+				throw new InvalidInputException("You have entered invalid order type!");
+			}
+		}
+
+		BigDecimal minPrice = query.getMinPrice();
+		BigDecimal maxPrice = query.getMaxPrice();
+		if ((null != minPrice && minPrice.signum() < 0) || (null != maxPrice && maxPrice.signum() < 0)
+				|| (null != minPrice && null != maxPrice && minPrice.compareTo(maxPrice) > 0)) {
+			throw new InvalidInputException("You have entered invalid price range: " + minPrice + " - " + maxPrice);
+		}
+
+		long from = null == query.getFrom() ? Long.MIN_VALUE : query.getFrom();
+		long to = null == query.getTo() ? Long.MAX_VALUE : query.getTo();
+		if (from > to) {
+			throw new InvalidInputException("You have entered invalid time range: " + from + " - " + to);
+		}
+
+		long afterSequence = 0;
+		if (!isBlank(query.getCursor())) {
+			try {
+				afterSequence = Long.parseLong(query.getCursor().trim());
+			} catch (NumberFormatException e) {
+				afterSequence = -1;
+			}
+			if (afterSequence < 0) {
+				throw new InvalidInputException("You have entered invalid cursor: " + query.getCursor());
+			}
+		}
+
+		int limit = streaming ? Integer.MAX_VALUE : defaultLimit;
+		if (null != query.getLimit()) {
+			if (query.getLimit() < 1 || (!streaming && query.getLimit() > maxLimit)) {
+				throw new InvalidInputException("You have entered invalid limit range: " + query.getLimit());
+			}
+			limit = query.getLimit();
+		}
+
+		return new OrderQuery(status, pair, side, minPrice, maxPrice, from, to, afterSequence, limit);
+	}
+
+	/**
+	 * OrderValidator.validateDepthPair(String)
+	 * 
+	 * The pair is given in a URL path, so GBPUSD, GBP-USD and GBP_USD stand for
+	 * GBP/USD.
+	 * 
+	 * @return the currency pair
+	 * @throws InvalidInputException
+	 */
+	public CurrencyPair validateDepthPair(String currency) throws InvalidInputException {
+
+		CurrencyPair pair = null;
+		if (!isBlank(currency)) {
+			String symbol = currency.trim().replace('-', '/').replace('_', '/');
+			if (6 == symbol.length()) {
+				symbol = symbol.substring(0, 3) + "/" + symbol.substring(3);
+			}
+			pair = pairs.lookup(symbol);
+		}
+		if (null == pair) {
+			throw new InvalidInputException(RejectReason.INVALID_CURRENCY_PAIR,
+					RejectReason.INVALID_CURRENCY_PAIR.message(null, currency));
+		}
+		return pair;
+	}
+
+	/**
+	 * OrderValidator.validateLevels(Integer)
+	 * 
+	 * The depth holds fxorder.depth.default-levels price levels per side unless
+	 * a number up to fxorder.depth.max-levels is given.
+	 * 
+	 * @return the number of price levels per side
+	 * @throws InvalidInputException
+	 */
+	public int validateLevels(Integer levels) throws InvalidInputException {
+
+		if (null == levels) {
+			return defaultLevels;
+		}
+		if (levels < 1 || levels > maxLevels) {
+			throw new InvalidInputException("You have entered invalid levels range: " + levels);
+		}
+		return levels;
+	}
+
+	/**
+	 * OrderValidator.validateSide(String)
+	 * 
+	 * @return the order type, ASK or BID in any case
+	 * @throws InvalidInputException
+	 */
+	public OrderType validateSide(String side) throws InvalidInputException {
+
+		if (!isBlank(side)) {
+			try {
+				return OrderType.valueOf(side.trim().toUpperCase(Locale.ROOT));
+			} catch (IllegalArgumentException e) {
+				// Rejected below
+			}
+		}
+		throw new InvalidInputException(RejectReason.INVALID_ORDER_TYPE,
+				RejectReason.INVALID_ORDER_TYPE.message(null, side));
+	}
+
+	/**
+	 * OrderValidator.validateLevelPrice(CurrencyPair, BigDecimal)
+	 * 
+	 * @return the price of a level of the pair in pips, checked like the price
+	 *         of an order
+	 * @throws InvalidInputException
+	 */
+	public long validateLevelPrice(CurrencyPair pair, BigDecimal price) throws InvalidInputException {
+
+		RejectReason reason = checkPrice(pair, price);
+		if (null != reason) {
+			throw new InvalidInputException(reason, reason.message(pair, price));
+		}
+		return pair.toPips(price);
+	}
+
+	/**
+	 * OrderValidator.validateAmendment(CurrencyPair, BigDecimal, Long)
+	 * 
+	 * Either field may be null to keep it, but not both.
+	 * 
+	 * @return the new price of an order of the pair in pips, 0 if kept
+	 * @throws InvalidInputException
+	 */
+	public long validateAmendment(CurrencyPair pair, BigDecimal price, Long amount) throws InvalidInputException {
+
+		if (null == price && null == amount) {
+			throw new InvalidInputException("You have entered no price nor amount to amend!");
+		}
+
+		if (null != amount && amount < 1) {
+			throw new InvalidInputException(RejectReason.INVALID_AMOUNT,
+					RejectReason.INVALID_AMOUNT.message(pair, amount));
+		}
+
+		return null == price ? 0 : validateLevelPrice(pair, price);
+	}
+
+	// Internal helpers
+
+	private static boolean isBlank(String value) {
+		return null == value || value.trim().isEmpty();
+	}
+
+	/**
+	 * Checks the given price is positive, has no more decimals than the scale
+	 * of the currency pair, fits a long number of pips and is a multiple of the
+	 * tick size of the pair.
+	 * 
+	 * @return the reason the price is rejected, null if it is valid
+	 */
+	private static RejectReason checkPrice(CurrencyPair pair, BigDecimal value) {
+		if (null == value || value.signum() <= 0) {
+			return RejectReason.INVALID_PRICE;
+		}
+
+		if (value.stripTrailingZeros().scale() > pair.getScale()) {
+			return RejectReason.INVALID_PRICE_FORMAT;
+		}
+
+		if (value.movePointRight(pair.getScale()).compareTo(MAX_PRICE_PIPS) > 0) {
+			return RejectReason.INVALID_PRICE;
+		}
+
+		return pair.isOnTick(pair.toPips(value)) ? null : RejectReason.PRICE_OFF_TICK;
+	}
+
+}
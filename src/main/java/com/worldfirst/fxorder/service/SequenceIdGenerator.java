@@ -0,0 +1,66 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.worldfirst.fxorder.constants.ServiceConstants;
+
+/**
+ * Class SequenceIdGenerator
+ * 
+ * It makes order ids of fxorder.node-id in the top 10 bits followed by a
+ * counter, a single atomic increment per id. The counter starts from the
+ * milliseconds since 2018 at start up shifted by 12 bits, so ids given after a
+ * restart are above the ones journaled before it unless more than 4096 ids per
+ * millisecond were given on average.
+ * 
+ * Ids are ordered by time on a node only, not across nodes. It is selected by
+ * fxorder.id.generator=sequence
+ * 
+ * @author PM
+ *
+ */
+
+@Component
+@ConditionalOnProperty(name = ServiceConstants.ID_GENERATOR_PROPERTY, havingValue = ServiceConstants.ID_GENERATOR_SEQUENCE)
+public class SequenceIdGenerator implements OrderIdGenerator {
+
+	private static final int NODE_SHIFT = 53;
+
+	@Value("${fxorder.node-id:0}")
+	private int nodeId;
+
+	private final AtomicLong sequence = new AtomicLong();
+
+	private long node;
+
+	@PostConstruct
+	public void init() {
+		if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+			throw new IllegalStateException("Invalid fxorder.node-id, from 0 to " + MAX_NODE_ID + ": " + nodeId);
+		}
+		node = (long) nodeId << NODE_SHIFT;
+		sequence.set((System.currentTimeMillis() - EPOCH_MILLIS) << 12);
+	}
+
+	@Override
+	public long nextId() {
+		return node | sequence.incrementAndGet();
+	}
+
+}
@@ -0,0 +1,180 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.service;
+
+import java.util.Arrays;
+
+import com.worldfirst.fxorder.domain.OrderData;
+
+/**
+ * Class SequenceIndex
+ *
+ * The orders of a book by arrival sequence, in parallel arrays of primitive
+ * sequences and orders. As a book hands out increasing sequences an order is
+ * appended, and found again by a binary search over the sequences. A removed
+ * order leaves an empty slot behind, which is skipped by the reads and
+ * reclaimed once the slots run out, by moving the orders left to the front
+ * before the arrays are ever grown. Adding and removing orders thus allocates
+ * nothing in steady state.
+ *
+ * A slot is only valid until the next change, so a reader keeps the last
+ * sequence it read rather than a slot. It is not thread safe, the owner is
+ * expected to serialise the calls.
+ *
+ * @author PM
+ *
+ */
+final class SequenceIndex {
+
+	private long[] sequences;
+
+	/** The order of every slot, null once removed. */
+	private OrderData[] orders;
+
+	/** The first slot holding an order. */
+	private int start;
+
+	/** The slot after the last one used. */
+	private int end;
+
+	private int size;
+
+	/**
+	 * @param capacity
+	 *            the initial number of slots
+	 */
+	SequenceIndex(int capacity) {
+		sequences = new long[capacity];
+		orders = new OrderData[capacity];
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Adds the order by its sequence, replacing the order of the same
+	 * sequence.
+	 */
+	void add(OrderData order) {
+		long sequence = order.getSequence();
+		if (start == end || sequence > sequences[end - 1]) {
+			if (end == orders.length) {
+				makeRoom();
+			}
+			sequences[end] = sequence;
+			orders[end++] = order;
+			size++;
+			return;
+		}
+
+		// Only an order restored with an older sequence lands in between
+		int slot = higher(sequence - 1);
+		if (sequences[slot] == sequence) {
+			if (null == orders[slot]) {
+				size++;
+			}
+			orders[slot] = order;
+			return;
+		}
+		if (end == orders.length) {
+			makeRoom();
+			slot = higher(sequence - 1);
+		}
+		System.arraycopy(sequences, slot, sequences, slot + 1, end - slot);
+		System.arraycopy(orders, slot, orders, slot + 1, end - slot);
+		sequences[slot] = sequence;
+		orders[slot] = order;
+		end++;
+		size++;
+	}
+
+	/**
+	 * @return the removed order, or null if the index did not hold it
+	 */
+	OrderData remove(long sequence) {
+		int slot = higher(sequence - 1);
+		if (slot == end || sequences[slot] != sequence || null == orders[slot]) {
+			return null;
+		}
+		OrderData order = orders[slot];
+		orders[slot] = null;
+		size--;
+		while (start < end && null == orders[start]) {
+			start++;
+		}
+		if (start == end) {
+			start = 0;
+			end = 0;
+		}
+		return order;
+	}
+
+	/**
+	 * @return the first slot of a sequence greater than the given one, end()
+	 *         if there is none
+	 */
+	int higher(long sequence) {
+		int low = start;
+		int high = end;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (sequences[middle] <= sequence) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @return the slot after the last one used
+	 */
+	int end() {
+		return end;
+	}
+
+	long sequence(int slot) {
+		return sequences[slot];
+	}
+
+	/**
+	 * @return the order of the slot, null if it was removed
+	 */
+	OrderData get(int slot) {
+		return orders[slot];
+	}
+
+	// Internal helpers
+
+	/**
+	 * Moves the orders to the front of the arrays, grown first unless at
+	 * least half of their slots are empty.
+	 */
+	private void makeRoom() {
+		if (size << 1 > orders.length) {
+			sequences = Arrays.copyOf(sequences, orders.length << 1);
+			orders = Arrays.copyOf(orders, orders.length << 1);
+		}
+		int to = 0;
+		for (int from = start; from < end; from++) {
+			if (null != orders[from]) {
+				sequences[to] = sequences[from];
+				orders[to++] = orders[from];
+			}
+		}
+		Arrays.fill(orders, to, end, null);
+		start = 0;
+		end = to;
+	}
+
+}
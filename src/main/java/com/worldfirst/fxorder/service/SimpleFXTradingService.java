@@ -10,20 +10,50 @@
 
 package com.worldfirst.fxorder.service;
 
-import java.time.LocalDateTime;
-import java.time.ZoneId;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
-import java.util.UUID;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 
+import com.worldfirst.fxorder.cluster.OrderCluster;
 import com.worldfirst.fxorder.constants.ServiceConstants;
+import com.worldfirst.fxorder.domain.BatchResult;
+import com.worldfirst.fxorder.domain.BookDepth;
+import com.worldfirst.fxorder.domain.CurrencyPair;
+import com.worldfirst.fxorder.domain.ExecutionReport;
+import com.worldfirst.fxorder.domain.OrderCounts;
 import com.worldfirst.fxorder.domain.OrderData;
+import com.worldfirst.fxorder.domain.OrderPage;
+import com.worldfirst.fxorder.domain.OrderQuery;
 import com.worldfirst.fxorder.domain.OrderType;
+import com.worldfirst.fxorder.domain.PairStats;
+import com.worldfirst.fxorder.domain.RejectReason;
+import com.worldfirst.fxorder.domain.TimeInForce;
+import com.worldfirst.fxorder.dto.OrderDTO;
+import com.worldfirst.fxorder.dto.OrderQueryDTO;
 import com.worldfirst.fxorder.exception.InvalidInputException;
+import com.worldfirst.fxorder.expiry.OrderExpiry;
+import com.worldfirst.fxorder.feed.OrderFeed;
 import com.worldfirst.fxorder.exception.ServiceException;
+import com.worldfirst.fxorder.journal.OrderJournal;
+import com.worldfirst.fxorder.metrics.OrderMetrics;
+import com.worldfirst.fxorder.pipeline.OrderEventHandler;
+import com.worldfirst.fxorder.pipeline.OrderIngestionPipeline;
+import com.worldfirst.fxorder.replication.OrderReplication;
 import com.worldfirst.fxorder.repository.OrderRecordsRepository;
+import com.worldfirst.fxorder.repository.OrderStoreSnapshot;
+
+import io.micrometer.core.instrument.Timer;
 
 /**
  * Class SimpleFXTradingService
@@ -35,59 +65,312 @@ import com.worldfirst.fxorder.repository.OrderRecordsRepository;
  * It also loads a list of orders in memory whenever instantiated as an initial
  * dependency
  * 
+ * It is the legacy exact match mode, a BID and an ASK match when they have the
+ * same currency pair, price and amount. It is the default engine, selected by
+ * fxorder.engine=legacy
+ * 
  * @author PM
  *
  */
 
 @Service
+@ConditionalOnProperty(name = ServiceConstants.ENGINE_PROPERTY, havingValue = ServiceConstants.ENGINE_LEGACY, matchIfMissing = true)
 public class SimpleFXTradingService implements IFXTradingService {
 
 	@Autowired
 	private OrderRecordsRepository repository;
 
+	@Autowired
+	private OrderValidator validator;
+
+	@Autowired
+	private OrderIdGenerator ids;
+
+	@Autowired
+	private OrderIngestionPipeline pipeline;
+
+	@Autowired
+	private OrderJournal journal;
+
+	@Autowired
+	private OrderReplication replication;
+
+	@Autowired
+	private OrderCluster cluster;
+
+	@Autowired
+	private OrderFeed feed;
+
+	@Autowired
+	private OrderExpiry expiry;
+
+	@Autowired
+	private CurrencyPairRegistry pairs;
+
+	@Autowired
+	private OrderMetrics metrics;
+
+	private Timer saveLatency;
+
+	private Timer deleteLatency;
+
+	private Timer amendLatency;
+
+	private Timer matchingLatency;
+
+	private Timer unMatchingLatency;
+
+	/** The orders failing validation. */
+	private AtomicLong rejectedOrders;
+
+	/** Saves and cancels the batches of orders. */
+	private OrderBatches batches;
+
+	/**
+	 * Recovers the repository from the journal and hands it over to the
+	 * ingestion pipeline, its changes being pushed to the order feed and
+	 * replicated and, in a cluster, restricted to the currency pairs this node
+	 * serves. Orders only expire on the replication leader.
+	 */
+	@PostConstruct
+	public void init() {
+		saveLatency = metrics.operation("saveOrder");
+		deleteLatency = metrics.operation("deleteOrder");
+		amendLatency = metrics.operation("amendOrder");
+		matchingLatency = metrics.operation("matchingOrders");
+		unMatchingLatency = metrics.operation("unMatchingOrders");
+		rejectedOrders = metrics.counter("fxorder.orders.rejected", "Orders failing validation");
+		batches = new OrderBatches(validator, ids, pipeline, rejectedOrders, metrics.operation("saveOrders"),
+				metrics.operation("deleteOrders"), metrics.operation("cancelLevel"));
+		metrics.gauge("fxorder.book.depth", "Resting orders per currency pair", "pair", pairs.symbols(),
+				repository::sizesByPair);
+		metrics.gauge("fxorder.matched.orders", "Orders having an order of the other side at their price and amount",
+				repository::getMatchingOrdersCount);
+		metrics.gauge("fxorder.unmatched.orders", "Orders having no order of the other side at their price and amount",
+				repository::getUnMatchingOrdersCount);
+		metrics.gauge("fxorder.indexed.orders", "Orders in the order id index", repository::size);
+
+		OrderEventHandler handler = new OrderEventHandler() {
+
+			@Override
+			public boolean onAdd(OrderData order) {
+				if (0 == repository.add(order)) {
+					return false;
+				}
+				if (0 != order.getExpireTime()) {
+					expiry.schedule(order.getId(), order.getExpireTime());
+				}
+				return true;
+			}
+
+			@Override
+			public boolean onCancel(long orderId) {
+				boolean cancelled = repository.remove(orderId);
+				if (cancelled) {
+					expiry.cancel(orderId);
+				}
+				return cancelled;
+			}
+
+			@Override
+			public boolean onAmend(long orderId, long pricePips, long amount) {
+				return repository.amend(orderId, pricePips, amount);
+			}
+
+			@Override
+			public void onAddAll(List<OrderData> orders) {
+				repository.addAll(orders);
+				for (OrderData order : orders) {
+					if (0 != order.getExpireTime()) {
+						expiry.schedule(order.getId(), order.getExpireTime());
+					}
+				}
+			}
+
+			@Override
+			public boolean[] onCancelAll(long[] orderIds) {
+				boolean[] cancelled = repository.removeAll(orderIds);
+				for (int i = 0; i < cancelled.length; i++) {
+					if (cancelled[i]) {
+						expiry.cancel(orderIds[i]);
+					}
+				}
+				return cancelled;
+			}
+
+			@Override
+			public int shardOf(long orderId) {
+				CurrencyPair pair = repository.getPair(orderId);
+				return null == pair ? -1 : pair.getId();
+			}
+		};
+
+		repository.setListener(feed);
+		OrderEventHandler replicated = replication.open(journal.open(handler, repository::getAllOrders),
+				repository::getAllOrders);
+		pipeline.start(cluster.open(replicated, repository::getOrders));
+		replication.whenLeading(() -> expiry.start(pipeline::cancelAll));
+	}
+
 	/**
-	 * SimpleFXTradingService.saveOrder(String, float, OrderType, long)
+	 * SimpleFXTradingService.saveOrder(String, BigDecimal, OrderType, long)
 	 * 
 	 * @throws InvalidInputException,
 	 *             ServiceException
 	 */
 	@Override
-	public boolean saveOrder(String currency, float price, OrderType orderType, long amount) 
+	public boolean saveOrder(String currency, BigDecimal price, OrderType orderType, long amount)
 			throws InvalidInputException, ServiceException {
+		return saveOrder(currency, price, orderType, amount, null, null);
+	}
 
-		if (!currency.equalsIgnoreCase(ServiceConstants.CURRENCY_PAIR_GBPUSD)) {
+	/**
+	 * SimpleFXTradingService.saveOrder(String, BigDecimal, OrderType, long, TimeInForce, Long)
+	 * 
+	 * @throws InvalidInputException,
+	 *             ServiceException
+	 */
+	@Override
+	public boolean saveOrder(String currency, BigDecimal price, OrderType orderType, long amount,
+			TimeInForce timeInForce, Long expireTime) throws InvalidInputException, ServiceException {
 
-			String errMsg = "You have entered invalid currency pair!";
-			throw new InvalidInputException(errMsg);
+		long start = System.nanoTime();
+		try {
+			CurrencyPair pair = validator.validate(currency, price, orderType, amount);
+			TimeInForce terms = null == timeInForce ? TimeInForce.GTC : timeInForce;
+			long orderDate = System.currentTimeMillis();
+			long expiresAt = validator.validateExpiry(terms, expireTime, orderDate);
+
+			try {
+
+				OrderData order = new OrderData(ids.nextId(), pair, pair.toPips(price), amount, orderType, orderDate);
+				order.setTimeInForce(terms);
+				order.setExpireTime(expiresAt);
+
+				return pipeline.add(order);
+
+			} catch (Exception e) {
+				String errMsg = "Service Exception! "+e.getMessage();
+				throw new ServiceException(errMsg);
+			}
+		} catch (InvalidInputException ei) {
+			rejectedOrders.incrementAndGet();
+			throw ei;
+		} finally {
+			saveLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
 		}
-		
-		if (null == orderType) {			
-			String errMsg = "You have entered invalid order type!";
-			throw new InvalidInputException(errMsg);
-		} else if ((!orderType.toString().equalsIgnoreCase("ASK")) && (!orderType.toString().equalsIgnoreCase("BID"))){
-			String errMsg = "You have entered invalid order type!";
-			throw new InvalidInputException(errMsg);
-		} 
+	}
 
-		validateAmount(amount);
-		validatePrice(price);
+	/**
+	 * SimpleFXTradingService.saveOrder(CurrencyPair, long, OrderType, long)
+	 * 
+	 * @throws InvalidInputException,
+	 *             ServiceException
+	 */
+	@Override
+	public long saveOrder(CurrencyPair pair, long pricePips, OrderType orderType, long amount)
+			throws InvalidInputException, ServiceException {
 
+		long start = System.nanoTime();
 		try {
+			validator.validate(pair, pricePips, orderType, amount);
 
-			OrderData order = new OrderData(UUID.randomUUID().toString(), currency, price, amount, orderType,
-					LocalDateTime.now().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+			try {
 
-			repository.add(order);
+				OrderData order = new OrderData(ids.nextId(), pair, pricePips, amount, orderType, System.currentTimeMillis());
 
-			return true;
+				pipeline.add(order);
 
-		} catch (Exception e) {
-			String errMsg = "Service Exception! "+e.getMessage();
-			throw new ServiceException(errMsg);
+				return order.getId();
+
+			} catch (Exception e) {
+				String errMsg = "Service Exception! "+e.getMessage();
+				throw new ServiceException(errMsg);
+			}
+		} catch (InvalidInputException ei) {
+			rejectedOrders.incrementAndGet();
+			throw ei;
+		} finally {
+			saveLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
 		}
+	}
 
+	/**
+	 * SimpleFXTradingService.saveOrders(List)
+	 * 
+	 * @throws InvalidInputException,
+	 *             ServiceException
+	 */
+	@Override
+	public List<BatchResult> saveOrders(List<OrderDTO> orders) throws InvalidInputException, ServiceException {
+		return batches.save(orders);
 	}
-	
+
+	/**
+	 * SimpleFXTradingService.deleteOrders(List)
+	 * 
+	 * @throws InvalidInputException,
+	 *             ServiceException
+	 */
+	@Override
+	public List<BatchResult> deleteOrders(List<String> ids) throws InvalidInputException, ServiceException {
+		return batches.cancel(ids);
+	}
+
+	/**
+	 * SimpleFXTradingService.amendOrder(String, BigDecimal, Long)
+	 * 
+	 * The amendment goes through the ingestion pipeline like a cancellation,
+	 * so it is journaled once applied and an order expiring meanwhile is
+	 * reported unknown.
+	 * 
+	 * @throws InvalidInputException,
+	 *             ServiceException
+	 */
+	@Override
+	public boolean amendOrder(String id, BigDecimal price, Long amount)
+			throws InvalidInputException, ServiceException {
+
+		long start = System.nanoTime();
+		try {
+			long orderId = OrderIdGenerator.parse(null == id ? null : id.trim());
+			CurrencyPair pair = repository.getPair(orderId);
+			if (null == pair) {
+				throw new InvalidInputException(RejectReason.UNKNOWN_ORDER,
+						RejectReason.UNKNOWN_ORDER.message(null, orderId));
+			}
+			long pricePips = validator.validateAmendment(pair, price, amount);
+
+			boolean amended;
+			try {
+				amended = pipeline.amend(orderId, pricePips, null == amount ? 0 : amount);
+			} catch (Exception e) {
+				String errMsg = "Service Exception! "+e.getMessage();
+				throw new ServiceException(errMsg);
+			}
+
+			if (!amended) {
+				throw new InvalidInputException(RejectReason.UNKNOWN_ORDER,
+						RejectReason.UNKNOWN_ORDER.message(null, orderId));
+			}
+			return true;
+		} finally {
+			amendLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	/**
+	 * SimpleFXTradingService.cancelLevel(String, String, BigDecimal)
+	 * 
+	 * @throws InvalidInputException,
+	 *             ServiceException
+	 */
+	@Override
+	public List<String> cancelLevel(String currency, String side, BigDecimal price)
+			throws InvalidInputException, ServiceException {
+		return batches.cancelLevel(currency, side, price, repository::levelOrders);
+	}
+
 	/**
 	 * SimpleFXTradingService.allOrders()
 	 * 
@@ -115,19 +398,35 @@ public class SimpleFXTradingService implements IFXTradingService {
 	 */
 	@Override
 	public boolean deleteOrder(String id) throws InvalidInputException, ServiceException {
+		return deleteOrder(OrderIdGenerator.parse(null == id ? null : id.trim()));
+	}
+
+	/**
+	 * SimpleFXTradingService.deleteOrder(long)
+	 * 
+	 * @throws InvalidInputException,
+	 *             ServiceException
+	 */
+	@Override
+	public boolean deleteOrder(long id) throws InvalidInputException, ServiceException {
+
+		long start = System.nanoTime();
 		try {
-			String orderId = repository.remove(id);
-			
-			if (null == orderId) {
-				String errMsg = "OrderId does not exists!";
-				throw new InvalidInputException(errMsg);
+			boolean cancelled;
+			try {
+				cancelled = pipeline.cancel(id);
+			} catch (Exception e) {
+				String errMsg = "Service Exception! "+e.getMessage();
+				throw new ServiceException(errMsg);
 			}
-			
-		} catch (Exception e) {
-			String errMsg = "Service Exception! "+e.getMessage();
-			throw new ServiceException(errMsg);
+
+			if (!cancelled) {
+				throw new InvalidInputException(RejectReason.UNKNOWN_ORDER, RejectReason.UNKNOWN_ORDER.message(null, id));
+			}
+			return true;
+		} finally {
+			deleteLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
 		}
-		return true;
 	}
 
 	/**
@@ -138,73 +437,197 @@ public class SimpleFXTradingService implements IFXTradingService {
 	 */
 	@Override
 	public List<OrderData> matchingOrders() throws InvalidInputException, ServiceException {
-		List<OrderData> orders = null;
+
+		long start = System.nanoTime();
+		try {
+			List<OrderData> orders = null;
+			try {
+				orders = repository.getMatchingOrders();
+			} catch (Exception e) {
+				String errMsg = "Service Exception! "+e.getMessage();
+				throw new ServiceException(errMsg);
+			}
+			return orders;
+		} finally {
+			matchingLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	/**
+	 * SimpleFXTradingService.unMatchingOrders()
+	 * 
+	 * @throws InvalidInputException,
+	 *             ServiceException
+	 */
+	@Override
+	public List<OrderData> unMatchingOrders() throws InvalidInputException, ServiceException {
+
+		long start = System.nanoTime();
+		try {
+			List<OrderData> orders = null;
+			try {
+				orders = repository.getUnMatchingOrders();
+			} catch (Exception e) {
+				String errMsg = "Service Exception! "+e.getMessage();
+				throw new ServiceException(errMsg);
+			}
+			return orders;
+		} finally {
+			unMatchingLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		}
+	}
+
+
+	/**
+	 * SimpleFXTradingService.matchingOrdersCount()
+	 * 
+	 * @throws InvalidInputException,
+	 *             ServiceException
+	 */
+	@Override
+	public long matchingOrdersCount() throws InvalidInputException, ServiceException {
+		return repository.getMatchingOrdersCount();
+	}
+
+	/**
+	 * SimpleFXTradingService.unMatchingOrdersCount()
+	 * 
+	 * @throws InvalidInputException,
+	 *             ServiceException
+	 */
+	@Override
+	public long unMatchingOrdersCount() throws InvalidInputException, ServiceException {
+		return repository.getUnMatchingOrdersCount();
+	}
+
+	/**
+	 * SimpleFXTradingService.matchingOrdersSnapshot()
+	 * 
+	 * @throws InvalidInputException,
+	 *             ServiceException
+	 */
+	@Override
+	public OrderPage matchingOrdersSnapshot() throws InvalidInputException, ServiceException {
+
+		long start = System.nanoTime();
 		try {
-			orders = repository.getMatchingOrders();
+			OrderStoreSnapshot snapshot = repository.snapshot();
+			return new OrderPage(snapshot.getMatchingOrders(), null, snapshot.getSequence());
 		} catch (Exception e) {
 			String errMsg = "Service Exception! "+e.getMessage();
 			throw new ServiceException(errMsg);
+		} finally {
+			matchingLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
 		}
-		return orders;
 	}
 
 	/**
-	 * SimpleFXTradingService.unMatchingOrders()
+	 * SimpleFXTradingService.unMatchingOrdersSnapshot()
 	 * 
 	 * @throws InvalidInputException,
 	 *             ServiceException
 	 */
 	@Override
-	public List<OrderData> unMatchingOrders() throws InvalidInputException, ServiceException {
-		List<OrderData> orders = null;
+	public OrderPage unMatchingOrdersSnapshot() throws InvalidInputException, ServiceException {
+
+		long start = System.nanoTime();
 		try {
-			orders = repository.getUnMatchingOrders();
+			OrderStoreSnapshot snapshot = repository.snapshot();
+			return new OrderPage(snapshot.getUnMatchingOrders(), null, snapshot.getSequence());
 		} catch (Exception e) {
 			String errMsg = "Service Exception! "+e.getMessage();
 			throw new ServiceException(errMsg);
+		} finally {
+			unMatchingLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
 		}
-		return orders;
 	}
 
-	
-	
-	// Internal helpers
+	/**
+	 * SimpleFXTradingService.orderCounts()
+	 * 
+	 * @throws InvalidInputException,
+	 *             ServiceException
+	 */
+	@Override
+	public OrderCounts orderCounts() throws InvalidInputException, ServiceException {
+		OrderStoreSnapshot snapshot = repository.snapshot();
+		return new OrderCounts(snapshot.getMatchingOrdersCount(), snapshot.getUnMatchingOrdersCount(),
+				snapshot.getSequence());
+	}
 
 	/**
-	 * Validates the given price is a valid float type.
+	 * SimpleFXTradingService.executionReports()
 	 * 
-	 * @param float
-	 *            value
+	 * Orders are never filled in the exact match mode.
+	 * 
+	 * @throws InvalidInputException,
+	 *             ServiceException
 	 */
-	private void validatePrice(float value) {
-		if (value < Float.MIN_VALUE || value > Float.MAX_VALUE) {
-			throw new InvalidInputException("You have entered invalid price range: " + value);
-		}
-		
-		if (!(value % 1 == 0)) {
-			String strLen = String.valueOf(value);
-			if (strLen.length() < 6 || strLen.length() > 6) {
-				throw new InvalidInputException("You have entered invalid price range. The format is x.xxxx: " + value);
-			}
-		}
-		
+	@Override
+	public List<ExecutionReport> executionReports() throws InvalidInputException, ServiceException {
+		return Collections.emptyList();
 	}
 
 	/**
-	 * Validates the given amount is a with in range of long data type.
+	 * SimpleFXTradingService.findOrders(OrderQueryDTO)
 	 * 
-	 * @param long
-	 *            value
+	 * @throws InvalidInputException,
+	 *             ServiceException
 	 */
-	private void validateAmount(long value) {
-		
-		if (value < 1) {
-			throw new InvalidInputException("You have entered invalid amount range: " + value);
+	@Override
+	public OrderPage findOrders(OrderQueryDTO query) throws InvalidInputException, ServiceException {
+
+		OrderQuery orderQuery = validator.validateQuery(query, false);
+
+		try {
+			return repository.findOrders(orderQuery);
+		} catch (Exception e) {
+			String errMsg = "Service Exception! "+e.getMessage();
+			throw new ServiceException(errMsg);
 		}
-		
-		if (value < Long.MIN_VALUE || value > Long.MAX_VALUE) {
-			throw new InvalidInputException("You have entered invalid amount range: " + value);
+	}
+
+	/**
+	 * SimpleFXTradingService.streamOrders(OrderQueryDTO)
+	 * 
+	 * @throws InvalidInputException,
+	 *             ServiceException
+	 */
+	@Override
+	public Iterator<OrderData> streamOrders(OrderQueryDTO query) throws InvalidInputException, ServiceException {
+
+		OrderQuery orderQuery = validator.validateQuery(query, true);
+
+		try {
+			return repository.scanOrders(orderQuery);
+		} catch (Exception e) {
+			String errMsg = "Service Exception! "+e.getMessage();
+			throw new ServiceException(errMsg);
 		}
 	}
 
-}
\ No newline at end of file
+	/**
+	 * SimpleFXTradingService.depth(String, Integer)
+	 * 
+	 * @throws InvalidInputException,
+	 *             ServiceException
+	 */
+	@Override
+	public BookDepth depth(String currency, Integer levels) throws InvalidInputException, ServiceException {
+
+		CurrencyPair pair = validator.validateDepthPair(currency);
+		return repository.depth(pair, validator.validateLevels(levels));
+	}
+
+	/**
+	 * SimpleFXTradingService.stats()
+	 * 
+	 * @throws InvalidInputException,
+	 *             ServiceException
+	 */
+	@Override
+	public Map<String, PairStats> stats() throws InvalidInputException, ServiceException {
+		return repository.stats();
+	}
+
+}
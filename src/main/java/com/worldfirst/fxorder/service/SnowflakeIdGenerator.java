@@ -0,0 +1,101 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.worldfirst.fxorder.constants.ServiceConstants;
+
+/**
+ * Class SnowflakeIdGenerator
+ * 
+ * It makes order ids of 41 bits of milliseconds since 2018, 10 bits of
+ * fxorder.node-id and a 12 bits counter, so ids of every node are ordered by
+ * time to the millisecond. The last time and counter are kept in one atomic
+ * long updated by compare and set, so it takes no lock.
+ * 
+ * A node gives more than 4096 ids in a millisecond by borrowing the next
+ * milliseconds, and keeps counting from its last id should the clock go back,
+ * so its ids always increase.
+ * 
+ * It is the default generator, selected by fxorder.id.generator=snowflake
+ * 
+ * @author PM
+ *
+ */
+
+@Component
+@ConditionalOnProperty(name = ServiceConstants.ID_GENERATOR_PROPERTY, havingValue = ServiceConstants.ID_GENERATOR_SNOWFLAKE, matchIfMissing = true)
+public class SnowflakeIdGenerator implements OrderIdGenerator {
+
+	private static final int COUNTER_BITS = 12;
+
+	private static final int NODE_BITS = 10;
+
+	private static final long COUNTER_MASK = (1L << COUNTER_BITS) - 1;
+
+	@Value("${fxorder.node-id:0}")
+	private int nodeId;
+
+	/** The time of the last id shifted left of its counter. */
+	private final AtomicLong last = new AtomicLong();
+
+	private long node;
+
+	public SnowflakeIdGenerator() {
+	}
+
+	public SnowflakeIdGenerator(int nodeId) {
+		this.nodeId = nodeId;
+		init();
+	}
+
+	@PostConstruct
+	public void init() {
+		if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+			throw new IllegalStateException("Invalid fxorder.node-id, from 0 to " + MAX_NODE_ID + ": " + nodeId);
+		}
+		node = (long) nodeId << COUNTER_BITS;
+	}
+
+	@Override
+	public long nextId() {
+		long now = (System.currentTimeMillis() - EPOCH_MILLIS) << COUNTER_BITS;
+		while (true) {
+			long previous = last.get();
+			long next = now > previous ? now : previous + 1;
+			if (last.compareAndSet(previous, next)) {
+				return (next & ~COUNTER_MASK) << NODE_BITS | node | (next & COUNTER_MASK);
+			}
+		}
+	}
+
+	/**
+	 * @return the milliseconds since 1970 the id was given at
+	 */
+	public static long timeOf(long id) {
+		return (id >>> (COUNTER_BITS + NODE_BITS)) + EPOCH_MILLIS;
+	}
+
+	/**
+	 * @return the node the id was given by
+	 */
+	public static int nodeOf(long id) {
+		return (int) (id >>> COUNTER_BITS) & MAX_NODE_ID;
+	}
+
+}
@@ -10,20 +10,28 @@
 
 package com.worldfirst.fxorder.web;
 
+import java.util.List;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.validation.BindingResult;
+import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 
+import com.worldfirst.fxorder.domain.CurrencyPair;
+import com.worldfirst.fxorder.domain.OrderPage;
 import com.worldfirst.fxorder.dto.OrderDTO;
+import com.worldfirst.fxorder.dto.OrderQueryDTO;
 import com.worldfirst.fxorder.exception.InvalidInputException;
 import com.worldfirst.fxorder.exception.ServiceException;
-import com.worldfirst.fxorder.service.SimpleFXTradingService;
+import com.worldfirst.fxorder.service.CurrencyPairRegistry;
+import com.worldfirst.fxorder.service.IFXTradingService;
 
 /**
  * FXController for GUI 
@@ -36,7 +44,18 @@ public class FXController {
 	private static final Logger LOGGER = LoggerFactory.getLogger(FXController.class);
 	
 	@Autowired
-	private SimpleFXTradingService service;
+	private IFXTradingService service;
+
+	@Autowired
+	private CurrencyPairRegistry pairs;
+
+	/**
+	 * The tradable currency pairs offered by the order form
+	 */
+	@ModelAttribute("currencyPairs")
+	public List<CurrencyPair> currencyPairs() {
+		return pairs.pairs();
+	}
 
 	/**
 	 * Landing home page
@@ -72,7 +91,7 @@ public class FXController {
 	    } else if (null == orderDTO.getBidOrAsk()) {
 	        model.addAttribute("orderMsg", "Order type is mandatory!");
 	        return "newOrder";
-	    } else if (orderDTO.getPrice() <= 0) {
+	    } else if ((null == orderDTO.getPrice()) || (orderDTO.getPrice().signum() <= 0)) {
 	        model.addAttribute("orderMsg", "Valid Price is mandatory!");
 	        return "newOrder";
 	    } else if (orderDTO.getAmount() <= 0) {
@@ -81,12 +100,13 @@ public class FXController {
 	    }
 	    
 	    try {
-	        boolean status = service.saveOrder(orderDTO.getCurrency(), orderDTO.getPrice(), orderDTO.getBidOrAsk(), orderDTO.getAmount());
+	        boolean status = service.saveOrder(orderDTO.getCurrency(), orderDTO.getPrice(), orderDTO.getBidOrAsk(), orderDTO.getAmount(),
+	                orderDTO.getTimeInForce(), orderDTO.getExpireTime());
 	        
 	        if (status) {
 	            model.addAttribute("orderMsg", "Order saved!");
 	        } else {
-	            model.addAttribute("orderMsg", "Order could not be saved!");
+	            model.addAttribute("orderMsg", "Order not kept!");
 	        }
 	        
 	    } catch (InvalidInputException ei ) {
@@ -102,13 +122,17 @@ public class FXController {
     }
 	
 	/**
-	 * Shows all existing FX order
+	 * Shows the existing FX orders one page at a time
 	 */
 	@RequestMapping("/cancelOrder")
-	public String cancelOrder(Model model) {
+	public String cancelOrder(@RequestParam(value = "cursor", required = false) String cursor, Model model) {
 		
 		try {
-			model.addAttribute("allOrders", service.allOrders());
+			OrderQueryDTO query = new OrderQueryDTO();
+			query.setCursor(cursor);
+			OrderPage page = service.findOrders(query);
+			model.addAttribute("allOrders", page.getOrders());
+			model.addAttribute("nextCursor", page.getNextCursor());
 		} catch (InvalidInputException ei ) {
 			LOGGER.debug("++++++++++++++++++++++++++++: " + ei.getMessage());
             model.addAttribute("orderMsg", ei.getMessage());
@@ -10,21 +10,65 @@
 
 package com.worldfirst.fxorder.web;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletRequest;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.util.UriComponentsBuilder;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.worldfirst.fxorder.cluster.MergedOrders;
+import com.worldfirst.fxorder.cluster.OrderCluster;
+import com.worldfirst.fxorder.domain.BatchResult;
+import com.worldfirst.fxorder.domain.OrderData;
+import com.worldfirst.fxorder.domain.OrderPage;
+import com.worldfirst.fxorder.domain.RejectReason;
 import com.worldfirst.fxorder.dto.OrderDTO;
+import com.worldfirst.fxorder.dto.OrderQueryDTO;
 import com.worldfirst.fxorder.exception.InvalidInputException;
 import com.worldfirst.fxorder.exception.ServiceException;
-import com.worldfirst.fxorder.service.SimpleFXTradingService;
+import com.worldfirst.fxorder.expiry.OrderExpiry;
+import com.worldfirst.fxorder.feed.OrderFeed;
+import com.worldfirst.fxorder.journal.OrderJournal;
+import com.worldfirst.fxorder.metrics.OrderMetrics;
+import com.worldfirst.fxorder.pipeline.OrderIngestionPipeline;
+import com.worldfirst.fxorder.replication.OrderReplication;
+import com.worldfirst.fxorder.service.IFXTradingService;
+import com.worldfirst.fxorder.wire.OrderEntryServer;
 
 /**
  * Rest Controller for FX services.
@@ -34,31 +78,105 @@ import com.worldfirst.fxorder.service.SimpleFXTradingService;
 @RestController
 public class FXRestController {
 
-	private final SimpleFXTradingService service;
+	private final IFXTradingService service;
+
+	private final OrderIngestionPipeline pipeline;
+
+	private final ObjectMapper mapper;
+
+	private final OrderJournal journal;
+
+	private final OrderFeed feed;
+
+	private final Optional<OrderEntryServer> wire;
+
+	private final OrderExpiry expiry;
+
+	private final OrderMetrics metrics;
+
+	private final OrderReplication replication;
+
+	private final OrderCluster cluster;
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(FXRestController.class);
 
+	/** The response header carrying the cursor of the next page. */
+	static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+	/** The response header carrying the sequence of the snapshot read. */
+	static final String SNAPSHOT_HEADER = "X-Snapshot-Sequence";
+
+	/** The content type of the order streams, one JSON order per line. */
+	static final String NDJSON_VALUE = "application/x-ndjson";
+
+	/** The response headers carrying the code and the field of a rejection. */
+	static final String REJECT_REASON_HEADER = "X-Reject-Reason";
+
+	static final String REJECT_FIELD_HEADER = "X-Reject-Field";
+
 	@Autowired
-	public FXRestController(final SimpleFXTradingService service) {
+	public FXRestController(final IFXTradingService service, final OrderIngestionPipeline pipeline,
+			final ObjectMapper mapper, final OrderJournal journal, final OrderFeed feed,
+			final Optional<OrderEntryServer> wire, final OrderExpiry expiry, final OrderMetrics metrics,
+			final OrderReplication replication, final OrderCluster cluster) {
 		this.service = service;
+		this.pipeline = pipeline;
+		this.mapper = mapper;
+		this.journal = journal;
+		this.feed = feed;
+		this.wire = wire;
+		this.expiry = expiry;
+		this.metrics = metrics;
+		this.replication = replication;
+		this.cluster = cluster;
 	}
 
 	/**
 	 * Stores a new FX order
 	 */
 	@RequestMapping(value = "/v1/createOrder", method = RequestMethod.POST)
-	public ResponseEntity<?> createOrder(@RequestBody(required = true) OrderDTO orderDTO) {
+	public ResponseEntity<?> createOrder(@RequestBody(required = true) OrderDTO orderDTO,
+			HttpServletRequest request) {
 
+		String owner = routeTo(cluster.route(orderDTO.getCurrency()), request);
+		if (null != owner) {
+			return routed(owner, request, json(orderDTO));
+		}
 		try {
 			boolean status = service.saveOrder(orderDTO.getCurrency(), orderDTO.getPrice(), orderDTO.getBidOrAsk(),
-					orderDTO.getAmount());
+					orderDTO.getAmount(), orderDTO.getTimeInForce(), orderDTO.getExpireTime());
 
 			if (status) {
 				return new ResponseEntity<>("Order saved!", HttpStatus.OK);
 			} else {
-				return new ResponseEntity<>("Order could not be saved!", HttpStatus.BAD_REQUEST);
+				return new ResponseEntity<>("Order not kept!", HttpStatus.OK);
 			}
 
+		} catch (InvalidInputException ei) {
+			LOGGER.debug("++++++++++++++++++++++++++++: " + ei.getMessage());
+			return rejected(ei);
+		} catch (ServiceException es) {
+			LOGGER.debug("++++++++++++++++++++++++++++: " + es.getMessage());
+			return new ResponseEntity<>(es.getMessage(), HttpStatus.BAD_REQUEST);
+		}
+
+	}
+
+
+	/**
+	 * Stores a batch of new FX orders, returning the outcome of every order in
+	 * batch order. In a cluster the orders of every node are sent to it as one
+	 * batch.
+	 */
+	@RequestMapping(value = "/v1/orders:batch", method = RequestMethod.POST)
+	public ResponseEntity<?> createOrders(@RequestBody(required = true) List<OrderDTO> orders,
+			HttpServletRequest request) {
+
+		try {
+			if (gathering(request)) {
+				return new ResponseEntity<>(saveAcrossNodes(orders, request), HttpStatus.OK);
+			}
+			return new ResponseEntity<>(service.saveOrders(orders), HttpStatus.OK);
 		} catch (InvalidInputException ei) {
 			LOGGER.debug("++++++++++++++++++++++++++++: " + ei.getMessage());
 			return new ResponseEntity<>(ei.getMessage(), HttpStatus.BAD_REQUEST);
@@ -69,20 +187,45 @@ public class FXRestController {
 
 	}
 
+	/**
+	 * Cancels a batch of existing orders, returning the outcome of every order
+	 * id in batch order. In a cluster the ids unknown here are sent to the
+	 * other nodes.
+	 */
+	@RequestMapping(value = "/v1/cancel:batch", method = RequestMethod.POST)
+	public ResponseEntity<?> cancelOrders(@RequestBody(required = true) List<String> ids,
+			HttpServletRequest request) {
+
+		try {
+			List<BatchResult> results = service.deleteOrders(ids);
+			if (gathering(request)) {
+				return new ResponseEntity<>(cancelAcrossNodes(ids, results, request), HttpStatus.OK);
+			}
+			return new ResponseEntity<>(results, HttpStatus.OK);
+		} catch (InvalidInputException ei) {
+			LOGGER.debug("++++++++++++++++++++++++++++: " + ei.getMessage());
+			return new ResponseEntity<>(ei.getMessage(), HttpStatus.BAD_REQUEST);
+		} catch (ServiceException es) {
+			LOGGER.debug("++++++++++++++++++++++++++++: " + es.getMessage());
+			return new ResponseEntity<>(es.getMessage(), HttpStatus.BAD_REQUEST);
+		}
+
+	}
 	
 	/**
 	 * Cancels an existing order
 	 */
 	
 	  @RequestMapping(value = "/v1/cancelOrder/{Id}", method = RequestMethod.GET)
-	  public ResponseEntity<?> cancelOrderById(@PathVariable final String Id) {
+	  public ResponseEntity<?> cancelOrderById(@PathVariable final String Id, HttpServletRequest request) {
 
 		  try {
 				service.deleteOrder(Id);
 				return new ResponseEntity<>("Order cancelled!", HttpStatus.OK);
 			} catch (InvalidInputException ei ) {
 				LOGGER.debug("++++++++++++++++++++++++++++: " + ei.getMessage());
-	            return new ResponseEntity<>(ei.getMessage(), HttpStatus.BAD_REQUEST);
+				ResponseEntity<?> found = unknownHere(ei, request);
+	            return null != found ? found : rejected(ei);
 		    } catch (ServiceException es) {
 		    	LOGGER.debug("++++++++++++++++++++++++++++: " + es.getMessage());
 	            return new ResponseEntity<>(es.getMessage(), HttpStatus.BAD_REQUEST);
@@ -91,13 +234,73 @@ public class FXRestController {
 	}
 	
 	/**
-	 * Returns all unmatching FX order
+	 * Amends the price and or the amount of an existing order
+	 */
+	@RequestMapping(value = "/v1/amendOrder/{Id}", method = RequestMethod.POST)
+	public ResponseEntity<?> amendOrder(@PathVariable final String Id,
+			@RequestParam(value = "price", required = false) BigDecimal price,
+			@RequestParam(value = "amount", required = false) Long amount, HttpServletRequest request) {
+
+		try {
+			service.amendOrder(Id, price, amount);
+			return new ResponseEntity<>("Order amended!", HttpStatus.OK);
+		} catch (InvalidInputException ei ) {
+			LOGGER.debug("++++++++++++++++++++++++++++: " + ei.getMessage());
+			ResponseEntity<?> found = unknownHere(ei, request);
+            return null != found ? found : rejected(ei);
+	    } catch (ServiceException es) {
+	    	LOGGER.debug("++++++++++++++++++++++++++++: " + es.getMessage());
+            return new ResponseEntity<>(es.getMessage(), HttpStatus.BAD_REQUEST);
+	    }
+
+	}
+	
+	/**
+	 * Cancels every order of one side resting at one price of a pair, returning
+	 * the ids of the orders cancelled
+	 */
+	@RequestMapping(value = "/v1/book/{pair}/cancelLevel", method = RequestMethod.POST)
+	public ResponseEntity<?> cancelLevel(@PathVariable final String pair,
+			@RequestParam(value = "side", required = true) String side,
+			@RequestParam(value = "price", required = true) BigDecimal price, HttpServletRequest request) {
+
+		String owner = routeTo(cluster.routePath(pair), request);
+		if (null != owner) {
+			return routed(owner, request, null);
+		}
+		try {
+			return new ResponseEntity<>(service.cancelLevel(pair, side, price), HttpStatus.OK);
+		} catch (InvalidInputException ei ) {
+			LOGGER.debug("++++++++++++++++++++++++++++: " + ei.getMessage());
+            return rejected(ei);
+	    } catch (ServiceException es) {
+	    	LOGGER.debug("++++++++++++++++++++++++++++: " + es.getMessage());
+            return new ResponseEntity<>(es.getMessage(), HttpStatus.BAD_REQUEST);
+	    }
+
+	}
+	
+	/**
+	 * Returns all unmatching FX order, or a page of them when a cursor or a
+	 * limit is given. In a cluster the orders of every node are merged by
+	 * order date, and pages walk the nodes one after the other.
 	 */
 	@RequestMapping(value = "/v1/unmatchedOrders", method = RequestMethod.GET)
-	public ResponseEntity<?> unmatchedOrders() {
+	public ResponseEntity<?> unmatchedOrders(OrderQueryDTO query, HttpServletRequest request) {
 
+		if (replication.isStale()) {
+			return stale();
+		}
 		try {
-			return new ResponseEntity<>(service.unMatchingOrders(), HttpStatus.OK);
+			if (null == query.getCursor() && null == query.getLimit()) {
+				OrderPage snapshot = service.unMatchingOrdersSnapshot();
+				if (gathering(request)) {
+					return merged(snapshot, request);
+				}
+				return page(snapshot, false);
+			}
+			query.setStatus("unmatched");
+			return find(query, false, request);
 		} catch (InvalidInputException ei ) {
 			LOGGER.debug("++++++++++++++++++++++++++++: " + ei.getMessage());
             return new ResponseEntity<>(ei.getMessage(), HttpStatus.BAD_REQUEST);
@@ -110,13 +313,196 @@ public class FXRestController {
 	}
 	
 	/**
-	 * Returns all matching FX order
+	 * Returns all matching FX order, or a page of them when a cursor or a
+	 * limit is given, across the nodes of a cluster
 	 */
 	@RequestMapping(value = "/v1/matchedOrders", method = RequestMethod.GET)
-	public ResponseEntity<?> matchedOrders() {
+	public ResponseEntity<?> matchedOrders(OrderQueryDTO query, HttpServletRequest request) {
+
+		if (replication.isStale()) {
+			return stale();
+		}
+		try {
+			if (null == query.getCursor() && null == query.getLimit()) {
+				OrderPage snapshot = service.matchingOrdersSnapshot();
+				if (gathering(request)) {
+					return merged(snapshot, request);
+				}
+				return page(snapshot, false);
+			}
+			query.setStatus("matched");
+			return find(query, false, request);
+		} catch (InvalidInputException ei ) {
+			LOGGER.debug("++++++++++++++++++++++++++++: " + ei.getMessage());
+            return new ResponseEntity<>(ei.getMessage(), HttpStatus.BAD_REQUEST);
+	    } catch (ServiceException es) {
+	    	LOGGER.debug("++++++++++++++++++++++++++++: " + es.getMessage());
+            return new ResponseEntity<>(es.getMessage(), HttpStatus.BAD_REQUEST);
+	    }
+
+	}
+	
+	/**
+	 * Returns a page of FX orders filtered by status, currency, side, price
+	 * range and order date range, from the node of the currency pair when given
+	 */
+	@RequestMapping(value = "/v1/orders", method = RequestMethod.GET)
+	public ResponseEntity<?> orders(OrderQueryDTO query, HttpServletRequest request) {
+
+		if (replication.isStale()) {
+			return stale();
+		}
+		try {
+			return find(query, true, request);
+		} catch (InvalidInputException ei ) {
+			LOGGER.debug("++++++++++++++++++++++++++++: " + ei.getMessage());
+            return new ResponseEntity<>(ei.getMessage(), HttpStatus.BAD_REQUEST);
+	    } catch (ServiceException es) {
+	    	LOGGER.debug("++++++++++++++++++++++++++++: " + es.getMessage());
+            return new ResponseEntity<>(es.getMessage(), HttpStatus.BAD_REQUEST);
+	    }
+
+	}
+	
+	/**
+	 * Streams the FX orders passing the same filters as /v1/orders, one JSON
+	 * order per line, written while the order store is walked. In a cluster the
+	 * streams of every node are merged by order date while they are read.
+	 */
+	@RequestMapping(value = "/v1/orders/stream", method = RequestMethod.GET)
+	public ResponseEntity<StreamingResponseBody> streamOrders(OrderQueryDTO query, HttpServletRequest request) {
+
+		if (replication.isStale()) {
+			String message = lagging();
+			return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).contentType(MediaType.TEXT_PLAIN)
+					.body(out -> out.write(message.getBytes(StandardCharsets.UTF_8)));
+		}
+		try {
+			Iterator<OrderData> orders = cluster.served(service.streamOrders(query));
+			if (gathering(request)) {
+				MergedOrders merged = cluster.gather(orders, pathAndQuery(request), hops(request));
+				return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON_VALUE)).body(out -> {
+					try {
+						writeOrders(merged, out);
+					} finally {
+						merged.close();
+					}
+				});
+			}
+			return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON_VALUE))
+					.body(out -> writeOrders(orders, out));
+		} catch (UncheckedIOException e) {
+			LOGGER.debug("++++++++++++++++++++++++++++: " + e.getMessage());
+			return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).contentType(MediaType.TEXT_PLAIN)
+					.body(out -> out.write(e.getMessage().getBytes(StandardCharsets.UTF_8)));
+		} catch (InvalidInputException ei ) {
+			LOGGER.debug("++++++++++++++++++++++++++++: " + ei.getMessage());
+            return error(ei.getMessage());
+	    } catch (ServiceException es) {
+	    	LOGGER.debug("++++++++++++++++++++++++++++: " + es.getMessage());
+            return error(es.getMessage());
+	    }
+
+	}
+	
+	/**
+	 * Pushes the changes of the orders, of one currency pair when given, as
+	 * server-sent events
+	 */
+	@RequestMapping(value = "/v1/orders/feed", method = RequestMethod.GET)
+	public ResponseEntity<SseEmitter> orderFeed(@RequestParam(value = "currency", required = false) String currency) {
+
+		try {
+			return new ResponseEntity<>(feed.subscribe(currency), HttpStatus.OK);
+		} catch (InvalidInputException ei) {
+			LOGGER.debug("++++++++++++++++++++++++++++: " + ei.getMessage());
+			SseEmitter error = new SseEmitter();
+			try {
+				error.send(SseEmitter.event().name("ERROR").data(ei.getMessage()));
+				error.complete();
+			} catch (IOException e) {
+				error.completeWithError(e);
+			}
+			return new ResponseEntity<>(error, HttpStatus.BAD_REQUEST);
+		}
+
+	}
+
+	/**
+	 * Returns the number of feed subscribers and of events published, sent,
+	 * conflated and dropped
+	 */
+	@RequestMapping(value = "/v1/feed/stats", method = RequestMethod.GET)
+	public ResponseEntity<?> feedStats() {
+
+		return new ResponseEntity<>(feed.stats(), HttpStatus.OK);
+	}
+
+	/**
+	 * Returns the number of binary order entry connections and of requests
+	 * acknowledged and rejected
+	 */
+	@RequestMapping(value = "/v1/wire/stats", method = RequestMethod.GET)
+	public ResponseEntity<?> wireStats() {
+
+		if (!wire.isPresent()) {
+			return new ResponseEntity<>("Binary order entry is not enabled!", HttpStatus.NOT_FOUND);
+		}
+		return new ResponseEntity<>(wire.get().stats(), HttpStatus.OK);
+	}
+
+	/**
+	 * Returns the number of matching and unmatching FX orders along with the
+	 * sequence of the snapshot they were counted in
+	 */
+	@RequestMapping(value = "/v1/orderCounts", method = RequestMethod.GET)
+	public ResponseEntity<?> orderCounts() {
+
+		try {
+			return new ResponseEntity<>(service.orderCounts(), HttpStatus.OK);
+		} catch (InvalidInputException ei ) {
+			LOGGER.debug("++++++++++++++++++++++++++++: " + ei.getMessage());
+            return new ResponseEntity<>(ei.getMessage(), HttpStatus.BAD_REQUEST);
+	    } catch (ServiceException es) {
+	    	LOGGER.debug("++++++++++++++++++++++++++++: " + es.getMessage());
+            return new ResponseEntity<>(es.getMessage(), HttpStatus.BAD_REQUEST);
+	    }
 
+	}
+	
+	/**
+	 * Returns the best price levels of both sides of the book of a pair, the
+	 * number of orders and the total amount of each level
+	 */
+	@RequestMapping(value = "/v1/book/{pair}/depth", method = RequestMethod.GET)
+	public ResponseEntity<?> depth(@PathVariable final String pair,
+			@RequestParam(value = "levels", required = false) Integer levels, HttpServletRequest request) {
+
+		String owner = routeTo(cluster.routePath(pair), request);
+		if (null != owner) {
+			return routed(owner, request, null);
+		}
 		try {
-			return new ResponseEntity<>(service.matchingOrders(), HttpStatus.OK);
+			return new ResponseEntity<>(service.depth(pair, levels), HttpStatus.OK);
+		} catch (InvalidInputException ei ) {
+			LOGGER.debug("++++++++++++++++++++++++++++: " + ei.getMessage());
+            return rejected(ei);
+	    } catch (ServiceException es) {
+	    	LOGGER.debug("++++++++++++++++++++++++++++: " + es.getMessage());
+            return new ResponseEntity<>(es.getMessage(), HttpStatus.BAD_REQUEST);
+	    }
+
+	}
+	
+	/**
+	 * Returns the number of matching orders along with the number of orders,
+	 * total amount, best price and VWAP of each side per currency pair
+	 */
+	@RequestMapping(value = "/v1/stats", method = RequestMethod.GET)
+	public ResponseEntity<?> stats() {
+
+		try {
+			return new ResponseEntity<>(service.stats(), HttpStatus.OK);
 		} catch (InvalidInputException ei ) {
 			LOGGER.debug("++++++++++++++++++++++++++++: " + ei.getMessage());
             return new ResponseEntity<>(ei.getMessage(), HttpStatus.BAD_REQUEST);
@@ -127,5 +513,560 @@ public class FXRestController {
 
 	}
 	
+	/**
+	 * Returns the most recent execution reports
+	 */
+	@RequestMapping(value = "/v1/executionReports", method = RequestMethod.GET)
+	public ResponseEntity<?> executionReports() {
+
+		try {
+			return new ResponseEntity<>(service.executionReports(), HttpStatus.OK);
+		} catch (InvalidInputException ei ) {
+			LOGGER.debug("++++++++++++++++++++++++++++: " + ei.getMessage());
+            return new ResponseEntity<>(ei.getMessage(), HttpStatus.BAD_REQUEST);
+	    } catch (ServiceException es) {
+	    	LOGGER.debug("++++++++++++++++++++++++++++: " + es.getMessage());
+            return new ResponseEntity<>(es.getMessage(), HttpStatus.BAD_REQUEST);
+	    }
+
+	}
+	
+	/**
+	 * Returns the ingestion mode, backlog and queueing latency in microseconds
+	 */
+	@RequestMapping(value = "/v1/ingestion/stats", method = RequestMethod.GET)
+	public ResponseEntity<?> ingestionStats() {
+
+		Map<String, Object> stats = new LinkedHashMap<String, Object>();
+		stats.put("mode", pipeline.getMode());
+		stats.put("backlog", pipeline.backlog());
+		stats.put("queueLatencyMicros", pipeline.queueLatency().summary(TimeUnit.MICROSECONDS));
+
+		return new ResponseEntity<>(stats, HttpStatus.OK);
+	}
+
+	/**
+	 * Returns the journal throughput, force latency in microseconds, last
+	 * recovery and last snapshot figures
+	 */
+	@RequestMapping(value = "/v1/journal/stats", method = RequestMethod.GET)
+	public ResponseEntity<?> journalStats() {
+
+		return new ResponseEntity<>(journal.stats(), HttpStatus.OK);
+	}
+
+	/**
+	 * Returns the replication role, the followers of a leader and the lag and
+	 * throughput of a follower
+	 */
+	@RequestMapping(value = "/v1/replication/stats", method = RequestMethod.GET)
+	public ResponseEntity<?> replicationStats() {
+
+		return new ResponseEntity<>(replication.stats(), HttpStatus.OK);
+	}
+
+	/**
+	 * Promotes a replication follower to leader
+	 */
+	@RequestMapping(value = "/v1/replication/promote", method = RequestMethod.POST)
+	public ResponseEntity<?> promote() {
+
+		try {
+			replication.promote();
+			return new ResponseEntity<>("Promoted to leader!", HttpStatus.OK);
+		} catch (IllegalStateException e) {
+			LOGGER.debug("++++++++++++++++++++++++++++: " + e.getMessage());
+			return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+		}
+	}
+
+	/**
+	 * Returns the nodes of the cluster ring, the owner of every currency pair,
+	 * the pairs migrating and the requests forwarded
+	 */
+	@RequestMapping(value = "/v1/cluster/stats", method = RequestMethod.GET)
+	public ResponseEntity<?> clusterStats() {
+
+		return new ResponseEntity<>(cluster.stats(), HttpStatus.OK);
+	}
+
+	/**
+	 * Adds a node to the cluster, which pulls the currency pairs it now owns
+	 */
+	@RequestMapping(value = "/v1/cluster/join", method = RequestMethod.POST)
+	public ResponseEntity<?> join(@RequestParam(value = "node", required = true) String node) {
+
+		try {
+			return new ResponseEntity<>(cluster.join(node), HttpStatus.OK);
+		} catch (IllegalStateException e) {
+			LOGGER.debug("++++++++++++++++++++++++++++: " + e.getMessage());
+			return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+		}
+	}
+
+	/**
+	 * Removes a node from the cluster, its currency pairs being pulled by their
+	 * new owners
+	 */
+	@RequestMapping(value = "/v1/cluster/leave", method = RequestMethod.POST)
+	public ResponseEntity<?> leave(@RequestParam(value = "node", required = true) String node) {
+
+		try {
+			return new ResponseEntity<>(cluster.leave(node), HttpStatus.OK);
+		} catch (IllegalStateException e) {
+			LOGGER.debug("++++++++++++++++++++++++++++: " + e.getMessage());
+			return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+		}
+	}
+
+	/**
+	 * Installs the ring of a membership change, sent by the node making it
+	 */
+	@RequestMapping(value = "/v1/cluster/members", method = RequestMethod.PUT)
+	public ResponseEntity<?> members(@RequestParam(value = "version", required = true) long version,
+			@RequestParam(value = "node", required = true) List<String> nodes,
+			@RequestParam(value = "previous", required = false) List<String> previous) {
+
+		if (cluster.install(version, nodes, null == previous ? new ArrayList<String>() : previous)) {
+			return new ResponseEntity<>("Ring installed!", HttpStatus.OK);
+		}
+		return new ResponseEntity<>("Ring version " + version + " is not newer!", HttpStatus.CONFLICT);
+	}
+
+	/**
+	 * Streams the orders of a currency pair to the node pulling it, the events
+	 * of the pair being recorded from then on
+	 */
+	@RequestMapping(value = "/v1/cluster/pairs/{pairId}/snapshot", method = RequestMethod.POST)
+	public ResponseEntity<StreamingResponseBody> migrationSnapshot(@PathVariable final int pairId) {
+
+		try {
+			return ResponseEntity.ok().contentType(MediaType.APPLICATION_OCTET_STREAM)
+					.body(cluster.migrationSnapshot(pairId));
+		} catch (IllegalStateException e) {
+			LOGGER.debug("++++++++++++++++++++++++++++: " + e.getMessage());
+			return ResponseEntity.status(HttpStatus.CONFLICT).contentType(MediaType.TEXT_PLAIN)
+					.body(out -> out.write(e.getMessage().getBytes(StandardCharsets.UTF_8)));
+		}
+	}
+
+	/**
+	 * Returns the events of a migrating currency pair following a sequence,
+	 * waiting briefly for one
+	 */
+	@RequestMapping(value = "/v1/cluster/pairs/{pairId}/events", method = RequestMethod.GET)
+	public ResponseEntity<?> migrationEvents(@PathVariable final int pairId,
+			@RequestParam(value = "after", required = true) long after) {
+
+		try {
+			return octets(cluster.migrationEvents(pairId, after));
+		} catch (IllegalStateException e) {
+			LOGGER.debug("++++++++++++++++++++++++++++: " + e.getMessage());
+			return new ResponseEntity<>(e.getMessage(), HttpStatus.CONFLICT);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return new ResponseEntity<>("Interrupted!", HttpStatus.SERVICE_UNAVAILABLE);
+		}
+	}
+
+	/**
+	 * Hands a migrating currency pair over to the node pulling it, returning
+	 * the events it has not read yet
+	 */
+	@RequestMapping(value = "/v1/cluster/pairs/{pairId}/handoff", method = RequestMethod.POST)
+	public ResponseEntity<?> handoff(@PathVariable final int pairId,
+			@RequestParam(value = "after", required = true) long after) {
+
+		try {
+			return octets(cluster.handoff(pairId, after));
+		} catch (IllegalStateException e) {
+			LOGGER.debug("++++++++++++++++++++++++++++: " + e.getMessage());
+			return new ResponseEntity<>(e.getMessage(), HttpStatus.CONFLICT);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return new ResponseEntity<>("Interrupted!", HttpStatus.SERVICE_UNAVAILABLE);
+		}
+	}
+
+	/**
+	 * Drops the orders of a currency pair handed over to another node
+	 */
+	@RequestMapping(value = "/v1/cluster/pairs/{pairId}/complete", method = RequestMethod.POST)
+	public ResponseEntity<?> completeMigration(@PathVariable final int pairId) {
+
+		try {
+			cluster.completeMigration(pairId);
+			return new ResponseEntity<>("Migration completed!", HttpStatus.OK);
+		} catch (IllegalStateException e) {
+			LOGGER.debug("++++++++++++++++++++++++++++: " + e.getMessage());
+			return new ResponseEntity<>(e.getMessage(), HttpStatus.CONFLICT);
+		}
+	}
+
+	/**
+	 * Returns the number of orders waiting to expire and of orders expired
+	 */
+	@RequestMapping(value = "/v1/expiry/stats", method = RequestMethod.GET)
+	public ResponseEntity<?> expiryStats() {
+
+		return new ResponseEntity<>(expiry.stats(), HttpStatus.OK);
+	}
+
+	/**
+	 * Returns the count, mean, percentiles and max latency in microseconds of
+	 * every trading service operation
+	 */
+	@RequestMapping(value = "/v1/metrics", method = RequestMethod.GET)
+	public ResponseEntity<?> metrics() {
+
+		return new ResponseEntity<>(metrics.stats(), HttpStatus.OK);
+	}
+
+	// Internal helpers
+
+	/**
+	 * @return the number of nodes the request went through, the most allowed
+	 *         when unreadable so it is served here
+	 */
+	private static int hops(HttpServletRequest request) {
+		String hops = request.getHeader(OrderCluster.HOPS_HEADER);
+		if (null == hops) {
+			return 0;
+		}
+		try {
+			return Integer.parseInt(hops.trim());
+		} catch (NumberFormatException e) {
+			return OrderCluster.MAX_HOPS;
+		}
+	}
+
+	/**
+	 * @return the node to send the request to, null to serve it here
+	 */
+	private static String routeTo(String node, HttpServletRequest request) {
+		return null != node && hops(request) < OrderCluster.MAX_HOPS ? node : null;
+	}
+
+	/**
+	 * @return true if the request came from a client rather than a node, so
+	 *         the other nodes are to be asked too
+	 */
+	private boolean gathering(HttpServletRequest request) {
+		return cluster.isEnabled() && 0 == hops(request);
+	}
+
+	private static String pathAndQuery(HttpServletRequest request) {
+		String query = request.getQueryString();
+		return null == query ? request.getRequestURI() : request.getRequestURI() + "?" + query;
+	}
+
+	/**
+	 * Sends the request to its node, or redirects the client to it.
+	 */
+	private ResponseEntity<?> routed(String node, HttpServletRequest request, byte[] body) {
+		String pathAndQuery = pathAndQuery(request);
+		if (cluster.isRedirecting()) {
+			HttpHeaders headers = new HttpHeaders();
+			headers.setLocation(URI.create(node + pathAndQuery));
+			return new ResponseEntity<>(headers, HttpStatus.TEMPORARY_REDIRECT);
+		}
+		return cluster.forward(node, request.getMethod(), pathAndQuery, body, request.getContentType(),
+				hops(request));
+	}
+
+	/**
+	 * Sends a request for an order unknown here to the other nodes.
+	 *
+	 * @return the answer of the node knowing the order, null if none does
+	 */
+	private ResponseEntity<?> unknownHere(InvalidInputException ei, HttpServletRequest request) {
+		if (RejectReason.UNKNOWN_ORDER != ei.getReason() || !gathering(request)) {
+			return null;
+		}
+		for (ResponseEntity<byte[]> response : cluster.forwardToPeers(request.getMethod(), pathAndQuery(request),
+				null, null, hops(request))) {
+			if (response.getStatusCode().is2xxSuccessful()) {
+				return response;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Saves the orders of this node and sends the others to their nodes, one
+	 * batch per node, the outcomes keeping the batch order.
+	 */
+	private List<Object> saveAcrossNodes(List<OrderDTO> orders, HttpServletRequest request)
+			throws InvalidInputException, ServiceException {
+		Map<String, List<Integer>> positions = new LinkedHashMap<String, List<Integer>>();
+		for (int i = 0; i < orders.size(); i++) {
+			String owner = cluster.route(orders.get(i).getCurrency());
+			positions.computeIfAbsent(null == owner ? "" : owner, node -> new ArrayList<Integer>()).add(i);
+		}
+
+		Object[] results = new Object[orders.size()];
+		for (Map.Entry<String, List<Integer>> group : positions.entrySet()) {
+			List<OrderDTO> batch = new ArrayList<OrderDTO>();
+			for (int position : group.getValue()) {
+				batch.add(orders.get(position));
+			}
+			if (group.getKey().isEmpty()) {
+				List<BatchResult> saved = service.saveOrders(batch);
+				for (int i = 0; i < saved.size(); i++) {
+					BatchResult result = saved.get(i);
+					int position = group.getValue().get(i);
+					results[position] = new BatchResult(position, result.getId(), result.isSuccess(),
+							result.getMessage(), result.getReason());
+				}
+				continue;
+			}
+			ResponseEntity<byte[]> response = cluster.forward(group.getKey(), "POST", request.getRequestURI(),
+					json(batch), MediaType.APPLICATION_JSON_VALUE, hops(request));
+			reindex(response, group.getValue(), results);
+		}
+		return Arrays.asList(results);
+	}
+
+	/**
+	 * Sends the ids unknown here to the other nodes, the outcome of the node
+	 * knowing an order replacing the local one.
+	 */
+	private List<Object> cancelAcrossNodes(List<String> ids, List<BatchResult> local, HttpServletRequest request) {
+		List<Integer> unknown = new ArrayList<Integer>();
+		List<String> batch = new ArrayList<String>();
+		for (BatchResult result : local) {
+			if (!result.isSuccess()) {
+				unknown.add(result.getIndex());
+				batch.add(ids.get(result.getIndex()));
+			}
+		}
+
+		List<Object> results = new ArrayList<Object>(local);
+		if (unknown.isEmpty()) {
+			return results;
+		}
+		for (ResponseEntity<byte[]> response : cluster.forwardToPeers("POST", request.getRequestURI(), json(batch),
+				MediaType.APPLICATION_JSON_VALUE, hops(request))) {
+			Object[] remote = new Object[ids.size()];
+			reindex(response, unknown, remote);
+			for (int position : unknown) {
+				if (remote[position] instanceof JsonNode && ((JsonNode) remote[position]).path("success").asBoolean()) {
+					results.set(position, remote[position]);
+				}
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Places the outcomes a node returned for part of a batch at their
+	 * positions in the whole batch, failures when the node did not answer.
+	 */
+	private void reindex(ResponseEntity<byte[]> response, List<Integer> positions, Object[] results) {
+		JsonNode outcomes = null;
+		if (response.getStatusCode().is2xxSuccessful()) {
+			try {
+				outcomes = mapper.readTree(response.getBody());
+			} catch (IOException e) {
+				LOGGER.debug("++++++++++++++++++++++++++++: " + e.getMessage());
+			}
+		}
+		String failure = null == response.getBody() ? "" : new String(response.getBody(), StandardCharsets.UTF_8);
+		for (int i = 0; i < positions.size(); i++) {
+			int position = positions.get(i);
+			JsonNode outcome = null == outcomes ? null : outcomes.get(i);
+			if (outcome instanceof ObjectNode) {
+				((ObjectNode) outcome).put("index", position);
+				results[position] = outcome;
+			} else {
+				results[position] = new BatchResult(position, null, false, failure);
+			}
+		}
+	}
+
+	/**
+	 * Returns the orders of every node merged by order date, read while
+	 * written as a JSON array.
+	 */
+	private ResponseEntity<?> merged(OrderPage snapshot, HttpServletRequest request) {
+		try {
+			return new ResponseEntity<>(
+					cluster.gather(cluster.served(snapshot.getOrders()).iterator(), pathAndQuery(request),
+							hops(request)),
+					HttpStatus.OK);
+		} catch (UncheckedIOException e) {
+			LOGGER.debug("++++++++++++++++++++++++++++: " + e.getMessage());
+			return new ResponseEntity<>(e.getMessage(), HttpStatus.SERVICE_UNAVAILABLE);
+		}
+	}
+
+	/**
+	 * Returns a page of orders. In a cluster a query of one currency pair goes
+	 * to its node, and any other walks the nodes in ring order with a cursor
+	 * made of the index of the node and its own cursor.
+	 */
+	private ResponseEntity<?> find(OrderQueryDTO query, boolean withCursor, HttpServletRequest request)
+			throws InvalidInputException, ServiceException {
+		if (null != query.getCurrency()) {
+			String owner = routeTo(cluster.route(query.getCurrency()), request);
+			if (null != owner) {
+				return routed(owner, request, null);
+			}
+		}
+		if (null != query.getCurrency() || !gathering(request)) {
+			return page(service.findOrders(query), withCursor);
+		}
+
+		List<String> nodes = cluster.getNodes();
+		String cursor = query.getCursor();
+		int index = 0;
+		String nodeCursor = null;
+		if (null != cursor && !cursor.trim().isEmpty()) {
+			int dot = cursor.indexOf('.');
+			try {
+				index = Integer.parseInt(dot < 0 ? cursor.trim() : cursor.substring(0, dot).trim());
+			} catch (NumberFormatException e) {
+				index = -1;
+			}
+			if (index < 0 || index >= nodes.size()) {
+				throw new InvalidInputException("You have entered invalid cursor: " + cursor);
+			}
+			nodeCursor = dot < 0 || dot == cursor.length() - 1 ? null : cursor.substring(dot + 1);
+		}
+
+		JsonNode body;
+		String next;
+		String snapshot;
+		String node = nodes.get(index);
+		if (node.equals(cluster.getSelf())) {
+			query.setCursor(nodeCursor);
+			OrderPage page = served(service.findOrders(query));
+			body = mapper.valueToTree(withCursor ? page : page.getOrders());
+			next = page.getNextCursor();
+			snapshot = Long.toString(page.getSnapshot());
+		} else {
+			String pathAndQuery = UriComponentsBuilder.fromUriString(pathAndQuery(request))
+					.replaceQueryParam("cursor", null == nodeCursor ? new Object[0] : new Object[] { nodeCursor })
+					.build(true).toUriString();
+			ResponseEntity<byte[]> response = cluster.forward(node, "GET", pathAndQuery, null, null, hops(request));
+			if (!response.getStatusCode().is2xxSuccessful()) {
+				return response;
+			}
+			try {
+				body = mapper.readTree(response.getBody());
+			} catch (IOException e) {
+				return new ResponseEntity<>("Node " + node + " is unavailable!", HttpStatus.SERVICE_UNAVAILABLE);
+			}
+			next = response.getHeaders().getFirst(NEXT_CURSOR_HEADER);
+			snapshot = response.getHeaders().getFirst(SNAPSHOT_HEADER);
+		}
+
+		if (null != next) {
+			next = index + "." + next;
+		} else if (index + 1 < nodes.size()) {
+			next = (index + 1) + ".";
+		}
+		HttpHeaders headers = new HttpHeaders();
+		if (null != snapshot) {
+			headers.set(SNAPSHOT_HEADER, snapshot);
+		}
+		if (null != next) {
+			headers.set(NEXT_CURSOR_HEADER, next);
+		}
+		if (body instanceof ObjectNode) {
+			if (null != next) {
+				((ObjectNode) body).put("nextCursor", next);
+			} else {
+				((ObjectNode) body).remove("nextCursor");
+			}
+		}
+		return new ResponseEntity<>(body, headers, HttpStatus.OK);
+	}
+
+	private byte[] json(Object value) {
+		try {
+			return mapper.writeValueAsBytes(value);
+		} catch (JsonProcessingException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+
+	private static ResponseEntity<byte[]> octets(byte[] content) {
+		return ResponseEntity.ok().contentType(MediaType.APPLICATION_OCTET_STREAM).body(content);
+	}
+
+	/**
+	 * Refuses a read on a follower lagging too far behind its leader.
+	 */
+	private ResponseEntity<?> stale() {
+		return new ResponseEntity<>(lagging(), HttpStatus.SERVICE_UNAVAILABLE);
+	}
+
+	private String lagging() {
+		return "Replica is " + replication.lagMillis() + " ms behind the leader!";
+	}
+
+	/**
+	 * Returns the whole page, or only its orders, with the next cursor in the
+	 * X-Next-Cursor header and the snapshot sequence in the X-Snapshot-Sequence
+	 * header.
+	 */
+	private ResponseEntity<?> page(OrderPage page, boolean withCursor) {
+		HttpHeaders headers = new HttpHeaders();
+		headers.set(SNAPSHOT_HEADER, Long.toString(page.getSnapshot()));
+		if (null != page.getNextCursor()) {
+			headers.set(NEXT_CURSOR_HEADER, page.getNextCursor());
+		}
+		OrderPage served = served(page);
+		Object body = withCursor ? served : served.getOrders();
+		return new ResponseEntity<>(body, headers, HttpStatus.OK);
+	}
+
+	/**
+	 * @return the page without the orders of the pairs this node does not
+	 *         serve in a cluster, which are listed by their holder
+	 */
+	private OrderPage served(OrderPage page) {
+		List<OrderData> orders = cluster.served(page.getOrders());
+		return orders == page.getOrders() ? page
+				: new OrderPage(orders, page.getNextCursor(), page.getSnapshot());
+	}
+
+	/**
+	 * Returns the message of the rejection, with its code and the field at
+	 * fault in the X-Reject-Reason and X-Reject-Field headers when known.
+	 */
+	private static ResponseEntity<?> rejected(InvalidInputException ei) {
+		HttpHeaders headers = new HttpHeaders();
+		if (null != ei.getReason()) {
+			headers.set(REJECT_REASON_HEADER, ei.getReason().name());
+			headers.set(REJECT_FIELD_HEADER, ei.getReason().getField());
+		}
+		return new ResponseEntity<>(ei.getMessage(), headers, HttpStatus.BAD_REQUEST);
+	}
+
+	/**
+	 * Streaming responses can only carry a streaming body, errors included.
+	 */
+	private static ResponseEntity<StreamingResponseBody> error(String message) {
+		return ResponseEntity.badRequest().contentType(MediaType.TEXT_PLAIN)
+				.body(out -> out.write(message.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * Writes every order as a JSON line, the servlet output buffer being flushed
+	 * as it fills up so only one order is held at a time.
+	 */
+	private void writeOrders(Iterator<?> orders, OutputStream out) throws IOException {
+		ObjectWriter writer = mapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+		try (JsonGenerator generator = mapper.getFactory().createGenerator(out)) {
+			generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+			generator.setRootValueSeparator(null);
+			while (orders.hasNext()) {
+				writer.writeValue(generator, orders.next());
+				generator.writeRaw('\n');
+			}
+		}
+	}
 
 }
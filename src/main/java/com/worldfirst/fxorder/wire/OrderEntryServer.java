@@ -0,0 +1,284 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.wire;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.worldfirst.fxorder.domain.CurrencyPair;
+import com.worldfirst.fxorder.exception.InvalidInputException;
+import com.worldfirst.fxorder.exception.ServiceException;
+import com.worldfirst.fxorder.service.CurrencyPairRegistry;
+import com.worldfirst.fxorder.service.IFXTradingService;
+
+/**
+ * Class OrderEntryServer
+ *
+ * It accepts orders and cancellations over TCP in the binary
+ * {@link WireProtocol}, next to the REST API and feeding the same trading
+ * service. Orders are decoded straight from the socket buffer into primitive
+ * fields, with no OrderDTO, JSON or currency symbol parsing, and answered with
+ * an ACK holding the order id or a REJECT holding the validation message.
+ *
+ * Connections are spread over fxorder.wire.threads I/O threads, each one
+ * running a selector, decoding every complete frame of a read and writing
+ * their responses at once. Frames of a connection are handled in order, on
+ * the I/O thread, so in ring ingestion mode a connection waits for each of
+ * its orders to be applied.
+ *
+ * It is started with fxorder.wire.enabled=true.
+ *
+ * @author PM
+ *
+ */
+
+@Component
+@ConditionalOnProperty(name = "fxorder.wire.enabled", havingValue = "true")
+public class OrderEntryServer {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(OrderEntryServer.class);
+
+	@Autowired
+	private IFXTradingService service;
+
+	@Autowired
+	private CurrencyPairRegistry pairs;
+
+	@Value("${fxorder.wire.port:9090}")
+	private int port;
+
+	@Value("${fxorder.wire.threads:2}")
+	private int threads;
+
+	@Value("${fxorder.wire.buffer-size:65536}")
+	private int bufferSize;
+
+	private final WireConnection.FrameHandler handler = this::onFrame;
+
+	private final AtomicLong connections = new AtomicLong();
+
+	private final AtomicLong acked = new AtomicLong();
+
+	private final AtomicLong rejected = new AtomicLong();
+
+	private ServerSocketChannel server;
+
+	private IoThread[] ioThreads;
+
+	private Thread acceptor;
+
+	private volatile boolean running;
+
+	@PostConstruct
+	public void start() throws IOException {
+		server = ServerSocketChannel.open();
+		server.bind(new InetSocketAddress(port));
+		running = true;
+
+		ioThreads = new IoThread[Math.max(1, threads)];
+		for (int i = 0; i < ioThreads.length; i++) {
+			ioThreads[i] = new IoThread("fxorder-wire-" + (i + 1));
+			ioThreads[i].start();
+		}
+
+		acceptor = new Thread(this::accept, "fxorder-wire-acceptor");
+		acceptor.setDaemon(true);
+		acceptor.start();
+		LOGGER.info("Order entry listening on port " + getPort());
+	}
+
+	@PreDestroy
+	public void stop() {
+		running = false;
+		try {
+			server.close();
+		} catch (IOException e) {
+			LOGGER.debug("++++++++++++++++++++++++++++: " + e.getMessage());
+		}
+		for (IoThread ioThread : ioThreads) {
+			ioThread.selector.wakeup();
+		}
+	}
+
+	/**
+	 * @return the port listened to, the one picked by the system when
+	 *         fxorder.wire.port is 0
+	 */
+	public int getPort() {
+		return server.socket().getLocalPort();
+	}
+
+	/**
+	 * @return the number of connections accepted, orders and cancellations
+	 *         acknowledged and rejected
+	 */
+	public Map<String, Object> stats() {
+		Map<String, Object> stats = new LinkedHashMap<String, Object>();
+		stats.put("connections", connections.get());
+		stats.put("acked", acked.get());
+		stats.put("rejected", rejected.get());
+		return stats;
+	}
+
+	// Internal helpers
+
+	private void accept() {
+		int next = 0;
+		while (running) {
+			try {
+				SocketChannel channel = server.accept();
+				channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+				channel.configureBlocking(false);
+				connections.incrementAndGet();
+				ioThreads[next++ % ioThreads.length].register(channel);
+			} catch (IOException e) {
+				if (running) {
+					LOGGER.debug("++++++++++++++++++++++++++++: " + e.getMessage());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Decodes a request and appends its response.
+	 */
+	private void onFrame(ByteBuffer frame, ByteBuffer out) {
+		byte type = frame.get();
+		long clientRef = frame.getLong();
+		try {
+			if (WireProtocol.NEW_ORDER == type) {
+				CurrencyPair pair = pairs.get(frame.getShort());
+				byte side = frame.get();
+				long pricePips = frame.getLong();
+				long amount = frame.getLong();
+				WireProtocol.putAck(out, clientRef,
+						service.saveOrder(pair, pricePips, WireProtocol.side(side), amount));
+			} else if (WireProtocol.CANCEL == type) {
+				long orderId = frame.getLong();
+				service.deleteOrder(orderId);
+				WireProtocol.putAck(out, clientRef, orderId);
+			} else {
+				throw new InvalidInputException("Unknown message type: " + type);
+			}
+			acked.incrementAndGet();
+		} catch (ServiceException e) {
+			LOGGER.debug("++++++++++++++++++++++++++++: " + e.getMessage());
+			rejected.incrementAndGet();
+			WireProtocol.putReject(out, clientRef, e.getMessage());
+		} catch (BufferUnderflowException e) {
+			rejected.incrementAndGet();
+			WireProtocol.putReject(out, clientRef, "Malformed message of type " + type);
+		}
+	}
+
+	/**
+	 * Thread running the selector of its share of the connections.
+	 */
+	private final class IoThread extends Thread {
+
+		private final Selector selector;
+
+		private final Queue<SocketChannel> pending = new ConcurrentLinkedQueue<SocketChannel>();
+
+		IoThread(String name) throws IOException {
+			super(name);
+			setDaemon(true);
+			selector = Selector.open();
+		}
+
+		void register(SocketChannel channel) {
+			pending.add(channel);
+			selector.wakeup();
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (running) {
+					selector.select();
+					for (SocketChannel channel; null != (channel = pending.poll());) {
+						try {
+							channel.register(selector, SelectionKey.OP_READ, new WireConnection(channel, bufferSize));
+						} catch (ClosedChannelException e) {
+							LOGGER.debug("++++++++++++++++++++++++++++: " + e.getMessage());
+						}
+					}
+
+					Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+					while (keys.hasNext()) {
+						SelectionKey key = keys.next();
+						keys.remove();
+						serve(key, (WireConnection) key.attachment());
+					}
+				}
+			} catch (IOException e) {
+				LOGGER.debug("++++++++++++++++++++++++++++: " + e.getMessage());
+			} finally {
+				for (SelectionKey key : selector.keys()) {
+					((WireConnection) key.attachment()).close();
+				}
+				try {
+					selector.close();
+				} catch (IOException e) {
+					LOGGER.debug("++++++++++++++++++++++++++++: " + e.getMessage());
+				}
+			}
+		}
+
+		/**
+		 * Reads and handles the frames of the connection then writes their
+		 * responses, waiting for the client to read them before reading on.
+		 */
+		private void serve(SelectionKey key, WireConnection connection) {
+			try {
+				if (key.isReadable() && !connection.read()) {
+					connection.close();
+					return;
+				}
+				boolean written;
+				boolean full;
+				do {
+					full = connection.process(handler);
+					written = connection.flush();
+				} while (full && written);
+				key.interestOps(written ? SelectionKey.OP_READ : SelectionKey.OP_WRITE);
+			} catch (IOException e) {
+				LOGGER.debug("++++++++++++++++++++++++++++: " + e.getMessage());
+				connection.close();
+			}
+		}
+	}
+
+}
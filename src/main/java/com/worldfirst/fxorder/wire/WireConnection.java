@@ -0,0 +1,121 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.wire;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Class WireConnection
+ *
+ * It holds the input and output buffers of a client connection. Frames are
+ * decoded in place from the input buffer and their responses appended to the
+ * output buffer, which is written once per read.
+ *
+ * Whenever the output buffer cannot take another response the remaining
+ * frames are left in the input buffer until the client reads its responses,
+ * so a client not reading stops being read from.
+ *
+ * @author PM
+ *
+ */
+final class WireConnection {
+
+	/** Decodes the body of a frame and appends its response. */
+	interface FrameHandler {
+
+		void onFrame(ByteBuffer frame, ByteBuffer out);
+	}
+
+	private final SocketChannel channel;
+
+	/** Kept in write mode between calls. */
+	private final ByteBuffer in;
+
+	/** Kept in write mode between calls. */
+	private final ByteBuffer out;
+
+	WireConnection(SocketChannel channel, int bufferSize) {
+		this.channel = channel;
+		this.in = ByteBuffer.allocate(bufferSize);
+		this.out = ByteBuffer.allocate(bufferSize);
+	}
+
+	SocketChannel channel() {
+		return channel;
+	}
+
+	/**
+	 * @return false once the client has closed the connection
+	 */
+	boolean read() throws IOException {
+		return channel.read(in) >= 0;
+	}
+
+	/**
+	 * Handles the complete frames of the input buffer while the output buffer
+	 * can take their responses.
+	 *
+	 * @return true if frames may be left behind a full output buffer
+	 * @throws IOException
+	 *             if a frame length is out of range, the connection being out
+	 *             of sync
+	 */
+	boolean process(FrameHandler handler) throws IOException {
+		in.flip();
+		try {
+			while (in.remaining() >= 4) {
+				if (out.remaining() < 4 + WireProtocol.MAX_FRAME_LENGTH) {
+					return true;
+				}
+				int length = in.getInt(in.position());
+				if (length < 9 || length > WireProtocol.MAX_FRAME_LENGTH) {
+					throw new IOException("Invalid frame length: " + length);
+				}
+				if (in.remaining() < 4 + length) {
+					break;
+				}
+
+				int limit = in.limit();
+				int end = in.position() + 4 + length;
+				in.position(in.position() + 4).limit(end);
+				handler.onFrame(in, out);
+				in.limit(limit).position(end);
+			}
+			return false;
+		} finally {
+			in.compact();
+		}
+	}
+
+	/**
+	 * @return true if every response has been written
+	 */
+	boolean flush() throws IOException {
+		out.flip();
+		try {
+			channel.write(out);
+			return !out.hasRemaining();
+		} finally {
+			out.compact();
+		}
+	}
+
+	void close() {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			// Already closed by the client
+		}
+	}
+
+}
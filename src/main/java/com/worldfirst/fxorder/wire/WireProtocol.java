@@ -0,0 +1,128 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.wire;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import com.worldfirst.fxorder.domain.OrderType;
+
+/**
+ * Class WireProtocol
+ *
+ * It defines the binary order entry protocol served by
+ * {@link OrderEntryServer}. Every frame is an int length, the number of bytes
+ * following it, then a fixed layout body, all numbers being big-endian.
+ *
+ * Requests, answered in the order they are received,
+ *
+ * NEW_ORDER: byte type, long clientRef, short pairId, byte side, long
+ * pricePips, long amount
+ *
+ * CANCEL: byte type, long clientRef, long orderId
+ *
+ * Responses,
+ *
+ * ACK: byte type, long clientRef, long orderId of the order saved or
+ * cancelled
+ *
+ * REJECT: byte type, long clientRef, short messageLength, messageLength UTF-8
+ * bytes of the reason
+ *
+ * The pair id is the index of the pair in the fxorder.pairs configuration and
+ * the price a whole number of pips, 1.2100 being 12100 for GBP/USD. The client
+ * reference is chosen by the client and echoed back.
+ *
+ * @author PM
+ *
+ */
+public final class WireProtocol {
+
+	public static final byte NEW_ORDER = 1;
+
+	public static final byte CANCEL = 2;
+
+	public static final byte ACK = 3;
+
+	public static final byte REJECT = 4;
+
+	public static final byte BID = 1;
+
+	public static final byte ASK = 2;
+
+	/** The length of a NEW_ORDER body. */
+	public static final int NEW_ORDER_LENGTH = 1 + 8 + 2 + 1 + 8 + 8;
+
+	/** The length of a CANCEL or an ACK body. */
+	public static final int ID_LENGTH = 1 + 8 + 8;
+
+	/** The longest body a request or a response can have. */
+	public static final int MAX_FRAME_LENGTH = 1 + 8 + 2 + 512;
+
+	private WireProtocol() {
+	}
+
+	public static void putNewOrder(ByteBuffer buffer, long clientRef, int pairId, OrderType side, long pricePips,
+			long amount) {
+		buffer.putInt(NEW_ORDER_LENGTH);
+		buffer.put(NEW_ORDER);
+		buffer.putLong(clientRef);
+		buffer.putShort((short) pairId);
+		buffer.put(OrderType.BID == side ? BID : ASK);
+		buffer.putLong(pricePips);
+		buffer.putLong(amount);
+	}
+
+	public static void putCancel(ByteBuffer buffer, long clientRef, long orderId) {
+		putId(buffer, CANCEL, clientRef, orderId);
+	}
+
+	public static void putAck(ByteBuffer buffer, long clientRef, long orderId) {
+		putId(buffer, ACK, clientRef, orderId);
+	}
+
+	public static void putReject(ByteBuffer buffer, long clientRef, String message) {
+		byte[] bytes = (null == message ? "" : message).getBytes(StandardCharsets.UTF_8);
+		int length = Math.min(bytes.length, MAX_FRAME_LENGTH - 11);
+		buffer.putInt(1 + 8 + 2 + length);
+		buffer.put(REJECT);
+		buffer.putLong(clientRef);
+		buffer.putShort((short) length);
+		buffer.put(bytes, 0, length);
+	}
+
+	/**
+	 * @return the side of a NEW_ORDER, or null if unknown
+	 */
+	public static OrderType side(byte side) {
+		return BID == side ? OrderType.BID : ASK == side ? OrderType.ASK : null;
+	}
+
+	/**
+	 * Reads the reason of a REJECT, the buffer being positioned after the client
+	 * reference.
+	 */
+	public static String getMessage(ByteBuffer buffer) {
+		byte[] message = new byte[buffer.getShort() & 0xFFFF];
+		buffer.get(message);
+		return new String(message, StandardCharsets.UTF_8);
+	}
+
+	// Internal helpers
+
+	private static void putId(ByteBuffer buffer, byte type, long clientRef, long orderId) {
+		buffer.putInt(ID_LENGTH);
+		buffer.put(type);
+		buffer.putLong(clientRef);
+		buffer.putLong(orderId);
+	}
+
+}
@@ -0,0 +1,94 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.cluster;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * JUnit Test class for ConsistentHashRing
+ *
+ * @author PM
+ *
+ */
+public class ConsistentHashRingTest {
+
+	private static final int KEYS = 20000;
+
+	private final List<String> nodes = Arrays.asList("http://localhost:8081", "http://localhost:8082",
+			"http://localhost:8083");
+
+	@Test
+	public void shouldAssignEveryKeyToTheSameNodeWhateverTheNodeOrder() {
+
+		ConsistentHashRing ring = new ConsistentHashRing(nodes, 128);
+		ConsistentHashRing reversed = new ConsistentHashRing(
+				Arrays.asList(nodes.get(2), nodes.get(1), nodes.get(0), nodes.get(1)), 128);
+
+		assertThat(reversed.getNodes()).isEqualTo(ring.getNodes());
+		for (int i = 0; i < KEYS; i++) {
+			assertThat(reversed.owner(key(i))).isEqualTo(ring.owner(key(i)));
+		}
+		assertThat(new ConsistentHashRing(Arrays.<String> asList(), 128).owner("GBP/USD")).isNull();
+	}
+
+	@Test
+	public void shouldSpreadTheKeysEvenlyOverTheNodes() {
+
+		ConsistentHashRing ring = new ConsistentHashRing(nodes, 128);
+
+		Map<String, Integer> counts = new HashMap<String, Integer>();
+		for (int i = 0; i < KEYS; i++) {
+			counts.merge(ring.owner(key(i)), 1, Integer::sum);
+		}
+		assertThat(counts).hasSize(3);
+		for (int count : counts.values()) {
+			assertThat(count).isBetween(KEYS / 3 * 7 / 10, KEYS / 3 * 13 / 10);
+		}
+	}
+
+	@Test
+	public void shouldOnlyMoveTheKeysOfTheJoiningOrLeavingNode() {
+
+		ConsistentHashRing ring = new ConsistentHashRing(nodes, 128);
+		String joining = "http://localhost:8084";
+		ConsistentHashRing joined = ring.with(joining);
+
+		int moved = 0;
+		for (int i = 0; i < KEYS; i++) {
+			String before = ring.owner(key(i));
+			String after = joined.owner(key(i));
+			if (!before.equals(after)) {
+				assertThat(after).isEqualTo(joining);
+				moved++;
+			}
+		}
+		assertThat(moved).isBetween(KEYS / 4 * 7 / 10, KEYS / 4 * 13 / 10);
+
+		ConsistentHashRing left = joined.without(joining);
+		for (int i = 0; i < KEYS; i++) {
+			assertThat(left.owner(key(i))).isEqualTo(ring.owner(key(i)));
+		}
+	}
+
+	// Internal helpers
+
+	private static String key(int i) {
+		return "C" + (i / 100) + "/Q" + (i % 100);
+	}
+
+}
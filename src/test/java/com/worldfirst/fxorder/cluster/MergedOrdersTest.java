@@ -0,0 +1,61 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.cluster;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * JUnit Test class for MergedOrders
+ *
+ * @author PM
+ *
+ */
+public class MergedOrdersTest {
+
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	@Test
+	public void shouldMergeTheOrdersOfEveryNodeByOrderDateThenId() throws IOException {
+
+		MergedOrders merged = new MergedOrders(Arrays.asList(
+				listing("[{\"id\":\"4\",\"orderDate\":100},{\"id\":\"9\",\"orderDate\":300}]"),
+				listing("{\"id\":\"2\",\"orderDate\":100}\n{\"id\":\"7\",\"orderDate\":200}\n"),
+				listing("[]"),
+				listing("[{\"id\":\"1\",\"orderDate\":400}]")));
+
+		List<String> ids = new ArrayList<String>();
+		while (merged.hasNext()) {
+			ids.add(merged.next().get("id").asText());
+		}
+		assertThat(ids).containsExactly("2", "4", "7", "9", "1");
+	}
+
+	// Internal helpers
+
+	private Iterator<JsonNode> listing(String json) throws IOException {
+		return mapper.readerFor(JsonNode.class)
+				.readValues(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+	}
+
+}
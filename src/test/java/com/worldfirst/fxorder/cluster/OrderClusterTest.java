@@ -0,0 +1,375 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.cluster;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.worldfirst.fxorder.domain.CurrencyPair;
+import com.worldfirst.fxorder.domain.OrderData;
+import com.worldfirst.fxorder.domain.OrderType;
+import com.worldfirst.fxorder.metrics.OrderMetrics;
+import com.worldfirst.fxorder.pipeline.OrderEventHandler;
+import com.worldfirst.fxorder.service.CurrencyPairProperties;
+import com.worldfirst.fxorder.service.CurrencyPairRegistry;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * JUnit Test class for OrderCluster, two nodes migrating the currency pairs
+ * in process through a {@link StubClusterClient}
+ *
+ * @author PM
+ *
+ */
+public class OrderClusterTest {
+
+	private static final String NODE_A = "http://node-a";
+
+	private static final String NODE_B = "http://node-b";
+
+	private static final int ORDERS_PER_PAIR = 20;
+
+	private final AtomicLong ids = new AtomicLong();
+
+	private CurrencyPairRegistry pairs;
+
+	private StubClusterClient client;
+
+	private OrderCluster a;
+
+	private OrderCluster b;
+
+	private MemoryStore storeA;
+
+	private MemoryStore storeB;
+
+	private OrderEventHandler handlerA;
+
+	@Before
+	public void setUp() {
+		CurrencyPairProperties properties = new CurrencyPairProperties();
+		List<CurrencyPairProperties.Pair> configured = new ArrayList<CurrencyPairProperties.Pair>();
+		for (String symbol : Arrays.asList("GBP/USD", "EUR/USD", "USD/CHF", "AUD/USD", "USD/CAD", "NZD/USD",
+				"EUR/GBP", "EUR/CHF")) {
+			CurrencyPairProperties.Pair pair = new CurrencyPairProperties.Pair();
+			pair.setSymbol(symbol);
+			pair.setScale(4);
+			pair.setTickSize(new BigDecimal("0.0001"));
+			configured.add(pair);
+		}
+		properties.setPairs(configured);
+		pairs = new CurrencyPairRegistry(properties);
+
+		client = new StubClusterClient();
+		storeA = new MemoryStore();
+		storeB = new MemoryStore();
+		a = cluster(NODE_A);
+		b = cluster(NODE_B);
+		handlerA = a.open(storeA, storeA::ordersOf);
+		b.open(storeB, storeB::ordersOf);
+		client.install(a);
+		client.install(b);
+		client.connect(NODE_A, a);
+		client.connect(NODE_B, b);
+
+		for (CurrencyPair pair : pairs.pairs()) {
+			for (int i = 0; i < ORDERS_PER_PAIR; i++) {
+				handlerA.onAdd(order(pair));
+			}
+		}
+	}
+
+	@After
+	public void tearDown() {
+		a.close();
+		b.close();
+	}
+
+	@Test
+	public void shouldPullThePairsOfAJoiningNodeAndGiveThemBackWhenItLeaves() throws InterruptedException {
+
+		assertThat(b.getNodes()).containsExactly(NODE_A);
+
+		a.join(NODE_B);
+		awaitMigrations();
+
+		List<CurrencyPair> moved = pairsOf(NODE_B);
+		assertThat(moved).isNotEmpty();
+		assertThat(pairsOf(NODE_A)).isNotEmpty();
+		assertThat(a.getNodes()).containsExactly(NODE_A, NODE_B);
+		assertThat(b.getNodes()).containsExactly(NODE_A, NODE_B);
+		for (CurrencyPair pair : pairs.pairs()) {
+			boolean onB = moved.contains(pair);
+			assertThat(storeB.count(pair)).isEqualTo(onB ? ORDERS_PER_PAIR : 0);
+			assertThat(storeA.count(pair)).isEqualTo(onB ? 0 : ORDERS_PER_PAIR);
+			assertThat(a.route(pair.getSymbol())).isEqualTo(onB ? NODE_B : null);
+			assertThat(b.route(pair.getSymbol())).isEqualTo(onB ? null : NODE_A);
+		}
+
+		a.leave(NODE_B);
+		awaitMigrations();
+
+		for (CurrencyPair pair : pairs.pairs()) {
+			assertThat(storeA.count(pair)).isEqualTo(ORDERS_PER_PAIR);
+			assertThat(storeB.count(pair)).isEqualTo(0);
+			assertThat(a.route(pair.getSymbol())).isNull();
+		}
+	}
+
+	@Test
+	public void shouldReplayTheEventsRecordedWhilePulled() throws InterruptedException {
+
+		CurrencyPair pair = pairsOf(NODE_B).get(0);
+		OrderData cancelled = storeA.orders().stream().filter(order -> order.getPair() == pair).findFirst().get();
+		List<OrderData> added = new ArrayList<OrderData>();
+		client.before("/events", () -> {
+			added.add(order(pair));
+			handlerA.onAdd(added.get(0));
+			handlerA.onCancel(cancelled.getId());
+		});
+
+		a.join(NODE_B);
+		awaitMigrations();
+
+		assertThat(storeB.count(pair)).isEqualTo(ORDERS_PER_PAIR);
+		assertThat(storeB.contains(added.get(0).getId())).isTrue();
+		assertThat(storeB.contains(cancelled.getId())).isFalse();
+		assertThat(storeA.count(pair)).isEqualTo(0);
+	}
+
+	@Test
+	public void shouldPullThePairAgainWhenTheEventsFailBeforeTheHandoff() throws InterruptedException {
+
+		client.failRequest("/events");
+
+		a.join(NODE_B);
+		awaitMigrations();
+
+		for (CurrencyPair pair : pairsOf(NODE_B)) {
+			assertThat(storeB.count(pair)).isEqualTo(ORDERS_PER_PAIR);
+			assertThat(storeA.count(pair)).isEqualTo(0);
+		}
+		CurrencyPair pair = pairsOf(NODE_B).get(0);
+		assertThat(after(path(pair, "events"), path(pair, "snapshot"))).isTrue();
+	}
+
+	@Test
+	public void shouldReadTheHandoffAgainRatherThanPullThePairAgain() throws InterruptedException {
+
+		CurrencyPair pair = pairsOf(NODE_B).get(0);
+		OrderData cancelled = storeA.orders().stream().filter(order -> order.getPair() == pair).findFirst().get();
+		client.before("/handoff", () -> handlerA.onCancel(cancelled.getId()));
+		client.failResponse("/handoff");
+
+		a.join(NODE_B);
+		awaitMigrations();
+
+		assertThat(storeB.count(pair)).isEqualTo(ORDERS_PER_PAIR - 1);
+		assertThat(storeB.contains(cancelled.getId())).isFalse();
+		assertThat(storeA.count(pair)).isEqualTo(0);
+		assertThat(client.count(path(pair, "handoff"))).isEqualTo(2);
+		assertThat(after(path(pair, "handoff"), path(pair, "snapshot"))).isFalse();
+		assertThat(a.route(pair.getSymbol())).isEqualTo(NODE_B);
+		assertThat(b.route(pair.getSymbol())).isNull();
+	}
+
+	@Test
+	public void shouldRetryTheCompletionAndListAPairOnlyWhereServed() throws InterruptedException {
+
+		client.failRequest("/complete");
+
+		a.join(NODE_B);
+		awaitMigrations();
+
+		List<CurrencyPair> moved = pairsOf(NODE_B);
+		assertThat(client.count("/complete")).isEqualTo(moved.size() + 1);
+		for (CurrencyPair pair : moved) {
+			assertThat(storeA.count(pair)).isEqualTo(0);
+		}
+
+		List<OrderData> listed = new ArrayList<OrderData>(a.served(storeA.orders()));
+		listed.addAll(b.served(storeB.orders()));
+		assertThat(listed).hasSize(pairs.pairs().size() * ORDERS_PER_PAIR);
+	}
+
+	@Test
+	public void shouldLeaveThePairsHandedOverOutOfTheListings() throws InterruptedException {
+
+		CurrencyPair pair = pairsOf(NODE_B).get(0);
+		client.before("/complete", () -> ReflectionTestUtils.setField(b, "migrationRetryMs", 60000L));
+		client.failRequest("/complete");
+
+		a.join(NODE_B);
+		awaitPulls();
+
+		assertThat(storeA.count(pair)).isEqualTo(ORDERS_PER_PAIR);
+		assertThat(a.stats().get("handedOverTo").toString()).contains(pair.getSymbol());
+		assertThat(a.served(storeA.orders())).noneMatch(order -> order.getPair() == pair);
+		Iterator<OrderData> listed = a.served(storeA.orders().iterator());
+		while (listed.hasNext()) {
+			assertThat(listed.next().getPair()).isNotSameAs(pair);
+		}
+		assertThat(b.served(storeB.orders())).filteredOn(order -> order.getPair() == pair)
+				.hasSize(ORDERS_PER_PAIR);
+	}
+
+	// Internal helpers
+
+	private OrderCluster cluster(String self) {
+		OrderCluster cluster = new OrderCluster();
+		ReflectionTestUtils.setField(cluster, "enabled", true);
+		ReflectionTestUtils.setField(cluster, "self", self);
+		ReflectionTestUtils.setField(cluster, "nodes", NODE_A);
+		ReflectionTestUtils.setField(cluster, "virtualNodes", 128);
+		ReflectionTestUtils.setField(cluster, "routing", "forward");
+		ReflectionTestUtils.setField(cluster, "migrationLogSize", 1024);
+		ReflectionTestUtils.setField(cluster, "migrationPollMs", 10L);
+		ReflectionTestUtils.setField(cluster, "migrationRetryMs", 10L);
+		ReflectionTestUtils.setField(cluster, "pairs", pairs);
+		ReflectionTestUtils.setField(cluster, "metrics", new OrderMetrics(new SimpleMeterRegistry()));
+		ReflectionTestUtils.setField(cluster, "mapper", new ObjectMapper());
+		return cluster;
+	}
+
+	/**
+	 * @return the pairs the node owns once node B joined
+	 */
+	private List<CurrencyPair> pairsOf(String node) {
+		ConsistentHashRing ring = new ConsistentHashRing(Arrays.asList(NODE_A, NODE_B), 128);
+		List<CurrencyPair> owned = new ArrayList<CurrencyPair>();
+		for (CurrencyPair pair : pairs.pairs()) {
+			if (node.equals(ring.owner(pair.getSymbol()))) {
+				owned.add(pair);
+			}
+		}
+		return owned;
+	}
+
+	private static String path(CurrencyPair pair, String step) {
+		return "/v1/cluster/pairs/" + pair.getId() + "/" + step;
+	}
+
+	/**
+	 * @return true if a request for the second path was sent after the first
+	 *         request for the first path
+	 */
+	private boolean after(String first, String second) {
+		List<String> requests = client.getRequests();
+		int start = -1;
+		for (int i = 0; i < requests.size(); i++) {
+			if (start < 0 && requests.get(i).contains(first)) {
+				start = i;
+			} else if (start >= 0 && requests.get(i).contains(second)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private OrderData order(CurrencyPair pair) {
+		return new OrderData(ids.incrementAndGet(), pair, 10000 + ids.get(), 1000, OrderType.BID,
+				System.currentTimeMillis());
+	}
+
+	/**
+	 * Waits until no node pulls a pair or keeps one handed over.
+	 */
+	private void awaitMigrations() throws InterruptedException {
+		await(() -> idle(a, "pullingFrom") && idle(b, "pullingFrom") && idle(a, "handedOverTo")
+				&& idle(b, "handedOverTo"));
+	}
+
+	private void awaitPulls() throws InterruptedException {
+		await(() -> idle(a, "pullingFrom") && idle(b, "pullingFrom") && !idle(a, "handedOverTo"));
+	}
+
+	private static void await(BooleanSupplier done) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (!done.getAsBoolean()) {
+			assertThat(System.currentTimeMillis()).isLessThan(deadline);
+			Thread.sleep(10);
+		}
+	}
+
+	private static boolean idle(OrderCluster cluster, String state) {
+		return ((Map<?, ?>) cluster.stats().get(state)).isEmpty();
+	}
+
+	/**
+	 * Keeps the orders of a node in arrival order.
+	 */
+	private static final class MemoryStore implements OrderEventHandler {
+
+		private final Map<Long, OrderData> orders = new LinkedHashMap<Long, OrderData>();
+
+		@Override
+		public synchronized boolean onAdd(OrderData order) {
+			orders.put(order.getId(), order);
+			return true;
+		}
+
+		@Override
+		public synchronized boolean onCancel(long orderId) {
+			return null != orders.remove(orderId);
+		}
+
+		@Override
+		public synchronized int shardOf(long orderId) {
+			OrderData order = orders.get(orderId);
+			return null == order ? -1 : order.getPair().getId();
+		}
+
+		synchronized List<OrderData> orders() {
+			return new ArrayList<OrderData>(orders.values());
+		}
+
+		synchronized List<OrderData> ordersOf(CurrencyPair pair) {
+			List<OrderData> ordersOf = new ArrayList<OrderData>();
+			for (OrderData order : orders.values()) {
+				if (order.getPair() == pair) {
+					ordersOf.add(order);
+				}
+			}
+			return ordersOf;
+		}
+
+		synchronized boolean contains(long orderId) {
+			return orders.containsKey(orderId);
+		}
+
+		synchronized int count(CurrencyPair pair) {
+			int count = 0;
+			for (OrderData order : orders.values()) {
+				if (order.getPair() == pair) {
+					count++;
+				}
+			}
+			return count;
+		}
+	}
+
+}
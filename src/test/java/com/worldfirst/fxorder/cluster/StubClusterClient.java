@@ -0,0 +1,209 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.cluster;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.util.UriComponents;
+import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.web.util.UriUtils;
+
+/**
+ * Class StubClusterClient
+ *
+ * It stands for the HTTP client of a node in tests, recording every request.
+ * The requests to a node registered with {@link #connect} are served by its
+ * OrderCluster in process, the others get the answer given for their URL or
+ * 404. A step of a migration can be made to fail once, before or after the
+ * node served it.
+ *
+ * @author PM
+ *
+ */
+public class StubClusterClient extends ClusterClient {
+
+	private final Map<String, OrderCluster> clusters = new ConcurrentHashMap<String, OrderCluster>();
+
+	private final Map<String, ResponseEntity<byte[]>> answers = new ConcurrentHashMap<String, ResponseEntity<byte[]>>();
+
+	private final Map<String, Boolean> failures = new ConcurrentHashMap<String, Boolean>();
+
+	private final Map<String, Runnable> actions = new ConcurrentHashMap<String, Runnable>();
+
+	private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+
+	public StubClusterClient() {
+		super(0, 0);
+	}
+
+	/**
+	 * Makes the cluster use this client.
+	 */
+	public void install(OrderCluster cluster) {
+		ReflectionTestUtils.setField(cluster, "client", this);
+	}
+
+	/**
+	 * Serves the requests to the node by the given cluster.
+	 */
+	public void connect(String node, OrderCluster cluster) {
+		clusters.put(node, cluster);
+	}
+
+	/**
+	 * Answers the requests to the URL, its query left out, with the response.
+	 */
+	public void answer(String url, ResponseEntity<byte[]> response) {
+		answers.put(url, response);
+	}
+
+	/**
+	 * Fails the next request of a migration step, like "/handoff", the node
+	 * not reached.
+	 */
+	public void failRequest(String step) {
+		failures.put(step, false);
+	}
+
+	/**
+	 * Fails the next request of a migration step once the node served it, its
+	 * response lost.
+	 */
+	public void failResponse(String step) {
+		failures.put(step, true);
+	}
+
+	/**
+	 * Runs the action when the next request of a migration step is sent,
+	 * before it fails or the node serves it.
+	 */
+	public void before(String step, Runnable action) {
+		actions.put(step, action);
+	}
+
+	/**
+	 * @return the requests sent, as method and URL
+	 */
+	public List<String> getRequests() {
+		synchronized (requests) {
+			return new ArrayList<String>(requests);
+		}
+	}
+
+	/**
+	 * @return the number of requests sent whose URL contains the text
+	 */
+	public int count(String text) {
+		int count = 0;
+		for (String request : getRequests()) {
+			if (request.contains(text)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Override
+	ResponseEntity<byte[]> exchange(String method, String url, byte[] body, String contentType, int hops)
+			throws IOException {
+		requests.add(method + " " + url);
+		UriComponents uri = UriComponentsBuilder.fromUriString(url).build();
+		OrderCluster cluster = clusters.get(node(uri));
+		if (null != cluster && "/v1/cluster/members".equals(uri.getPath())) {
+			MultiValueMap<String, String> query = uri.getQueryParams();
+			boolean installed = cluster.install(Long.parseLong(query.getFirst("version")), decode(query.get("node")),
+					decode(query.get("previous")));
+			return new ResponseEntity<>(new byte[0], installed ? HttpStatus.OK : HttpStatus.CONFLICT);
+		}
+		ResponseEntity<byte[]> answer = answers.get(node(uri) + uri.getPath());
+		return null != answer ? answer : new ResponseEntity<>(new byte[0], HttpStatus.NOT_FOUND);
+	}
+
+	@Override
+	InputStream open(String method, String url, byte[] body, String contentType, int hops) throws IOException {
+		requests.add(method + " " + url);
+		UriComponents uri = UriComponentsBuilder.fromUriString(url).build();
+		OrderCluster cluster = clusters.get(node(uri));
+		if (null == cluster) {
+			ResponseEntity<byte[]> answer = answers.get(node(uri) + uri.getPath());
+			if (null == answer) {
+				throw new IOException(method + " " + url + " answered 404");
+			}
+			return new ByteArrayInputStream(answer.getBody());
+		}
+
+		String path = uri.getPath();
+		String step = path.substring(path.lastIndexOf('/'));
+		Runnable action = actions.remove(step);
+		if (null != action) {
+			action.run();
+		}
+		Boolean failure = failures.remove(step);
+		if (Boolean.FALSE.equals(failure)) {
+			throw new IOException(method + " " + url + " failed");
+		}
+
+		int pairId = Integer.parseInt(path.split("/")[4]);
+		String after = uri.getQueryParams().getFirst("after");
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			if ("/snapshot".equals(step)) {
+				cluster.migrationSnapshot(pairId).writeTo(out);
+			} else if ("/events".equals(step)) {
+				out.write(cluster.migrationEvents(pairId, Long.parseLong(after)));
+			} else if ("/handoff".equals(step)) {
+				out.write(cluster.handoff(pairId, Long.parseLong(after)));
+			} else if ("/complete".equals(step)) {
+				cluster.completeMigration(pairId);
+			} else {
+				throw new IOException(method + " " + url + " answered 404");
+			}
+		} catch (IllegalStateException e) {
+			throw new IOException(method + " " + url + " answered 409 " + e.getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(method + " " + url + " interrupted");
+		}
+		if (Boolean.TRUE.equals(failure)) {
+			throw new IOException(method + " " + url + " lost its response");
+		}
+		return new ByteArrayInputStream(out.toByteArray());
+	}
+
+	// Internal helpers
+
+	private static String node(UriComponents uri) {
+		return uri.getScheme() + "://" + uri.getHost() + (uri.getPort() < 0 ? "" : ":" + uri.getPort());
+	}
+
+	private static List<String> decode(List<String> values) {
+		List<String> decoded = new ArrayList<String>();
+		if (null != values) {
+			for (String value : values) {
+				decoded.add(UriUtils.decode(value, "UTF-8"));
+			}
+		}
+		return decoded;
+	}
+
+}
@@ -0,0 +1,297 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.engine;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.worldfirst.fxorder.domain.BookDepth;
+import com.worldfirst.fxorder.domain.CurrencyPair;
+import com.worldfirst.fxorder.domain.DepthLevel;
+import com.worldfirst.fxorder.domain.ExecutionReport;
+import com.worldfirst.fxorder.domain.OrderData;
+import com.worldfirst.fxorder.domain.OrderType;
+import com.worldfirst.fxorder.domain.PairStats;
+import com.worldfirst.fxorder.domain.TimeInForce;
+
+/**
+ * JUnit Test class for LimitOrderBook
+ *
+ * @author PM
+ *
+ */
+public class LimitOrderBookTest implements ExecutionListener {
+
+	private static final CurrencyPair GBPUSD = new CurrencyPair(0, "GBP/USD", 4);
+
+	private static final long A1 = 11L;
+
+	private static final long A2 = 12L;
+
+	private static final long A3 = 13L;
+
+	private static final long B1 = 21L;
+
+	private static final long B2 = 22L;
+
+	private LimitOrderBook book;
+
+	private List<ExecutionReport> executions;
+
+	private List<OrderData> filled;
+
+	@Before
+	public void setUp() {
+		book = new LimitOrderBook(GBPUSD);
+		executions = new ArrayList<ExecutionReport>();
+		filled = new ArrayList<OrderData>();
+	}
+
+	@Test
+	public void shouldRestOrdersThatDoNotCross() {
+
+		assertThat(submit(A1, OrderType.ASK, 12110, 500)).isEqualTo(500);
+		assertThat(submit(B1, OrderType.BID, 12100, 500)).isEqualTo(500);
+
+		assertThat(executions).isEmpty();
+		assertThat(book.bestBid()).isEqualTo(12100);
+		assertThat(book.bestAsk()).isEqualTo(12110);
+		assertThat(book.size()).isEqualTo(2);
+	}
+
+	@Test
+	public void shouldFillAtRestingPriceWithPriceThenTimePriority() {
+
+		submit(A1, OrderType.ASK, 12105, 300);
+		submit(A2, OrderType.ASK, 12100, 200);
+		submit(A3, OrderType.ASK, 12100, 400);
+
+		assertThat(submit(B1, OrderType.BID, 12110, 800)).isEqualTo(0);
+
+		assertThat(executions).extracting(ExecutionReport::getAskOrderId).containsExactly(A2, A3, A1);
+		assertThat(executions).extracting(ExecutionReport::getAmount).containsExactly(200L, 400L, 200L);
+		assertThat(executions).extracting(ExecutionReport::getPricePips).containsExactly(12100L, 12100L, 12105L);
+		assertThat(filled).extracting(OrderData::getId).containsExactly(A2, A3, B1);
+
+		List<OrderData> resting = new ArrayList<OrderData>();
+		book.restingOrders(resting);
+		assertThat(resting).extracting(OrderData::getId).containsExactly(A1);
+		assertThat(resting.get(0).getAmount()).isEqualTo(100L);
+	}
+
+	@Test
+	public void shouldRestRemainingAmountOfPartiallyFilledOrder() {
+
+		submit(B1, OrderType.BID, 12100, 300);
+
+		assertThat(submit(A1, OrderType.ASK, 12090, 1000)).isEqualTo(700);
+
+		assertThat(executions).hasSize(1);
+		assertThat(executions.get(0).getAggressor()).isEqualTo(OrderType.ASK);
+		assertThat(book.bestBid()).isEqualTo(0);
+		assertThat(book.bestAsk()).isEqualTo(12090);
+	}
+
+	@Test
+	public void shouldCancelRestingOrderOnly() {
+
+		submit(B1, OrderType.BID, 12100, 300);
+		submit(B2, OrderType.BID, 12100, 300);
+
+		assertThat(book.cancel(B1).getId()).isEqualTo(B1);
+		assertThat(book.cancel(B1)).isNull();
+
+		submit(A1, OrderType.ASK, 12100, 300);
+
+		assertThat(executions).extracting(ExecutionReport::getBidOrderId).containsExactly(B2);
+		assertThat(book.size()).isEqualTo(0);
+		assertThat(book.cancel(B2)).isNull();
+	}
+
+	@Test
+	public void shouldDropRemainingAmountOfImmediateOrCancelOrder() {
+
+		submit(A1, OrderType.ASK, 12100, 300);
+		submit(A2, OrderType.ASK, 12110, 300);
+
+		assertThat(submit(B1, OrderType.BID, 12100, 500, TimeInForce.IOC)).isEqualTo(200);
+
+		assertThat(executions).extracting(ExecutionReport::getAskOrderId).containsExactly(A1);
+		assertThat(book.contains(B1)).isFalse();
+		assertThat(book.bestBid()).isEqualTo(0);
+		assertThat(book.bestAsk()).isEqualTo(12110);
+	}
+
+	@Test
+	public void shouldFillOrKillWholeOrderOnly() {
+
+		submit(A1, OrderType.ASK, 12100, 300);
+		submit(A2, OrderType.ASK, 12105, 300);
+		submit(A3, OrderType.ASK, 12110, 300);
+
+		// 600 within the limit, so nothing trades
+		assertThat(submit(B1, OrderType.BID, 12105, 700, TimeInForce.FOK)).isEqualTo(700);
+		assertThat(executions).isEmpty();
+		assertThat(book.size()).isEqualTo(3);
+
+		assertThat(submit(B2, OrderType.BID, 12105, 600, TimeInForce.FOK)).isEqualTo(0);
+		assertThat(executions).extracting(ExecutionReport::getAskOrderId).containsExactly(A1, A2);
+		assertThat(filled).extracting(OrderData::getId).containsExactly(A1, A2, B2);
+		assertThat(book.size()).isEqualTo(1);
+		assertThat(book.contains(B1)).isFalse();
+	}
+
+	/**
+	 * The depth and the statistics follow the orders resting, filling and
+	 * leaving the book from the totals of the levels and sides.
+	 */
+	@Test
+	public void shouldAggregateDepthAndStatisticsOfRestingOrders() {
+
+		submit(A1, OrderType.ASK, 12110, 300);
+		submit(A2, OrderType.ASK, 12110, 200);
+		submit(A3, OrderType.ASK, 12120, 500);
+		submit(B1, OrderType.BID, 12100, 400);
+		submit(B2, OrderType.BID, 12110, 100);
+		book.cancel(A3);
+
+		BookDepth depth = book.depth(5);
+		assertThat(depth.getAsks()).extracting(DepthLevel::getPricePips, DepthLevel::getOrders, DepthLevel::getAmount)
+				.containsExactly(tuple(12110L, 2L, 400L));
+		assertThat(depth.getBids()).extracting(DepthLevel::getPricePips, DepthLevel::getOrders, DepthLevel::getAmount)
+				.containsExactly(tuple(12100L, 1L, 400L));
+
+		submit(A3, OrderType.ASK, 12090, 100);
+		PairStats stats = book.stats(filled.size());
+		assertThat(stats.getMatched()).isEqualTo(2);
+		assertThat(stats.getBids().getOrders()).isEqualTo(1);
+		assertThat(stats.getBids().getAmount()).isEqualTo(300);
+		assertThat(stats.getAsks().getOrders()).isEqualTo(2);
+		assertThat(stats.getAsks().getAmount()).isEqualTo(400);
+		assertThat(stats.getAsks().getBestPrice()).isEqualByComparingTo("1.2110");
+		assertThat(stats.getAsks().getVwap()).isEqualByComparingTo("1.2110");
+		assertThat(book.depth(1).getBids()).hasSize(1);
+	}
+
+	@Test
+	public void shouldAverageThePriceOfAmountsWhoseNotionalExceedsALong() {
+
+		submit(A1, OrderType.ASK, 12110, 400000000000000L);
+		submit(A2, OrderType.ASK, 12110, 400000000000000L);
+		submit(A3, OrderType.ASK, 12120, 400000000000000L);
+
+		PairStats stats = book.stats(filled.size());
+		assertThat(stats.getAsks().getAmount()).isEqualTo(1200000000000000L);
+		assertThat(stats.getAsks().getVwap()).isEqualByComparingTo("1.211333");
+	}
+
+	@Test
+	public void shouldListTheOrdersOfAPriceLevelInTimePriority() {
+
+		submit(A2, OrderType.ASK, 12110, 200);
+		submit(A1, OrderType.ASK, 12110, 300);
+		submit(A3, OrderType.ASK, 12120, 500);
+		submit(B1, OrderType.BID, 12100, 400);
+
+		assertThat(book.levelOrders(OrderType.ASK, 12110)).containsExactly(A2, A1);
+		assertThat(book.levelOrders(OrderType.BID, 12110)).isEmpty();
+
+		book.cancel(A2);
+		book.cancel(A1);
+		assertThat(book.levelOrders(OrderType.ASK, 12110)).isEmpty();
+		assertThat(book.levelOrders(OrderType.ASK, 12120)).containsExactly(A3);
+	}
+
+	@Test
+	public void shouldKeepTimePriorityOfAReducedOrder() {
+
+		submit(A1, OrderType.ASK, 12110, 300);
+		submit(A2, OrderType.ASK, 12110, 300);
+
+		assertThat(book.reduce(A1, 100)).isTrue();
+		assertThat(book.resting(A1).getAmount()).isEqualTo(100L);
+		assertThat(book.depth(1).getAsks().get(0).getAmount()).isEqualTo(400L);
+		assertThat(book.reduce(B1, 100)).isFalse();
+
+		assertThat(submit(B1, OrderType.BID, 12110, 200)).isEqualTo(0);
+		assertThat(executions).extracting(ExecutionReport::getAskOrderId).containsExactly(A1, A2);
+		assertThat(executions).extracting(ExecutionReport::getAmount).containsExactly(100L, 100L);
+	}
+
+	/**
+	 * Once warm the book recycles its book orders and price levels, so resting
+	 * and cancelling orders allocates nothing.
+	 */
+	@Test
+	public void shouldNotAllocateWhenRestingAndCancellingOnceWarm() {
+
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+		Assume.assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+		OrderData[] orders = new OrderData[10000];
+		for (int i = 0; i < orders.length; i++) {
+			boolean bid = (i & 1) == 0;
+			orders[i] = new OrderData(i + 1, GBPUSD, (bid ? 11000 : 13000) + i % 500, 100 + i,
+					bid ? OrderType.BID : OrderType.ASK, 0L);
+		}
+		for (int i = 0; i < 20; i++) {
+			restAndCancel(orders);
+		}
+
+		long thread = Thread.currentThread().getId();
+		long before = threads.getThreadAllocatedBytes(thread);
+		restAndCancel(orders);
+		long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+		assertThat(allocated).isLessThan(orders.length);
+		assertThat(book.size()).isEqualTo(0);
+		assertThat(executions).isEmpty();
+	}
+
+	@Override
+	public void onExecution(ExecutionReport report) {
+		executions.add(report);
+	}
+
+	@Override
+	public void onOrderFilled(OrderData order) {
+		filled.add(order);
+	}
+
+	private void restAndCancel(OrderData[] orders) {
+		for (OrderData order : orders) {
+			book.submit(order, this);
+		}
+		for (OrderData order : orders) {
+			book.cancel(order.getId());
+		}
+	}
+
+	private long submit(long id, OrderType orderType, long pricePips, long amount) {
+		return submit(id, orderType, pricePips, amount, TimeInForce.GTC);
+	}
+
+	private long submit(long id, OrderType orderType, long pricePips, long amount, TimeInForce timeInForce) {
+		OrderData order = new OrderData(id, GBPUSD, pricePips, amount, orderType, 0L);
+		order.setTimeInForce(timeInForce);
+		return book.submit(order, this);
+	}
+}
@@ -0,0 +1,142 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.expiry;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit Test class for TimingWheel
+ *
+ * @author PM
+ *
+ */
+public class TimingWheelTest {
+
+	private static final long TICK = 100L;
+
+	private static final long START = 1_000_000L;
+
+	private TimingWheel wheel;
+
+	private List<Long> fired;
+
+	@Before
+	public void setUp() {
+		wheel = new TimingWheel(TICK, START);
+		fired = new ArrayList<Long>();
+	}
+
+	@Test
+	public void shouldFireOnceTheDeadlineIsReached() {
+
+		wheel.schedule(1L, START + 250);
+		wheel.schedule(2L, START + 1000);
+
+		assertThat(wheel.advance(START + 200, fired::add)).isEqualTo(0);
+		assertThat(wheel.advance(START + 300, fired::add)).isEqualTo(1);
+		assertThat(fired).containsExactly(1L);
+
+		wheel.advance(START + 999, fired::add);
+		assertThat(fired).containsExactly(1L);
+		wheel.advance(START + 1000, fired::add);
+		assertThat(fired).containsExactly(1L, 2L);
+		assertThat(wheel.size()).isEqualTo(0);
+	}
+
+	@Test
+	public void shouldFirePassedDeadlineOnNextTick() {
+
+		wheel.schedule(1L, START - 5000);
+
+		wheel.advance(START + TICK, fired::add);
+
+		assertThat(fired).containsExactly(1L);
+	}
+
+	@Test
+	public void shouldForgetCancelledAndRescheduledIds() {
+
+		wheel.schedule(1L, START + 500);
+		wheel.schedule(2L, START + 500);
+		wheel.schedule(2L, START + 5000);
+
+		assertThat(wheel.cancel(1L)).isTrue();
+		assertThat(wheel.cancel(1L)).isFalse();
+		assertThat(wheel.size()).isEqualTo(1);
+
+		wheel.advance(START + 1000, fired::add);
+		assertThat(fired).isEmpty();
+		wheel.advance(START + 5000, fired::add);
+		assertThat(fired).containsExactly(2L);
+	}
+
+	/**
+	 * Deadlines days away sit on the upper levels and cascade down as the
+	 * wheel turns, firing on their own tick.
+	 */
+	@Test
+	public void shouldCascadeDistantDeadlines() {
+
+		long day = 24L * 3600 * 1000;
+		wheel.schedule(1L, START + day);
+		wheel.schedule(2L, START + 3 * day + 150);
+		wheel.schedule(3L, START + 70_000);
+
+		wheel.advance(START + 69_900, fired::add);
+		assertThat(fired).isEmpty();
+		wheel.advance(START + day - TICK, fired::add);
+		assertThat(fired).containsExactly(3L);
+		wheel.advance(START + day, fired::add);
+		assertThat(fired).containsExactly(3L, 1L);
+		wheel.advance(START + 3 * day + 100, fired::add);
+		assertThat(fired).containsExactly(3L, 1L);
+		wheel.advance(START + 3 * day + 200, fired::add);
+		assertThat(fired).containsExactly(3L, 1L, 2L);
+	}
+
+	@Test
+	public void shouldFireEveryIdOnItsTickAmongMany() {
+
+		Random random = new Random(42);
+		long[] deadlines = new long[5000];
+		for (int id = 1; id < deadlines.length; id++) {
+			deadlines[id] = START + TICK + random.nextInt(600_000);
+			wheel.schedule(id, deadlines[id]);
+		}
+		for (int id = 1; id < deadlines.length; id += 3) {
+			wheel.cancel(id);
+		}
+
+		for (long now = START; now < START + 600_000 + 8 * TICK; now += 7 * TICK) {
+			long time = now;
+			wheel.advance(time, id -> {
+				assertThat(deadlines[(int) id]).isLessThanOrEqualTo(time).isGreaterThan(time - 7 * TICK - TICK);
+				fired.add(id);
+			});
+		}
+
+		int kept = 0;
+		for (int id = 1; id < deadlines.length; id++) {
+			kept += id % 3 == 1 ? 0 : 1;
+		}
+		assertThat(fired).doesNotHaveDuplicates().hasSize(kept);
+		assertThat(fired).noneMatch(id -> id % 3 == 1);
+		assertThat(wheel.size()).isEqualTo(0);
+	}
+
+}
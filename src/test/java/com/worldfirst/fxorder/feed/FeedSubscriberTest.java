@@ -0,0 +1,85 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.feed;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.worldfirst.fxorder.domain.CurrencyPair;
+import com.worldfirst.fxorder.domain.OrderData;
+import com.worldfirst.fxorder.domain.OrderType;
+import com.worldfirst.fxorder.service.OrderIdGenerator;
+import com.worldfirst.fxorder.service.SnowflakeIdGenerator;
+
+/**
+ * JUnit Test class for FeedSubscriber
+ *
+ * @author PM
+ *
+ */
+public class FeedSubscriberTest {
+
+	private static final CurrencyPair GBPUSD = new CurrencyPair(0, "GBP/USD", 4);
+
+	private static final CurrencyPair EURUSD = new CurrencyPair(1, "EUR/USD", 4);
+
+	private static final OrderIdGenerator IDS = new SnowflakeIdGenerator();
+
+	@Test
+	public void shouldScheduleOnceAndConflateEventsOfTheSameOrder() {
+
+		FeedSubscriber subscriber = new FeedSubscriber(new SseEmitter(), null, 10);
+		OrderData ask = order(GBPUSD);
+		OrderData bid = order(EURUSD);
+
+		assertThat(subscriber.offer(new OrderFeedEvent(OrderFeedEvent.Type.ADDED, ask))).isTrue();
+		assertThat(subscriber.offer(new OrderFeedEvent(OrderFeedEvent.Type.ADDED, bid))).isFalse();
+		assertThat(subscriber.offer(new OrderFeedEvent(OrderFeedEvent.Type.MATCHED, ask))).isFalse();
+
+		List<OrderFeedEvent> events = subscriber.drain();
+		assertThat(events).extracting(OrderFeedEvent::getType).containsExactly(OrderFeedEvent.Type.ADDED,
+				OrderFeedEvent.Type.MATCHED);
+		assertThat(events).extracting(OrderFeedEvent::getOrder).containsExactly(bid, ask);
+		assertThat(subscriber.conflated()).isEqualTo(1);
+
+		// Found empty, the subscriber has to be scheduled again
+		assertThat(subscriber.drain()).isEmpty();
+		assertThat(subscriber.offer(new OrderFeedEvent(OrderFeedEvent.Type.CANCELLED, ask))).isTrue();
+	}
+
+	@Test
+	public void shouldSkipOtherPairsAndResyncOnOverflow() {
+
+		FeedSubscriber subscriber = new FeedSubscriber(new SseEmitter(), GBPUSD, 2);
+
+		assertThat(subscriber.offer(new OrderFeedEvent(OrderFeedEvent.Type.ADDED, order(EURUSD)))).isFalse();
+		for (int i = 0; i < 3; i++) {
+			subscriber.offer(new OrderFeedEvent(OrderFeedEvent.Type.ADDED, order(GBPUSD)));
+		}
+		OrderData last = order(GBPUSD);
+		subscriber.offer(new OrderFeedEvent(OrderFeedEvent.Type.ADDED, last));
+
+		List<OrderFeedEvent> events = subscriber.drain();
+		assertThat(events).extracting(OrderFeedEvent::getType).containsExactly(OrderFeedEvent.Type.RESYNC,
+				OrderFeedEvent.Type.ADDED);
+		assertThat(events.get(1).getOrder()).isSameAs(last);
+		assertThat(subscriber.dropped()).isEqualTo(3);
+	}
+
+	private static OrderData order(CurrencyPair pair) {
+		return new OrderData(IDS.nextId(), pair, 12100L, 500L, OrderType.ASK,
+				System.currentTimeMillis());
+	}
+}
@@ -0,0 +1,218 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.journal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.worldfirst.fxorder.domain.OrderData;
+import com.worldfirst.fxorder.domain.OrderType;
+import com.worldfirst.fxorder.pipeline.OrderEventHandler;
+import com.worldfirst.fxorder.repository.OrderRecordsRepository;
+import com.worldfirst.fxorder.service.CurrencyPairRegistry;
+import com.worldfirst.fxorder.service.OrderIdGenerator;
+import com.worldfirst.fxorder.service.SnowflakeIdGenerator;
+
+/**
+ * JUnit Test class for OrderJournal
+ *
+ * @author PM
+ *
+ */
+public class OrderJournalTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final CurrencyPairRegistry pairs = new CurrencyPairRegistry();
+
+	private final OrderIdGenerator generator = new SnowflakeIdGenerator();
+
+	private File dir;
+
+	private OrderJournal journal;
+
+	private OrderRecordsRepository repository;
+
+	private OrderEventHandler handler;
+
+	@Before
+	public void setUp() throws IOException {
+		dir = folder.newFolder("journal");
+	}
+
+	@After
+	public void cleanUp() throws IOException {
+		if (null != journal) {
+			journal.close();
+		}
+	}
+
+	@Test
+	public void shouldRecoverOrdersAndCancellationsFromTheJournal() throws IOException {
+
+		open("per-event");
+		List<Long> ids = addOrders(2000);
+		for (int i = 0; i < ids.size(); i += 10) {
+			assertThat(handler.onCancel(ids.get(i))).isTrue();
+		}
+		assertThat(handler.onCancel(0L)).isFalse();
+		List<Long> expected = idsOf(repository.getAllOrders());
+		long matched = repository.getMatchingOrdersCount();
+		journal.close();
+
+		open("batch");
+
+		assertThat(idsOf(repository.getAllOrders())).isEqualTo(expected);
+		assertThat(repository.getMatchingOrdersCount()).isEqualTo(matched);
+		assertThat(recovery().get("replayedEvents")).isEqualTo(2200L);
+	}
+
+	@Test
+	public void shouldRecoverAmendmentsFromTheJournal() throws IOException {
+
+		open("batch");
+		List<Long> ids = addOrders(100);
+		for (int i = 0; i < ids.size(); i += 10) {
+			assertThat(handler.onAmend(ids.get(i), 12200L, 0)).isTrue();
+			assertThat(handler.onAmend(ids.get(i + 1), 0, 300L)).isTrue();
+		}
+		assertThat(handler.onAmend(0L, 12200L, 0)).isFalse();
+		List<String> expected = describe(repository.getAllOrders());
+		journal.close();
+
+		open("none");
+
+		assertThat(describe(repository.getAllOrders())).isEqualTo(expected);
+		assertThat(recovery().get("replayedEvents")).isEqualTo(120L);
+	}
+
+	@Test
+	public void shouldReplayOnlyTheJournalTailAfterASnapshot() throws IOException {
+
+		open("none");
+		List<Long> ids = addOrders(1000);
+		journal.snapshot();
+		addOrders(50);
+		handler.onCancel(ids.get(0));
+		List<Long> expected = idsOf(repository.getAllOrders());
+		journal.close();
+
+		open("batch");
+
+		assertThat(idsOf(repository.getAllOrders())).isEqualTo(expected);
+		assertThat(recovery().get("snapshotOrders")).isEqualTo(1000);
+		assertThat(recovery().get("replayedEvents")).isEqualTo(51L);
+
+		// New orders follow the restored ones in arrival sequence
+		long id = addOrders(1).get(0);
+		List<OrderData> orders = repository.getAllOrders();
+		assertThat(orders.get(orders.size() - 1).getId()).isEqualTo(id);
+	}
+
+	@Test
+	public void shouldIgnoreATornRecordAtTheEndOfTheJournal() throws IOException {
+
+		open("batch");
+		addOrders(100);
+		List<Long> expected = idsOf(repository.getAllOrders());
+		journal.close();
+
+		Path segment = OrderJournal.listFiles(dir.toPath(), JournalWriter.SEGMENT_PREFIX, JournalWriter.SEGMENT_SUFFIX)
+				.get(0);
+		try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+			channel.write(ByteBuffer.wrap(new byte[] { 0, 0, 0, 60, 1, 2, 3 }));
+		}
+
+		open("batch");
+		assertThat(idsOf(repository.getAllOrders())).isEqualTo(expected);
+		expected.addAll(addOrders(10));
+		journal.close();
+
+		open("batch");
+		assertThat(idsOf(repository.getAllOrders())).isEqualTo(expected);
+	}
+
+	private void open(String durability) {
+		journal = new OrderJournal();
+		ReflectionTestUtils.setField(journal, "pairs", pairs);
+		ReflectionTestUtils.setField(journal, "enabled", true);
+		ReflectionTestUtils.setField(journal, "dir", dir.getPath());
+		ReflectionTestUtils.setField(journal, "durability", durability);
+		ReflectionTestUtils.setField(journal, "batchIntervalMs", 2L);
+		ReflectionTestUtils.setField(journal, "segmentSizeMb", 1);
+		ReflectionTestUtils.setField(journal, "bufferSizeKb", 64);
+		ReflectionTestUtils.setField(journal, "snapshotIntervalS", 0L);
+
+		repository = new OrderRecordsRepository();
+		handler = journal.open(new OrderEventHandler() {
+
+			@Override
+			public boolean onAdd(OrderData order) {
+				return 0 != repository.add(order);
+			}
+
+			@Override
+			public boolean onCancel(long orderId) {
+				return repository.remove(orderId);
+			}
+
+			@Override
+			public boolean onAmend(long orderId, long pricePips, long amount) {
+				return repository.amend(orderId, pricePips, amount);
+			}
+		}, repository::getAllOrders);
+	}
+
+	private List<Long> addOrders(int count) {
+		List<Long> ids = new ArrayList<Long>();
+		for (int i = 0; i < count; i++) {
+			OrderData order = new OrderData(generator.nextId(), pairs.lookup("GBP/USD"), 12100L + i % 7,
+					500L, i % 2 == 0 ? OrderType.ASK : OrderType.BID, System.currentTimeMillis());
+			handler.onAdd(order);
+			ids.add(order.getId());
+		}
+		return ids;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<String, Object> recovery() {
+		return (Map<String, Object>) journal.stats().get("recovery");
+	}
+
+	private static List<String> describe(List<OrderData> orders) {
+		List<String> descriptions = new ArrayList<String>();
+		orders.forEach(order -> descriptions.add(order.getId() + "@" + order.getPricePips() + "x" + order.getAmount()));
+		return descriptions;
+	}
+
+	private static List<Long> idsOf(List<OrderData> orders) {
+		List<Long> ids = new ArrayList<Long>();
+		orders.forEach(order -> ids.add(order.getId()));
+		return ids;
+	}
+}
@@ -0,0 +1,101 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+
+/**
+ * JUnit Test class for OrderMetrics
+ *
+ * @author PM
+ *
+ */
+public class OrderMetricsTest {
+
+	private PrometheusMeterRegistry registry;
+
+	private OrderMetrics metrics;
+
+	@Before
+	public void setUp() {
+		registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+		metrics = new OrderMetrics(registry);
+	}
+
+	@Test
+	public void shouldExportOperationsAsHistogramsInSeconds() {
+
+		Timer latency = metrics.operation("saveOrder");
+		assertThat(metrics.operation("saveOrder")).isSameAs(latency);
+		for (int i = 1; i <= 1000; i++) {
+			latency.record(i, TimeUnit.MICROSECONDS);
+		}
+
+		String scrape = registry.scrape();
+
+		assertThat(scrape).contains("# TYPE fxorder_operation_seconds histogram\n");
+		assertThat(scrape).contains("fxorder_operation_seconds_count{operation=\"saveOrder\",} 1000.0\n");
+		assertThat(scrape).contains("fxorder_operation_seconds_sum{operation=\"saveOrder\",} 0.5005\n");
+		assertThat(scrape).contains("fxorder_operation_seconds_bucket{operation=\"saveOrder\",le=\"+Inf\",} 1000.0\n");
+		assertThat(value(scrape, "fxorder_operation_seconds{operation=\"saveOrder\",quantile=\"0.99\",}"))
+				.isBetween(0.00099 * 0.875, 0.00099 * 1.125);
+
+		@SuppressWarnings("unchecked")
+		Map<String, Long> stats = (Map<String, Long>) metrics.stats().get("saveOrder");
+		assertThat(stats).containsKeys("count", "mean", "p50", "p90", "p99", "p999", "max");
+		assertThat(stats.get("count")).isEqualTo(1000L);
+		assertThat(stats.get("p99")).isBetween(866L, 1114L);
+	}
+
+	@Test
+	public void shouldExportCountersAndGaugesWithTheirLabels() {
+
+		metrics.counter("fxorder.orders.rejected", "Orders failing validation").addAndGet(3);
+		metrics.gauge("fxorder.indexed.orders", "Orders in the order id index", () -> 41L);
+		metrics.gauge("fxorder.indexed.orders", "Orders in the order id index", () -> 42L);
+		Map<String, Long> depth = new LinkedHashMap<String, Long>();
+		depth.put("EUR/USD", 5L);
+		depth.put("GBP/USD", 7L);
+		metrics.gauge("fxorder.book.depth", "Resting orders per currency pair", "pair",
+				Arrays.asList("EUR/USD", "GBP/USD", "USD/JPY"), () -> depth);
+
+		String scrape = registry.scrape();
+
+		assertThat(scrape).contains("# TYPE fxorder_orders_rejected_total counter\nfxorder_orders_rejected_total 3.0\n");
+		assertThat(scrape).contains("# TYPE fxorder_indexed_orders gauge\nfxorder_indexed_orders 42.0\n");
+		assertThat(scrape).contains("fxorder_book_depth{pair=\"EUR/USD\",} 5.0\n")
+				.contains("fxorder_book_depth{pair=\"GBP/USD\",} 7.0\n")
+				.contains("fxorder_book_depth{pair=\"USD/JPY\",} 0.0\n");
+
+		depth.put("USD/JPY", 1L);
+		assertThat(registry.scrape()).contains("fxorder_book_depth{pair=\"USD/JPY\",} 1.0\n");
+	}
+
+	// Internal helpers
+
+	private static double value(String scrape, String series) {
+		int start = scrape.indexOf(series) + series.length() + 1;
+		return Double.parseDouble(scrape.substring(start, scrape.indexOf('\n', start)));
+	}
+
+}
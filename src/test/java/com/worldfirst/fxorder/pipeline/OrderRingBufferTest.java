@@ -0,0 +1,126 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.pipeline;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.worldfirst.fxorder.domain.CurrencyPair;
+import com.worldfirst.fxorder.domain.OrderData;
+import com.worldfirst.fxorder.domain.OrderType;
+
+/**
+ * JUnit Test class for OrderRingBuffer
+ *
+ * @author PM
+ *
+ */
+public class OrderRingBufferTest implements OrderEventHandler {
+
+	private static final CurrencyPair GBPUSD = new CurrencyPair(0, "GBP/USD", 4);
+
+	private final List<Long> applied = new ArrayList<Long>();
+
+	private final Set<Thread> writers = new HashSet<Thread>();
+
+	private final LatencyHistogram latency = new LatencyHistogram();
+
+	private OrderRingBuffer ring;
+
+	@Before
+	public void setUp() {
+		// A small ring so that producers have to wait for the writer
+		ring = new OrderRingBuffer(16, this, latency, "test-writer");
+		ring.start();
+	}
+
+	@After
+	public void cleanUp() throws InterruptedException {
+		ring.stop();
+	}
+
+	@Test
+	public void shouldApplyEveryEventOnceOnASingleWriterThread() throws Exception {
+
+		int producers = 4;
+		int ordersPerProducer = 5000;
+		ExecutorService executor = Executors.newFixedThreadPool(producers);
+		CountDownLatch done = new CountDownLatch(producers);
+
+		for (int p = 0; p < producers; p++) {
+			final int producer = p;
+			executor.execute(() -> {
+				for (int i = 0; i < ordersPerProducer; i++) {
+					CompletableFuture<Boolean> result = new CompletableFuture<Boolean>();
+					long sequence = ring.claim();
+					OrderEvent event = ring.get(sequence);
+					event.type = OrderEvent.Type.ADD;
+					event.order = new OrderData(producer * ordersPerProducer + i + 1, GBPUSD, 12100L, 500L, OrderType.ASK, 0L);
+					event.result = result;
+					ring.publish(sequence);
+					result.join();
+				}
+				done.countDown();
+			});
+		}
+
+		assertThat(done.await(30, TimeUnit.SECONDS)).isTrue();
+		executor.shutdown();
+
+		assertThat(applied).hasSize(producers * ordersPerProducer);
+		assertThat(new HashSet<Long>(applied)).hasSize(producers * ordersPerProducer);
+		assertThat(writers).hasSize(1);
+		assertThat(latency.count()).isEqualTo(producers * ordersPerProducer);
+
+		ring.stop();
+		assertThat(ring.backlog()).isEqualTo(0);
+	}
+
+	@Test
+	public void shouldReturnCancelOutcome() {
+
+		CompletableFuture<Boolean> result = new CompletableFuture<Boolean>();
+		long sequence = ring.claim();
+		OrderEvent event = ring.get(sequence);
+		event.type = OrderEvent.Type.CANCEL;
+		event.orderId = 1L;
+		event.result = result;
+		ring.publish(sequence);
+
+		assertThat(result.join()).isFalse();
+	}
+
+	@Override
+	public boolean onAdd(OrderData order) {
+		writers.add(Thread.currentThread());
+		applied.add(order.getId());
+		return true;
+	}
+
+	@Override
+	public boolean onCancel(long orderId) {
+		writers.add(Thread.currentThread());
+		return applied.remove(Long.valueOf(orderId));
+	}
+}
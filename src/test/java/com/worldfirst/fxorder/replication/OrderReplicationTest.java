@@ -0,0 +1,216 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.replication;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.worldfirst.fxorder.domain.CurrencyPair;
+import com.worldfirst.fxorder.domain.OrderData;
+import com.worldfirst.fxorder.domain.OrderType;
+import com.worldfirst.fxorder.metrics.OrderMetrics;
+import com.worldfirst.fxorder.pipeline.OrderEventHandler;
+import com.worldfirst.fxorder.repository.OrderRecordsRepository;
+import com.worldfirst.fxorder.service.CurrencyPairRegistry;
+import com.worldfirst.fxorder.service.OrderIdGenerator;
+import com.worldfirst.fxorder.service.SnowflakeIdGenerator;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * JUnit Test class for OrderReplication
+ *
+ * @author PM
+ *
+ */
+public class OrderReplicationTest {
+
+	private final CurrencyPairRegistry pairs = new CurrencyPairRegistry();
+
+	private final OrderIdGenerator generator = new SnowflakeIdGenerator();
+
+	private final List<Node> nodes = new ArrayList<Node>();
+
+	@After
+	public void cleanUp() throws InterruptedException {
+		for (Node node : nodes) {
+			node.replication.close();
+		}
+	}
+
+	@Test
+	public void shouldReplicateAddsCancelsAndAmendsToAFollower() {
+
+		Node leader = start("leader", null);
+		Node follower = start("follower", leader);
+
+		List<Long> ids = addOrders(leader, 500);
+		for (int i = 0; i < ids.size(); i += 10) {
+			assertThat(leader.handler.onCancel(ids.get(i))).isTrue();
+			assertThat(leader.handler.onAmend(ids.get(i + 1), 12200L, 0)).isTrue();
+			assertThat(leader.handler.onAmend(ids.get(i + 2), 0, 300L)).isTrue();
+		}
+		assertThat(leader.handler.onCancel(0L)).isFalse();
+
+		awaitCaughtUp(leader, follower);
+		assertThat(describe(follower.repository.getAllOrders())).isEqualTo(describe(leader.repository.getAllOrders()));
+		assertThat(follower.replication.lastSequence()).isEqualTo(650L);
+		assertThat(follower.replication.isStale()).isFalse();
+	}
+
+	@Test
+	public void shouldBootstrapALateFollowerFromASnapshot() {
+
+		Node leader = start("leader", null);
+		List<Long> ids = addOrders(leader, 300);
+		leader.handler.onCancel(ids.get(0));
+
+		Node follower = start("follower", leader);
+		addOrders(leader, 20);
+
+		awaitCaughtUp(leader, follower);
+		assertThat(describe(follower.repository.getAllOrders())).isEqualTo(describe(leader.repository.getAllOrders()));
+		assertThat(follower.replication.stats().get("snapshotsLoaded")).isEqualTo(1L);
+	}
+
+	@Test
+	public void shouldRejectOrdersOnAFollowerUntilItIsPromoted() {
+
+		Node leader = start("leader", null);
+		Node follower = start("follower", leader);
+		AtomicBoolean leading = new AtomicBoolean();
+		follower.replication.whenLeading(() -> leading.set(true));
+		addOrders(leader, 100);
+		awaitCaughtUp(leader, follower);
+
+		try {
+			addOrders(follower, 1);
+			fail("A follower should reject orders");
+		} catch (IllegalStateException e) {
+			assertThat(e.getMessage()).contains("replication leader");
+		}
+		assertThat(leading.get()).isFalse();
+
+		follower.replication.promote();
+		assertThat(leading.get()).isTrue();
+		assertThat(follower.replication.isFollower()).isFalse();
+		addOrders(follower, 10);
+
+		Node replica = start("follower", follower);
+		awaitCaughtUp(follower, replica);
+		assertThat(replica.repository.getAllOrders()).hasSize(110);
+		assertThat(describe(replica.repository.getAllOrders()))
+				.isEqualTo(describe(follower.repository.getAllOrders()));
+	}
+
+	private Node start(String role, Node leader) {
+		Node node = new Node();
+		node.replication = new OrderReplication();
+		ReflectionTestUtils.setField(node.replication, "role", role);
+		ReflectionTestUtils.setField(node.replication, "port", 0);
+		ReflectionTestUtils.setField(node.replication, "leader",
+				null == leader ? "localhost:0" : "localhost:" + leader.replication.leaderPort());
+		ReflectionTestUtils.setField(node.replication, "logSize", 1024);
+		ReflectionTestUtils.setField(node.replication, "bufferSize", 4096);
+		ReflectionTestUtils.setField(node.replication, "heartbeatMs", 10L);
+		ReflectionTestUtils.setField(node.replication, "reconnectMs", 10L);
+		ReflectionTestUtils.setField(node.replication, "maxLagMs", 5000L);
+		ReflectionTestUtils.setField(node.replication, "pairs", pairs);
+		ReflectionTestUtils.setField(node.replication, "metrics", new OrderMetrics(new SimpleMeterRegistry()));
+
+		OrderRecordsRepository repository = new OrderRecordsRepository();
+		node.repository = repository;
+		node.handler = node.replication.open(new OrderEventHandler() {
+
+			@Override
+			public boolean onAdd(OrderData order) {
+				return 0 != repository.add(order);
+			}
+
+			@Override
+			public boolean onCancel(long orderId) {
+				return repository.remove(orderId);
+			}
+
+			@Override
+			public boolean onAmend(long orderId, long pricePips, long amount) {
+				return repository.amend(orderId, pricePips, amount);
+			}
+
+			@Override
+			public int shardOf(long orderId) {
+				CurrencyPair pair = repository.getPair(orderId);
+				return null == pair ? -1 : pair.getId();
+			}
+		}, repository::getAllOrders);
+		nodes.add(node);
+		return node;
+	}
+
+	private List<Long> addOrders(Node node, int count) {
+		List<Long> ids = new ArrayList<Long>();
+		for (int i = 0; i < count; i++) {
+			OrderData order = new OrderData(generator.nextId(), pairs.lookup("GBP/USD"), 12100L + i % 7,
+					500L, i % 2 == 0 ? OrderType.ASK : OrderType.BID, System.currentTimeMillis());
+			node.handler.onAdd(order);
+			ids.add(order.getId());
+		}
+		return ids;
+	}
+
+	private static void awaitCaughtUp(Node leader, Node follower) {
+		await(() -> follower.replication.lastSequence() == leader.replication.lastSequence());
+	}
+
+	private static void await(BooleanSupplier condition) {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (!condition.getAsBoolean()) {
+			if (System.nanoTime() > deadline) {
+				fail("Timed out waiting for the follower");
+			}
+			try {
+				Thread.sleep(5);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				fail("Interrupted waiting for the follower");
+			}
+		}
+	}
+
+	private static List<String> describe(List<OrderData> orders) {
+		List<String> descriptions = new ArrayList<String>();
+		orders.forEach(order -> descriptions.add(order.getId() + "@" + order.getPricePips() + "x" + order.getAmount()
+				+ "#" + order.getSequence()));
+		return descriptions;
+	}
+
+	/**
+	 * A replication node and its order store.
+	 */
+	private static final class Node {
+
+		private OrderReplication replication;
+
+		private OrderRecordsRepository repository;
+
+		private OrderEventHandler handler;
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.worldfirst.fxorder.domain.CurrencyPair;
+import com.worldfirst.fxorder.domain.OrderData;
+import com.worldfirst.fxorder.domain.OrderType;
+
+/**
+ * JUnit Test class for LongOrderMap
+ *
+ * @author PM
+ *
+ */
+public class LongOrderMapTest {
+
+	private static final CurrencyPair GBPUSD = new CurrencyPair(0, "GBP/USD", 4);
+
+	/**
+	 * Removing entries shifts the probe sequences back, growing rehashes them,
+	 * neither may lose an order nor change the insertion order.
+	 */
+	@Test
+	public void shouldKeepInsertionOrderAcrossRemovalsAndGrowth() {
+
+		LongOrderMap map = new LongOrderMap(4);
+		List<Long> expected = new ArrayList<Long>();
+		for (long id = 1; id <= 1000; id++) {
+			map.put(order(id << 12));
+			expected.add(id << 12);
+		}
+		for (long id = 1; id <= 1000; id += 3) {
+			assertThat(map.remove(id << 12)).isNotNull();
+			expected.remove(Long.valueOf(id << 12));
+		}
+
+		assertThat(map.remove(1L << 12)).isNull();
+		assertThat(map.size()).isEqualTo(expected.size());
+		for (long id : expected) {
+			assertThat(map.get(id).getId()).isEqualTo(id);
+		}
+
+		List<OrderData> values = new ArrayList<OrderData>();
+		map.values(values);
+		assertThat(values).extracting(OrderData::getId).containsExactlyElementsOf(expected);
+	}
+
+	private static OrderData order(long id) {
+		return new OrderData(id, GBPUSD, 12100L, 500L, OrderType.ASK, System.currentTimeMillis());
+	}
+}
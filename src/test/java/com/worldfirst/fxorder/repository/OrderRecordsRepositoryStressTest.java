@@ -0,0 +1,242 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+
+import com.worldfirst.fxorder.domain.CurrencyPair;
+import com.worldfirst.fxorder.domain.OrderData;
+import com.worldfirst.fxorder.domain.OrderType;
+
+/**
+ * Randomized multi-threaded test of OrderRecordsRepository, run on heap then
+ * off-heap shards
+ *
+ * Writers add, cancel and batch orders of a few match keys, cancelling their
+ * own orders and the latest orders of the others, including orders whose add
+ * is still running. Once they are done the store must hold exactly the orders
+ * added and not cancelled, every match key being matched if and only if it
+ * holds both sides, with counts agreeing with the views.
+ *
+ * @author PM
+ *
+ */
+@RunWith(Parameterized.class)
+public class OrderRecordsRepositoryStressTest {
+
+	private static final CurrencyPair[] PAIRS = { new CurrencyPair(0, "GBP/USD", 4),
+			new CurrencyPair(1, "EUR/USD", 5) };
+
+	private static final int WRITERS = 4;
+
+	private static final int OPERATIONS = 20000;
+
+	/** The number of latest order ids the writers cancel from each other. */
+	private static final int SHARED = 64;
+
+	@Parameter
+	public boolean offHeap;
+
+	private OrderRecordsRepository repository;
+
+	private ExecutorService executor;
+
+	private final AtomicLong ids = new AtomicLong();
+
+	/** The latest order ids, published before their order is added. */
+	private final AtomicLongArray shared = new AtomicLongArray(SHARED);
+
+	/** +1 per add and -1 per successful cancel of every order id. */
+	private final Map<Long, Integer> net = new ConcurrentHashMap<Long, Integer>();
+
+	private final AtomicLong added = new AtomicLong();
+
+	private final AtomicLong cancelled = new AtomicLong();
+
+	@Parameters(name = "offHeap={0}")
+	public static List<Object[]> stores() {
+		return Arrays.asList(new Object[] { false }, new Object[] { true });
+	}
+
+	@Before
+	public void setUp() {
+		repository = new OrderRecordsRepository(offHeap);
+		repository.setListener(new OrderStoreListener() {
+
+			@Override
+			public void onAdded(OrderData order) {
+				added.incrementAndGet();
+			}
+
+			@Override
+			public void onCancelled(OrderData order) {
+				cancelled.incrementAndGet();
+			}
+		});
+		executor = Executors.newFixedThreadPool(WRITERS);
+	}
+
+	@After
+	public void cleanUp() {
+		executor.shutdownNow();
+	}
+
+	@Test(timeout = 120000)
+	public void shouldKeepStoreConsistentUnderConcurrentWriters() throws Exception {
+
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<?>> writers = new ArrayList<Future<?>>();
+		for (int w = 0; w < WRITERS; w++) {
+			long seed = 31L * w + 7;
+			writers.add(executor.submit(() -> {
+				start.await();
+				write(new Random(seed));
+				return null;
+			}));
+		}
+		start.countDown();
+		for (Future<?> writer : writers) {
+			writer.get();
+		}
+
+		Set<Long> live = new HashSet<Long>();
+		net.forEach((id, count) -> {
+			assertThat(count).as("net adds of order %d", id).isBetween(0, 1);
+			if (1 == count) {
+				live.add(id);
+			}
+		});
+
+		List<OrderData> all = repository.getAllOrders();
+		assertThat(all).extracting(OrderData::getId).doesNotHaveDuplicates().containsOnlyElementsOf(live)
+				.hasSize(live.size());
+		assertThat(added.get() - cancelled.get()).isEqualTo(live.size());
+
+		// A match key is matched if and only if it holds both sides
+		Map<String, Set<OrderType>> sides = new HashMap<String, Set<OrderType>>();
+		for (OrderData order : all) {
+			assertThat(repository.getPair(order.getId())).isSameAs(order.getPair());
+			sides.computeIfAbsent(keyOf(order), key -> new HashSet<OrderType>()).add(order.getOrderType());
+		}
+		Set<Long> matched = new HashSet<Long>();
+		Set<Long> unmatched = new HashSet<Long>();
+		for (OrderData order : all) {
+			(2 == sides.get(keyOf(order)).size() ? matched : unmatched).add(order.getId());
+		}
+		assertThat(repository.getMatchingOrders()).extracting(OrderData::getId).containsOnlyElementsOf(matched)
+				.hasSize(matched.size());
+		assertThat(repository.getUnMatchingOrders()).extracting(OrderData::getId).containsOnlyElementsOf(unmatched)
+				.hasSize(unmatched.size());
+		assertThat(repository.getMatchingOrdersCount()).isEqualTo(matched.size());
+		assertThat(repository.getUnMatchingOrdersCount()).isEqualTo(unmatched.size());
+
+		// Nothing must be left behind once every order is cancelled
+		long[] remaining = live.stream().mapToLong(Long::longValue).toArray();
+		assertThat(repository.removeAll(remaining)).containsOnly(true);
+		assertThat(repository.getAllOrders()).isEmpty();
+		assertThat(repository.getMatchingOrders()).isEmpty();
+		assertThat(repository.getUnMatchingOrders()).isEmpty();
+		assertThat(repository.getMatchingOrdersCount()).isEqualTo(0);
+		assertThat(repository.getUnMatchingOrdersCount()).isEqualTo(0);
+	}
+
+	// Internal helpers
+
+	private void write(Random random) {
+		List<Long> own = new ArrayList<Long>();
+		for (int i = 0; i < OPERATIONS; i++) {
+			int operation = random.nextInt(100);
+			if (operation < 45) {
+				OrderData order = order(random);
+				repository.add(order);
+				added(order);
+				own.add(order.getId());
+			} else if (operation < 55) {
+				List<OrderData> batch = new ArrayList<OrderData>();
+				for (int j = random.nextInt(8); j >= 0; j--) {
+					batch.add(order(random));
+				}
+				repository.addAll(batch);
+				for (OrderData order : batch) {
+					added(order);
+					own.add(order.getId());
+				}
+			} else if (operation < 75 && !own.isEmpty()) {
+				cancel(own.remove(random.nextInt(own.size())));
+			} else if (operation < 85 && !own.isEmpty()) {
+				long[] batch = new long[1 + random.nextInt(Math.min(8, own.size()))];
+				for (int j = 0; j < batch.length; j++) {
+					batch[j] = own.remove(random.nextInt(own.size()));
+				}
+				boolean[] removed = repository.removeAll(batch);
+				for (int j = 0; j < batch.length; j++) {
+					if (removed[j]) {
+						net.merge(batch[j], -1, Integer::sum);
+					}
+				}
+			} else {
+				long id = shared.get(random.nextInt(SHARED));
+				if (0 != id) {
+					cancel(id);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return a new order of a random match key, its id published first
+	 */
+	private OrderData order(Random random) {
+		long id = ids.incrementAndGet();
+		shared.set((int) (id % SHARED), id);
+		return new OrderData(id, PAIRS[random.nextInt(PAIRS.length)], 12100L + random.nextInt(4),
+				500L + random.nextInt(2), random.nextBoolean() ? OrderType.ASK : OrderType.BID, 0L);
+	}
+
+	private void added(OrderData order) {
+		net.merge(order.getId(), 1, Integer::sum);
+	}
+
+	private void cancel(long id) {
+		if (repository.remove(id)) {
+			net.merge(id, -1, Integer::sum);
+		}
+	}
+
+	private static String keyOf(OrderData order) {
+		return order.getPair().getId() + ":" + order.getPricePips() + ":" + order.getAmount();
+	}
+
+}
@@ -0,0 +1,502 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+
+import com.worldfirst.fxorder.domain.BookDepth;
+import com.worldfirst.fxorder.domain.CurrencyPair;
+import com.worldfirst.fxorder.domain.DepthLevel;
+import com.worldfirst.fxorder.domain.OrderData;
+import com.worldfirst.fxorder.domain.OrderPage;
+import com.worldfirst.fxorder.domain.OrderQuery;
+import com.worldfirst.fxorder.domain.OrderType;
+import com.worldfirst.fxorder.domain.PairStats;
+import com.worldfirst.fxorder.domain.TimeInForce;
+import com.worldfirst.fxorder.service.OrderIdGenerator;
+import com.worldfirst.fxorder.service.SnowflakeIdGenerator;
+
+/**
+ * JUnit Test class for OrderRecordsRepository, run on heap then off-heap
+ * shards
+ *
+ * @author PM
+ *
+ */
+@RunWith(Parameterized.class)
+public class OrderRecordsRepositoryTest {
+
+	private static final CurrencyPair GBPUSD = new CurrencyPair(0, "GBP/USD", 4);
+
+	private static final CurrencyPair USDJPY = new CurrencyPair(2, "USD/JPY", 3, 5L);
+
+	private static final OrderIdGenerator IDS = new SnowflakeIdGenerator();
+
+	@Parameter
+	public boolean offHeap;
+
+	private OrderRecordsRepository repository;
+
+	@Parameters(name = "offHeap={0}")
+	public static List<Object[]> stores() {
+		return Arrays.asList(new Object[] { false }, new Object[] { true });
+	}
+
+	@Before
+	public void setUp() {
+		repository = new OrderRecordsRepository(offHeap);
+	}
+
+	/**
+	 * A busy price level must keep every order matched, the former colon joined
+	 * strings silently dropped ids beyond a few thousand orders.
+	 */
+	@Test
+	public void shouldKeepAllOrdersOfABusyPriceLevelMatched() {
+
+		for (int i = 0; i < 10000; i++) {
+			repository.add(order(OrderType.ASK, 12100L, 500L));
+		}
+		repository.add(order(OrderType.BID, 12100L, 500L));
+
+		assertThat(repository.getMatchingOrders()).hasSize(10001);
+		assertThat(repository.getUnMatchingOrders()).isEmpty();
+		assertThat(repository.getMatchingOrdersCount()).isEqualTo(10001);
+		assertThat(repository.getUnMatchingOrdersCount()).isEqualTo(0);
+	}
+
+	@Test
+	public void shouldUnmatchRemainingOrdersWhenLastOppositeOrderIsCancelled() {
+
+		long ask1 = repository.add(order(OrderType.ASK, 12100L, 500L));
+		long ask2 = repository.add(order(OrderType.ASK, 12100L, 500L));
+		long bid = repository.add(order(OrderType.BID, 12100L, 500L));
+		long other = repository.add(order(OrderType.BID, 12200L, 500L));
+
+		assertThat(repository.getMatchingOrders()).extracting(OrderData::getId).containsExactly(ask1, ask2, bid);
+		assertThat(repository.getUnMatchingOrders()).extracting(OrderData::getId).containsExactly(other);
+
+		assertThat(repository.getMatchingOrdersCount()).isEqualTo(3);
+		assertThat(repository.getUnMatchingOrdersCount()).isEqualTo(1);
+
+		assertThat(repository.remove(bid)).isTrue();
+
+		assertThat(repository.getMatchingOrders()).isEmpty();
+		assertThat(repository.getUnMatchingOrders()).extracting(OrderData::getId).containsOnly(ask1, ask2, other);
+		assertThat(repository.getMatchingOrdersCount()).isEqualTo(0);
+		assertThat(repository.getUnMatchingOrdersCount()).isEqualTo(3);
+
+		repository.remove(ask1);
+		repository.remove(ask2);
+		repository.remove(other);
+
+		assertThat(repository.getUnMatchingOrders()).isEmpty();
+		assertThat(repository.getUnMatchingOrdersCount()).isEqualTo(0);
+	}
+
+	@Test
+	public void shouldKeepImmediateOrdersOnlyWhenMatchingOnArrival() {
+
+		OrderData unmatched = order(OrderType.BID, 12100L, 500L);
+		unmatched.setTimeInForce(TimeInForce.IOC);
+		assertThat(repository.add(unmatched)).isEqualTo(0);
+
+		long ask = repository.add(order(OrderType.ASK, 12100L, 500L));
+		OrderData matched = order(OrderType.BID, 12100L, 500L);
+		matched.setTimeInForce(TimeInForce.FOK);
+		long bid = repository.add(matched);
+
+		assertThat(bid).isEqualTo(matched.getId());
+		assertThat(repository.getMatchingOrders()).extracting(OrderData::getId).containsExactly(ask, bid);
+		assertThat(repository.getMatchingOrders()).extracting(OrderData::getTimeInForce)
+				.containsExactly(TimeInForce.GTC, TimeInForce.FOK);
+		assertThat(repository.getUnMatchingOrders()).isEmpty();
+
+		// A batch holding an immediate order only matches the orders before it
+		OrderData late = order(OrderType.ASK, 12200L, 500L);
+		late.setTimeInForce(TimeInForce.IOC);
+		OrderData bid2 = order(OrderType.BID, 12200L, 500L);
+		OrderData ask2 = order(OrderType.ASK, 12200L, 500L);
+		ask2.setTimeInForce(TimeInForce.IOC);
+		repository.addAll(Arrays.asList(late, bid2, ask2));
+
+		assertThat(repository.getAllOrders()).extracting(OrderData::getId).containsExactly(ask, bid, bid2.getId(),
+				ask2.getId());
+	}
+
+	@Test
+	public void shouldReturnNullWhenRemovingUnknownOrder() {
+
+		repository.add(order(OrderType.ASK, 12100L, 500L));
+
+		assertThat(repository.remove(0L)).isFalse();
+		assertThat(repository.getAllOrders()).hasSize(1);
+	}
+
+	/**
+	 * Cancelling most orders frees their slots and squeezes the sequence index
+	 * of the off-heap shards, new orders reusing the slots.
+	 */
+	@Test
+	public void shouldKeepArrivalSequenceAcrossManyCancellations() {
+
+		long[] ids = new long[3000];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = repository.add(order(OrderType.ASK, 12100L + i % 50, 500L));
+		}
+		long[] cancelled = new long[ids.length - 3];
+		System.arraycopy(ids, 1, cancelled, 0, cancelled.length);
+		assertThat(repository.removeAll(cancelled)).containsOnly(true);
+		long bid = repository.add(order(OrderType.BID, 12100L, 500L));
+
+		assertThat(repository.getAllOrders()).extracting(OrderData::getId).containsExactly(ids[0],
+				ids[ids.length - 2], ids[ids.length - 1], bid);
+		assertThat(repository.findOrders(query(OrderQuery.Status.MATCHED, null, null, null, 0, 10)).getOrders())
+				.extracting(OrderData::getId).containsExactly(ids[0], bid);
+		assertThat(repository.getUnMatchingOrdersCount()).isEqualTo(2);
+	}
+
+	@Test
+	public void shouldPageOrdersInArrivalSequenceWithCursor() {
+
+		List<Long> ids = new ArrayList<Long>();
+		for (int i = 0; i < 25; i++) {
+			ids.add(repository.add(order(OrderType.ASK, 12100L + i, 500L)));
+		}
+
+		List<Long> paged = new ArrayList<Long>();
+		long cursor = 0;
+		int pages = 0;
+		while (true) {
+			OrderPage page = repository.findOrders(query(OrderQuery.Status.ALL, null, null, null, cursor, 10));
+			page.getOrders().forEach(order -> paged.add(order.getId()));
+			pages++;
+			if (null == page.getNextCursor()) {
+				break;
+			}
+			cursor = Long.parseLong(page.getNextCursor());
+		}
+
+		assertThat(pages).isEqualTo(3);
+		assertThat(paged).isEqualTo(ids);
+	}
+
+	@Test
+	public void shouldFilterOrdersBySideStatusAndPriceRange() {
+
+		long ask = repository.add(order(OrderType.ASK, 12100L, 500L));
+		long bid = repository.add(order(OrderType.BID, 12100L, 500L));
+		long lowBid = repository.add(order(OrderType.BID, 11000L, 500L));
+		long highBid = repository.add(order(OrderType.BID, 13000L, 500L));
+
+		assertThat(repository.findOrders(query(OrderQuery.Status.ALL, OrderType.BID, null, null, 0, 10)).getOrders())
+				.extracting(OrderData::getId).containsExactly(bid, lowBid, highBid);
+		assertThat(repository.findOrders(query(OrderQuery.Status.MATCHED, null, null, null, 0, 10)).getOrders())
+				.extracting(OrderData::getId).containsExactly(ask, bid);
+		assertThat(repository.findOrders(query(OrderQuery.Status.UNMATCHED, OrderType.BID, new BigDecimal("1.2"),
+				new BigDecimal("1.30005"), 0, 10)).getOrders()).extracting(OrderData::getId).containsExactly(highBid);
+	}
+
+	@Test
+	public void shouldStreamWithoutBuildingAPage() {
+
+		for (int i = 0; i < 1000; i++) {
+			repository.add(order(i % 2 == 0 ? OrderType.ASK : OrderType.BID, 12100L, 500L + i));
+		}
+
+		Iterator<OrderData> orders = repository
+				.scanOrders(query(OrderQuery.Status.ALL, OrderType.ASK, null, null, 0, Integer.MAX_VALUE));
+		int count = 0;
+		while (orders.hasNext()) {
+			assertThat(orders.next().getOrderType()).isEqualTo(OrderType.ASK);
+			count++;
+		}
+
+		assertThat(count).isEqualTo(500);
+	}
+
+	/**
+	 * Orders of different pairs live in separate shards, they never match each
+	 * other and listings of every pair merge the shards by sequence.
+	 */
+	@Test
+	public void shouldShardOrdersPerCurrencyPair() {
+
+		long gbpAsk = repository.add(order(GBPUSD, OrderType.ASK, 12100L, 500L));
+		long jpyBid = repository.add(order(USDJPY, OrderType.BID, 12100L, 500L));
+		long jpyAsk = repository.add(order(USDJPY, OrderType.ASK, 12100L, 500L));
+		long gbpBid = repository.add(order(GBPUSD, OrderType.BID, 12200L, 500L));
+
+		assertThat(repository.getMatchingOrders()).extracting(OrderData::getId).containsOnly(jpyBid, jpyAsk);
+		assertThat(repository.getUnMatchingOrders()).extracting(OrderData::getId).containsOnly(gbpAsk, gbpBid);
+		assertThat(repository.getPair(jpyAsk)).isSameAs(USDJPY);
+
+		OrderQuery all = new OrderQuery(OrderQuery.Status.ALL, null, null, null, null, Long.MIN_VALUE, Long.MAX_VALUE,
+				0, 3);
+		OrderPage page = repository.findOrders(all);
+		assertThat(page.getOrders()).extracting(OrderData::getId).containsExactly(gbpAsk, jpyBid, gbpBid);
+		assertThat(page.getNextCursor()).isNotNull();
+
+		OrderQuery next = new OrderQuery(OrderQuery.Status.ALL, null, null, null, null, Long.MIN_VALUE, Long.MAX_VALUE,
+				Long.parseLong(page.getNextCursor()), 3);
+		assertThat(repository.findOrders(next).getOrders()).extracting(OrderData::getId).containsExactly(jpyAsk);
+
+		assertThat(repository.remove(jpyBid)).isTrue();
+		assertThat(repository.getMatchingOrdersCount()).isEqualTo(0);
+		assertThat(repository.getUnMatchingOrdersCount()).isEqualTo(3);
+		assertThat(repository.getPair(jpyBid)).isNull();
+	}
+
+	@Test
+	public void shouldApplyBatchesLikeSingleOrders() {
+
+		List<OrderData> batch = new ArrayList<OrderData>();
+		for (int i = 0; i < 100; i++) {
+			batch.add(order(i < 50 ? OrderType.ASK : OrderType.BID, 12100L + i % 2, 500L));
+		}
+		batch.add(order(USDJPY, OrderType.ASK, 12100L, 500L));
+		repository.addAll(batch);
+
+		assertThat(repository.getMatchingOrdersCount()).isEqualTo(100);
+		assertThat(repository.getUnMatchingOrdersCount()).isEqualTo(1);
+		assertThat(repository.getAllOrders()).extracting(OrderData::getSequence).doesNotHaveDuplicates();
+
+		long[] ids = new long[51];
+		for (int i = 50; i < 100; i++) {
+			ids[i - 50] = batch.get(i).getId();
+		}
+		ids[50] = 0L;
+		boolean[] removed = repository.removeAll(ids);
+
+		assertThat(removed[0]).isTrue();
+		assertThat(removed[50]).isFalse();
+		assertThat(repository.getMatchingOrders()).isEmpty();
+		assertThat(repository.getUnMatchingOrdersCount()).isEqualTo(51);
+		assertThat(repository.getUnMatchingOrders()).hasSize(51);
+	}
+
+	/**
+	 * A snapshot never changes once taken, a later one having a higher
+	 * sequence, so a reader sees either all or none of a batch.
+	 */
+	@Test
+	public void shouldReadFromImmutableSnapshots() {
+
+		long ask = repository.add(order(OrderType.ASK, 12100L, 500L));
+		OrderStoreSnapshot before = repository.snapshot();
+
+		List<OrderData> batch = new ArrayList<OrderData>();
+		for (int i = 0; i < 10; i++) {
+			batch.add(order(OrderType.BID, 12100L, 500L));
+		}
+		repository.addAll(batch);
+		repository.remove(ask);
+		OrderStoreSnapshot after = repository.snapshot();
+
+		assertThat(before.getAllOrders()).extracting(OrderData::getId).containsExactly(ask);
+		assertThat(before.getUnMatchingOrdersCount()).isEqualTo(1);
+		assertThat(before.getMatchingOrders()).isEmpty();
+		assertThat(after.getSequence()).isGreaterThan(before.getSequence());
+		assertThat(after.getUnMatchingOrders()).hasSize(10);
+		assertThat(after.findOrders(query(OrderQuery.Status.ALL, null, null, null, 0, 5)).getSnapshot())
+				.isEqualTo(after.getSequence());
+		assertThat(repository.snapshot().getSequence()).isEqualTo(after.getSequence());
+	}
+
+	/**
+	 * The depth counts the unmatched orders per side and price, orders leaving
+	 * it when they match and coming back when their match is cancelled.
+	 */
+	@Test
+	public void shouldAggregateUnmatchedOrdersPerPriceLevel() {
+
+		long ask = repository.add(order(OrderType.ASK, 12110L, 500L));
+		repository.add(order(OrderType.ASK, 12110L, 300L));
+		repository.add(order(OrderType.ASK, 12120L, 500L));
+		repository.add(order(OrderType.BID, 12100L, 200L));
+		long bid = repository.add(order(OrderType.BID, 12110L, 500L));
+
+		BookDepth depth = repository.depth(GBPUSD, 10);
+		assertThat(depth.getAsks()).extracting(DepthLevel::getPricePips, DepthLevel::getOrders, DepthLevel::getAmount)
+				.containsExactly(tuple(12110L, 1L, 300L), tuple(12120L, 1L, 500L));
+		assertThat(depth.getBids()).extracting(DepthLevel::getPricePips, DepthLevel::getOrders, DepthLevel::getAmount)
+				.containsExactly(tuple(12100L, 1L, 200L));
+
+		repository.remove(ask);
+		PairStats stats = repository.stats().get(GBPUSD.getSymbol());
+		assertThat(stats.getMatched()).isEqualTo(0);
+		assertThat(stats.getBids().getOrders()).isEqualTo(2);
+		assertThat(stats.getBids().getAmount()).isEqualTo(700);
+		assertThat(stats.getBids().getBestPrice()).isEqualByComparingTo("1.2110");
+		assertThat(stats.getAsks().getVwap()).isEqualByComparingTo("1.211625");
+		assertThat(repository.depth(GBPUSD, 1).getBids()).extracting(DepthLevel::getPricePips)
+				.containsExactly(12110L);
+
+		repository.remove(bid);
+		assertThat(repository.depth(GBPUSD, 10).getBids()).extracting(DepthLevel::getPricePips)
+				.containsExactly(12100L);
+		assertThat(repository.depth(USDJPY, 10).getAsks()).isEmpty();
+	}
+
+	@Test
+	public void shouldAverageThePriceOfAmountsWhoseNotionalExceedsALong() {
+
+		repository.add(order(OrderType.BID, 12100L, 400000000000000L));
+		repository.add(order(OrderType.BID, 12100L, 400000000000000L));
+
+		PairStats stats = repository.stats().get(GBPUSD.getSymbol());
+		assertThat(stats.getBids().getAmount()).isEqualTo(800000000000000L);
+		assertThat(stats.getBids().getVwap()).isEqualByComparingTo("1.2100");
+	}
+
+	/**
+	 * The orders of a price level are found through the buckets of the price,
+	 * whatever their amount and matching state, and dropped as one batch.
+	 */
+	@Test
+	public void shouldCancelAWholePriceLevel() {
+
+		long first = repository.add(order(OrderType.ASK, 12110L, 100L));
+		long second = repository.add(order(OrderType.ASK, 12110L, 200L));
+		long third = repository.add(order(OrderType.ASK, 12110L, 300L));
+		long matched = repository.add(order(OrderType.ASK, 12110L, 400L));
+		long bid = repository.add(order(OrderType.BID, 12110L, 400L));
+		long other = repository.add(order(OrderType.ASK, 12120L, 100L));
+
+		// The first bucket of the price going first
+		repository.remove(first);
+		long[] level = repository.levelOrders(GBPUSD, OrderType.ASK, 12110L);
+		assertThat(level).containsOnly(second, third, matched);
+
+		assertThat(repository.removeAll(level)).containsOnly(true);
+		assertThat(repository.levelOrders(GBPUSD, OrderType.ASK, 12110L)).isEmpty();
+		assertThat(repository.levelOrders(GBPUSD, OrderType.BID, 12110L)).containsExactly(bid);
+		assertThat(repository.levelOrders(USDJPY, OrderType.ASK, 12110L)).isEmpty();
+		assertThat(repository.getUnMatchingOrders()).extracting(OrderData::getId).containsOnly(bid, other);
+		assertThat(repository.depth(GBPUSD, 10).getAsks()).extracting(DepthLevel::getPricePips)
+				.containsExactly(12120L);
+
+		long again = repository.add(order(OrderType.ASK, 12110L, 100L));
+		assertThat(repository.levelOrders(GBPUSD, OrderType.ASK, 12110L)).containsExactly(again);
+	}
+
+	/**
+	 * Reducing the amount keeps the sequence of an order, changing its price
+	 * moves it to the bucket of the new price with a new sequence.
+	 */
+	@Test
+	public void shouldAmendAnOrderBetweenBuckets() {
+
+		List<String> events = new ArrayList<String>();
+		long ask = repository.add(order(OrderType.ASK, 12100L, 500L));
+		long bid = repository.add(order(OrderType.BID, 12110L, 300L));
+		long sequence = repository.getUnMatchingOrders().stream().filter(o -> o.getId() == ask).findFirst().get()
+				.getSequence();
+		repository.setListener(new OrderStoreListener() {
+
+			@Override
+			public void onAmended(OrderData order) {
+				events.add("AMENDED " + order.getId());
+			}
+
+			@Override
+			public void onMatched(OrderData order) {
+				events.add("MATCHED " + order.getId());
+			}
+		});
+
+		assertThat(repository.amend(ask, 0, 300L)).isTrue();
+		OrderData reduced = repository.getUnMatchingOrders().stream().filter(o -> o.getId() == ask).findFirst()
+				.get();
+		assertThat(reduced.getAmount()).isEqualTo(300L);
+		assertThat(reduced.getSequence()).isEqualTo(sequence);
+		assertThat(repository.depth(GBPUSD, 10).getAsks()).extracting(DepthLevel::getAmount).containsExactly(300L);
+
+		assertThat(repository.amend(ask, 12110L, 0)).isTrue();
+		assertThat(repository.getMatchingOrders()).extracting(OrderData::getId).containsOnly(ask, bid);
+		assertThat(repository.getMatchingOrders().stream().filter(o -> o.getId() == ask).findFirst().get()
+				.getSequence()).isGreaterThan(sequence);
+		assertThat(repository.levelOrders(GBPUSD, OrderType.ASK, 12100L)).isEmpty();
+		assertThat(repository.levelOrders(GBPUSD, OrderType.ASK, 12110L)).containsExactly(ask);
+		assertThat(repository.depth(GBPUSD, 10).getAsks()).isEmpty();
+		assertThat(events).startsWith("AMENDED " + ask, "AMENDED " + ask).contains("MATCHED " + bid);
+
+		assertThat(repository.amend(bid, 12100L, 0)).isTrue();
+		assertThat(repository.getMatchingOrdersCount()).isEqualTo(0);
+		assertThat(repository.getUnMatchingOrdersCount()).isEqualTo(2);
+		assertThat(repository.amend(IDS.nextId(), 12100L, 0)).isFalse();
+	}
+
+	@Test
+	public void shouldTellTheListenerAboutMatchingChanges() {
+
+		List<String> events = new ArrayList<String>();
+		repository.setListener(new OrderStoreListener() {
+
+			@Override
+			public void onAdded(OrderData order) {
+				events.add("ADDED " + order.getId());
+			}
+
+			@Override
+			public void onCancelled(OrderData order) {
+				events.add("CANCELLED " + order.getId());
+			}
+
+			@Override
+			public void onMatched(OrderData order) {
+				events.add("MATCHED " + order.getId());
+			}
+
+			@Override
+			public void onUnmatched(OrderData order) {
+				events.add("UNMATCHED " + order.getId());
+			}
+		});
+
+		long ask = repository.add(order(OrderType.ASK, 12100L, 500L));
+		long bid = repository.add(order(OrderType.BID, 12100L, 500L));
+		long bid2 = repository.add(order(OrderType.BID, 12100L, 500L));
+		repository.remove(ask);
+
+		assertThat(events).containsExactly("ADDED " + ask, "ADDED " + bid, "MATCHED " + ask, "MATCHED " + bid,
+				"ADDED " + bid2, "MATCHED " + bid2, "CANCELLED " + ask, "UNMATCHED " + bid, "UNMATCHED " + bid2);
+	}
+
+	private static OrderQuery query(OrderQuery.Status status, OrderType side, BigDecimal minPrice,
+			BigDecimal maxPrice, long afterSequence, int limit) {
+		return new OrderQuery(status, GBPUSD, side, minPrice, maxPrice, Long.MIN_VALUE, Long.MAX_VALUE, afterSequence,
+				limit);
+	}
+
+	private static OrderData order(OrderType orderType, long pricePips, long amount) {
+		return order(GBPUSD, orderType, pricePips, amount);
+	}
+
+	private static OrderData order(CurrencyPair pair, OrderType orderType, long pricePips, long amount) {
+		return new OrderData(IDS.nextId(), pair, pricePips, amount, orderType,
+				System.currentTimeMillis());
+	}
+}
@@ -0,0 +1,117 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.worldfirst.fxorder.domain.CurrencyPair;
+import com.worldfirst.fxorder.domain.OrderData;
+import com.worldfirst.fxorder.domain.OrderType;
+
+/**
+ * JUnit Test class for RankTrie
+ *
+ * @author PM
+ *
+ */
+public class RankTrieTest {
+
+	private static final CurrencyPair GBPUSD = new CurrencyPair(0, "GBP/USD", 4);
+
+	/**
+	 * Editing a trie leaves the versions already built unchanged.
+	 */
+	@Test
+	public void shouldKeepOlderVersionsUnchanged() {
+
+		RankTrie.Editor editor = RankTrie.EMPTY.edit();
+		for (long rank = 1; rank <= 100; rank++) {
+			editor.put(rank, order(rank));
+		}
+		RankTrie first = editor.build();
+
+		RankTrie.Editor next = first.edit();
+		next.put(50, null);
+		next.put(5000, order(5000));
+		RankTrie second = next.build();
+
+		assertThat(first.size()).isEqualTo(100);
+		assertThat(first.get(50).getSequence()).isEqualTo(GBPUSD.sequence(50));
+		assertThat(first.get(5000)).isNull();
+		assertThat(second.size()).isEqualTo(100);
+		assertThat(second.get(50)).isNull();
+		assertThat(second.get(5000).getSequence()).isEqualTo(GBPUSD.sequence(5000));
+		assertThat(RankTrie.EMPTY.size()).isEqualTo(0);
+	}
+
+	@Test
+	public void shouldIterateInRankOrderAfterARank() {
+
+		RankTrie.Editor editor = RankTrie.EMPTY.edit();
+		for (long rank = 40000; rank > 0; rank -= 7) {
+			editor.put(rank, order(rank));
+		}
+		RankTrie trie = editor.build();
+
+		assertThat(ranks(trie.iterator(0))).hasSize(trie.size());
+		List<Long> after = ranks(trie.iterator(39990));
+		assertThat(after).containsExactly(39993L, 40000L);
+		assertThat(ranks(trie.iterator(40000))).isEmpty();
+	}
+
+	/**
+	 * Removing every order of a node drops it, so walking the trie skips it.
+	 */
+	@Test
+	public void shouldPruneEmptyNodes() {
+
+		RankTrie.Editor editor = RankTrie.EMPTY.edit();
+		for (long rank = 1; rank <= 3000; rank++) {
+			editor.put(rank, order(rank));
+		}
+		RankTrie full = editor.build();
+
+		RankTrie.Editor remover = full.edit();
+		for (long rank = 1; rank < 3000; rank++) {
+			remover.put(rank, null);
+		}
+		RankTrie last = remover.build();
+
+		assertThat(last.size()).isEqualTo(1);
+		assertThat(ranks(last.iterator(0))).containsExactly(3000L);
+
+		RankTrie.Editor emptier = last.edit();
+		emptier.put(3000, null);
+		RankTrie empty = emptier.build();
+		assertThat(empty.size()).isEqualTo(0);
+		assertThat(empty.iterator(0).hasNext()).isFalse();
+	}
+
+	private static List<Long> ranks(Iterator<OrderData> orders) {
+		List<Long> ranks = new ArrayList<Long>();
+		while (orders.hasNext()) {
+			ranks.add(CurrencyPair.rankOf(orders.next().getSequence()));
+		}
+		return ranks;
+	}
+
+	private static OrderData order(long rank) {
+		OrderData order = new OrderData(rank, GBPUSD, 12100L, 500L, OrderType.ASK, System.currentTimeMillis());
+		order.setSequence(GBPUSD.sequence(rank));
+		return order;
+	}
+}
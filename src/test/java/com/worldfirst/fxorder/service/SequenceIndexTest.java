@@ -0,0 +1,77 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.worldfirst.fxorder.domain.CurrencyPair;
+import com.worldfirst.fxorder.domain.OrderData;
+import com.worldfirst.fxorder.domain.OrderType;
+
+/**
+ * JUnit Test class for SequenceIndex
+ *
+ * @author PM
+ *
+ */
+public class SequenceIndexTest {
+
+	private static final CurrencyPair GBPUSD = new CurrencyPair(0, "GBP/USD", 4);
+
+	/**
+	 * Removing orders leaves empty slots, reclaiming and growing them moves
+	 * the orders, neither may lose an order nor change the sequence order.
+	 */
+	@Test
+	public void shouldKeepSequenceOrderAcrossRemovalsAndGrowth() {
+
+		SequenceIndex index = new SequenceIndex(4);
+		List<Long> expected = new ArrayList<Long>();
+		for (long sequence = 1; sequence <= 1000; sequence++) {
+			index.add(order(sequence * 10));
+			expected.add(sequence * 10);
+			if (sequence % 3 == 0) {
+				assertThat(index.remove((sequence - 1) * 10).getSequence()).isEqualTo((sequence - 1) * 10);
+				expected.remove(Long.valueOf((sequence - 1) * 10));
+			}
+		}
+		index.add(order(15));
+		expected.add(1, 15L);
+
+		assertThat(index.remove(20)).isNull();
+		assertThat(index.remove(25)).isNull();
+		assertThat(index.size()).isEqualTo(expected.size());
+		assertThat(sequencesAfter(index, 0)).containsExactlyElementsOf(expected);
+		assertThat(sequencesAfter(index, 9985)).containsExactly(9990L, 10000L);
+		assertThat(sequencesAfter(index, 10000)).isEmpty();
+	}
+
+	private static List<Long> sequencesAfter(SequenceIndex index, long after) {
+		List<Long> sequences = new ArrayList<Long>();
+		for (int slot = index.higher(after); slot < index.end(); slot++) {
+			if (null != index.get(slot)) {
+				sequences.add(index.get(slot).getSequence());
+			}
+		}
+		return sequences;
+	}
+
+	private static OrderData order(long sequence) {
+		OrderData order = new OrderData(sequence, GBPUSD, 12100L, 500L, OrderType.ASK, System.currentTimeMillis());
+		order.setSequence(sequence);
+		return order;
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * JUnit Test class for SnowflakeIdGenerator
+ *
+ * @author PM
+ *
+ */
+public class SnowflakeIdGeneratorTest {
+
+	@Test
+	public void shouldGiveIncreasingIdsCarryingTimeAndNode() {
+
+		SnowflakeIdGenerator ids = new SnowflakeIdGenerator(513);
+		long before = System.currentTimeMillis();
+
+		// More than 4096 ids borrow the next milliseconds
+		long previous = 0;
+		for (int i = 0; i < 100000; i++) {
+			long id = ids.nextId();
+			assertThat(id).isGreaterThan(previous);
+			previous = id;
+		}
+
+		long first = new SnowflakeIdGenerator(513).nextId();
+		assertThat(SnowflakeIdGenerator.nodeOf(first)).isEqualTo(513);
+		assertThat(SnowflakeIdGenerator.timeOf(first)).isBetween(before, System.currentTimeMillis());
+	}
+
+	@Test
+	public void shouldGiveUniqueIdsAcrossThreads() throws InterruptedException {
+
+		SnowflakeIdGenerator ids = new SnowflakeIdGenerator(1);
+		int threads = 4;
+		int idsPerThread = 20000;
+		long[][] given = new long[threads][idsPerThread];
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		CountDownLatch done = new CountDownLatch(threads);
+
+		for (int t = 0; t < threads; t++) {
+			final long[] mine = given[t];
+			executor.execute(() -> {
+				for (int i = 0; i < mine.length; i++) {
+					mine[i] = ids.nextId();
+				}
+				done.countDown();
+			});
+		}
+
+		assertThat(done.await(30, TimeUnit.SECONDS)).isTrue();
+		executor.shutdown();
+
+		Set<Long> unique = new HashSet<Long>();
+		for (long[] mine : given) {
+			for (int i = 0; i < mine.length; i++) {
+				unique.add(mine[i]);
+				if (i > 0) {
+					assertThat(mine[i]).isGreaterThan(mine[i - 1]);
+				}
+			}
+		}
+		assertThat(unique).hasSize(threads * idsPerThread);
+	}
+
+	@Test
+	public void shouldParseDecimalIdsOnly() {
+
+		assertThat(OrderIdGenerator.parse("384219871234560001")).isEqualTo(384219871234560001L);
+		assertThat(OrderIdGenerator.parse(Long.toString(Long.MAX_VALUE))).isEqualTo(Long.MAX_VALUE);
+		assertThat(OrderIdGenerator.parse("9223372036854775808")).isEqualTo(0L);
+		assertThat(OrderIdGenerator.parse("12a")).isEqualTo(0L);
+		assertThat(OrderIdGenerator.parse("-1")).isEqualTo(0L);
+		assertThat(OrderIdGenerator.parse("")).isEqualTo(0L);
+		assertThat(OrderIdGenerator.parse(null)).isEqualTo(0L);
+	}
+}
@@ -0,0 +1,203 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.web;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import com.jayway.jsonpath.JsonPath;
+import com.worldfirst.fxorder.cluster.OrderCluster;
+import com.worldfirst.fxorder.cluster.StubClusterClient;
+import com.worldfirst.fxorder.domain.CurrencyPair;
+import com.worldfirst.fxorder.service.CurrencyPairRegistry;
+
+/**
+ * JUnit Test class for FXRestController in a cluster of two nodes, this one
+ * and node B answered by a {@link StubClusterClient}
+ *
+ * @author PM
+ *
+ */
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = { "fxorder.cluster.enabled=true", "fxorder.cluster.self=http://node-a",
+		"fxorder.cluster.nodes=http://node-a,http://node-b" })
+public class FXRestControllerClusterTest {
+
+	private static final String NODE_B = "http://node-b";
+
+	@Autowired
+	WebApplicationContext context;
+
+	@Autowired
+	OrderCluster cluster;
+
+	@Autowired
+	CurrencyPairRegistry pairs;
+
+	private MockMvc mvc;
+
+	private StubClusterClient client;
+
+	private String local;
+
+	private String remote;
+
+	@Before
+	public void setUp() {
+
+		mvc = MockMvcBuilders.webAppContextSetup(context).build();
+		client = new StubClusterClient();
+		client.install(cluster);
+
+		for (CurrencyPair pair : pairs.pairs()) {
+			if (null == cluster.route(pair.getSymbol())) {
+				local = null == local ? pair.getSymbol() : local;
+			} else {
+				remote = null == remote ? pair.getSymbol() : remote;
+			}
+		}
+		assertThat(local).isNotNull();
+		assertThat(remote).isNotNull();
+	}
+
+	@After
+	public void cleanUp() {
+		ReflectionTestUtils.setField(cluster, "routing", "forward");
+	}
+
+	@Test
+	public void shouldForwardAnOrderOfAPairOwnedByAnotherNode() throws Exception {
+
+		client.answer(NODE_B + "/v1/createOrder", new ResponseEntity<>(bytes("Order saved on B!"), HttpStatus.OK));
+
+		mvc.perform(post("/v1/createOrder").contentType(MediaType.APPLICATION_JSON).content(order(remote, "BID")))
+				.andExpect(status().isOk()).andExpect(content().string("Order saved on B!"));
+		mvc.perform(post("/v1/createOrder").contentType(MediaType.APPLICATION_JSON).content(order(local, "BID")))
+				.andExpect(status().isOk()).andExpect(content().string("Order saved!"));
+
+		assertThat(client.getRequests()).containsExactly("POST " + NODE_B + "/v1/createOrder");
+	}
+
+	@Test
+	public void shouldRedirectAnOrderOfAPairOwnedByAnotherNode() throws Exception {
+
+		ReflectionTestUtils.setField(cluster, "routing", "redirect");
+
+		mvc.perform(post("/v1/createOrder").contentType(MediaType.APPLICATION_JSON).content(order(remote, "BID")))
+				.andExpect(status().isTemporaryRedirect())
+				.andExpect(header().string(HttpHeaders.LOCATION, NODE_B + "/v1/createOrder"));
+
+		assertThat(client.getRequests()).isEmpty();
+	}
+
+	@Test
+	public void shouldPlaceTheOutcomesOfAnotherNodeAtTheirBatchPositions() throws Exception {
+
+		client.answer(NODE_B + "/v1/orders:batch", new ResponseEntity<>(bytes(
+				"[{\"index\":0,\"id\":\"11\",\"success\":true},{\"index\":1,\"success\":false,\"message\":\"Rejected on B\"}]"),
+				HttpStatus.OK));
+
+		mvc.perform(post("/v1/orders:batch").contentType(MediaType.APPLICATION_JSON)
+				.content("[" + order(remote, "BID") + "," + order(local, "BID") + "," + order(remote, "ASK") + "]"))
+				.andExpect(status().isOk()).andExpect(jsonPath("$.length()").value(3))
+				.andExpect(jsonPath("$[0].index").value(0)).andExpect(jsonPath("$[0].id").value("11"))
+				.andExpect(jsonPath("$[0].success").value(true)).andExpect(jsonPath("$[1].index").value(1))
+				.andExpect(jsonPath("$[1].success").value(true)).andExpect(jsonPath("$[2].index").value(2))
+				.andExpect(jsonPath("$[2].success").value(false))
+				.andExpect(jsonPath("$[2].message").value("Rejected on B"));
+
+		assertThat(client.getRequests()).containsExactly("POST " + NODE_B + "/v1/orders:batch");
+	}
+
+	@Test
+	public void shouldWalkTheNodesPageByPageWithACompositeCursor() throws Exception {
+
+		for (int i = 0; i < 3; i++) {
+			mvc.perform(post("/v1/createOrder").contentType(MediaType.APPLICATION_JSON)
+					.content(order(local, "BID", "1.25"))).andExpect(status().isOk());
+		}
+		String query = "/v1/orders?minPrice=1.25&maxPrice=1.25&limit=2";
+
+		MvcResult first = mvc.perform(get(query)).andExpect(status().isOk())
+				.andExpect(jsonPath("$.orders.length()").value(2)).andReturn();
+		String cursor = JsonPath.read(first.getResponse().getContentAsString(), "$.nextCursor");
+		assertThat(cursor).startsWith("0.").isNotEqualTo("0.");
+		assertThat(first.getResponse().getHeader(FXRestController.NEXT_CURSOR_HEADER)).isEqualTo(cursor);
+
+		mvc.perform(get(query + "&cursor=" + cursor)).andExpect(status().isOk())
+				.andExpect(jsonPath("$.orders.length()").value(1)).andExpect(jsonPath("$.nextCursor").value("1."));
+		assertThat(client.getRequests()).isEmpty();
+
+		HttpHeaders headers = new HttpHeaders();
+		headers.set(FXRestController.NEXT_CURSOR_HEADER, "b7");
+		client.answer(NODE_B + "/v1/orders", new ResponseEntity<>(
+				bytes("{\"orders\":[{\"id\":\"21\"},{\"id\":\"22\"}],\"nextCursor\":\"b7\",\"snapshot\":5}"), headers,
+				HttpStatus.OK));
+		mvc.perform(get(query + "&cursor=1.")).andExpect(status().isOk())
+				.andExpect(jsonPath("$.orders[1].id").value("22")).andExpect(jsonPath("$.nextCursor").value("1.b7"))
+				.andExpect(header().string(FXRestController.NEXT_CURSOR_HEADER, "1.b7"));
+
+		client.answer(NODE_B + "/v1/orders",
+				new ResponseEntity<>(bytes("{\"orders\":[{\"id\":\"23\"}],\"snapshot\":5}"), HttpStatus.OK));
+		mvc.perform(get(query + "&cursor=1.b7")).andExpect(status().isOk())
+				.andExpect(jsonPath("$.orders[0].id").value("23")).andExpect(jsonPath("$.nextCursor").doesNotExist())
+				.andExpect(header().doesNotExist(FXRestController.NEXT_CURSOR_HEADER));
+
+		assertThat(client.getRequests()).containsExactly("GET " + NODE_B + query, "GET " + NODE_B + query + "&cursor=b7");
+	}
+
+	@Test
+	public void shouldRefuseACursorOfAnUnknownNode() throws Exception {
+
+		mvc.perform(get("/v1/orders?cursor=2.")).andExpect(status().isBadRequest());
+	}
+
+	// Internal helpers
+
+	private static String order(String currency, String side) {
+		return order(currency, side, "1.5");
+	}
+
+	private static String order(String currency, String side, String price) {
+		return "{\"currency\":\"" + currency + "\",\"price\":\"" + price + "\",\"amount\":\"7\",\"bidOrAsk\":\"" + side
+				+ "\"}";
+	}
+
+	private static byte[] bytes(String text) {
+		return text.getBytes(StandardCharsets.UTF_8);
+	}
+
+}
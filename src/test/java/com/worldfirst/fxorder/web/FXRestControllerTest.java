@@ -10,17 +10,21 @@
 
 package com.worldfirst.fxorder.web;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.not;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import java.time.LocalDateTime;
 import java.time.ZoneId;
-import java.util.UUID;
 
 import org.junit.After;
 import org.junit.Before;
@@ -33,13 +37,20 @@ import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMock
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.context.WebApplicationContext;
 
+import com.jayway.jsonpath.JsonPath;
 import com.worldfirst.fxorder.domain.OrderData;
 import com.worldfirst.fxorder.domain.OrderType;
+import com.worldfirst.fxorder.expiry.OrderExpiry;
+import com.worldfirst.fxorder.replication.OrderReplication;
 import com.worldfirst.fxorder.repository.OrderRecordsRepository;
+import com.worldfirst.fxorder.service.CurrencyPairRegistry;
+import com.worldfirst.fxorder.service.OrderIdGenerator;
 
 /**
  * JUnit Test class for FXRestController
@@ -59,6 +70,18 @@ public class FXRestControllerTest {
 	
 	@Autowired
 	OrderRecordsRepository repository;
+	
+	@Autowired
+	CurrencyPairRegistry pairs;
+
+	@Autowired
+	OrderIdGenerator ids;
+
+	@Autowired
+	OrderExpiry expiry;
+
+	@Autowired
+	OrderReplication replication;
 
 	private MockMvc mvc;
 	
@@ -73,22 +96,22 @@ public class FXRestControllerTest {
 		MockitoAnnotations.initMocks(this);
 		mvc = MockMvcBuilders.webAppContextSetup(context).build();
 		
-		OrderData order1 = new OrderData(UUID.randomUUID().toString(), "GBP/USD", (float)2.2222, 2000L, OrderType.ASK,
+		OrderData order1 = new OrderData(ids.nextId(), pairs.lookup("GBP/USD"), 22222L, 2000L, OrderType.ASK,
 				LocalDateTime.now().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
 		
-		OrderData order2 = new OrderData(UUID.randomUUID().toString(), "GBP/USD", (float)3.3333, 6000L, OrderType.BID,
+		OrderData order2 = new OrderData(ids.nextId(), pairs.lookup("GBP/USD"), 33333L, 6000L, OrderType.BID,
 				LocalDateTime.now().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
 		
-		OrderData order3 = new OrderData(UUID.randomUUID().toString(), "GBP/USD", (float)2.2222, 2000L, OrderType.BID,
+		OrderData order3 = new OrderData(ids.nextId(), pairs.lookup("GBP/USD"), 22222L, 2000L, OrderType.BID,
 				LocalDateTime.now().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
 		
-		OrderData order4 = new OrderData(UUID.randomUUID().toString(), "GBP/USD", (float)3.3334, 6000L, OrderType.ASK,
+		OrderData order4 = new OrderData(ids.nextId(), pairs.lookup("GBP/USD"), 33334L, 6000L, OrderType.ASK,
 				LocalDateTime.now().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
 		
-		oid1 = repository.add(order1);
-		oid2 = repository.add(order2);
-		oid3 = repository.add(order3);
-		oid4 = repository.add(order4);
+		oid1 = Long.toString(repository.add(order1));
+		oid2 = Long.toString(repository.add(order2));
+		oid3 = Long.toString(repository.add(order3));
+		oid4 = Long.toString(repository.add(order4));
 		
 	}
 
@@ -129,6 +152,7 @@ public class FXRestControllerTest {
 		
 		this.mvc.perform(get("/v1/matchedOrders")).andDo(print())
 		.andExpect(status().isOk())
+		.andExpect(header().exists("X-Snapshot-Sequence"))
 		.andExpect(content().string(containsString(oid1)))
 		.andExpect(content().string(containsString(oid3)))
 		.andExpect(content().string(not(containsString(oid2))))
@@ -137,6 +161,282 @@ public class FXRestControllerTest {
 	}
 	
 	
+	/**
+	 * Test method for
+	 * {@link com.sky.library.FXRestController#orders(OrderQueryDTO)}. 
+	 * 
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void shouldPageOrdersFilteredByPriceRange() throws Exception {
+		
+		this.mvc.perform(get("/v1/orders").param("currency", "GBP/USD").param("minPrice", "2.2222")
+				.param("maxPrice", "3.3333").param("limit", "1")).andDo(print())
+		.andExpect(status().isOk())
+		.andExpect(jsonPath("$.orders.length()").value(1))
+		.andExpect(jsonPath("$.nextCursor").isNotEmpty())
+		.andExpect(jsonPath("$.snapshot").isNumber())
+		.andExpect(content().string(not(containsString(oid4))));
+	}
+	
+	
+	/**
+	 * Test method for
+	 * {@link com.sky.library.FXRestController#orderCounts()}. Both counts are
+	 * read from one snapshot
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void shouldCountOrdersInOneSnapshot() throws Exception {
+		
+		this.mvc.perform(get("/v1/orderCounts")).andDo(print())
+		.andExpect(status().isOk())
+		.andExpect(jsonPath("$.matched").isNumber())
+		.andExpect(jsonPath("$.unmatched").isNumber())
+		.andExpect(jsonPath("$.snapshot").isNumber());
+	}
+	
+	
+	/**
+	 * Test method for
+	 * {@link com.sky.library.FXRestController#depth(String, Integer)}. The pair
+	 * is given without its slash
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void shouldReturnTheDepthOfABook() throws Exception {
+		
+		this.mvc.perform(get("/v1/book/GBPUSD/depth").param("levels", "5")).andDo(print())
+		.andExpect(status().isOk())
+		.andExpect(jsonPath("$.currency").value("GBP/USD"))
+		.andExpect(jsonPath("$.bids").isArray())
+		.andExpect(jsonPath("$.asks").isArray());
+		
+		this.mvc.perform(get("/v1/book/GBP-XXX/depth")).andDo(print())
+		.andExpect(status().isBadRequest())
+		.andExpect(header().string("X-Reject-Reason", "INVALID_CURRENCY_PAIR"));
+		
+		this.mvc.perform(get("/v1/book/GBPUSD/depth").param("levels", "0")).andDo(print())
+		.andExpect(status().isBadRequest());
+	}
+	
+	
+	/**
+	 * Test method for
+	 * {@link com.sky.library.FXRestController#cancelLevel(String, String, BigDecimal)}.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void shouldCancelAWholePriceLevel() throws Exception {
+		
+		for (int i = 0; i < 2; i++) {
+			this.mvc.perform(post("/v1/createOrder").contentType(MediaType.APPLICATION_JSON)
+					.content("{\"currency\":\"GBP/USD\",\"price\":\"1.9997\",\"amount\":\"7\",\"bidOrAsk\":\"ASK\"}"))
+			.andExpect(status().isOk());
+		}
+		
+		this.mvc.perform(post("/v1/book/GBPUSD/cancelLevel").param("side", "ask").param("price", "1.9997"))
+		.andDo(print())
+		.andExpect(status().isOk())
+		.andExpect(jsonPath("$.length()").value(2));
+		
+		this.mvc.perform(post("/v1/book/GBPUSD/cancelLevel").param("side", "ASK").param("price", "1.9997"))
+		.andExpect(status().isOk())
+		.andExpect(jsonPath("$.length()").value(0));
+		
+		this.mvc.perform(post("/v1/book/GBPUSD/cancelLevel").param("side", "BOTH").param("price", "1.9997"))
+		.andExpect(status().isBadRequest())
+		.andExpect(header().string("X-Reject-Reason", "INVALID_ORDER_TYPE"));
+	}
+	
+	
+	/**
+	 * Test method for
+	 * {@link com.sky.library.FXRestController#amendOrder(String, BigDecimal, Long)}.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void shouldAmendAnOrder() throws Exception {
+		
+		MvcResult created = this.mvc.perform(post("/v1/orders:batch").contentType(MediaType.APPLICATION_JSON)
+				.content("[{\"currency\":\"GBP/USD\",\"price\":\"1.9993\",\"amount\":\"7\",\"bidOrAsk\":\"ASK\"}]"))
+		.andExpect(status().isOk()).andReturn();
+		String id = JsonPath.read(created.getResponse().getContentAsString(), "$[0].id");
+		
+		this.mvc.perform(post("/v1/amendOrder/{Id}", id).param("amount", "5"))
+		.andDo(print())
+		.andExpect(status().isOk())
+		.andExpect(content().string(containsString("Order amended!")));
+		
+		this.mvc.perform(post("/v1/amendOrder/{Id}", id).param("price", "1.9994"))
+		.andExpect(status().isOk());
+		
+		this.mvc.perform(post("/v1/book/GBPUSD/cancelLevel").param("side", "ASK").param("price", "1.9993"))
+		.andExpect(status().isOk())
+		.andExpect(jsonPath("$.length()").value(0));
+		
+		this.mvc.perform(post("/v1/amendOrder/{Id}", id))
+		.andExpect(status().isBadRequest())
+		.andExpect(content().string(containsString("You have entered no price nor amount to amend!")));
+		
+		this.mvc.perform(post("/v1/amendOrder/{Id}", id).param("amount", "0"))
+		.andExpect(status().isBadRequest())
+		.andExpect(header().string("X-Reject-Reason", "INVALID_AMOUNT"));
+		
+		this.mvc.perform(post("/v1/book/GBPUSD/cancelLevel").param("side", "ASK").param("price", "1.9994"))
+		.andExpect(status().isOk())
+		.andExpect(jsonPath("$[0]").value(id));
+		
+		this.mvc.perform(post("/v1/amendOrder/{Id}", id).param("amount", "5"))
+		.andExpect(status().isBadRequest())
+		.andExpect(header().string("X-Reject-Reason", "UNKNOWN_ORDER"));
+	}
+	
+	
+	/**
+	 * Test method for
+	 * {@link com.sky.library.FXRestController#stats()}.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void shouldReturnTheStatisticsOfEveryPair() throws Exception {
+		
+		this.mvc.perform(post("/v1/createOrder").contentType(MediaType.APPLICATION_JSON)
+				.content("{\"currency\":\"GBP/USD\",\"price\":\"1.0001\",\"amount\":\"7\",\"bidOrAsk\":\"BID\"}"))
+		.andExpect(status().isOk());
+		
+		this.mvc.perform(get("/v1/stats")).andDo(print())
+		.andExpect(status().isOk())
+		.andExpect(jsonPath("$['GBP/USD'].currency").value("GBP/USD"))
+		.andExpect(jsonPath("$['GBP/USD'].matched").isNumber())
+		.andExpect(jsonPath("$['GBP/USD'].bids.orders").isNumber())
+		.andExpect(jsonPath("$['GBP/USD'].bids.vwap").isNumber());
+	}
+	
+	
+	/**
+	 * Test method for
+	 * {@link com.sky.library.FXRestController#unmatchedOrders(OrderQueryDTO)}. When
+	 * given a limit
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void shouldPageNotMachingOrders() throws Exception {
+		
+		this.mvc.perform(get("/v1/unmatchedOrders").param("limit", "1")).andDo(print())
+		.andExpect(status().isOk())
+		.andExpect(jsonPath("$.length()").value(1))
+		.andExpect(header().exists("X-Next-Cursor"))
+		.andExpect(header().exists("X-Snapshot-Sequence"));
+	}
+	
+	
+	/**
+	 * Test method for
+	 * {@link com.sky.library.FXRestController#streamOrders(OrderQueryDTO)}. 
+	 * 
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void shouldStreamOrdersAsJsonLines() throws Exception {
+		
+		MvcResult result = this.mvc.perform(get("/v1/orders/stream").param("status", "matched"))
+				.andExpect(request().asyncStarted()).andReturn();
+		
+		this.mvc.perform(asyncDispatch(result))
+		.andExpect(status().isOk())
+		.andExpect(content().contentType("application/x-ndjson"))
+		.andExpect(content().string(containsString("\"id\":\"" + oid1 + "\"")))
+		.andExpect(content().string(containsString("}\n{")))
+		.andExpect(content().string(not(containsString(oid2))));
+	}
+	
+	
+	/**
+	 * Test method for
+	 * {@link com.sky.library.FXRestController#streamOrders(OrderQueryDTO)}. When
+	 * given an invalid cursor
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void shouldNotStreamOrdersWithInvalidCursor() throws Exception {
+		
+		MvcResult result = this.mvc.perform(get("/v1/orders/stream").param("cursor", "abc"))
+				.andExpect(request().asyncStarted()).andReturn();
+		
+		this.mvc.perform(asyncDispatch(result))
+		.andExpect(status().isBadRequest())
+		.andExpect(content().string(containsString("You have entered invalid cursor: abc")));
+	}
+	
+	
+	/**
+	 * Test method for
+	 * {@link com.sky.library.FXRestController#streamOrders(OrderQueryDTO)}. On
+	 * a follower lagging too far behind its leader
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void shouldNotStreamOrdersFromAStaleReplica() throws Exception {
+		
+		Object maxLag = ReflectionTestUtils.getField(replication, "maxLagMs");
+		ReflectionTestUtils.setField(replication, "maxLagMs", -1L);
+		try {
+			MvcResult result = this.mvc.perform(get("/v1/orders/stream").param("status", "matched"))
+					.andExpect(request().asyncStarted()).andReturn();
+			
+			this.mvc.perform(asyncDispatch(result))
+			.andExpect(status().isServiceUnavailable())
+			.andExpect(content().string(containsString("ms behind the leader!")));
+		} finally {
+			ReflectionTestUtils.setField(replication, "maxLagMs", maxLag);
+		}
+	}
+	
+	
+	/**
+	 * Test method for
+	 * {@link com.sky.library.FXRestController#orderFeed(String)}. When the
+	 * subscribed orders change, and when given an invalid currency pair
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void shouldPushOrderChangesToFeedSubscribers() throws Exception {
+		
+		MvcResult result = this.mvc.perform(get("/v1/orders/feed").param("currency", "GBP/USD"))
+				.andExpect(request().asyncStarted()).andReturn();
+		
+		long ask = repository.add(new OrderData(ids.nextId(), pairs.lookup("GBP/USD"), 44444L, 7777L,
+				OrderType.ASK, System.currentTimeMillis()));
+		long bid = repository.add(new OrderData(ids.nextId(), pairs.lookup("GBP/USD"), 44444L, 7777L,
+				OrderType.BID, System.currentTimeMillis()));
+		repository.remove(ask);
+		
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!result.getResponse().getContentAsString().contains("UNMATCHED")
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		
+		assertThat(result.getResponse().getContentAsString()).contains("event:CANCELLED", "event:UNMATCHED",
+				Long.toString(ask), Long.toString(bid));
+		
+		this.mvc.perform(get("/v1/orders/feed").param("currency", "GBP/EUR"))
+		.andExpect(status().isBadRequest());
+	}
+	
+	
 	/**
 	 * Test method for
 	 * {@link com.sky.library.FXRestController#createOrder(OrderDTO)}. When
@@ -156,6 +456,166 @@ public class FXRestControllerTest {
 	}
 	
 	
+	/**
+	 * Test method for the Prometheus endpoint of Actuator, exporting the
+	 * service metrics once an order is saved
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void shouldExportServiceMetricsForPrometheus() throws Exception {
+
+		String orderJson = "{\"currency\":\"GBP/USD\",\"bidOrAsk\":\"ASK\",\"price\":\"5.5555\",\"amount\":\"4000\"}";
+		mvc.perform(post("/v1/createOrder").content(orderJson)
+				.contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON)).andExpect(status().isOk());
+
+		mvc.perform(get("/actuator/prometheus")).andExpect(status().isOk())
+				.andExpect(header().string("Content-Type", containsString("version=0.0.4")))
+				.andExpect(content().string(containsString("fxorder_operation_seconds_count{operation=\"saveOrder\",}")))
+				.andExpect(content().string(containsString("fxorder_operation_seconds_bucket{operation=\"saveOrder\",le=")))
+				.andExpect(content().string(containsString("fxorder_book_depth{pair=\"GBP/USD\",}")))
+				.andExpect(content().string(containsString("fxorder_orders_rejected_total")));
+	}
+
+	/**
+	 * Test method for
+	 * {@link com.sky.library.FXRestController#createOrder(OrderDTO)}. When
+	 * given a GTD Order DTO, which is cancelled once its expire time is reached
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void shouldExpireAGoodTillDateOrder() throws Exception {
+
+		long expireTime = System.currentTimeMillis() + 3600000L;
+		String orderJson = "{\"currency\":\"GBP/USD\",\"bidOrAsk\":\"ASK\",\"price\":\"7.7771\",\"amount\":\"4000\","
+				+ "\"timeInForce\":\"GTD\",\"expireTime\":" + expireTime + "}";
+
+		mvc.perform(post("/v1/createOrder").content(orderJson)
+				.contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON)).andExpect(status().isOk());
+
+		assertThat(repository.getAllOrders()).filteredOn(order -> 77771L == order.getPricePips())
+				.extracting(OrderData::getExpireTime).containsExactly(expireTime);
+
+		assertThat(expiry.expire(expireTime - 1000L)).isEqualTo(0);
+		assertThat(expiry.expire(expireTime + 1000L)).isEqualTo(1);
+
+		assertThat(repository.getAllOrders()).noneMatch(order -> 77771L == order.getPricePips());
+	}
+
+	/**
+	 * Test method for
+	 * {@link com.sky.library.FXRestController#createOrder(OrderDTO)}. When
+	 * given an expire time for a GTC order
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void shouldFailToCreateAGoodTillCancelledOrderWithExpireTime() throws Exception {
+
+		String orderJson = "{\"currency\":\"GBP/USD\",\"bidOrAsk\":\"ASK\",\"price\":\"7.7772\",\"amount\":\"4000\","
+				+ "\"timeInForce\":\"GTC\",\"expireTime\":" + (System.currentTimeMillis() + 3600000L) + "}";
+
+		mvc.perform(post("/v1/createOrder").content(orderJson)
+				.contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON)).andExpect(status().isBadRequest())
+				.andExpect(content().string(containsString("Expire time is only allowed for GTD orders!")));
+	}
+
+	/**
+	 * Test method for
+	 * {@link com.sky.library.FXRestController#createOrder(OrderDTO)}. When
+	 * given an IOC order which no order of the other side fills
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void shouldNotKeepAnImmediateOrderWithNothingToFillIt() throws Exception {
+
+		String orderJson = "{\"currency\":\"GBP/USD\",\"bidOrAsk\":\"BID\",\"price\":\"7.7773\",\"amount\":\"4000\","
+				+ "\"timeInForce\":\"IOC\"}";
+
+		mvc.perform(post("/v1/createOrder").content(orderJson)
+				.contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON)).andExpect(status().isOk())
+				.andExpect(content().string("Order not kept!"));
+
+		assertThat(repository.getAllOrders()).noneMatch(order -> 77773L == order.getPricePips());
+	}
+
+	/**
+	 * Test method for
+	 * {@link com.sky.library.FXRestController#createOrder(OrderDTO)}. When
+	 * given a valid Order DTO with a price having less than 4 decimals
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void shouldCreateAnOrderWithShortPrice() throws Exception {
+
+		String orderJson = "{\"currency\":\"GBP/USD\",\"bidOrAsk\":\"BID\",\"price\":\"1.21\",\"amount\":\"4000\"}";
+		
+		 mvc.perform(post("/v1/createOrder").content(orderJson)
+				.contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON)).andExpect(status().isOk())
+				.andExpect(content().string(containsString("Order saved!")));
+
+	}
+	
+	
+	/**
+	 * Test method for
+	 * {@link com.sky.library.FXRestController#createOrders(List)}. When given
+	 * a batch holding a valid and an invalid order
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void shouldCreateTheValidOrdersOfABatch() throws Exception {
+
+		String ordersJson = "[{\"currency\":\"GBP/USD\",\"bidOrAsk\":\"ASK\",\"price\":\"1.2100\",\"amount\":\"4000\"},"
+				+ "{\"currency\":\"GBP/EUR\",\"bidOrAsk\":\"BID\",\"price\":\"1.2100\",\"amount\":\"4000\"}]";
+
+		mvc.perform(post("/v1/orders:batch").content(ordersJson)
+				.contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON)).andExpect(status().isOk())
+		.andExpect(jsonPath("$.length()").value(2))
+		.andExpect(jsonPath("$[0].success").value(true))
+		.andExpect(jsonPath("$[0].id").isNotEmpty())
+		.andExpect(jsonPath("$[0].reason").doesNotExist())
+		.andExpect(jsonPath("$[1].index").value(1))
+		.andExpect(jsonPath("$[1].success").value(false))
+		.andExpect(jsonPath("$[1].message").value("You have entered invalid currency pair!"))
+		.andExpect(jsonPath("$[1].reason").value("INVALID_CURRENCY_PAIR"))
+		.andExpect(jsonPath("$[1].field").value("currency"));
+
+		mvc.perform(post("/v1/orders:batch").content("[]")
+				.contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON)).andExpect(status().isBadRequest())
+		.andExpect(content().string(containsString("You have entered invalid batch size: 0")));
+	}
+	
+	
+	/**
+	 * Test method for
+	 * {@link com.sky.library.FXRestController#cancelOrders(List)}. When given
+	 * a batch holding existing and unknown order ids
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void shouldCancelTheExistingOrdersOfABatch() throws Exception {
+
+		String idsJson = "[\"" + oid1 + "\",\"unknown\",\"" + oid3 + "\"]";
+
+		mvc.perform(post("/v1/cancel:batch").content(idsJson)
+				.contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON)).andExpect(status().isOk())
+		.andExpect(jsonPath("$[0].success").value(true))
+		.andExpect(jsonPath("$[1].success").value(false))
+		.andExpect(jsonPath("$[1].message").value("OrderId does not exists!"))
+		.andExpect(jsonPath("$[2].id").value(oid3))
+		.andExpect(jsonPath("$[2].success").value(true));
+
+		mvc.perform(get("/v1/orders").param("status", "matched")).andExpect(status().isOk())
+		.andExpect(content().string(not(containsString(oid1))));
+	}
+	
+	
 	/**
 	 * Test method for
 	 * {@link com.sky.library.FXRestController#createOrder(OrderDTO)}. When
@@ -174,6 +634,30 @@ public class FXRestControllerTest {
 	}
 	
 	
+	/**
+	 * Test method for
+	 * {@link com.sky.library.FXRestController#createOrder(OrderDTO)}. When
+	 * given Order DTOs of another configured pair on and off its tick size
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void shouldCreateAnOrderOfAnotherPairOnItsTickSize() throws Exception {
+
+		String orderJson = "{\"currency\":\"USD/JPY\",\"bidOrAsk\":\"BID\",\"price\":\"151.235\",\"amount\":\"4000\"}";
+		
+		 mvc.perform(post("/v1/createOrder").content(orderJson)
+				.contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON)).andExpect(status().isOk())
+				.andExpect(content().string(containsString("Order saved!")));
+
+		orderJson = "{\"currency\":\"USD/JPY\",\"bidOrAsk\":\"BID\",\"price\":\"151.236\",\"amount\":\"4000\"}";
+		
+		 mvc.perform(post("/v1/createOrder").content(orderJson)
+				.contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON)).andExpect(status().isBadRequest())
+			.andExpect(content().string(containsString("The tick size of USD/JPY is 0.005")));
+	}
+	
+	
 	/**
 	 * Test method for
 	 * {@link com.sky.library.FXRestController#createOrder(OrderDTO)}. When
@@ -240,7 +724,9 @@ public class FXRestControllerTest {
 		
 		 mvc.perform(post("/v1/createOrder").content(orderJson)
 				.contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON)).andExpect(status().isBadRequest())
-			.andExpect(content().string(containsString("You have entered invalid amount range: ")));
+			.andExpect(content().string(containsString("You have entered invalid amount range: ")))
+			.andExpect(header().string("X-Reject-Reason", "INVALID_AMOUNT"))
+			.andExpect(header().string("X-Reject-Field", "amount"));
 	}
 	
 	
@@ -0,0 +1,153 @@
+/*
+ * No Copyright intended or License applies just for templating.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.worldfirst.fxorder.wire;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.worldfirst.fxorder.domain.OrderData;
+import com.worldfirst.fxorder.domain.OrderType;
+import com.worldfirst.fxorder.service.IFXTradingService;
+
+/**
+ * JUnit Test class for OrderEntryServer
+ *
+ * @author PM
+ *
+ */
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = { "fxorder.wire.enabled=true", "fxorder.wire.port=0" })
+public class OrderEntryServerTest {
+
+	@Autowired
+	OrderEntryServer server;
+
+	@Autowired
+	IFXTradingService service;
+
+	private SocketChannel channel;
+
+	private final ByteBuffer in = ByteBuffer.allocate(64 * 1024);
+
+	@Before
+	public void setUp() throws IOException {
+		channel = SocketChannel.open(new InetSocketAddress("localhost", server.getPort()));
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		channel.close();
+	}
+
+	@Test
+	public void shouldAckOrdersWithTheirIdAndCancelThem() throws IOException {
+
+		ByteBuffer out = ByteBuffer.allocate(1024);
+		WireProtocol.putNewOrder(out, 1L, 0, OrderType.ASK, 15151L, 6161L);
+		WireProtocol.putNewOrder(out, 2L, 2, OrderType.BID, 121005L, 6161L);
+		send(out);
+
+		ByteBuffer ack = receive();
+		assertThat(ack.get()).isEqualTo(WireProtocol.ACK);
+		assertThat(ack.getLong()).isEqualTo(1L);
+		long gbpId = ack.getLong();
+		assertThat(pairOf(gbpId)).isEqualTo("GBP/USD");
+
+		ack = receive();
+		assertThat(ack.get()).isEqualTo(WireProtocol.ACK);
+		assertThat(ack.getLong()).isEqualTo(2L);
+		long jpyId = ack.getLong();
+		assertThat(pairOf(jpyId)).isEqualTo("USD/JPY");
+
+		WireProtocol.putCancel(out, 3L, gbpId);
+		send(out);
+
+		ack = receive();
+		assertThat(ack.get()).isEqualTo(WireProtocol.ACK);
+		assertThat(ack.getLong()).isEqualTo(3L);
+		assertThat(ack.getLong()).isEqualTo(gbpId);
+		assertThat(pairOf(gbpId)).isNull();
+	}
+
+	@Test
+	public void shouldRejectInvalidOrdersWithTheValidationMessage() throws IOException {
+
+		ByteBuffer out = ByteBuffer.allocate(1024);
+		WireProtocol.putNewOrder(out, 7L, 2, OrderType.BID, 121003L, 500L);
+		WireProtocol.putNewOrder(out, 8L, 999, OrderType.BID, 12100L, 500L);
+		WireProtocol.putCancel(out, 9L, 1L);
+		send(out);
+
+		ByteBuffer reject = receive();
+		assertThat(reject.get()).isEqualTo(WireProtocol.REJECT);
+		assertThat(reject.getLong()).isEqualTo(7L);
+		assertThat(WireProtocol.getMessage(reject))
+				.isEqualTo("You have entered invalid price. The tick size of USD/JPY is 0.005: 121.003");
+
+		reject = receive();
+		assertThat(reject.get()).isEqualTo(WireProtocol.REJECT);
+		assertThat(reject.getLong()).isEqualTo(8L);
+		assertThat(WireProtocol.getMessage(reject)).isEqualTo("You have entered invalid currency pair!");
+
+		reject = receive();
+		assertThat(reject.get()).isEqualTo(WireProtocol.REJECT);
+		assertThat(reject.getLong()).isEqualTo(9L);
+		assertThat(WireProtocol.getMessage(reject)).contains("OrderId does not exists!");
+	}
+
+	/**
+	 * @return the currency pair of the open order, or null if none has the id
+	 */
+	private String pairOf(long orderId) {
+		for (OrderData order : service.allOrders()) {
+			if (order.getId() == orderId) {
+				return order.getPair().getSymbol();
+			}
+		}
+		return null;
+	}
+
+	private void send(ByteBuffer out) throws IOException {
+		out.flip();
+		while (out.hasRemaining()) {
+			channel.write(out);
+		}
+		out.clear();
+	}
+
+	/**
+	 * @return the body of the next response
+	 */
+	private ByteBuffer receive() throws IOException {
+		while (in.position() < 4 || in.position() < 4 + in.getInt(0)) {
+			assertThat(channel.read(in)).isNotNegative();
+		}
+		in.flip();
+		byte[] body = new byte[in.getInt()];
+		in.get(body);
+		in.compact();
+		return ByteBuffer.wrap(body);
+	}
+
+}